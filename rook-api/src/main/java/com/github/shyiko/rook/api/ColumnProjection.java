@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.api;
+
+import java.util.List;
+
+/**
+ * Optional interface {@link ReplicationEventListener} can implement in order to let {@link ReplicationStream} know
+ * which columns it actually needs. {@link ReplicationStream} is free to leave values of all the other columns
+ * null (row layout stays the same, i.e. position of the column within the row does not depend on projection).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface ColumnProjection {
+
+    /**
+     * @param columnNames names of the row columns (as reported by the source), null if unknown. Positions should be
+     * resolved against them (rather than derived from some static view of the table), otherwise projection goes
+     * out of sync as soon as columns get reordered (e.g. by ALTER TABLE ... AFTER ...)
+     * @return positions of the columns (within the row) listener is interested in (empty array if none of them),
+     * null if all of them
+     */
+    int[] getProjection(String schema, String table, List<String> columnNames);
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.api;
+
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pull-based alternative to the {@link ReplicationEventListener}. Events are buffered (up to a limit, after which
+ * source stops reading) until consumer polls them (from the thread of its own choosing) and are considered processed
+ * (which is what makes source checkpoint the position, if it does so) only once {@link #commit()}ted.
+ * <p>
+ * Implementations are not expected to support concurrent {@link #poll} calls.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface ReplicationEventConsumer {
+
+    /**
+     * @param maxEvents maximum number of events to return
+     * @return events in the order they were received (empty list if none arrived within the timeout)
+     */
+    List<ReplicationEvent> poll(int maxEvents, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Marks all the events returned by {@link #poll} so far as processed.
+     */
+    void commit() throws IOException;
+
+    /**
+     * Stops consumption. Events which were not committed are never reported as processed (so, provided that source
+     * keeps track of the processed events (e.g. with a checkpoint store), they are going to be redelivered once
+     * source is restarted).
+     */
+    void close();
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.api;
+
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Demand-driven (pull) view of the {@link ReplicationStream}, following the
+ * <a href="http://www.reactive-streams.org/">Reactive Streams</a> contract (interfaces are declared here as nested
+ * {@link Subscriber}/{@link Subscription}, bridging them to org.reactivestreams (or java.util.concurrent.Flow)
+ * takes a couple of one-line delegating methods).
+ * <p>
+ * Each subscription is a {@link ReplicationEventListener} which, while there is no outstanding demand, holds up the
+ * thread delivering events. With synchronous dispatch that thread is the binary log reader, meaning that no more
+ * data is read from the socket until subscriber requests more (and so backpressure reaches MySQL connection)
+ * (keep in mind that MySQL drops connections of the replicas which don't read for longer than net_write_timeout).
+ * Other listeners of the same stream are held up too (subscription with the least demand sets the pace).
+ * <p>
+ * {@link Subscriber#onNext} is invoked on the thread delivering events. {@link Subscription#request(long)} and
+ * {@link Subscription#cancel()} can be called from any thread (including the one executing onNext), though
+ * calls from the other threads wait for onNext in progress to finish (which keeps all the signals serial).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class ReplicationEventPublisher {
+
+    private final ReplicationStream replicationStream;
+    private final List<DemandDrivenSubscription> subscriptions = new CopyOnWriteArrayList<DemandDrivenSubscription>();
+    private volatile Throwable terminationCause;
+    private volatile boolean terminated;
+
+    public ReplicationEventPublisher(ReplicationStream replicationStream) {
+        this.replicationStream = replicationStream;
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber cannot be null");
+        }
+        DemandDrivenSubscription subscription = new DemandDrivenSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        replicationStream.registerListener(subscription);
+        if (terminated) {
+            subscription.terminate(terminationCause);
+        }
+        if (subscription.isTerminated()) {
+            // cancelled (or terminated) before listener got registered
+            replicationStream.unregisterListener(subscription);
+        }
+    }
+
+    /**
+     * Signals {@link Subscriber#onComplete()} to all the subscribers (present and future ones).
+     */
+    public void complete() {
+        terminate(null);
+    }
+
+    /**
+     * Signals {@link Subscriber#onError(Throwable)} to all the subscribers (present and future ones).
+     */
+    public void fail(Throwable cause) {
+        if (cause == null) {
+            throw new NullPointerException("Cause cannot be null");
+        }
+        terminate(cause);
+    }
+
+    private void terminate(Throwable cause) {
+        terminationCause = cause;
+        terminated = true;
+        for (DemandDrivenSubscription subscription : subscriptions) {
+            subscription.terminate(cause);
+        }
+    }
+
+    /**
+     * Counterpart of org.reactivestreams.Subscriber.
+     */
+    public interface Subscriber {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(ReplicationEvent event);
+
+        void onError(Throwable cause);
+
+        void onComplete();
+    }
+
+    /**
+     * Counterpart of org.reactivestreams.Subscription.
+     */
+    public interface Subscription {
+
+        /**
+         * @param n number of events to add to the outstanding demand (Long.MAX_VALUE means "unbounded")
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    private final class DemandDrivenSubscription implements ReplicationEventListener, Subscription {
+
+        private final Subscriber subscriber;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition demandAvailable = lock.newCondition();
+        private long demand;
+        private boolean terminated;
+
+        private DemandDrivenSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+            lock.lock();
+            try {
+                while (demand == 0 && !terminated) {
+                    demandAvailable.await();
+                }
+                if (terminated) {
+                    return;
+                }
+                if (demand != Long.MAX_VALUE) {
+                    demand--;
+                }
+                subscriber.onNext(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for " + subscriber + " to request more");
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                terminate(new IllegalArgumentException("Number of requested events must be positive (got " + n +
+                    ")"));
+                return;
+            }
+            lock.lock();
+            try {
+                if (!terminated) {
+                    demand = Long.MAX_VALUE - demand < n ? Long.MAX_VALUE : demand + n;
+                    demandAvailable.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                if (!markTerminated()) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            release();
+        }
+
+        /**
+         * @param cause cause to signal with onError, null to signal onComplete
+         */
+        private void terminate(Throwable cause) {
+            lock.lock();
+            try {
+                if (!markTerminated()) {
+                    return;
+                }
+                if (cause == null) {
+                    subscriber.onComplete();
+                } else {
+                    subscriber.onError(cause);
+                }
+            } finally {
+                lock.unlock();
+            }
+            release();
+        }
+
+        private boolean isTerminated() {
+            lock.lock();
+            try {
+                return terminated;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return false if subscription has already been terminated
+         */
+        private boolean markTerminated() {
+            if (terminated) {
+                return false;
+            }
+            terminated = true;
+            demandAvailable.signalAll();
+            return true;
+        }
+
+        private void release() {
+            subscriptions.remove(this);
+            replicationStream.unregisterListener(this);
+        }
+
+        @Override
+        public String toString() {
+            return "ReplicationEventPublisher.Subscription{subscriber=" + subscriber + '}';
+        }
+    }
+}
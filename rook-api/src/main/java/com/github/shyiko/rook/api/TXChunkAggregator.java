@@ -0,0 +1,74 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.api;
+
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBeginReplicationEvent;
+import com.github.shyiko.rook.api.event.TXChunkReplicationEvent;
+import com.github.shyiko.rook.api.event.TXCommitReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter which lets listeners unaware of chunks (see {@link TXChunkAware}) consume chunked transactions by
+ * assembling chunks back into a single {@link TXReplicationEvent} (which means that the whole transaction is kept in
+ * memory until {@link TXCommitReplicationEvent}). All other events are passed through as is.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TXChunkAggregator implements ReplicationEventListener, TXChunkAware {
+
+    private final ReplicationEventListener listener;
+    private List<ReplicationEvent> txEvents;
+
+    public TXChunkAggregator(ReplicationEventListener listener) {
+        this.listener = listener;
+    }
+
+    public ReplicationEventListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void onEvent(ReplicationEvent event) {
+        if (event instanceof TXBeginReplicationEvent) {
+            txEvents = new ArrayList<ReplicationEvent>();
+        } else
+        if (event instanceof TXChunkReplicationEvent) {
+            if (txEvents == null) {
+                throw new IllegalStateException("Got " + event + " outside of transaction");
+            }
+            txEvents.addAll(((TXChunkReplicationEvent) event).getEvents());
+        } else
+        if (event instanceof TXCommitReplicationEvent) {
+            if (txEvents == null) {
+                throw new IllegalStateException("Got " + event + " outside of transaction");
+            }
+            List<ReplicationEvent> events = txEvents;
+            txEvents = null;
+            listener.onEvent(new TXReplicationEvent(events));
+        } else {
+            listener.onEvent(event);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TXChunkAggregator{listener=" + listener + '}';
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.api;
+
+/**
+ * Optional interface {@link ReplicationEventListener} can implement in order to let {@link ReplicationStream} know
+ * that it's capable of processing large transactions incrementally, i.e. as
+ * {@link com.github.shyiko.rook.api.event.TXBeginReplicationEvent},
+ * {@link com.github.shyiko.rook.api.event.TXChunkReplicationEvent}(s) and
+ * {@link com.github.shyiko.rook.api.event.TXCommitReplicationEvent} (instead of a single
+ * {@link com.github.shyiko.rook.api.event.TXReplicationEvent}). Listeners which do not implement this interface
+ * keep receiving {@link com.github.shyiko.rook.api.event.TXReplicationEvent}s.
+ *
+ * @see TXChunkAggregator
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface TXChunkAware {
+}
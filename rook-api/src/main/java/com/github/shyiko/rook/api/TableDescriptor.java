@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.api;
+
+/**
+ * Immutable identity of the table rows of {@link com.github.shyiko.rook.api.event.RowsMutationReplicationEvent}
+ * belong to. {@link ReplicationStream}s are expected to intern descriptors (that is, to hand out the same instance
+ * for all the events of a given table), so that listeners can keep per-table state as an attachment (see
+ * {@link #getAttachment(Object)}) instead of looking it up by name for each event.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public final class TableDescriptor {
+
+    private static final Object[] NO_ATTACHMENTS = new Object[0];
+
+    private final String schema;
+    private final String table;
+    private final String qualifiedName;
+    // key, value, key, value, ... (copy-on-write, so that reads don't need any synchronization)
+    private volatile Object[] attachments = NO_ATTACHMENTS;
+
+    public TableDescriptor(String schema, String table) {
+        this.schema = schema;
+        this.table = table;
+        this.qualifiedName = (schema == null ? "" : schema.toLowerCase()) + "." +
+            (table == null ? "" : table.toLowerCase());
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return lower-cased "schema.table" (meant for case-insensitive matching, e.g. against table filters or
+     * Hibernate mappings). Note that it doesn't identify the table - on a server with lower_case_table_names=0
+     * "Foo" and "foo" are two different tables (see {@link #equals(Object)})
+     */
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    /**
+     * @param key attachment key (compared by identity, e.g. listener itself)
+     * @return value previously attached under the given key, null if there is none
+     */
+    public Object getAttachment(Object key) {
+        Object[] attachments = this.attachments;
+        for (int i = 0; i < attachments.length; i += 2) {
+            if (attachments[i] == key) {
+                return attachments[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param key attachment key (compared by identity)
+     * @param value value to attach, null to remove attachment
+     */
+    public synchronized void setAttachment(Object key, Object value) {
+        Object[] attachments = this.attachments;
+        int index = -1;
+        for (int i = 0; i < attachments.length; i += 2) {
+            if (attachments[i] == key) {
+                index = i;
+                break;
+            }
+        }
+        Object[] result;
+        if (value == null) {
+            if (index == -1) {
+                return;
+            }
+            result = new Object[attachments.length - 2];
+            System.arraycopy(attachments, 0, result, 0, index);
+            System.arraycopy(attachments, index + 2, result, index, attachments.length - index - 2);
+        } else
+        if (index == -1) {
+            result = new Object[attachments.length + 2];
+            System.arraycopy(attachments, 0, result, 0, attachments.length);
+            result[attachments.length] = key;
+            result[attachments.length + 1] = value;
+        } else {
+            result = attachments.clone();
+            result[index + 1] = value;
+        }
+        this.attachments = result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        TableDescriptor that = (TableDescriptor) o;
+        return (schema == null ? that.schema == null : schema.equals(that.schema)) &&
+            (table == null ? that.table == null : table.equals(that.table));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = schema != null ? schema.hashCode() : 0;
+        result = 31 * result + (table != null ? table.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return schema + "." + table;
+    }
+}
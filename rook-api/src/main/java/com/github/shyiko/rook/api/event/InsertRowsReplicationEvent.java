@@ -15,6 +15,8 @@
  */
 package com.github.shyiko.rook.api.event;
 
+import com.github.shyiko.rook.api.TableDescriptor;
+
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
@@ -28,18 +30,33 @@ public class InsertRowsReplicationEvent extends RowsMutationReplicationEvent<Lis
         super(serverId, schema, table, rows);
     }
 
+    public InsertRowsReplicationEvent(long serverId, TableDescriptor tableDescriptor, List<Serializable[]> rows) {
+        super(serverId, tableDescriptor, rows);
+    }
+
+    public InsertRowsReplicationEvent(long serverId, TableDescriptor tableDescriptor, List<String> columnNames,
+            List<Serializable[]> rows) {
+        super(serverId, tableDescriptor, columnNames, rows);
+    }
+
     public InsertRowsReplicationEvent(long serverId, String schema, String table, Serializable[] row) {
         super(serverId, schema, table, Arrays.asList(new Serializable[][]{row}));
     }
 
+    @Override
+    public InsertRowsReplicationEvent copy() {
+        return this;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append("InsertRowsReplicationEvent");
-        sb.append("{serverId=").append(serverId);
-        sb.append(", schema='").append(schema).append('\'');
-        sb.append(", table='").append(table).append('\'');
+        sb.append("{serverId=").append(getServerId());
+        sb.append(", schema='").append(getSchema()).append('\'');
+        sb.append(", table='").append(getTable()).append('\'');
         sb.append(", rows=[");
+        List<Serializable[]> rows = getRows();
         if (!rows.isEmpty()) {
             for (Serializable[] row : rows) {
                 sb.append(Arrays.toString(row)).append(", ");
@@ -15,23 +15,39 @@
  */
 package com.github.shyiko.rook.api.event;
 
+import com.github.shyiko.rook.api.TableDescriptor;
+
 import java.util.Collection;
+import java.util.List;
 
 /**
+ * Note that stream might hand out its own (reusable) subclasses of the events (e.g. in low-garbage mode of
+ * MySQLReplicationStream), in which case {@link #copy()} must be used to keep the event around once listener
+ * returns.
+ *
  * @param <T> type of collection for storing rows
  * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
  */
 public abstract class RowsMutationReplicationEvent<T extends Collection> implements ReplicationEvent {
 
     protected final long serverId;
-    protected final String schema;
-    protected final String table;
+    protected final TableDescriptor tableDescriptor;
+    protected final List<String> columnNames;
     protected final T rows;
 
     protected RowsMutationReplicationEvent(long serverId, String schema, String table, T rows) {
+        this(serverId, new TableDescriptor(schema, table), rows);
+    }
+
+    protected RowsMutationReplicationEvent(long serverId, TableDescriptor tableDescriptor, T rows) {
+        this(serverId, tableDescriptor, null, rows);
+    }
+
+    protected RowsMutationReplicationEvent(long serverId, TableDescriptor tableDescriptor, List<String> columnNames,
+            T rows) {
         this.serverId = serverId;
-        this.schema = schema;
-        this.table = table;
+        this.tableDescriptor = tableDescriptor;
+        this.columnNames = columnNames;
         this.rows = rows;
     }
 
@@ -40,14 +56,37 @@ public abstract class RowsMutationReplicationEvent<T extends Collection> impleme
     }
 
     public String getSchema() {
-        return schema;
+        return getTableDescriptor().getSchema();
     }
 
     public String getTable() {
-        return table;
+        return getTableDescriptor().getTable();
+    }
+
+    /**
+     * @return descriptor of the table (interned by the stream which produced the event)
+     */
+    public TableDescriptor getTableDescriptor() {
+        return tableDescriptor;
+    }
+
+    /**
+     * @return names of the columns (in the order values are laid out within the row) as of the moment rows were
+     * changed, null if unknown. List is immutable and might be shared between the events of the same table
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
     }
 
     public T getRows() {
         return rows;
     }
+
+    /**
+     * @return event which is safe to keep around once listener returns (this one, unless event is going to be
+     * reused by the stream)
+     */
+    public RowsMutationReplicationEvent<T> copy() {
+        return this;
+    }
 }
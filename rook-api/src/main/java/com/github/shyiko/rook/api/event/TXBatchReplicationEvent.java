@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.api.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Consecutive transactions merged into a single unit of work. Listeners unaware of batching can treat it as
+ * a regular {@link TXReplicationEvent} (events of all the transactions, in commit order).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TXBatchReplicationEvent extends TXReplicationEvent {
+
+    private final List<TXReplicationEvent> transactions;
+
+    public TXBatchReplicationEvent(List<TXReplicationEvent> transactions) {
+        super(merge(transactions));
+        this.transactions = transactions;
+    }
+
+    private static List<ReplicationEvent> merge(List<TXReplicationEvent> transactions) {
+        if (transactions.size() == 1) {
+            return transactions.get(0).getEvents();
+        }
+        int size = 0;
+        for (TXReplicationEvent transaction : transactions) {
+            size += transaction.getEvents().size();
+        }
+        List<ReplicationEvent> result = new ArrayList<ReplicationEvent>(size);
+        for (TXReplicationEvent transaction : transactions) {
+            result.addAll(transaction.getEvents());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return transactions batch consists of
+     */
+    public List<TXReplicationEvent> getTransactions() {
+        return transactions;
+    }
+
+    @Override
+    public String toString() {
+        return "TXBatchReplicationEvent{transactions=" + transactions.size() + ", events=" + getEvents().size() +
+            '}';
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.github.shyiko.rook.api.event;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -32,6 +33,18 @@ public class TXReplicationEvent implements ReplicationEvent {
         return events;
     }
 
+    /**
+     * @return copy of the transaction (see {@link RowsMutationReplicationEvent#copy()})
+     */
+    public TXReplicationEvent copy() {
+        List<ReplicationEvent> eventsCopy = new ArrayList<ReplicationEvent>(events.size());
+        for (ReplicationEvent event : events) {
+            eventsCopy.add(event instanceof RowsMutationReplicationEvent ?
+                ((RowsMutationReplicationEvent) event).copy() : event);
+        }
+        return new TXReplicationEvent(eventsCopy);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
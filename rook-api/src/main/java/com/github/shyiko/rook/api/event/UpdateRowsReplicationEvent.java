@@ -15,6 +15,8 @@
  */
 package com.github.shyiko.rook.api.event;
 
+import com.github.shyiko.rook.api.TableDescriptor;
+
 import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.Arrays;
@@ -32,6 +34,16 @@ public class UpdateRowsReplicationEvent extends RowsMutationReplicationEvent<Lis
         super(serverId, schema, table, rows);
     }
 
+    public UpdateRowsReplicationEvent(long serverId, TableDescriptor tableDescriptor,
+            List<Map.Entry<Serializable[], Serializable[]>> rows) {
+        super(serverId, tableDescriptor, rows);
+    }
+
+    public UpdateRowsReplicationEvent(long serverId, TableDescriptor tableDescriptor, List<String> columnNames,
+            List<Map.Entry<Serializable[], Serializable[]>> rows) {
+        super(serverId, tableDescriptor, columnNames, rows);
+    }
+
     @SuppressWarnings("unchecked")
     public UpdateRowsReplicationEvent(long serverId, String schema, String table, Serializable[] previousValues,
             Serializable[] values) {
@@ -39,14 +51,20 @@ public class UpdateRowsReplicationEvent extends RowsMutationReplicationEvent<Lis
             new AbstractMap.SimpleEntry<Serializable[], Serializable[]>(previousValues, values)));
     }
 
+    @Override
+    public UpdateRowsReplicationEvent copy() {
+        return this;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
         sb.append("UpdateRowsReplicationEvent");
-        sb.append("{serverId=").append(serverId);
-        sb.append(", schema='").append(schema).append('\'');
-        sb.append(", table='").append(table).append('\'');
+        sb.append("{serverId=").append(getServerId());
+        sb.append(", schema='").append(getSchema()).append('\'');
+        sb.append(", table='").append(getTable()).append('\'');
         sb.append(", rows=[");
+        List<Map.Entry<Serializable[], Serializable[]>> rows = getRows();
         if (!rows.isEmpty()) {
             for (Map.Entry<Serializable[], Serializable[]> row : rows) {
                 sb.append("{").
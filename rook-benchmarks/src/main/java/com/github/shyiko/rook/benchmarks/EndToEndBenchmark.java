@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import com.github.shyiko.rook.benchmarks.model.Entity;
+import com.github.shyiko.rook.target.hibernate4.cache.HibernateCacheSynchronizer;
+import com.github.shyiko.rook.target.hibernate4.fulltextindex.FullTextIndexSynchronizer;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end (macro) benchmark: {@link SyntheticReplicationStream} feeding {@link HibernateCacheSynchronizer} and
+ * {@link FullTextIndexSynchronizer} (H2 in-memory database, Ehcache, Hibernate Search over RAM directory, no network
+ * involved) at a fixed rate. Reports sustained throughput (rows/s) together with p50/p99/p999 latency between the
+ * moment transaction is emitted and the moment it's evicted from the cache and committed to the index.
+ * <p>
+ * Parameters are passed as system properties:
+ * <ul>
+ *     <li>rook.rate - transactions per second, 0 for as fast as possible (1000 by default)</li>
+ *     <li>rook.warmup - warmup duration in seconds, not included in the report (10 by default)</li>
+ *     <li>rook.duration - measurement duration in seconds (30 by default)</li>
+ *     <li>rook.mix - insert:update:delete weights (1:1:1 by default)</li>
+ *     <li>rook.transactionSize - rows events per transaction, either fixed ("3") or a range ("1:5") (1 by default)
+ *     </li>
+ *     <li>rook.rowsPerEvent - rows per rows event (1 by default)</li>
+ *     <li>rook.keys - number of distinct entities touched by the events (10000 by default)</li>
+ *     <li>rook.keyDistribution - "uniform" or "zipfian" (hot keys), see {@link KeyDistribution} (uniform by
+ *     default)</li>
+ *     <li>rook.zipfExponent - skew of the zipfian distribution (0.99 by default)</li>
+ *     <li>rook.slo.p99 - p99 latency objective in milliseconds. If set and missed (or stream didn't keep up with
+ *     the rate), process exits with status 1</li>
+ * </ul>
+ * e.g. java -Drook.rate=10000 -Drook.keyDistribution=zipfian -Drook.slo.p99=50 -cp benchmarks.jar
+ * com.github.shyiko.rook.benchmarks.EndToEndBenchmark
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public final class EndToEndBenchmark {
+
+    // fraction of the target rate stream has to sustain for the run to be considered keeping up
+    private static final double MIN_RATE_RATIO = 0.95;
+
+    private EndToEndBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        double rate = Double.parseDouble(System.getProperty("rook.rate", "1000"));
+        long warmup = Long.parseLong(System.getProperty("rook.warmup", "10"));
+        long duration = Long.parseLong(System.getProperty("rook.duration", "30"));
+        String[] mix = System.getProperty("rook.mix", "1:1:1").split(":");
+        if (mix.length != 3) {
+            throw new IllegalArgumentException("rook.mix is expected to be in the insert:update:delete form");
+        }
+        String[] transactionSize = System.getProperty("rook.transactionSize", "1").split(":");
+        int rowsPerEvent = Integer.parseInt(System.getProperty("rook.rowsPerEvent", "1"));
+        long numberOfKeys = Long.parseLong(System.getProperty("rook.keys", "10000"));
+        String keyDistribution = System.getProperty("rook.keyDistribution", "uniform");
+        double zipfExponent = Double.parseDouble(System.getProperty("rook.zipfExponent", "0.99"));
+        String slo = System.getProperty("rook.slo.p99");
+
+        Configuration configuration = HibernateFixture.configuration();
+        SessionFactory sessionFactory = HibernateFixture.buildSessionFactory(configuration);
+        try {
+            HibernateFixture.populate(sessionFactory, numberOfKeys);
+            WorkloadProfile profile = new WorkloadProfile("rook");
+            WorkloadProfile.TableWorkload entity = profile.addTable(Entity.class);
+            if ("zipfian".equals(keyDistribution)) {
+                entity.setKeyDistribution(KeyDistribution.zipfian(numberOfKeys, zipfExponent));
+            } else
+            if ("uniform".equals(keyDistribution)) {
+                entity.setKeyDistribution(KeyDistribution.uniform(numberOfKeys));
+            } else {
+                throw new IllegalArgumentException("Unknown key distribution " + keyDistribution);
+            }
+            entity.setMix(Integer.parseInt(mix[0]), Integer.parseInt(mix[1]), Integer.parseInt(mix[2]));
+            entity.setRowsPerEvent(rowsPerEvent);
+            profile.setTransactionSize(Integer.parseInt(transactionSize[0]),
+                Integer.parseInt(transactionSize[transactionSize.length - 1]));
+            profile.setRate(rate);
+            SyntheticReplicationStream stream = new SyntheticReplicationStream(configuration, profile);
+            stream.registerListener(new HibernateCacheSynchronizer(configuration, sessionFactory));
+            stream.registerListener(new FullTextIndexSynchronizer(configuration, sessionFactory));
+            stream.connect(0);
+            try {
+                TimeUnit.SECONDS.sleep(warmup);
+                stream.resetStatistics();
+                TimeUnit.SECONDS.sleep(duration);
+            } finally {
+                stream.disconnect();
+            }
+            boolean passed = report(stream, rate, duration, slo == null ? -1 : Double.parseDouble(slo));
+            if (slo != null && !passed) {
+                System.exit(1);
+            }
+        } finally {
+            sessionFactory.close();
+        }
+    }
+
+    private static boolean report(SyntheticReplicationStream stream, double rate, long duration, double slo) {
+        double achievedRate = (double) stream.getNumberOfTransactions() / duration;
+        double p99 = toMilliseconds(stream.getLatency(0.99));
+        System.out.println(String.format(Locale.ENGLISH, "Transactions: %d (%.1f/s, target %s)",
+            stream.getNumberOfTransactions(), achievedRate, rate == 0 ? "unbounded" : String.valueOf(rate)));
+        System.out.println(String.format(Locale.ENGLISH, "Throughput: %.1f rows/s",
+            (double) stream.getNumberOfRows() / duration));
+        System.out.println(String.format(Locale.ENGLISH,
+            "Latency (ms): p50 = %.3f, p99 = %.3f, p999 = %.3f, max = %.3f",
+            toMilliseconds(stream.getLatency(0.5)), p99, toMilliseconds(stream.getLatency(0.999)),
+            toMilliseconds(stream.getMaxLatency())));
+        boolean keptUp = rate == 0 || achievedRate >= rate * MIN_RATE_RATIO;
+        if (!keptUp) {
+            System.out.println("Listeners did not keep up with the target rate");
+        }
+        if (slo < 0) {
+            return keptUp;
+        }
+        boolean met = keptUp && p99 <= slo;
+        System.out.println(String.format(Locale.ENGLISH, "SLO (p99 <= %.3f ms): %s", slo, met ? "met" : "MISSED"));
+        return met;
+    }
+
+    private static double toMilliseconds(long nanoseconds) {
+        return nanoseconds / 1e6;
+    }
+}
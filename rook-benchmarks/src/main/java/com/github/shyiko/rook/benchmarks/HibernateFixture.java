@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import com.github.shyiko.rook.benchmarks.model.Entity;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.service.ServiceRegistryBuilder;
+
+/**
+ * Hibernate configuration (H2 in-memory database + Ehcache + Hibernate Search over RAM directory, see
+ * hibernate.cfg.xml) shared by the benchmarks of hibernate4 targets.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public final class HibernateFixture {
+
+    private HibernateFixture() {
+    }
+
+    /**
+     * @return configuration with {@link Entity} (mapped to rook.entity) and
+     * {@link com.github.shyiko.rook.benchmarks.model.EntityWithCompositeKey} (rook.entity_with_cpk), both cacheable
+     * ({@link Entity} is also indexed)
+     */
+    public static Configuration configuration() {
+        Configuration configuration = new Configuration().configure("hibernate.cfg.xml");
+        configuration.buildMappings();
+        return configuration;
+    }
+
+    public static PersistentClass classMapping(Configuration configuration, Class entityClass) {
+        return configuration.getClassMapping(entityClass.getName());
+    }
+
+    public static SessionFactory buildSessionFactory(Configuration configuration) {
+        return configuration.buildSessionFactory(new ServiceRegistryBuilder().
+            applySettings(configuration.getProperties()).buildServiceRegistry());
+    }
+
+    /**
+     * Inserts {@link Entity}s with ids in the [0, numberOfEntities) range (so that there is something for the
+     * full-text indexer to load).
+     */
+    public static void populate(SessionFactory sessionFactory, long numberOfEntities) {
+        Session session = sessionFactory.openSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            for (long id = 0; id < numberOfEntities; id++) {
+                Entity entity = new Entity();
+                entity.setId(id);
+                entity.setName("entity #" + id);
+                session.save(entity);
+                if (id % 1000 == 999) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            transaction.commit();
+        } finally {
+            session.close();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Distribution of the keys (in the [0, numberOfKeys) range) rows events of the {@link WorkloadProfile} touch.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public abstract class KeyDistribution {
+
+    private final long numberOfKeys;
+
+    protected KeyDistribution(long numberOfKeys) {
+        if (numberOfKeys < 1) {
+            throw new IllegalArgumentException("Number of keys must be greater than 0");
+        }
+        this.numberOfKeys = numberOfKeys;
+    }
+
+    public long getNumberOfKeys() {
+        return numberOfKeys;
+    }
+
+    public abstract long nextKey(Random random);
+
+    /**
+     * @return distribution under which all the keys are equally likely
+     */
+    public static KeyDistribution uniform(long numberOfKeys) {
+        return new Uniform(numberOfKeys);
+    }
+
+    /**
+     * @param exponent skew in the (0, 1) range, the closer it is to 1 the hotter the hot keys are (0.99 makes ~1% of
+     * the keys account for about half of the accesses given 10^4 keys)
+     * @return distribution under which probability of the key is inversely proportional to (key + 1) ^ exponent, that
+     * is, key 0 is the hottest one, followed by key 1 and so on
+     */
+    public static KeyDistribution zipfian(long numberOfKeys, double exponent) {
+        return new Zipfian(numberOfKeys, exponent);
+    }
+
+    private static final class Uniform extends KeyDistribution {
+
+        private Uniform(long numberOfKeys) {
+            super(numberOfKeys);
+        }
+
+        @Override
+        public long nextKey(Random random) {
+            return (long) (random.nextDouble() * getNumberOfKeys());
+        }
+
+        @Override
+        public String toString() {
+            return "uniform(" + getNumberOfKeys() + ")";
+        }
+    }
+
+    /**
+     * Zipfian distribution as described in "Quickly Generating Billion-Record Synthetic Databases" by Gray et al.
+     * (constant time per key, O(numberOfKeys) set up).
+     */
+    private static final class Zipfian extends KeyDistribution {
+
+        private final double exponent;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        private Zipfian(long numberOfKeys, double exponent) {
+            super(numberOfKeys);
+            if (exponent <= 0 || exponent >= 1) {
+                throw new IllegalArgumentException("Exponent must be in the (0, 1) range");
+            }
+            this.exponent = exponent;
+            double zetan = 0;
+            for (long i = 1; i <= numberOfKeys; i++) {
+                zetan += 1 / Math.pow(i, exponent);
+            }
+            this.zetan = zetan;
+            this.alpha = 1 / (1 - exponent);
+            double zeta2 = 1 + 1 / Math.pow(2, exponent);
+            this.eta = (1 - Math.pow(2.0 / numberOfKeys, 1 - exponent)) / (1 - zeta2 / zetan);
+        }
+
+        @Override
+        public long nextKey(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, exponent)) {
+                return Math.min(1, getNumberOfKeys() - 1);
+            }
+            long key = (long) (getNumberOfKeys() * Math.pow(eta * u - eta + 1, alpha));
+            return Math.min(key, getNumberOfKeys() - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian(" + getNumberOfKeys() + ", " + exponent + ")";
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.ReplicationStream;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import com.github.shyiko.rook.source.mysql.LatencyHistogram;
+import org.hibernate.cfg.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link ReplicationStream} emitting transactions of {@link TransactionGenerator} at a fixed rate (or as fast as
+ * listeners can keep up with) and keeping track of how long it took for the listeners to process each of them.
+ * <p>
+ * Latency is measured from the moment transaction was scheduled to be emitted (and not from the moment it actually
+ * was), which means that time transaction spent waiting for the listeners to finish with preceding ones is accounted
+ * for (as it would have been, had transactions arrived from the MySQL server).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class SyntheticReplicationStream implements ReplicationStream {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final TransactionGenerator transactionGenerator;
+    private final List<ReplicationEventListener> listeners = new CopyOnWriteArrayList<ReplicationEventListener>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong numberOfRows = new AtomicLong();
+    private volatile ReplicationEventExceptionHandler exceptionHandler;
+    private volatile double rate;
+    private Generation generation;
+
+    public SyntheticReplicationStream(TransactionGenerator transactionGenerator) {
+        this.transactionGenerator = transactionGenerator;
+    }
+
+    /**
+     * @param configuration configuration with mappings built (e.g. the one session factory was built from)
+     * @param profile workload to generate (target rate included)
+     */
+    public SyntheticReplicationStream(Configuration configuration, WorkloadProfile profile) {
+        this(new WorkloadTransactionGenerator(configuration, profile));
+        setRate(profile.getRate());
+    }
+
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    /**
+     * @param rate number of transactions per second, 0 to emit them as fast as possible (which is the default).
+     * Takes effect on the next connect.
+     */
+    public void setRate(double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate cannot be negative");
+        }
+        this.rate = rate;
+    }
+
+    /**
+     * Emits transactions in the calling thread. Returns once {@link #disconnect()} is called.
+     */
+    @Override
+    public void connect() throws IOException {
+        startGeneration().generate();
+    }
+
+    /**
+     * Unlike {@link #connect()}, emits transactions in a separate thread (and so returns right away).
+     */
+    @Override
+    public void connect(long timeoutInMilliseconds) throws IOException, TimeoutException {
+        new Thread(startGeneration(), "rook-synthetic-generator").start();
+    }
+
+    private synchronized Generation startGeneration() {
+        if (isConnected()) {
+            throw new IllegalStateException("Generation is already in progress");
+        }
+        generation = new Generation(rate);
+        return generation;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return generation != null && !generation.completed;
+    }
+
+    @Override
+    public void registerListener(ReplicationEventListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(ReplicationEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void unregisterListener(Class<? extends ReplicationEventListener> listenerClass) {
+        for (ReplicationEventListener listener : listeners) {
+            if (listenerClass.isInstance(listener)) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        Generation generation;
+        synchronized (this) {
+            generation = this.generation;
+        }
+        if (generation != null) {
+            generation.stop();
+        }
+    }
+
+    /**
+     * @return number of transactions processed by the listeners since the stream was created (or statistics were
+     * reset)
+     */
+    public long getNumberOfTransactions() {
+        return latency.getCount();
+    }
+
+    /**
+     * @return number of rows (across all the transactions) processed by the listeners since the stream was created
+     * (or statistics were reset)
+     */
+    public long getNumberOfRows() {
+        return numberOfRows.get();
+    }
+
+    /**
+     * @param quantile quantile in the [0, 1] range (e.g. 0.99 for 99th percentile)
+     * @return end-to-end latency (in nanoseconds) below which given fraction of the transactions falls
+     */
+    public long getLatency(double quantile) {
+        return latency.getPercentile(quantile);
+    }
+
+    /**
+     * @return maximum end-to-end latency (in nanoseconds)
+     */
+    public long getMaxLatency() {
+        return latency.getMax();
+    }
+
+    /**
+     * Resets transaction/row counters and latency statistics (e.g. at the end of the warmup).
+     */
+    public void resetStatistics() {
+        latency.reset();
+        numberOfRows.set(0);
+    }
+
+    private void deliver(ReplicationEvent event) {
+        for (ReplicationEventListener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (Exception e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(listener + " choked on " + event, e);
+                }
+                ReplicationEventExceptionHandler exceptionHandler = this.exceptionHandler;
+                if (exceptionHandler != null) {
+                    exceptionHandler.handle(e);
+                }
+            }
+        }
+    }
+
+    private static int countRows(TXReplicationEvent transaction) {
+        int result = 0;
+        for (ReplicationEvent event : transaction.getEvents()) {
+            if (event instanceof RowsMutationReplicationEvent) {
+                result += ((RowsMutationReplicationEvent) event).getRows().size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Single run of the generator.
+     */
+    private final class Generation implements Runnable {
+
+        private final long intervalInNanoseconds;
+        private final CountDownLatch stopLatch = new CountDownLatch(1);
+        private final CountDownLatch completionLatch = new CountDownLatch(1);
+        private volatile Thread thread;
+        private volatile boolean completed;
+
+        private Generation(double rate) {
+            this.intervalInNanoseconds = rate == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+
+        @Override
+        public void run() {
+            generate();
+        }
+
+        public void generate() {
+            thread = Thread.currentThread();
+            try {
+                long scheduledAt = System.nanoTime();
+                while (!isStopRequested()) {
+                    if (intervalInNanoseconds == 0) {
+                        scheduledAt = System.nanoTime();
+                    } else {
+                        scheduledAt += intervalInNanoseconds;
+                        long delay = scheduledAt - System.nanoTime();
+                        if (delay > 0 && stopLatch.await(delay, TimeUnit.NANOSECONDS)) {
+                            break;
+                        }
+                    }
+                    TXReplicationEvent transaction = transactionGenerator.nextTransaction();
+                    deliver(transaction);
+                    latency.record(System.nanoTime() - scheduledAt);
+                    numberOfRows.addAndGet(countRows(transaction));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                completed = true;
+                completionLatch.countDown();
+            }
+        }
+
+        private boolean isStopRequested() {
+            return stopLatch.getCount() == 0;
+        }
+
+        /**
+         * Requests generation to stop and waits for it to do so (unless called from the generating thread itself).
+         */
+        public void stop() {
+            stopLatch.countDown();
+            if (Thread.currentThread() == thread) {
+                return;
+            }
+            try {
+                completionLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
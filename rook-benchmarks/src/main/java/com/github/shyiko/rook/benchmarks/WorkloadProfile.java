@@ -0,0 +1,201 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Declarative description of the synthetic workload: which tables (entities) are touched, how often, by what kind
+ * of rows events (insert/update/delete mix, rows per event, key distribution), how many rows events transaction
+ * consists of and how many transactions per second are to be emitted. E.g.
+ * <pre>
+ * WorkloadProfile profile = new WorkloadProfile("rook");
+ * WorkloadProfile.TableWorkload entity = profile.addTable(Entity.class);
+ * entity.setKeyDistribution(KeyDistribution.zipfian(100000, 0.99));
+ * entity.setMix(1, 8, 1);
+ * profile.setTransactionSize(1, 5);
+ * profile.setRate(5000);
+ * </pre>
+ * See {@link SyntheticReplicationStream#SyntheticReplicationStream(org.hibernate.cfg.Configuration,
+ * WorkloadProfile)}.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class WorkloadProfile {
+
+    private final String schema;
+    private final List<TableWorkload> tables = new ArrayList<TableWorkload>();
+    private int minTransactionSize = 1;
+    private int maxTransactionSize = 1;
+    private double rate;
+    private long seed = 1;
+
+    /**
+     * @param schema schema (database) events are to be attributed to (the one synchronizers expect to see, e.g.
+     * catalog of the JDBC connection)
+     */
+    public WorkloadProfile(String schema) {
+        this.schema = schema;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    /**
+     * @param entityClass mapped entity (rows events are generated against the table it's mapped to)
+     * @return table workload (with uniform distribution over 10000 keys, single row per event and equal shares of
+     * inserts, updates and deletes) to be tuned
+     */
+    public TableWorkload addTable(Class entityClass) {
+        TableWorkload table = new TableWorkload(entityClass);
+        tables.add(table);
+        return table;
+    }
+
+    public List<TableWorkload> getTables() {
+        return Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * @param min minimum number of rows events per transaction
+     * @param max maximum number of rows events per transaction (actual number is picked uniformly from [min, max])
+     */
+    public void setTransactionSize(int min, int max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Transaction size is expected to be within [1, max] range");
+        }
+        this.minTransactionSize = min;
+        this.maxTransactionSize = max;
+    }
+
+    public int getMinTransactionSize() {
+        return minTransactionSize;
+    }
+
+    public int getMaxTransactionSize() {
+        return maxTransactionSize;
+    }
+
+    /**
+     * @param rate number of transactions per second, 0 to emit them as fast as possible (which is the default)
+     */
+    public void setRate(double rate) {
+        if (rate < 0) {
+            throw new IllegalArgumentException("Rate cannot be negative");
+        }
+        this.rate = rate;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * @param seed seed of the random number generator (same seed gives same sequence of events)
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Workload of a single table.
+     */
+    public static final class TableWorkload {
+
+        private final Class entityClass;
+        private int weight = 1;
+        private KeyDistribution keyDistribution = KeyDistribution.uniform(10000);
+        private int rowsPerEvent = 1;
+        private int insertWeight = 1;
+        private int updateWeight = 1;
+        private int deleteWeight = 1;
+
+        private TableWorkload(Class entityClass) {
+            this.entityClass = entityClass;
+        }
+
+        public Class getEntityClass() {
+            return entityClass;
+        }
+
+        /**
+         * @param weight relative share of the rows events touching this table (1 by default)
+         */
+        public void setWeight(int weight) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("Weight must be greater than 0");
+            }
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setKeyDistribution(KeyDistribution keyDistribution) {
+            this.keyDistribution = keyDistribution;
+        }
+
+        public KeyDistribution getKeyDistribution() {
+            return keyDistribution;
+        }
+
+        public void setRowsPerEvent(int rowsPerEvent) {
+            if (rowsPerEvent < 1) {
+                throw new IllegalArgumentException("Number of rows per event must be greater than 0");
+            }
+            this.rowsPerEvent = rowsPerEvent;
+        }
+
+        public int getRowsPerEvent() {
+            return rowsPerEvent;
+        }
+
+        /**
+         * @param insertWeight relative share of the insert rows events
+         * @param updateWeight relative share of the update rows events
+         * @param deleteWeight relative share of the delete rows events
+         */
+        public void setMix(int insertWeight, int updateWeight, int deleteWeight) {
+            if (insertWeight < 0 || updateWeight < 0 || deleteWeight < 0 ||
+                insertWeight + updateWeight + deleteWeight == 0) {
+                throw new IllegalArgumentException("Weights must be non-negative with at least one of them positive");
+            }
+            this.insertWeight = insertWeight;
+            this.updateWeight = updateWeight;
+            this.deleteWeight = deleteWeight;
+        }
+
+        public int getInsertWeight() {
+            return insertWeight;
+        }
+
+        public int getUpdateWeight() {
+            return updateWeight;
+        }
+
+        public int getDeleteWeight() {
+            return deleteWeight;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Component;
+import org.hibernate.mapping.KeyValue;
+import org.hibernate.mapping.PersistentClass;
+import org.hibernate.mapping.Property;
+import org.hibernate.mapping.Table;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * {@link TransactionGenerator} of the {@link WorkloadProfile}. Rows are laid out according to the Hibernate mapping
+ * (columns in the order of the mapped table, key(s) drawn from the key distribution in the primary key columns,
+ * values of the matching Java types elsewhere), so that synchronizers resolve them exactly as they would the rows
+ * coming from MySQL. Columns of the unsupported types (e.g. foreign keys) are left null.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class WorkloadTransactionGenerator implements TransactionGenerator {
+
+    private final TableGenerator[] tables;
+    private final int totalWeight;
+    private final int minTransactionSize;
+    private final int maxTransactionSize;
+    private final Random random;
+    private long sequence;
+
+    /**
+     * @param configuration configuration with mappings built (e.g. the one session factory was built from)
+     */
+    public WorkloadTransactionGenerator(Configuration configuration, WorkloadProfile profile) {
+        List<WorkloadProfile.TableWorkload> tableWorkloads = profile.getTables();
+        if (tableWorkloads.isEmpty()) {
+            throw new IllegalArgumentException("Workload profile doesn't contain any tables");
+        }
+        this.tables = new TableGenerator[tableWorkloads.size()];
+        int totalWeight = 0;
+        for (int i = 0; i < tables.length; i++) {
+            WorkloadProfile.TableWorkload tableWorkload = tableWorkloads.get(i);
+            PersistentClass persistentClass = configuration.getClassMapping(tableWorkload.getEntityClass().getName());
+            if (persistentClass == null) {
+                throw new IllegalArgumentException(tableWorkload.getEntityClass() + " is not mapped");
+            }
+            tables[i] = new TableGenerator(profile.getSchema(), persistentClass, tableWorkload);
+            totalWeight += tableWorkload.getWeight();
+        }
+        this.totalWeight = totalWeight;
+        this.minTransactionSize = profile.getMinTransactionSize();
+        this.maxTransactionSize = profile.getMaxTransactionSize();
+        this.random = new Random(profile.getSeed());
+    }
+
+    @Override
+    public TXReplicationEvent nextTransaction() {
+        int size = minTransactionSize + random.nextInt(maxTransactionSize - minTransactionSize + 1);
+        List<ReplicationEvent> events = new ArrayList<ReplicationEvent>(size);
+        for (int i = 0; i < size; i++) {
+            events.add(nextTable().nextEvent());
+        }
+        return new TXReplicationEvent(events);
+    }
+
+    private TableGenerator nextTable() {
+        if (tables.length == 1) {
+            return tables[0];
+        }
+        int choice = random.nextInt(totalWeight);
+        for (TableGenerator table : tables) {
+            choice -= table.workload.getWeight();
+            if (choice < 0) {
+                return table;
+            }
+        }
+        throw new IllegalStateException(); // unreachable
+    }
+
+    /**
+     * @return value of the given type derived from the seed, null if type is not supported
+     */
+    private static Serializable value(Class type, String columnName, long seed) {
+        if (type == Long.class || type == long.class) {
+            return seed;
+        }
+        if (type == Integer.class || type == int.class) {
+            return (int) seed;
+        }
+        if (type == Short.class || type == short.class) {
+            return (short) seed;
+        }
+        if (type == Byte.class || type == byte.class) {
+            return (byte) seed;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return seed % 2 == 0;
+        }
+        if (type == Double.class || type == double.class) {
+            return (double) seed;
+        }
+        if (type == Float.class || type == float.class) {
+            return (float) seed;
+        }
+        if (type == String.class) {
+            return columnName + " #" + seed;
+        }
+        if (type == BigDecimal.class) {
+            return BigDecimal.valueOf(seed);
+        }
+        if (type == BigInteger.class) {
+            return BigInteger.valueOf(seed);
+        }
+        if (type != null && Date.class.isAssignableFrom(type)) {
+            return new Date(seed * 1000);
+        }
+        return null;
+    }
+
+    /**
+     * Generator of the rows events of a single table.
+     */
+    private final class TableGenerator {
+
+        private final WorkloadProfile.TableWorkload workload;
+        private final TableDescriptor tableDescriptor;
+        private final List<String> columnNames;
+        private final Class[] columnTypes;
+        private final boolean[] keyColumns;
+
+        private TableGenerator(String schema, PersistentClass persistentClass,
+                WorkloadProfile.TableWorkload workload) {
+            this.workload = workload;
+            Table table = persistentClass.getTable();
+            this.tableDescriptor = new TableDescriptor(schema, table.getName());
+            Set<String> keyColumnNames = new HashSet<String>();
+            Map<String, Class> typeByColumnName = new HashMap<String, Class>();
+            KeyValue key = persistentClass.getKey();
+            if (key instanceof Component) {
+                for (Iterator iterator = ((Component) key).getPropertyIterator(); iterator.hasNext(); ) {
+                    collectColumnTypes((Property) iterator.next(), typeByColumnName);
+                }
+            } else {
+                Class identifierType = persistentClass.getIdentifier().getType().getReturnedClass();
+                for (Iterator iterator = key.getColumnIterator(); iterator.hasNext(); ) {
+                    typeByColumnName.put(((Column) iterator.next()).getName(), identifierType);
+                }
+            }
+            for (Iterator iterator = key.getColumnIterator(); iterator.hasNext(); ) {
+                keyColumnNames.add(((Column) iterator.next()).getName());
+            }
+            for (Iterator iterator = persistentClass.getPropertyClosureIterator(); iterator.hasNext(); ) {
+                collectColumnTypes((Property) iterator.next(), typeByColumnName);
+            }
+            List<String> columnNames = new ArrayList<String>();
+            for (Iterator iterator = table.getColumnIterator(); iterator.hasNext(); ) {
+                columnNames.add(((Column) iterator.next()).getName());
+            }
+            this.columnNames = Collections.unmodifiableList(columnNames);
+            this.columnTypes = new Class[columnNames.size()];
+            this.keyColumns = new boolean[columnNames.size()];
+            for (int i = 0; i < columnTypes.length; i++) {
+                columnTypes[i] = typeByColumnName.get(columnNames.get(i));
+                keyColumns[i] = keyColumnNames.contains(columnNames.get(i));
+            }
+        }
+
+        private void collectColumnTypes(Property property, Map<String, Class> typeByColumnName) {
+            if (property.getColumnSpan() != 1 || property.getType().isAssociationType()) {
+                return;
+            }
+            Object selectable = property.getColumnIterator().next();
+            if (selectable instanceof Column) {
+                typeByColumnName.put(((Column) selectable).getName(), property.getType().getReturnedClass());
+            }
+        }
+
+        public ReplicationEvent nextEvent() {
+            int rowsPerEvent = workload.getRowsPerEvent();
+            int insertWeight = workload.getInsertWeight();
+            int updateWeight = workload.getUpdateWeight();
+            int choice = random.nextInt(insertWeight + updateWeight + workload.getDeleteWeight());
+            if (choice < insertWeight) {
+                return new InsertRowsReplicationEvent(1, tableDescriptor, columnNames, nextRows(rowsPerEvent));
+            } else
+            if (choice < insertWeight + updateWeight) {
+                List<Map.Entry<Serializable[], Serializable[]>> rows =
+                    new ArrayList<Map.Entry<Serializable[], Serializable[]>>(rowsPerEvent);
+                for (int i = 0; i < rowsPerEvent; i++) {
+                    long key = workload.getKeyDistribution().nextKey(random);
+                    rows.add(new AbstractMap.SimpleEntry<Serializable[], Serializable[]>(row(key, key),
+                        row(key, key + ++sequence)));
+                }
+                return new UpdateRowsReplicationEvent(1, tableDescriptor, columnNames, rows);
+            }
+            return new DeleteRowsReplicationEvent(1, tableDescriptor, columnNames, nextRows(rowsPerEvent));
+        }
+
+        private List<Serializable[]> nextRows(int numberOfRows) {
+            List<Serializable[]> rows = new ArrayList<Serializable[]>(numberOfRows);
+            for (int i = 0; i < numberOfRows; i++) {
+                long key = workload.getKeyDistribution().nextKey(random);
+                rows.add(row(key, key));
+            }
+            return rows;
+        }
+
+        /**
+         * @param key value of the primary key column(s)
+         * @param seed seed of the rest of the values
+         */
+        private Serializable[] row(long key, long seed) {
+            Serializable[] row = new Serializable[columnTypes.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = value(columnTypes[i], columnNames.get(i), keyColumns[i] ? key : seed);
+            }
+            return row;
+        }
+    }
+}
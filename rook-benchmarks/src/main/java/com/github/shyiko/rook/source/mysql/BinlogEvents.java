@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventData;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.QueryEventData;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.XidEventData;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Already deserialized binary log events (so that benchmarks measure event handling rather than deserialization).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class BinlogEvents {
+
+    private static final byte MYSQL_TYPE_LONGLONG = 8;
+    private static final byte MYSQL_TYPE_VARCHAR = 15;
+
+    private BinlogEvents() {
+    }
+
+    public static Event rotate(String binlogFilename) {
+        RotateEventData eventData = new RotateEventData();
+        eventData.setBinlogFilename(binlogFilename);
+        eventData.setBinlogPosition(4);
+        return event(EventType.ROTATE, eventData);
+    }
+
+    /**
+     * @return BEGIN, TABLE_MAP + WRITE_ROWS (numberOfRowsEvents times), XID
+     */
+    public static Event[] transaction(long tableId, String table, int numberOfRowsEvents, int rowsPerEvent) {
+        List<Event> result = new ArrayList<Event>();
+        QueryEventData begin = new QueryEventData();
+        begin.setDatabase("rook");
+        begin.setSql("BEGIN");
+        result.add(event(EventType.QUERY, begin));
+        TableMapEventData tableMap = new TableMapEventData();
+        tableMap.setTableId(tableId);
+        tableMap.setDatabase("rook");
+        tableMap.setTable(table);
+        tableMap.setColumnTypes(new byte[]{MYSQL_TYPE_LONGLONG, MYSQL_TYPE_VARCHAR});
+        tableMap.setColumnMetadata(new int[]{0, 255});
+        tableMap.setColumnNullability(new BitSet());
+        BitSet includedColumns = new BitSet();
+        includedColumns.set(0, 2);
+        for (int i = 0; i < numberOfRowsEvents; i++) {
+            result.add(event(EventType.TABLE_MAP, tableMap));
+            List<Serializable[]> rows = new ArrayList<Serializable[]>(rowsPerEvent);
+            for (int j = 0; j < rowsPerEvent; j++) {
+                rows.add(new Serializable[]{(long) j, "entity #" + j});
+            }
+            WriteRowsEventData writeRows = new WriteRowsEventData();
+            writeRows.setTableId(tableId);
+            writeRows.setIncludedColumns(includedColumns);
+            writeRows.setRows(rows);
+            result.add(event(EventType.EXT_WRITE_ROWS, writeRows));
+        }
+        XidEventData xid = new XidEventData();
+        xid.setXid(tableId);
+        result.add(event(EventType.XID, xid));
+        return result.toArray(new Event[result.size()]);
+    }
+
+    private static Event event(EventType eventType, EventData eventData) {
+        EventHeaderV4 eventHeader = new EventHeaderV4();
+        eventHeader.setEventType(eventType);
+        eventHeader.setServerId(1);
+        eventHeader.setTimestamp(System.currentTimeMillis());
+        eventHeader.setNextPosition(4);
+        return new Event(eventHeader, eventData);
+    }
+
+    /**
+     * Listener that does nothing but counts events it receives.
+     */
+    static final class CountingListener implements ReplicationEventListener {
+
+        private long numberOfEvents;
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+            numberOfEvents++;
+        }
+
+        public long getNumberOfEvents() {
+            return numberOfEvents;
+        }
+    }
+}
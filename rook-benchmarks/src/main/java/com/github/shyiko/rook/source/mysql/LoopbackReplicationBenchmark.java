@@ -0,0 +1,128 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decode + dispatch throughput of {@link MySQLReplicationStream} connected (over loopback) to
+ * {@link StandInMySQLServer} streaming {@link SyntheticBinlog} as fast as it can (unless throttled).
+ * <p>
+ * Parameters are passed as system properties:
+ * <ul>
+ *     <li>rook.warmup - warmup duration in seconds, not included in the report (5 by default)</li>
+ *     <li>rook.duration - measurement duration in seconds (20 by default)</li>
+ *     <li>rook.mix - insert:update:delete transactions pattern (1:1:1 by default)</li>
+ *     <li>rook.rowsPerEvent - rows per rows event (1 by default)</li>
+ *     <li>rook.throttle - events per second server is allowed to send, 0 for no limit (0 by default)</li>
+ *     <li>rook.eventLoop - true to serve connection from {@link BinlogEventLoopGroup} (false by default)</li>
+ *     <li>rook.lowGarbage - true to turn on low-garbage mode (false by default)</li>
+ * </ul>
+ * e.g. java -Drook.rowsPerEvent=10 -cp benchmarks.jar com.github.shyiko.rook.source.mysql.LoopbackReplicationBenchmark
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public final class LoopbackReplicationBenchmark {
+
+    private LoopbackReplicationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long warmup = Long.parseLong(System.getProperty("rook.warmup", "5"));
+        long duration = Long.parseLong(System.getProperty("rook.duration", "20"));
+        String[] mix = System.getProperty("rook.mix", "1:1:1").split(":");
+        if (mix.length != 3) {
+            throw new IllegalArgumentException("rook.mix is expected to be in the insert:update:delete form");
+        }
+        int rowsPerEvent = Integer.parseInt(System.getProperty("rook.rowsPerEvent", "1"));
+        double throttle = Double.parseDouble(System.getProperty("rook.throttle", "0"));
+        boolean eventLoop = Boolean.parseBoolean(System.getProperty("rook.eventLoop", "false"));
+        boolean lowGarbage = Boolean.parseBoolean(System.getProperty("rook.lowGarbage", "false"));
+
+        SyntheticBinlog binlog = new SyntheticBinlog("mysql-bin.000001", "rook", "entity");
+        binlog.setMix(Integer.parseInt(mix[0]), Integer.parseInt(mix[1]), Integer.parseInt(mix[2]));
+        binlog.setRowsPerEvent(rowsPerEvent);
+        StandInMySQLServer server = new StandInMySQLServer("rook", binlog);
+        server.setThrottle(throttle);
+        server.start();
+        BinlogEventLoopGroup eventLoopGroup = eventLoop ? new BinlogEventLoopGroup(1, 1) : null;
+        try {
+            MySQLReplicationStream stream = new MySQLReplicationStream("127.0.0.1", server.getPort(), "rook", "");
+            stream.setLowGarbageMode(lowGarbage);
+            if (eventLoopGroup != null) {
+                stream.setEventLoopGroup(eventLoopGroup);
+            }
+            RowCountingListener listener = new RowCountingListener();
+            stream.registerListener(listener);
+            stream.connect(TimeUnit.SECONDS.toMillis(10));
+            try {
+                TimeUnit.SECONDS.sleep(warmup);
+                long numberOfTransactions = listener.numberOfTransactions.get();
+                long numberOfRows = listener.numberOfRows.get();
+                long startedAt = System.nanoTime();
+                TimeUnit.SECONDS.sleep(duration);
+                double elapsed = (double) (System.nanoTime() - startedAt) / TimeUnit.SECONDS.toNanos(1);
+                numberOfTransactions = listener.numberOfTransactions.get() - numberOfTransactions;
+                numberOfRows = listener.numberOfRows.get() - numberOfRows;
+                System.out.println(String.format(Locale.ENGLISH, "Transactions: %d (%.1f/s)",
+                    numberOfTransactions, numberOfTransactions / elapsed));
+                System.out.println(String.format(Locale.ENGLISH, "Throughput: %.1f rows/s",
+                    numberOfRows / elapsed));
+            } finally {
+                stream.disconnect();
+            }
+        } finally {
+            if (eventLoopGroup != null) {
+                eventLoopGroup.shutdown();
+            }
+            server.stop();
+        }
+    }
+
+    /**
+     * Listener that counts transactions (and rows within them) it receives.
+     */
+    private static final class RowCountingListener implements ReplicationEventListener {
+
+        private final AtomicLong numberOfTransactions = new AtomicLong();
+        private final AtomicLong numberOfRows = new AtomicLong();
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+            if (event instanceof TXReplicationEvent) {
+                for (ReplicationEvent txEvent : ((TXReplicationEvent) event).getEvents()) {
+                    countRows(txEvent);
+                }
+                numberOfTransactions.incrementAndGet();
+            } else {
+                countRows(event);
+            }
+        }
+
+        private void countRows(ReplicationEvent event) {
+            if (event instanceof RowsMutationReplicationEvent) {
+                numberOfRows.addAndGet(((RowsMutationReplicationEvent) event).getRows().size());
+            }
+        }
+    }
+}
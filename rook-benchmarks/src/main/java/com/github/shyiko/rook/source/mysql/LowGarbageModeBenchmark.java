@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary log of 100 transactions (inserting or updating 10 rows each, see {@link SyntheticBinlog}) deserialized
+ * and delivered with and without {@link MySQLReplicationStream#setLowGarbageMode(boolean)}. Bytes allocated per
+ * replay are reported by GC profiler (gc.alloc.rate.norm) - divide by 1000 to get bytes/row.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LowGarbageModeBenchmark {
+
+    private static final int NUMBER_OF_TRANSACTIONS = 100;
+    private static final int ROWS_PER_EVENT = 10;
+
+    @Param({ "false", "true" })
+    private boolean lowGarbageMode;
+
+    private MySQLReplicationStream.DelegatingEventListener eventListener;
+    private BinlogEvents.CountingListener listener;
+    private byte[] binlog;
+
+    @Setup
+    public void setUp() {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setLowGarbageMode(lowGarbageMode);
+        stream.registerListener(listener = new BinlogEvents.CountingListener());
+        eventListener = stream.createEventListener();
+        eventListener.onEvent(BinlogEvents.rotate("mysql-bin.000001"));
+        SyntheticBinlog syntheticBinlog = new SyntheticBinlog("mysql-bin.000001", "rook", "entity");
+        syntheticBinlog.setRowsPerEvent(ROWS_PER_EVENT);
+        syntheticBinlog.setMix(1, 1, 0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long position = 4;
+        // each transaction is BEGIN, TABLE_MAP, WRITE_ROWS/UPDATE_ROWS, XID
+        for (int i = 0; i < NUMBER_OF_TRANSACTIONS * 4; i++) {
+            byte[] event = syntheticBinlog.getEvent(position);
+            out.write(event, 0, event.length);
+            position += event.length;
+        }
+        binlog = out.toByteArray();
+    }
+
+    @Benchmark
+    public long replay() throws IOException {
+        eventListener.replay(new ByteArrayInputStream(binlog));
+        return listener.getNumberOfEvents();
+    }
+}
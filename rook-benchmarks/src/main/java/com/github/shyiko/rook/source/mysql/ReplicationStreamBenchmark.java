@@ -0,0 +1,84 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+
+/**
+ * Delivery of a (single rows event) transaction to a varying number of listeners ({@link #dispatch()}) and the
+ * same transaction touching filtered out table only (and so dropped by filterEvent before reaching any listener,
+ * {@link #dispatchFilteredOut()}).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReplicationStreamBenchmark {
+
+    @Param({ "1", "4", "16" })
+    private int numberOfListeners;
+
+    private MySQLReplicationStream.DelegatingEventListener eventListener;
+    private BinlogEvents.CountingListener[] listeners;
+    private Event[] transaction;
+    private Event[] filteredOutTransaction;
+
+    @Setup
+    public void setUp() {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setTableFilter(new TableFilter(Collections.<String>emptySet(), Collections.singleton("rook.ignored")));
+        listeners = new BinlogEvents.CountingListener[numberOfListeners];
+        for (int i = 0; i < listeners.length; i++) {
+            stream.registerListener(listeners[i] = new BinlogEvents.CountingListener());
+        }
+        eventListener = stream.createEventListener();
+        eventListener.onEvent(BinlogEvents.rotate("mysql-bin.000001"));
+        transaction = BinlogEvents.transaction(1, "entity", 1, 1);
+        filteredOutTransaction = BinlogEvents.transaction(2, "ignored", 1, 1);
+    }
+
+    @Benchmark
+    public long dispatch() {
+        return replay(transaction);
+    }
+
+    @Benchmark
+    public long dispatchFilteredOut() {
+        return replay(filteredOutTransaction);
+    }
+
+    private long replay(Event[] events) {
+        for (Event event : events) {
+            eventListener.onEvent(event);
+        }
+        return listeners[0].getNumberOfEvents();
+    }
+}
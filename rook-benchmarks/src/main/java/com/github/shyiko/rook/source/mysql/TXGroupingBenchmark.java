@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.Event;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Transaction (of a varying number of rows events, 10 rows each) going through the stream with and without
+ * {@link MySQLReplicationStream#setGroupEventsByTX(boolean)}.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TXGroupingBenchmark {
+
+    @Param({ "true", "false" })
+    private boolean groupEventsByTX;
+
+    @Param({ "1", "10", "100" })
+    private int numberOfRowsEvents;
+
+    private MySQLReplicationStream.DelegatingEventListener eventListener;
+    private BinlogEvents.CountingListener listener;
+    private Event[] transaction;
+
+    @Setup
+    public void setUp() {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setGroupEventsByTX(groupEventsByTX);
+        stream.registerListener(listener = new BinlogEvents.CountingListener());
+        eventListener = stream.createEventListener();
+        eventListener.onEvent(BinlogEvents.rotate("mysql-bin.000001"));
+        transaction = BinlogEvents.transaction(1, "entity", numberOfRowsEvents, 10);
+    }
+
+    @Benchmark
+    public long transaction() {
+        for (Event event : transaction) {
+            eventListener.onEvent(event);
+        }
+        return listener.getNumberOfEvents();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.target.hibernate4.cache;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link AbstractCacheSynchronizer#resolveAffectedRows(RowsMutationReplicationEvent)} for each kind of rows event
+ * (affected rows are iterated over, just like synchronizers do).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AbstractCacheSynchronizerBenchmark {
+
+    @Param({ "insert", "update", "delete" })
+    private String eventType;
+
+    @Param({ "1", "100" })
+    private int numberOfRows;
+
+    private AbstractCacheSynchronizer synchronizer;
+    private RowsMutationReplicationEvent event;
+
+    @Setup
+    public void setUp() {
+        synchronizer = new AbstractCacheSynchronizer(null) {
+
+            @Override
+            protected void processTX(Collection<RowsMutationReplicationEvent> txEvents) {
+            }
+        };
+        TableDescriptor table = new TableDescriptor("rook", "entity");
+        List<String> columnNames = Arrays.asList("id", "name");
+        List<Serializable[]> rows = new ArrayList<Serializable[]>(numberOfRows);
+        List<Map.Entry<Serializable[], Serializable[]>> updatedRows =
+            new ArrayList<Map.Entry<Serializable[], Serializable[]>>(numberOfRows);
+        for (int i = 0; i < numberOfRows; i++) {
+            Serializable[] row = {(long) i, "entity #" + i};
+            rows.add(row);
+            updatedRows.add(new AbstractMap.SimpleEntry<Serializable[], Serializable[]>(row,
+                new Serializable[]{(long) i, "updated entity #" + i}));
+        }
+        if ("insert".equals(eventType)) {
+            event = new InsertRowsReplicationEvent(1, table, columnNames, rows);
+        } else
+        if ("update".equals(eventType)) {
+            event = new UpdateRowsReplicationEvent(1, table, columnNames, updatedRows);
+        } else {
+            event = new DeleteRowsReplicationEvent(1, table, columnNames, rows);
+        }
+    }
+
+    @Benchmark
+    public void resolveAffectedRows(Blackhole blackhole) {
+        for (Serializable[] row : synchronizer.resolveAffectedRows(event)) {
+            blackhole.consume(row);
+        }
+    }
+}
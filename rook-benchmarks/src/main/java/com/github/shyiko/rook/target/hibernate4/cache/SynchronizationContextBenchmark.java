@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.target.hibernate4.cache;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.benchmarks.HibernateFixture;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+
+/**
+ * {@link SynchronizationContext#getEvictionTargets(String)} (lookup by qualified name) and
+ * {@link SynchronizationContext#getEvictionTargets(TableDescriptor)} (cached on the descriptor) for the tables with
+ * and without eviction targets.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SynchronizationContextBenchmark {
+
+    @Param({ "entity", "unmapped_entity" })
+    private String table;
+
+    private SynchronizationContext synchronizationContext;
+    private String qualifiedName;
+    private TableDescriptor tableDescriptor;
+
+    @Setup
+    public void setUp() throws Exception {
+        Configuration configuration = HibernateFixture.configuration();
+        synchronizationContext = new SynchronizationContext(configuration,
+            HibernateFixture.buildSessionFactory(configuration));
+        tableDescriptor = new TableDescriptor("rook", table);
+        qualifiedName = tableDescriptor.getQualifiedName();
+    }
+
+    @TearDown
+    public void tearDown() {
+        synchronizationContext.getSessionFactory().close();
+    }
+
+    @Benchmark
+    public Collection<EvictionTarget> byQualifiedName() {
+        return synchronizationContext.getEvictionTargets(qualifiedName);
+    }
+
+    @Benchmark
+    public Collection<EvictionTarget> byTableDescriptor() {
+        return synchronizationContext.getEvictionTargets(tableDescriptor);
+    }
+}
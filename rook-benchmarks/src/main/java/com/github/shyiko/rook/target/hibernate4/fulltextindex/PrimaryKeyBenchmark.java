@@ -0,0 +1,86 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.target.hibernate4.fulltextindex;
+
+import com.github.shyiko.rook.benchmarks.HibernateFixture;
+import com.github.shyiko.rook.benchmarks.model.Entity;
+import com.github.shyiko.rook.benchmarks.model.EntityWithCompositeKey;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.PersistentClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link PrimaryKey#getIdentifier(Serializable[])} (key columns at the positions derived from the mapping) and
+ * {@link PrimaryKey#getIdentifier(Serializable[], List)} (positions resolved against column names reported by the
+ * source) for single-column and composite keys.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimaryKeyBenchmark {
+
+    @Param({ "single", "composite" })
+    private String key;
+
+    private PrimaryKey primaryKey;
+    private Serializable[] row;
+    private List<String> columnNames;
+
+    @Setup
+    public void setUp() {
+        PersistentClass persistentClass = HibernateFixture.classMapping(HibernateFixture.configuration(),
+            "single".equals(key) ? Entity.class : EntityWithCompositeKey.class);
+        List<String> columns = new ArrayList<String>();
+        List<Serializable> values = new ArrayList<Serializable>();
+        for (Iterator iterator = persistentClass.getTable().getColumnIterator(); iterator.hasNext(); ) {
+            String column = ((Column) iterator.next()).getName();
+            columns.add(column);
+            values.add("name".equals(column) ? "entity" : (Serializable) (long) values.size());
+        }
+        primaryKey = new PrimaryKey(persistentClass);
+        row = values.toArray(new Serializable[values.size()]);
+        columnNames = Collections.unmodifiableList(columns);
+    }
+
+    @Benchmark
+    public Serializable byPosition() {
+        return primaryKey.getIdentifier(row);
+    }
+
+    @Benchmark
+    public Serializable byColumnNames() {
+        return primaryKey.getIdentifier(row, columnNames);
+    }
+}
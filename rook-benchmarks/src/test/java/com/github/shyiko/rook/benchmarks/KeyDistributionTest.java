@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class KeyDistributionTest {
+
+    private static final int NUMBER_OF_SAMPLES = 1000000;
+
+    @Test
+    public void testZipfianSkew() throws Exception {
+        KeyDistribution distribution = KeyDistribution.zipfian(10000, 0.99);
+        Random random = new Random(1);
+        int hottestKeyHits = 0, topOnePercentHits = 0;
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            long key = distribution.nextKey(random);
+            assertTrue(key >= 0 && key < 10000);
+            if (key == 0) {
+                hottestKeyHits++;
+            }
+            if (key < 100) {
+                topOnePercentHits++;
+            }
+        }
+        // 1 / zeta(10^4, 0.99) ~ 0.098
+        assertEquals((double) hottestKeyHits / NUMBER_OF_SAMPLES, 0.098, 0.005);
+        // ~0.52 analytically, ~0.53 as generated (the approximation slightly overweights the head)
+        assertEquals((double) topOnePercentHits / NUMBER_OF_SAMPLES, 0.53, 0.03);
+    }
+
+    @Test
+    public void testUniformHasNoHotKeys() throws Exception {
+        KeyDistribution distribution = KeyDistribution.uniform(10000);
+        Random random = new Random(1);
+        int topOnePercentHits = 0;
+        for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+            long key = distribution.nextKey(random);
+            assertTrue(key >= 0 && key < 10000);
+            if (key < 100) {
+                topOnePercentHits++;
+            }
+        }
+        assertEquals((double) topOnePercentHits / NUMBER_OF_SAMPLES, 0.01, 0.002);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testZipfianExponentOutOfRangeIsRejected() throws Exception {
+        KeyDistribution.zipfian(10000, 1);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.benchmarks;
+
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+import com.github.shyiko.rook.benchmarks.model.EntityWithCompositeKey;
+import org.hibernate.cfg.Configuration;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class WorkloadTransactionGeneratorTest {
+
+    private Configuration configuration;
+
+    @BeforeClass
+    public void setUp() throws Exception {
+        configuration = HibernateFixture.configuration();
+    }
+
+    @Test
+    public void testSameSeedGivesSameSequence() throws Exception {
+        List<String> firstSequence = generate(profile(7), 100);
+        assertEquals(generate(profile(7), 100), firstSequence);
+        assertFalse(generate(profile(8), 100).equals(firstSequence));
+    }
+
+    @Test
+    public void testCompositeKeyRowsCarryKeyInEveryKeyColumn() throws Exception {
+        WorkloadTransactionGenerator generator = new WorkloadTransactionGenerator(configuration, profile(1));
+        int numberOfRows = 0;
+        for (int i = 0; i < 100; i++) {
+            for (ReplicationEvent event : generator.nextTransaction().getEvents()) {
+                RowsMutationReplicationEvent rowsEvent = (RowsMutationReplicationEvent) event;
+                assertEquals(rowsEvent.getTable(), "entity_with_cpk");
+                List<String> columnNames = rowsEvent.getColumnNames();
+                int id1 = columnNames.indexOf("id1"), id2 = columnNames.indexOf("_id2");
+                assertTrue(id1 != -1 && id2 != -1);
+                if (event instanceof UpdateRowsReplicationEvent) {
+                    for (Map.Entry<Serializable[], Serializable[]> row :
+                            ((UpdateRowsReplicationEvent) event).getRows()) {
+                        assertKeyInEveryKeyColumn(row.getKey(), id1, id2);
+                        assertKeyInEveryKeyColumn(row.getValue(), id1, id2);
+                        assertEquals(row.getValue()[id1], row.getKey()[id1]);
+                        numberOfRows++;
+                    }
+                } else {
+                    for (Object row : (List) rowsEvent.getRows()) {
+                        assertKeyInEveryKeyColumn((Serializable[]) row, id1, id2);
+                        numberOfRows++;
+                    }
+                }
+            }
+        }
+        assertTrue(numberOfRows >= 100 * 2);
+    }
+
+    private void assertKeyInEveryKeyColumn(Serializable[] row, int id1, int id2) {
+        assertNotNull(row[id1]);
+        assertEquals(row[id2], row[id1]);
+    }
+
+    private WorkloadProfile profile(long seed) {
+        WorkloadProfile profile = new WorkloadProfile("rook");
+        WorkloadProfile.TableWorkload table = profile.addTable(EntityWithCompositeKey.class);
+        table.setKeyDistribution(KeyDistribution.zipfian(10000, 0.99));
+        table.setRowsPerEvent(2);
+        profile.setTransactionSize(1, 5);
+        profile.setSeed(seed);
+        return profile;
+    }
+
+    private List<String> generate(WorkloadProfile profile, int numberOfTransactions) {
+        WorkloadTransactionGenerator generator = new WorkloadTransactionGenerator(configuration, profile);
+        List<String> result = new ArrayList<String>(numberOfTransactions);
+        for (int i = 0; i < numberOfTransactions; i++) {
+            result.add(generator.nextTransaction().toString());
+        }
+        return result;
+    }
+}
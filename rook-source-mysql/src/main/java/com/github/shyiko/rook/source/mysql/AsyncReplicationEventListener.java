@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReplicationEventListener} decorator which hands events over to the delegate through a bounded queue
+ * processed by a dedicated thread. As a result, thread calling {@link #onEvent(ReplicationEvent)}
+ * (e.g. binary log reader) is never held up by the delegate (unless queue is full and
+ * {@link OverflowPolicy#BLOCK} is in effect).
+ * <p>
+ * Consumer thread is started lazily (on the first event) and can be stopped with {@link #shutdown()}, in which
+ * case all the events queued so far are going to be delivered before thread exits.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class AsyncReplicationEventListener implements DispatchingReplicationEventListener {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private static final ReplicationEvent SHUTDOWN_MARKER = new ReplicationEvent() { };
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ReplicationEventListener listener;
+    private final EventQueue<ReplicationEvent> queue;
+    private final OverflowPolicy overflowPolicy;
+    private volatile ReplicationEventExceptionHandler exceptionHandler;
+    private volatile DeliveryCallback deliveryCallback;
+
+    private volatile Thread consumer;
+    private Thread retiredConsumer;
+
+    public AsyncReplicationEventListener(ReplicationEventListener listener) {
+        this(listener, DEFAULT_QUEUE_CAPACITY, WaitStrategy.BLOCKING, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * @param listener listener to deliver events to
+     * @param queueCapacity maximum number of events waiting for delivery (rounded up to the nearest power of two)
+     * @param waitStrategy strategy used by consumer thread to wait for new events
+     * (and by producer to wait for a free slot in case of {@link OverflowPolicy#BLOCK})
+     * @param overflowPolicy what to do when queue is full
+     */
+    public AsyncReplicationEventListener(ReplicationEventListener listener, int queueCapacity,
+            WaitStrategy waitStrategy, OverflowPolicy overflowPolicy) {
+        this.listener = listener;
+        this.queue = new EventQueue<ReplicationEvent>(queueCapacity, waitStrategy);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    @Override
+    public ReplicationEventListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    @Override
+    public void setDeliveryCallback(DeliveryCallback deliveryCallback) {
+        this.deliveryCallback = deliveryCallback;
+    }
+
+    /**
+     * @return number of events waiting for delivery
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public void onEvent(ReplicationEvent event) {
+        if (consumer == null) {
+            startConsumer();
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                enqueue(event);
+                break;
+            case DISCARD:
+                if (!queue.offer(event)) {
+                    if (logger.isWarnEnabled()) {
+                        logger.warn("Queue of " + listener + " is full. Discarding " + event);
+                    }
+                    notifyDelivered(event);
+                }
+                break;
+            case FAIL:
+                if (!queue.offer(event)) {
+                    throw new IllegalStateException("Queue of " + listener + " is full");
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Unsupported overflow policy " + overflowPolicy);
+        }
+    }
+
+    private void enqueue(ReplicationEvent event) {
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free slot in the queue of " +
+                listener, e);
+        }
+    }
+
+    private synchronized void startConsumer() {
+        if (consumer != null) {
+            return;
+        }
+        if (retiredConsumer != null) {
+            try {
+                retiredConsumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the previous consumer of " +
+                    listener + " to terminate", e);
+            }
+            retiredConsumer = null;
+        }
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                deliverQueuedEvents();
+            }
+        }, "rook-async-" + listener.getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+        consumer = thread;
+    }
+
+    private void deliverQueuedEvents() {
+        while (true) {
+            ReplicationEvent event;
+            try {
+                event = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (event == SHUTDOWN_MARKER) {
+                return;
+            }
+            try {
+                listener.onEvent(event);
+            } catch (Exception e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(listener + " choked on " + event, e);
+                }
+                ReplicationEventExceptionHandler exceptionHandler = this.exceptionHandler;
+                if (exceptionHandler != null) {
+                    exceptionHandler.handle(e);
+                }
+            } finally {
+                notifyDelivered(event);
+            }
+        }
+    }
+
+    private void notifyDelivered(ReplicationEvent event) {
+        DeliveryCallback deliveryCallback = this.deliveryCallback;
+        if (deliveryCallback != null) {
+            deliveryCallback.delivered(event);
+        }
+    }
+
+    /**
+     * Stops consumer thread once all the events queued so far are delivered. Does not block. Consumer thread
+     * is going to be restarted automatically when the next event arrives.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (consumer != null) {
+            enqueue(SHUTDOWN_MARKER);
+            retiredConsumer = consumer;
+            consumer = null;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = retiredConsumer;
+        }
+        if (thread != null) {
+            unit.timedJoin(thread, timeout);
+            return !thread.isAlive();
+        }
+        return consumer == null;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncReplicationEventListener{listener=" + listener + '}';
+    }
+}
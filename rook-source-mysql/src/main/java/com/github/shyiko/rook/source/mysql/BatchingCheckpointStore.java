@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CheckpointStore} which writes only every Nth position (or once per given interval, whichever comes first)
+ * so that cost of the durable write (fsync, DB round trip, etc.) is amortized across multiple transactions. Keep in
+ * mind that in case of a crash up to N - 1 (already delivered) transactions will be replayed.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public abstract class BatchingCheckpointStore implements CheckpointStore {
+
+    private int batchSize = 1;
+    private long maxDelayInNanoseconds;
+
+    private BinlogPosition pendingPosition;
+    private int numberOfPendingPositions;
+    private long lastWriteTime = System.nanoTime();
+
+    /**
+     * @param batchSize number of positions after which write is triggered. 1 (write on each save) by default
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxDelay maximum amount of time position can stay unwritten (checked on save). Not limited by default
+     */
+    public void setMaxDelay(long maxDelay, TimeUnit unit) {
+        this.maxDelayInNanoseconds = unit.toNanos(maxDelay);
+    }
+
+    @Override
+    public synchronized BinlogPosition load() throws IOException {
+        return pendingPosition != null ? pendingPosition : read();
+    }
+
+    @Override
+    public synchronized void save(BinlogPosition position) throws IOException {
+        pendingPosition = position;
+        if (++numberOfPendingPositions >= batchSize ||
+                (maxDelayInNanoseconds > 0 && System.nanoTime() - lastWriteTime >= maxDelayInNanoseconds)) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (pendingPosition != null) {
+            write(pendingPosition);
+            pendingPosition = null;
+            numberOfPendingPositions = 0;
+            lastWriteTime = System.nanoTime();
+        }
+    }
+
+    protected abstract BinlogPosition read() throws IOException;
+
+    protected abstract void write(BinlogPosition position) throws IOException;
+}
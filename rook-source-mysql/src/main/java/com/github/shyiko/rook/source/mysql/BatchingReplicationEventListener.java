@@ -0,0 +1,324 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBatchReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link ReplicationEventListener} decorator which merges consecutive {@link TXReplicationEvent}s into
+ * {@link TXBatchReplicationEvent}s (delivered by a dedicated thread), so that per-transaction overhead of the
+ * delegate (opening a session, invalidating query cache, etc.) is paid once per batch.
+ * <p>
+ * Batch is closed when it reaches maximum number of transactions or rows, when batching window (measured from the
+ * arrival of the first transaction) expires or when an event which is not a transaction arrives (such events,
+ * as well as transactions which are too big to be batched, are delivered as is, in order). Window adapts to the
+ * delegate: it grows (up to the max latency) while delegate falls behind (i.e. there are batches waiting for
+ * delivery) and shrinks (down to zero, which means "deliver as soon as delegate is free") while stream is idle
+ * (window expires with a single transaction in the batch).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class BatchingReplicationEventListener implements DispatchingReplicationEventListener {
+
+    private static final ReplicationEvent SHUTDOWN_MARKER = new ReplicationEvent() { };
+    private static final int MAX_NUMBER_OF_READY_BATCHES = 16;
+    private static final long MIN_WINDOW_STEP = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ReplicationEventListener listener;
+    private final int maxTransactions;
+    private final int maxRows;
+    private final long maxLatencyInNanoseconds;
+    private volatile ReplicationEventExceptionHandler exceptionHandler;
+    private volatile DeliveryCallback deliveryCallback;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // guarded by lock
+    private final LinkedList<ReplicationEvent> readyEvents = new LinkedList<ReplicationEvent>();
+    private List<TXReplicationEvent> batch;
+    private int batchRows;
+    private long batchStartTime;
+    private long windowInNanoseconds;
+    private long lastDeliveryTimeInNanoseconds;
+
+    private volatile Thread consumer;
+    private Thread retiredConsumer;
+
+    /**
+     * @param listener listener to deliver events to
+     * @param maxTransactions maximum number of transactions per batch
+     * @param maxRows maximum number of rows per batch
+     * @param maxLatency maximum amount of time transaction can spend waiting for the batch to close
+     */
+    public BatchingReplicationEventListener(ReplicationEventListener listener, int maxTransactions, int maxRows,
+            long maxLatency, TimeUnit unit) {
+        if (maxTransactions < 1 || maxRows < 1) {
+            throw new IllegalArgumentException("Max number of transactions/rows must be greater than 0");
+        }
+        this.listener = listener;
+        this.maxTransactions = maxTransactions;
+        this.maxRows = maxRows;
+        this.maxLatencyInNanoseconds = unit.toNanos(maxLatency);
+    }
+
+    @Override
+    public ReplicationEventListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    @Override
+    public void setDeliveryCallback(DeliveryCallback deliveryCallback) {
+        this.deliveryCallback = deliveryCallback;
+    }
+
+    /**
+     * @return current batching window
+     */
+    public long getWindow(TimeUnit unit) {
+        lock.lock();
+        try {
+            return unit.convert(windowInNanoseconds, TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onEvent(ReplicationEvent event) {
+        int rows = event instanceof TXReplicationEvent ? countRows((TXReplicationEvent) event) : -1;
+        if (consumer == null) {
+            startConsumer();
+        }
+        lock.lock();
+        try {
+            if (rows != -1 && rows < maxRows) {
+                if (batch != null && batchRows + rows > maxRows) {
+                    closeBatch();
+                }
+                if (batch == null) {
+                    batch = new ArrayList<TXReplicationEvent>();
+                    batchStartTime = System.nanoTime();
+                }
+                batch.add((TXReplicationEvent) event);
+                batchRows += rows;
+                if (batch.size() >= maxTransactions || batchRows >= maxRows) {
+                    closeBatch();
+                }
+            } else {
+                closeBatch();
+                readyEvents.add(event);
+            }
+            notEmpty.signal();
+            while (readyEvents.size() > MAX_NUMBER_OF_READY_BATCHES) {
+                notFull.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + listener + " to catch up", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of rows in transaction, maxRows if it's maxRows or more
+     */
+    private int countRows(TXReplicationEvent event) {
+        List<ReplicationEvent> events = event.getEvents();
+        if (events.size() >= maxRows) {
+            return maxRows; // no need to go through (potentially spilled) events
+        }
+        int result = 0;
+        for (ReplicationEvent txEvent : events) {
+            result += txEvent instanceof RowsMutationReplicationEvent ?
+                ((RowsMutationReplicationEvent) txEvent).getRows().size() : 1;
+        }
+        return result;
+    }
+
+    private void closeBatch() {
+        if (batch == null) {
+            return;
+        }
+        readyEvents.add(batch.size() == 1 ? batch.get(0) : new TXBatchReplicationEvent(batch));
+        batch = null;
+        batchRows = 0;
+    }
+
+    private synchronized void startConsumer() {
+        if (consumer != null) {
+            return;
+        }
+        if (retiredConsumer != null) {
+            try {
+                retiredConsumer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the previous consumer of " +
+                    listener + " to terminate", e);
+            }
+            retiredConsumer = null;
+        }
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                deliverBatches();
+            }
+        }, "rook-batching-" + listener.getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+        consumer = thread;
+    }
+
+    private void deliverBatches() {
+        while (true) {
+            ReplicationEvent event;
+            try {
+                event = takeNext();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (event == SHUTDOWN_MARKER) {
+                return;
+            }
+            long startTime = System.nanoTime();
+            try {
+                listener.onEvent(event);
+            } catch (Exception e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(listener + " choked on " + event, e);
+                }
+                ReplicationEventExceptionHandler exceptionHandler = this.exceptionHandler;
+                if (exceptionHandler != null) {
+                    exceptionHandler.handle(e);
+                }
+            } finally {
+                lastDeliveryTimeInNanoseconds = System.nanoTime() - startTime;
+                notifyDelivered(event);
+            }
+        }
+    }
+
+    private ReplicationEvent takeNext() throws InterruptedException {
+        lock.lock();
+        try {
+            while (readyEvents.isEmpty()) {
+                if (batch == null) {
+                    notEmpty.await();
+                    continue;
+                }
+                long remaining = batchStartTime + windowInNanoseconds - System.nanoTime();
+                if (remaining <= 0) {
+                    if (batch.size() == 1) {
+                        // stream is idle
+                        windowInNanoseconds = windowInNanoseconds / 2 < MIN_WINDOW_STEP ? 0 :
+                            windowInNanoseconds / 2;
+                    }
+                    closeBatch();
+                } else {
+                    notEmpty.awaitNanos(remaining);
+                }
+            }
+            ReplicationEvent result = readyEvents.removeFirst();
+            if (!readyEvents.isEmpty()) {
+                // delegate falls behind
+                windowInNanoseconds = Math.min(maxLatencyInNanoseconds, Math.max(Math.max(windowInNanoseconds * 2,
+                    MIN_WINDOW_STEP), lastDeliveryTimeInNanoseconds));
+            }
+            notFull.signalAll();
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void notifyDelivered(ReplicationEvent event) {
+        DeliveryCallback deliveryCallback = this.deliveryCallback;
+        if (deliveryCallback == null) {
+            return;
+        }
+        if (event instanceof TXBatchReplicationEvent) {
+            for (TXReplicationEvent transaction : ((TXBatchReplicationEvent) event).getTransactions()) {
+                deliveryCallback.delivered(transaction);
+            }
+        } else {
+            deliveryCallback.delivered(event);
+        }
+    }
+
+    /**
+     * Stops consumer thread once all the events accepted so far (including the ones in the open batch)
+     * are delivered. Does not block. Consumer thread is going to be restarted automatically when the next event
+     * arrives.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (consumer == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            closeBatch();
+            readyEvents.add(SHUTDOWN_MARKER);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        retiredConsumer = consumer;
+        consumer = null;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = retiredConsumer;
+        }
+        if (thread != null) {
+            unit.timedJoin(thread, timeout);
+            return !thread.isAlive();
+        }
+        return consumer == null;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchingReplicationEventListener{listener=" + listener + '}';
+    }
+}
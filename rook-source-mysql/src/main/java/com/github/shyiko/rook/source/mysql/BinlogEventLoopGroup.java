@@ -0,0 +1,379 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small pool of threads serving any number of (non-blocking) binlog connections (see
+ * {@link MySQLReplicationStream#setEventLoopGroup(BinlogEventLoopGroup)}), e.g.
+ * <pre>
+ * BinlogEventLoopGroup eventLoopGroup = new BinlogEventLoopGroup(2, 8);
+ * for (int i = 0; i &lt; 256; i++) {
+ *     MySQLReplicationStream shard = new MySQLReplicationStream("shard" + i, 3306, "rook", "secret");
+ *     shard.setEventLoopGroup(eventLoopGroup);
+ *     ...
+ * }
+ * </pre>
+ * Event loop threads do nothing but move bytes between sockets and buffers. Packet framing, protocol handling,
+ * event decoding and handing events over to the stream happen on the decoding threads (connection is handled by
+ * one decoding thread at a time, so events are still processed in order). Once connection has more than
+ * {@link #setMaxPendingBytes(int)} bytes waiting to be decoded, reading from its socket is suspended (until backlog
+ * is cleared).
+ * <p>
+ * Keep in mind that listeners are called by the decoding threads too (decoding can't run ahead of the listeners
+ * as TABLE_MAP handling affects how subsequent rows events are decoded). In order for a listener which blocks
+ * (e.g. waits for a free slot in the queue of the consumer) not to hold up the rest of the connections, decoding
+ * thread busy with a single connection for more than {@link #BLOCKED_DECODING_THRESHOLD} ms is compensated with an
+ * extra one (which goes away as soon as blocked thread gets released). Number of decoding threads (extra ones
+ * included) is capped (twice the number of regular ones by default), so that many connections stuck behind a slow
+ * listener don't turn into a thread per connection. Once cap is reached, the rest of the connections wait for
+ * decoding threads to free up.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class BinlogEventLoopGroup {
+
+    public static final int DEFAULT_MAX_PENDING_BYTES = 4 * 1024 * 1024;
+    public static final long BLOCKED_DECODING_THRESHOLD = 100;
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final EventLoop[] eventLoops;
+    private final ThreadPoolExecutor decodingExecutor;
+    // guarded by this
+    private boolean decodingPoolSaturated;
+    private final Set<DecodingTask> runningDecodingTasks =
+        Collections.newSetFromMap(new ConcurrentHashMap<DecodingTask, Boolean>());
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger eventLoopCounter = new AtomicInteger();
+    private volatile int maxPendingBytes = DEFAULT_MAX_PENDING_BYTES;
+
+    public BinlogEventLoopGroup() throws IOException {
+        this(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param numberOfEventLoops number of threads doing socket I/O
+     * @param numberOfDecodingThreads number of threads decoding (and dispatching) events
+     */
+    public BinlogEventLoopGroup(int numberOfEventLoops, int numberOfDecodingThreads) throws IOException {
+        this(numberOfEventLoops, numberOfDecodingThreads, 2 * numberOfDecodingThreads);
+    }
+
+    /**
+     * @param numberOfEventLoops number of threads doing socket I/O
+     * @param numberOfDecodingThreads number of threads decoding (and dispatching) events
+     * @param maxNumberOfDecodingThreads number of decoding threads pool is allowed to grow to while compensating for
+     * the blocked ones
+     */
+    public BinlogEventLoopGroup(int numberOfEventLoops, int numberOfDecodingThreads, int maxNumberOfDecodingThreads)
+            throws IOException {
+        if (numberOfEventLoops < 1 || numberOfDecodingThreads < 1) {
+            throw new IllegalArgumentException("Number of event loops/decoding threads must be greater than 0");
+        }
+        if (maxNumberOfDecodingThreads < numberOfDecodingThreads) {
+            throw new IllegalArgumentException("Max number of decoding threads cannot be less than " +
+                numberOfDecodingThreads);
+        }
+        // pool grows beyond numberOfDecodingThreads only to compensate for the blocked threads
+        this.decodingExecutor = new ThreadPoolExecutor(numberOfDecodingThreads, maxNumberOfDecodingThreads,
+            0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("rook-binlog-decoder-"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("rook-binlog-scheduler-"));
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                compensateBlockedDecodingThreads();
+            }
+        }, BLOCKED_DECODING_THRESHOLD, BLOCKED_DECODING_THRESHOLD, TimeUnit.MILLISECONDS);
+        this.eventLoops = new EventLoop[numberOfEventLoops];
+        try {
+            for (int i = 0; i < eventLoops.length; i++) {
+                eventLoops[i] = new EventLoop(i);
+            }
+        } catch (IOException e) {
+            shutdown();
+            throw e;
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.thread.start();
+        }
+    }
+
+    /**
+     * @param maxPendingBytes number of bytes (per connection) received but not yet decoded after which reading from
+     * the socket is suspended. {@link #DEFAULT_MAX_PENDING_BYTES} by default
+     */
+    public void setMaxPendingBytes(int maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    int getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * @return event loop new connection should be bound to
+     */
+    EventLoop nextEventLoop() {
+        return eventLoops[(eventLoopCounter.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    void decode(Runnable task) {
+        decodingExecutor.execute(new DecodingTask(task));
+    }
+
+    int getNumberOfDecodingThreads() {
+        return decodingExecutor.getCorePoolSize();
+    }
+
+    private void compensateBlockedDecodingThreads() {
+        long blockedSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(BLOCKED_DECODING_THRESHOLD);
+        for (DecodingTask task : runningDecodingTasks) {
+            if (task.startTime - blockedSince < 0 && task.state.get() == DecodingTask.RUNNING) {
+                if (!growDecodingPool()) {
+                    return; // task is compensated later on (once one of the blocked threads is released)
+                }
+                if (!task.state.compareAndSet(DecodingTask.RUNNING, DecodingTask.COMPENSATED)) {
+                    shrinkDecodingPool(); // task completed in the meantime
+                    continue;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Decoding thread has been busy with a single connection for more than " +
+                        BLOCKED_DECODING_THRESHOLD + "ms (blocked by listener?), starting an extra one");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false if pool has already reached its max size (or is shut down)
+     */
+    private synchronized boolean growDecodingPool() {
+        if (decodingExecutor.isShutdown()) {
+            return false;
+        }
+        int poolSize = decodingExecutor.getCorePoolSize();
+        if (poolSize >= decodingExecutor.getMaximumPoolSize()) {
+            if (!decodingPoolSaturated && logger.isWarnEnabled()) {
+                logger.warn("All " + poolSize + " decoding threads are busy (blocked by listener?). " +
+                    "Connections are going to wait for a free one");
+            }
+            decodingPoolSaturated = true;
+            return false;
+        }
+        decodingExecutor.setCorePoolSize(poolSize + 1);
+        return true;
+    }
+
+    private synchronized void shrinkDecodingPool() {
+        decodingPoolSaturated = false;
+        if (!decodingExecutor.isShutdown()) {
+            decodingExecutor.setCorePoolSize(decodingExecutor.getCorePoolSize() - 1);
+        }
+    }
+
+    void schedule(Runnable task, long delay, TimeUnit unit) {
+        scheduler.schedule(task, delay, unit);
+    }
+
+    /**
+     * Stops all the threads and closes connections which are still open.
+     */
+    public void shutdown() {
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.shutdown();
+            }
+        }
+        decodingExecutor.shutdown();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Handler of the I/O readiness events (invoked by the event loop thread).
+     */
+    interface SelectionHandler {
+
+        void handle(SelectionKey selectionKey);
+
+        /**
+         * Invoked when handler threw an exception (or event loop is shutting down).
+         */
+        void fail(Exception exception);
+    }
+
+    /**
+     * Thread multiplexing I/O of the connections bound to it (see {@link #nextEventLoop()}).
+     */
+    final class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        // shared by all the connections of the loop (bytes are copied out right after each read)
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+        private volatile boolean running = true;
+
+        private EventLoop(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "rook-binlog-event-loop-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        Selector getSelector() {
+            return selector;
+        }
+
+        ByteBuffer getReadBuffer() {
+            return readBuffer;
+        }
+
+        boolean inEventLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        /**
+         * Runs task on the event loop thread (which is the only one allowed to touch selection keys).
+         */
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    if (logger.isErrorEnabled()) {
+                        logger.error("Event loop failed to select ready channels", e);
+                    }
+                    break;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        if (logger.isWarnEnabled()) {
+                            logger.warn("Event loop task failed", e);
+                        }
+                    }
+                }
+                for (SelectionKey selectionKey : selector.selectedKeys()) {
+                    SelectionHandler handler = (SelectionHandler) selectionKey.attachment();
+                    try {
+                        handler.handle(selectionKey);
+                    } catch (Exception e) {
+                        handler.fail(e);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            for (SelectionKey selectionKey : selector.keys()) {
+                ((SelectionHandler) selectionKey.attachment()).fail(new IOException("Event loop has been shut down"));
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Failed to close selector", e);
+                }
+            }
+        }
+
+        private void shutdown() {
+            running = false;
+            selector.wakeup();
+            if (!inEventLoop()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private final class DecodingTask implements Runnable {
+
+        private static final int RUNNING = 0;
+        private static final int COMPENSATED = 1;
+        private static final int COMPLETED = 2;
+
+        private final Runnable task;
+        private final AtomicInteger state = new AtomicInteger();
+        private volatile long startTime;
+
+        private DecodingTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            startTime = System.nanoTime();
+            runningDecodingTasks.add(this);
+            try {
+                task.run();
+            } finally {
+                runningDecodingTasks.remove(this);
+                if (state.getAndSet(COMPLETED) == COMPENSATED) {
+                    shrinkDecodingPool();
+                }
+            }
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        private DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + threadCounter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
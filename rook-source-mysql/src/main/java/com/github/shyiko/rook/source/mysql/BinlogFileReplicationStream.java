@@ -0,0 +1,323 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.ChecksumType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link com.github.shyiko.rook.api.ReplicationStream} reading MySQL binary log files straight from disk
+ * (memory-mapped, one window at a time) instead of streaming them from the server, e.g. to catch up from archived
+ * binlogs or to reproduce production load without a live server. Events go through exactly the same pipeline they do
+ * in {@link MySQLReplicationStream} (transaction grouping, table filtering, projection, dispatch modes, checkpointing,
+ * etc.), so listeners get the same {@link com.github.shyiko.rook.api.event.ReplicationEvent}s. Connection-related
+ * settings ({@link #setEventLoopGroup(BinlogEventLoopGroup)},
+ * {@link #configureBinaryLogClient(com.github.shyiko.mysql.binlog.BinaryLogClient)}) do not apply.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class BinlogFileReplicationStream extends MySQLReplicationStream {
+
+    private static final byte[] MAGIC_HEADER = {(byte) 0xFE, 'b', 'i', 'n'};
+    private static final int EVENT_HEADER_LENGTH = 19;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<File> binlogFiles;
+    private volatile BinlogPosition startPosition;
+    private volatile BinlogPosition stopPosition;
+    private volatile double replaySpeed;
+    private volatile int mappingWindowSize = MappedFileInputStream.DEFAULT_WINDOW_SIZE;
+    private BinlogFileReplay replay;
+
+    /**
+     * @param binlogFiles binary log files (in the order they are to be replayed in, e.g. mysql-bin.000001,
+     * mysql-bin.000002, ...)
+     */
+    public BinlogFileReplicationStream(File... binlogFiles) {
+        this(Arrays.asList(binlogFiles));
+    }
+
+    public BinlogFileReplicationStream(List<File> binlogFiles) {
+        super(null, 0, null, null);
+        if (binlogFiles.isEmpty()) {
+            throw new IllegalArgumentException("At least one binlog file is required");
+        }
+        this.binlogFiles = new ArrayList<File>(binlogFiles);
+    }
+
+    /**
+     * @param startPosition position (filename is expected to match the name of one of the files) to start replay
+     * from. Checkpointed position (if any) takes precedence. Beginning of the first file by default. Takes effect on
+     * the next connect.
+     */
+    public void setStartPosition(BinlogPosition startPosition) {
+        this.startPosition = startPosition;
+    }
+
+    /**
+     * @param stopPosition position replay stops at (event at this position is not replayed), null to replay all the
+     * files till the end (which is the default). Takes effect on the next connect.
+     */
+    public void setStopPosition(BinlogPosition stopPosition) {
+        this.stopPosition = stopPosition;
+    }
+
+    /**
+     * @param replaySpeed 1.0 to replay events at the pace they were originally written with (judging by event
+     * timestamps), 2.0 to replay them twice as fast and so on, 0 to replay as fast as possible (which is the default)
+     */
+    public void setReplaySpeed(double replaySpeed) {
+        if (replaySpeed < 0) {
+            throw new IllegalArgumentException("Replay speed cannot be negative");
+        }
+        this.replaySpeed = replaySpeed;
+    }
+
+    /**
+     * @param mappingWindowSize maximum size (in bytes) of the file region mapped into memory at a time.
+     * 64 MB by default. Takes effect on the next connect.
+     */
+    public void setMappingWindowSize(int mappingWindowSize) {
+        if (mappingWindowSize < 1) {
+            throw new IllegalArgumentException("Mapping window size must be greater than 0");
+        }
+        this.mappingWindowSize = mappingWindowSize;
+    }
+
+    /**
+     * Replays binary log files in the calling thread. Returns once the end of the last file (or stop position) is
+     * reached or {@link #disconnect()} is called.
+     */
+    @Override
+    public void connect() throws IOException {
+        startReplay().replay();
+    }
+
+    /**
+     * Unlike {@link #connect()}, replays binary log files in a separate thread (and so returns as soon as the first
+     * file is open).
+     */
+    @Override
+    public void connect(long timeoutInMilliseconds) throws IOException, TimeoutException {
+        startReplay().start("rook-binlog-file-replay", timeoutInMilliseconds);
+    }
+
+    private synchronized BinlogFileReplay startReplay() throws IOException {
+        if (isConnected()) {
+            throw new IllegalStateException("Binlog replay is already in progress");
+        }
+        BinlogPosition binlogPosition = loadCheckpoint();
+        if (binlogPosition == null) {
+            binlogPosition = startPosition;
+        }
+        int fileIndex = 0;
+        long offset = MAGIC_HEADER.length;
+        if (binlogPosition != null) {
+            fileIndex = indexOf(binlogPosition.getFilename());
+            if (fileIndex == -1) {
+                throw new IOException("Binlog file " + binlogPosition.getFilename() + " is not among " + binlogFiles);
+            }
+            offset = Math.max(binlogPosition.getPosition(), MAGIC_HEADER.length);
+        }
+        replay = new BinlogFileReplay(createEventListener(), fileIndex, offset);
+        return replay;
+    }
+
+    private int indexOf(String binlogFilename) {
+        for (int i = 0; i < binlogFiles.size(); i++) {
+            if (binlogFiles.get(i).getName().equals(binlogFilename)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true while replay is in progress, false otherwise
+     */
+    @Override
+    public synchronized boolean isConnected() {
+        return replay != null && !replay.isCompleted();
+    }
+
+    /**
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void failover(String hostname, int port) throws IOException {
+        throw new UnsupportedOperationException("Replay of binary log files cannot be failed over");
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        BinlogFileReplay replay;
+        synchronized (this) {
+            replay = this.replay;
+        }
+        if (replay != null) {
+            replay.stop();
+        }
+        super.disconnect();
+    }
+
+    /**
+     * @return checksum type declared by FORMAT_DESCRIPTION event of the file (NONE if there is no such event)
+     */
+    static ChecksumType readChecksumType(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            byte[] magicHeader = new byte[MAGIC_HEADER.length];
+            if (randomAccessFile.read(magicHeader) != magicHeader.length || !Arrays.equals(magicHeader, MAGIC_HEADER)) {
+                throw new IOException(file + " is not a valid binary log");
+            }
+            byte[] header = new byte[EVENT_HEADER_LENGTH];
+            if (randomAccessFile.read(header) != header.length ||
+                    header[4] != EventType.FORMAT_DESCRIPTION.ordinal()) {
+                return ChecksumType.NONE;
+            }
+            int eventLength = (header[9] & 0xFF) | (header[10] & 0xFF) << 8 | (header[11] & 0xFF) << 16 |
+                (header[12] & 0xFF) << 24;
+            byte[] data = new byte[eventLength - EVENT_HEADER_LENGTH];
+            randomAccessFile.readFully(data);
+            // binlog version (2 bytes), server version (50 bytes, zero-padded), ...
+            int serverVersionEnd = 2;
+            while (serverVersionEnd < 52 && data[serverVersionEnd] != 0) {
+                serverVersionEnd++;
+            }
+            String serverVersion = new String(data, 2, serverVersionEnd - 2, "US-ASCII");
+            // since 5.6.1, FORMAT_DESCRIPTION ends with checksum algorithm (1 byte) followed by the checksum itself
+            if (compareVersions(serverVersion, "5.6.1") < 0) {
+                return ChecksumType.NONE;
+            }
+            return data[data.length - 5] == 1 ? ChecksumType.CRC32 : ChecksumType.NONE;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static int compareVersions(String version, String anotherVersion) {
+        int[] first = parseVersion(version);
+        int[] second = parseVersion(anotherVersion);
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] != second[i]) {
+                return first[i] < second[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param version version string, e.g. "5.6.17-log"
+     * @return major, minor and patch version numbers
+     */
+    private static int[] parseVersion(String version) {
+        int[] result = new int[3];
+        int component = 0;
+        for (int i = 0; i < version.length() && component < result.length; i++) {
+            char c = version.charAt(i);
+            if (c == '.') {
+                component++;
+            } else
+            if (Character.isDigit(c)) {
+                result[component] = result[component] * 10 + (c - '0');
+            } else {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Single run over the binary log files.
+     */
+    private final class BinlogFileReplay extends Replay {
+
+        private final DelegatingEventListener eventListener;
+        private final int firstFileIndex;
+        private final long firstFileOffset;
+
+        private BinlogFileReplay(DelegatingEventListener eventListener, int firstFileIndex, long firstFileOffset) {
+            super(binlogFiles.size() - firstFileIndex);
+            this.eventListener = eventListener;
+            this.firstFileIndex = firstFileIndex;
+            this.firstFileOffset = firstFileOffset;
+        }
+
+        /**
+         * @return false if stop position has been reached, true otherwise
+         */
+        @Override
+        protected boolean replay(int sourceIndex) throws IOException {
+            File file = binlogFiles.get(firstFileIndex + sourceIndex);
+            long offset = sourceIndex == 0 ? firstFileOffset : MAGIC_HEADER.length;
+            TableFilteringEventDeserializer eventDeserializer = eventListener.getEventDeserializer();
+            eventDeserializer.setChecksumType(readChecksumType(file));
+            BinlogPosition stopPosition = BinlogFileReplicationStream.this.stopPosition;
+            if (stopPosition != null && !stopPosition.getFilename().equals(file.getName())) {
+                stopPosition = null;
+            }
+            if (logger.isInfoEnabled()) {
+                logger.info("Replaying " + file + " starting from " + offset);
+            }
+            MappedFileInputStream inputStream = new MappedFileInputStream(file, offset, mappingWindowSize);
+            markStarted();
+            try {
+                // just like MySQL does, letting listener know which binlog events are coming from
+                eventListener.onEvent(rotateEvent(file.getName(), offset));
+                ByteArrayInputStream eventInputStream = new ByteArrayInputStream(inputStream);
+                while (!isStopRequested()) {
+                    if (stopPosition != null && inputStream.getPosition() >= stopPosition.getPosition()) {
+                        return false;
+                    }
+                    Event event = eventDeserializer.nextEvent(eventInputStream);
+                    if (event == null) {
+                        break;
+                    }
+                    if (pacer.pace(event.getHeader().getTimestamp(), replaySpeed)) {
+                        eventListener.onEvent(event);
+                    }
+                }
+            } finally {
+                inputStream.close();
+            }
+            return true;
+        }
+
+        private Event rotateEvent(String binlogFilename, long binlogPosition) {
+            EventHeaderV4 eventHeader = new EventHeaderV4();
+            eventHeader.setEventType(EventType.ROTATE);
+            RotateEventData eventData = new RotateEventData();
+            eventData.setBinlogFilename(binlogFilename);
+            eventData.setBinlogPosition(binlogPosition);
+            return new Event(eventHeader, eventData);
+        }
+    }
+}
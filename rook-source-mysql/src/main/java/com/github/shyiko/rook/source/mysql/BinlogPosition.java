@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.io.Serializable;
+
+/**
+ * Position within MySQL binary log (binlog filename + offset), optionally accompanied by the executed GTID set
+ * (which, unlike filename/offset, identifies position on any server of the replication topology).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class BinlogPosition implements Serializable {
+
+    private final String filename;
+    private final long position;
+    private final GtidSet.Snapshot gtidSet;
+
+    public BinlogPosition(String filename, long position) {
+        this(filename, position, (GtidSet.Snapshot) null);
+    }
+
+    /**
+     * @param gtidSet executed GTID set (as of this position), null if unknown
+     */
+    public BinlogPosition(String filename, long position, String gtidSet) {
+        this(filename, position, gtidSet == null ? null : new GtidSet.Snapshot(gtidSet));
+    }
+
+    /**
+     * @param gtidSet executed GTID set (as of this position, rendered only if {@link #getGtidSet()} is called), null
+     * if unknown
+     */
+    BinlogPosition(String filename, long position, GtidSet.Snapshot gtidSet) {
+        if (filename == null) {
+            throw new IllegalArgumentException("Binlog filename cannot be null");
+        }
+        this.filename = filename;
+        this.position = position;
+        this.gtidSet = gtidSet;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return executed GTID set (as of this position), null if unknown (e.g. GTID-based positioning is off)
+     */
+    public String getGtidSet() {
+        return gtidSet == null ? null : gtidSet.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BinlogPosition that = (BinlogPosition) o;
+        String gtidSet = getGtidSet();
+        return position == that.position && filename.equals(that.filename) &&
+            (gtidSet == null ? that.gtidSet == null : gtidSet.equals(that.getGtidSet()));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = 31 * filename.hashCode() + (int) (position ^ (position >>> 32));
+        String gtidSet = getGtidSet();
+        return 31 * result + (gtidSet != null ? gtidSet.hashCode() : 0);
+    }
+
+    @Override
+    public String toString() {
+        return filename + ":" + position + (gtidSet != null ? " (" + gtidSet + ")" : "");
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventConsumer;
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReplicationEventConsumer} of the {@link MySQLReplicationStream} (see
+ * {@link MySQLReplicationStream#createConsumer(int)}). Events are handed over through a bounded queue
+ * (binary log reader waits for a free slot once it's full). Polled events are reported to the checkpoint tracker
+ * as delivered only on {@link #commit()}, which also flushes checkpoint store.
+ * <p>
+ * {@link #close()} unregisters consumer from the stream and releases every event it still holds (polled but not
+ * committed, queued or arriving while consumer is being unregistered), so that the rest of the listeners are not
+ * held back. Checkpoint, however, stays at the last committed position (see
+ * {@link CheckpointTracker#abandoned(ReplicationEvent)}), which means that uncommitted events are redelivered once
+ * stream is restarted.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class BufferingReplicationEventConsumer implements ReplicationEventConsumer,
+        DispatchingReplicationEventListener {
+
+    private final MySQLReplicationStream replicationStream;
+    private final EventQueue<ReplicationEvent> queue;
+    private final List<ReplicationEvent> uncommittedEvents = new ArrayList<ReplicationEvent>();
+    private volatile DeliveryCallback deliveryCallback;
+    private volatile boolean closed;
+
+    BufferingReplicationEventConsumer(MySQLReplicationStream replicationStream, int capacity) {
+        this.replicationStream = replicationStream;
+        this.queue = new EventQueue<ReplicationEvent>(capacity, WaitStrategy.BLOCKING);
+    }
+
+    @Override
+    public void onEvent(ReplicationEvent event) {
+        if (closed) {
+            abandon(event);
+            return;
+        }
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + this + " to free up a slot");
+        }
+        if (closed) {
+            // consumer got closed while event was being enqueued
+            abandonQueuedEvents();
+        }
+    }
+
+    @Override
+    public synchronized List<ReplicationEvent> poll(int maxEvents, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException(this + " is closed");
+        }
+        ReplicationEvent event = queue.poll(timeout, unit);
+        if (event == null) {
+            return Collections.emptyList();
+        }
+        List<ReplicationEvent> result = new ArrayList<ReplicationEvent>(Math.min(maxEvents, queue.size() + 1));
+        do {
+            result.add(event);
+        } while (result.size() < maxEvents && (event = queue.poll()) != null);
+        uncommittedEvents.addAll(result);
+        return result;
+    }
+
+    @Override
+    public synchronized void commit() throws IOException {
+        DeliveryCallback deliveryCallback = this.deliveryCallback;
+        if (deliveryCallback != null) {
+            for (ReplicationEvent event : uncommittedEvents) {
+                deliveryCallback.delivered(event);
+            }
+        }
+        uncommittedEvents.clear();
+        if (deliveryCallback instanceof CheckpointTracker) {
+            ((CheckpointTracker) deliveryCallback).flushStore();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        replicationStream.unregisterListener(this);
+        for (ReplicationEvent event : uncommittedEvents) {
+            abandon(event);
+        }
+        uncommittedEvents.clear();
+        // releasing binary log reader (in case it's waiting for a free slot)
+        abandonQueuedEvents();
+    }
+
+    private void abandonQueuedEvents() {
+        ReplicationEvent event;
+        while ((event = queue.poll()) != null) {
+            abandon(event);
+        }
+    }
+
+    private void abandon(ReplicationEvent event) {
+        DeliveryCallback deliveryCallback = this.deliveryCallback;
+        if (deliveryCallback instanceof CheckpointTracker) {
+            ((CheckpointTracker) deliveryCallback).abandoned(event);
+        } else
+        if (deliveryCallback != null) {
+            deliveryCallback.delivered(event);
+        }
+    }
+
+    /**
+     * @return this (there is no other listener events are delivered to)
+     */
+    @Override
+    public ReplicationEventListener getListener() {
+        return this;
+    }
+
+    @Override
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        // processing errors are up to the consumer
+    }
+
+    @Override
+    public void setDeliveryCallback(DeliveryCallback deliveryCallback) {
+        this.deliveryCallback = deliveryCallback;
+    }
+
+    @Override
+    public void shutdown() {
+        // there are no dispatching threads (consumer keeps polling across reconnects)
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferingReplicationEventConsumer{capacity=" + queue.capacity() + '}';
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.io.IOException;
+
+/**
+ * Durable storage for the position of the last fully delivered transaction (see
+ * {@link MySQLReplicationStream#setCheckpointStore(CheckpointStore)}). Implementations must be thread-safe.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface CheckpointStore {
+
+    /**
+     * @return last saved position, null if there is none
+     */
+    BinlogPosition load() throws IOException;
+
+    /**
+     * Records position. Implementation is allowed to defer actual write (in which case it must be done on
+     * {@link #flush()} at the latest).
+     */
+    void save(BinlogPosition position) throws IOException;
+
+    /**
+     * Makes sure that last saved position is durably stored.
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of events which are still being processed by the listeners and saves binlog position to the
+ * {@link CheckpointStore} only when everything up to that position has been delivered (which is what makes
+ * "resume from the checkpoint" at-least-once).
+ * <p>
+ * Position is captured under the lock but saved after it's released, so that threads delivering events don't
+ * wait on each other's (potentially slow) writes. Only one thread talks to the store at a time (the rest hand their
+ * positions over to it), which is what keeps saved positions in order.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+class CheckpointTracker implements DispatchingReplicationEventListener.DeliveryCallback {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final CheckpointStore checkpointStore;
+    // guarded by this
+    private final LinkedList<Entry> entries = new LinkedList<Entry>();
+    private final Map<ReplicationEvent, Entry> entryByEvent = new IdentityHashMap<ReplicationEvent, Entry>();
+    private BinlogPosition pendingPosition;
+    // true once event has been abandoned (nothing is saved from that point on)
+    private boolean pinned;
+    // held while talking to the store
+    private final Lock storeLock = new ReentrantLock();
+
+    CheckpointTracker(CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    /**
+     * Must be called before event is handed over to the listeners.
+     * @param position position to save once event (and everything before it) is delivered, null if none
+     * @param numberOfDeliveries number of {@link #delivered(ReplicationEvent)} calls to expect
+     */
+    public void register(ReplicationEvent event, BinlogPosition position, int numberOfDeliveries) {
+        if (numberOfDeliveries < 1) {
+            mark(position);
+            return;
+        }
+        Entry entry = new Entry(position, numberOfDeliveries);
+        synchronized (this) {
+            entries.add(entry);
+            entryByEvent.put(event, entry);
+        }
+    }
+
+    /**
+     * Records position which is safe to save as soon as all the events registered so far are delivered.
+     */
+    public void mark(BinlogPosition position) {
+        if (position == null) {
+            return;
+        }
+        synchronized (this) {
+            if (pinned) {
+                return;
+            }
+            if (!entries.isEmpty()) {
+                entries.add(new Entry(position, 0));
+                return;
+            }
+            pendingPosition = position;
+        }
+        savePendingPosition();
+    }
+
+    @Override
+    public void delivered(ReplicationEvent event) {
+        delivered(event, false);
+    }
+
+    /**
+     * Same as {@link #delivered(ReplicationEvent)} except that checkpoint is not going to move past the event (nor
+     * any other event, for as long as this tracker is in use), so that event is redelivered once stream is restarted.
+     * Meant for the events listener gave up on (e.g. those of the consumer closed without committing).
+     */
+    public void abandoned(ReplicationEvent event) {
+        delivered(event, true);
+    }
+
+    private void delivered(ReplicationEvent event, boolean abandoned) {
+        synchronized (this) {
+            Entry entry = entryByEvent.get(event);
+            if (entry == null) {
+                return;
+            }
+            entry.abandoned |= abandoned;
+            if (--entry.remainingDeliveries > 0) {
+                return;
+            }
+            entryByEvent.remove(event);
+            BinlogPosition position = null;
+            while (!entries.isEmpty() && entries.getFirst().remainingDeliveries == 0) {
+                Entry completedEntry = entries.removeFirst();
+                if (completedEntry.abandoned && !pinned) {
+                    pinned = true;
+                    if (logger.isWarnEnabled()) {
+                        logger.warn("Event was abandoned before it was processed. Checkpoint is not going to " +
+                            "advance for as long as " + checkpointStore + " is in use");
+                    }
+                }
+                if (completedEntry.position != null && !pinned) {
+                    position = completedEntry.position;
+                }
+            }
+            if (position == null) {
+                return;
+            }
+            pendingPosition = position;
+        }
+        savePendingPosition();
+    }
+
+    /**
+     * Saves pending position unless some other thread is already talking to the store (in which case that thread
+     * picks the position up once it's done with its own).
+     */
+    private void savePendingPosition() {
+        while (hasPendingPosition() && storeLock.tryLock()) {
+            try {
+                BinlogPosition position = takePendingPosition();
+                if (position != null) {
+                    save(position);
+                }
+            } finally {
+                storeLock.unlock();
+            }
+        }
+    }
+
+    private synchronized boolean hasPendingPosition() {
+        return pendingPosition != null;
+    }
+
+    private synchronized BinlogPosition takePendingPosition() {
+        BinlogPosition position = pendingPosition;
+        pendingPosition = null;
+        return position;
+    }
+
+    private void save(BinlogPosition position) {
+        try {
+            checkpointStore.save(position);
+        } catch (IOException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to save " + position + " to " + checkpointStore, e);
+            }
+        }
+    }
+
+    public void flush() {
+        try {
+            flushStore();
+        } catch (IOException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to flush " + checkpointStore, e);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #flush()} except that failure to flush is propagated to the caller.
+     */
+    public void flushStore() throws IOException {
+        storeLock.lock();
+        try {
+            BinlogPosition position = takePendingPosition();
+            if (position != null) {
+                save(position);
+            }
+            checkpointStore.flush();
+        } finally {
+            storeLock.unlock();
+        }
+        savePendingPosition();
+    }
+
+    private static final class Entry {
+
+        private final BinlogPosition position;
+        private int remainingDeliveries;
+        private boolean abandoned;
+
+        private Entry(BinlogPosition position, int remainingDeliveries) {
+            this.position = position;
+            this.remainingDeliveries = remainingDeliveries;
+        }
+    }
+}
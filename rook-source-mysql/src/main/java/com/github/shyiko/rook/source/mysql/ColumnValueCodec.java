@@ -0,0 +1,302 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.BitSet;
+
+/**
+ * Compact binary representation of rows (as produced by binary log deserializer). Each column value is written as
+ * (1 byte) type tag + value, with integral numbers (and lengths) encoded as (zigzag) varints. Values of unsupported
+ * types either fall back to the java serialization or get rejected, depending on whether codec is allowed to produce
+ * output that is tied to the (serialized) classes.
+ * <p>
+ * Shared by {@link RowsEventCodec} (spill files) and {@link ReplicationEventCodec} (recordings, which is why
+ * existing tags and their encoding must never change).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class ColumnValueCodec {
+
+    private static final byte NULL = 0;
+    private static final byte INTEGER = 1;
+    private static final byte LONG = 2;
+    private static final byte FLOAT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte BYTES = 6;
+    private static final byte BIG_DECIMAL = 7;
+    private static final byte BIT_SET = 8;
+    private static final byte DATE = 9;
+    private static final byte SQL_DATE = 10;
+    private static final byte SQL_TIME = 11;
+    private static final byte SQL_TIMESTAMP = 12;
+    private static final byte SHORT = 13;
+    private static final byte BYTE = 14;
+    private static final byte SERIALIZED = 127;
+
+    private final boolean serializationFallbackEnabled;
+
+    /**
+     * @param serializationFallbackEnabled true to write values of unsupported types using the java serialization,
+     * false to reject them (with IOException)
+     */
+    ColumnValueCodec(boolean serializationFallbackEnabled) {
+        this.serializationFallbackEnabled = serializationFallbackEnabled;
+    }
+
+    public void writeRow(Serializable[] row, DataOutput output) throws IOException {
+        writeVarLong(row.length, output);
+        for (Serializable value : row) {
+            writeValue(value, output);
+        }
+    }
+
+    public Serializable[] readRow(DataInput input) throws IOException {
+        Serializable[] result = new Serializable[(int) readVarLong(input)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = readValue(input);
+        }
+        return result;
+    }
+
+    public void writeValue(Serializable value, DataOutput output) throws IOException {
+        if (value == null) {
+            output.writeByte(NULL);
+            return;
+        }
+        if (writeNumber(value, output) || writeTemporal(value, output)) {
+            return;
+        }
+        if (value instanceof String) {
+            output.writeByte(STRING);
+            writeString((String) value, output);
+        } else
+        if (value instanceof byte[]) {
+            output.writeByte(BYTES);
+            writeBytes((byte[]) value, output);
+        } else
+        if (value instanceof BitSet) {
+            BitSet bitSet = (BitSet) value;
+            output.writeByte(BIT_SET);
+            writeVarLong(bitSet.cardinality(), output);
+            for (int i = bitSet.nextSetBit(0); i >= 0; i = bitSet.nextSetBit(i + 1)) {
+                writeVarLong(i, output);
+            }
+        } else {
+            writeSerialized(value, output);
+        }
+    }
+
+    /**
+     * @return false if value is not a number (nothing is written in that case)
+     */
+    private static boolean writeNumber(Serializable value, DataOutput output) throws IOException {
+        if (value instanceof Integer) {
+            output.writeByte(INTEGER);
+            writeVarLong(zigzag((Integer) value), output);
+        } else
+        if (value instanceof Long) {
+            output.writeByte(LONG);
+            writeVarLong(zigzag((Long) value), output);
+        } else
+        if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal) value;
+            output.writeByte(BIG_DECIMAL);
+            writeVarLong(zigzag(decimal.scale()), output);
+            writeBytes(decimal.unscaledValue().toByteArray(), output);
+        } else
+        if (value instanceof Float) {
+            output.writeByte(FLOAT);
+            output.writeFloat((Float) value);
+        } else
+        if (value instanceof Double) {
+            output.writeByte(DOUBLE);
+            output.writeDouble((Double) value);
+        } else
+        if (value instanceof Short) {
+            output.writeByte(SHORT);
+            writeVarLong(zigzag((Short) value), output);
+        } else
+        if (value instanceof Byte) {
+            output.writeByte(BYTE);
+            output.writeByte((Byte) value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if value is not a date/time (nothing is written in that case)
+     */
+    private static boolean writeTemporal(Serializable value, DataOutput output) throws IOException {
+        if (value instanceof java.sql.Timestamp) {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            output.writeByte(SQL_TIMESTAMP);
+            writeVarLong(zigzag(timestamp.getTime()), output);
+            writeVarLong(timestamp.getNanos(), output);
+        } else
+        if (value.getClass() == java.sql.Date.class) {
+            output.writeByte(SQL_DATE);
+            writeVarLong(zigzag(((java.util.Date) value).getTime()), output);
+        } else
+        if (value.getClass() == java.sql.Time.class) {
+            output.writeByte(SQL_TIME);
+            writeVarLong(zigzag(((java.util.Date) value).getTime()), output);
+        } else
+        if (value.getClass() == java.util.Date.class) {
+            output.writeByte(DATE);
+            writeVarLong(zigzag(((java.util.Date) value).getTime()), output);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void writeSerialized(Serializable value, DataOutput output) throws IOException {
+        if (!serializationFallbackEnabled) {
+            throw new IOException("Unsupported value type " + value.getClass());
+        }
+        output.writeByte(SERIALIZED);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(buffer);
+        objectOutputStream.writeObject(value);
+        objectOutputStream.close();
+        writeBytes(buffer.toByteArray(), output);
+    }
+
+    public Serializable readValue(DataInput input) throws IOException {
+        byte tag = input.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case INTEGER:
+                return (int) unzigzag(readVarLong(input));
+            case LONG:
+                return unzigzag(readVarLong(input));
+            case FLOAT:
+                return input.readFloat();
+            case DOUBLE:
+                return input.readDouble();
+            case STRING:
+                return readString(input);
+            case BYTES:
+                return readBytes(input);
+            case BIG_DECIMAL:
+                int scale = (int) unzigzag(readVarLong(input));
+                return new BigDecimal(new BigInteger(readBytes(input)), scale);
+            case BIT_SET:
+                BitSet bitSet = new BitSet();
+                for (long i = readVarLong(input); i > 0; i--) {
+                    bitSet.set((int) readVarLong(input));
+                }
+                return bitSet;
+            case DATE:
+                return new java.util.Date(unzigzag(readVarLong(input)));
+            case SQL_DATE:
+                return new java.sql.Date(unzigzag(readVarLong(input)));
+            case SQL_TIME:
+                return new java.sql.Time(unzigzag(readVarLong(input)));
+            case SQL_TIMESTAMP:
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(unzigzag(readVarLong(input)));
+                timestamp.setNanos((int) readVarLong(input));
+                return timestamp;
+            case SHORT:
+                return (short) unzigzag(readVarLong(input));
+            case BYTE:
+                return input.readByte();
+            case SERIALIZED:
+                if (!serializationFallbackEnabled) {
+                    throw new IOException("Serialized values are not supported");
+                }
+                ObjectInputStream objectInputStream =
+                    new ObjectInputStream(new ByteArrayInputStream(readBytes(input)));
+                try {
+                    return (Serializable) objectInputStream.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Failed to deserialize value", e);
+                } finally {
+                    objectInputStream.close();
+                }
+            default:
+                throw new IOException("Unknown value tag " + tag);
+        }
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static void writeVarLong(long value, DataOutput output) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput input) throws IOException {
+        return readVarLong(input.readUnsignedByte(), input);
+    }
+
+    /**
+     * @param firstByte first (already consumed) byte of the varint
+     */
+    static long readVarLong(int firstByte, DataInput input) throws IOException {
+        long result = firstByte & 0x7F;
+        for (int shift = 7, b = firstByte; (b & 0x80) != 0; shift += 7) {
+            if (shift > 63) {
+                throw new IOException("Malformed varint");
+            }
+            b = input.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+        }
+        return result;
+    }
+
+    static void writeString(String value, DataOutput output) throws IOException {
+        writeBytes(value.getBytes("UTF-8"), output);
+    }
+
+    static String readString(DataInput input) throws IOException {
+        return new String(readBytes(input), "UTF-8");
+    }
+
+    static void writeBytes(byte[] bytes, DataOutput output) throws IOException {
+        writeVarLong(bytes.length, output);
+        output.write(bytes);
+    }
+
+    static byte[] readBytes(DataInput input) throws IOException {
+        byte[] result = new byte[(int) readVarLong(input)];
+        input.readFully(result);
+        return result;
+    }
+}
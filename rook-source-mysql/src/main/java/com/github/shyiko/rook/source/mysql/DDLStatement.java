@@ -0,0 +1,264 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * (Very) lightweight recognizer of the DDL statements which affect tables rows are replicated for. Only the head
+ * of the statement (up to the table names) is looked at.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class DDLStatement {
+
+    /**
+     * Kind of the statement.
+     */
+    public enum Type {
+        CREATE_TABLE,
+        ALTER_TABLE,
+        RENAME_TABLE,
+        DROP_TABLE,
+        DROP_DATABASE
+    }
+
+    private final Type type;
+    private final List<String[]> tables;
+    private final String database;
+
+    private DDLStatement(Type type, List<String[]> tables, String database) {
+        this.type = type;
+        this.tables = tables;
+        this.database = database;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return [schema, table] pairs (schema is resolved against the default one when it's not specified explicitly).
+     * In case of RENAME_TABLE - old and new name of each renamed table (that is, [from, to, from, to, ...])
+     */
+    public List<String[]> getTables() {
+        return tables;
+    }
+
+    /**
+     * @return database (schema) name in case of DROP_DATABASE, null otherwise
+     */
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * @param sql statement
+     * @param defaultDatabase database statement was executed against (might be null)
+     * @return parsed statement, null if statement is not recognized
+     */
+    public static DDLStatement parse(String sql, String defaultDatabase) {
+        Tokenizer tokenizer = new Tokenizer(sql);
+        if (tokenizer.nextKeyword("CREATE")) {
+            tokenizer.nextKeyword("TEMPORARY");
+            if (!tokenizer.nextKeyword("TABLE")) {
+                return null;
+            }
+            if (tokenizer.nextKeyword("IF")) {
+                tokenizer.nextKeyword("NOT");
+                tokenizer.nextKeyword("EXISTS");
+            }
+            return singleTableStatement(Type.CREATE_TABLE, tokenizer, defaultDatabase);
+        }
+        if (tokenizer.nextKeyword("ALTER")) {
+            if (!tokenizer.nextKeyword("ONLINE")) {
+                tokenizer.nextKeyword("OFFLINE");
+            }
+            tokenizer.nextKeyword("IGNORE");
+            if (!tokenizer.nextKeyword("TABLE")) {
+                return null;
+            }
+            return singleTableStatement(Type.ALTER_TABLE, tokenizer, defaultDatabase);
+        }
+        if (tokenizer.nextKeyword("RENAME")) {
+            return tokenizer.nextKeyword("TABLE") ? renameTableStatement(tokenizer, defaultDatabase) : null;
+        }
+        if (tokenizer.nextKeyword("DROP")) {
+            return dropStatement(tokenizer, defaultDatabase);
+        }
+        return null;
+    }
+
+    private static DDLStatement renameTableStatement(Tokenizer tokenizer, String defaultDatabase) {
+        List<String[]> tables = new ArrayList<String[]>();
+        do {
+            String[] from = readTableName(tokenizer, defaultDatabase);
+            if (from == null || !tokenizer.nextKeyword("TO")) {
+                return null;
+            }
+            String[] to = readTableName(tokenizer, defaultDatabase);
+            if (to == null) {
+                return null;
+            }
+            tables.add(from);
+            tables.add(to);
+        } while (tokenizer.nextSymbol(','));
+        return new DDLStatement(Type.RENAME_TABLE, tables, null);
+    }
+
+    private static DDLStatement dropStatement(Tokenizer tokenizer, String defaultDatabase) {
+        tokenizer.nextKeyword("TEMPORARY");
+        if (tokenizer.nextKeyword("TABLE") || tokenizer.nextKeyword("TABLES")) {
+            skipIfExists(tokenizer);
+            List<String[]> tables = new ArrayList<String[]>();
+            do {
+                String[] table = readTableName(tokenizer, defaultDatabase);
+                if (table == null) {
+                    return null;
+                }
+                tables.add(table);
+            } while (tokenizer.nextSymbol(','));
+            return new DDLStatement(Type.DROP_TABLE, tables, null);
+        }
+        if (tokenizer.nextKeyword("DATABASE") || tokenizer.nextKeyword("SCHEMA")) {
+            skipIfExists(tokenizer);
+            String database = tokenizer.nextIdentifier();
+            return database == null ? null :
+                new DDLStatement(Type.DROP_DATABASE, Collections.<String[]>emptyList(), database);
+        }
+        return null;
+    }
+
+    private static DDLStatement singleTableStatement(Type type, Tokenizer tokenizer, String defaultDatabase) {
+        String[] table = readTableName(tokenizer, defaultDatabase);
+        return table == null ? null : new DDLStatement(type, Collections.singletonList(table), null);
+    }
+
+    private static void skipIfExists(Tokenizer tokenizer) {
+        if (tokenizer.nextKeyword("IF")) {
+            tokenizer.nextKeyword("EXISTS");
+        }
+    }
+
+    private static String[] readTableName(Tokenizer tokenizer, String defaultDatabase) {
+        String name = tokenizer.nextIdentifier();
+        if (name == null) {
+            return null;
+        }
+        if (tokenizer.nextSymbol('.')) {
+            String table = tokenizer.nextIdentifier();
+            return table == null ? null : new String[]{name, table};
+        }
+        return new String[]{defaultDatabase, name};
+    }
+
+    /**
+     * Splits statement into keywords/identifiers and symbols (skipping whitespaces and comments).
+     */
+    private static final class Tokenizer {
+
+        private final String sql;
+        private int position;
+
+        private Tokenizer(String sql) {
+            this.sql = sql;
+        }
+
+        /**
+         * @return true if next token is the given keyword (case-insensitive), in which case it's consumed
+         */
+        public boolean nextKeyword(String keyword) {
+            skipWhitespacesAndComments();
+            int end = position + keyword.length();
+            if (end <= sql.length() && sql.regionMatches(true, position, keyword, 0, keyword.length()) &&
+                    (end == sql.length() || !isIdentifierPart(sql.charAt(end)))) {
+                position = end;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true if next token is the given symbol, in which case it's consumed
+         */
+        public boolean nextSymbol(char symbol) {
+            skipWhitespacesAndComments();
+            if (position < sql.length() && sql.charAt(position) == symbol) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return identifier (unquoted), null if next token is not an identifier
+         */
+        public String nextIdentifier() {
+            skipWhitespacesAndComments();
+            if (position == sql.length()) {
+                return null;
+            }
+            char c = sql.charAt(position);
+            if (c == '`' || c == '"') {
+                StringBuilder sb = new StringBuilder();
+                for (int i = position + 1; i < sql.length(); i++) {
+                    char ch = sql.charAt(i);
+                    if (ch == c) {
+                        if (i + 1 < sql.length() && sql.charAt(i + 1) == c) {
+                            sb.append(c); // escaped quote
+                            i++;
+                            continue;
+                        }
+                        position = i + 1;
+                        return sb.toString();
+                    }
+                    sb.append(ch);
+                }
+                return null;
+            }
+            int start = position;
+            while (position < sql.length() && isIdentifierPart(sql.charAt(position))) {
+                position++;
+            }
+            return position == start ? null : sql.substring(start, position);
+        }
+
+        private void skipWhitespacesAndComments() {
+            while (position < sql.length()) {
+                char c = sql.charAt(position);
+                if (Character.isWhitespace(c)) {
+                    position++;
+                } else
+                if (sql.startsWith("/*", position)) {
+                    int end = sql.indexOf("*/", position + 2);
+                    position = end == -1 ? sql.length() : end + 2;
+                } else
+                if (c == '#' || sql.startsWith("-- ", position)) {
+                    int end = sql.indexOf('\n', position);
+                    position = end == -1 ? sql.length() : end + 1;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        private static boolean isIdentifierPart(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+        }
+    }
+}
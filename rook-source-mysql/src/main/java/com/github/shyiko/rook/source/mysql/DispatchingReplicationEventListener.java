@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ReplicationEventListener} which delivers events to another listener using thread(s) of its own.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface DispatchingReplicationEventListener extends ReplicationEventListener {
+
+    /**
+     * @return listener events are delivered to
+     */
+    ReplicationEventListener getListener();
+
+    /**
+     * @param exceptionHandler handler to notify when listener fails to process an event
+     */
+    void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler);
+
+    /**
+     * @param deliveryCallback callback to notify once event passed to {@link #onEvent} is fully processed by the
+     * listener (whether successfully or not)
+     */
+    void setDeliveryCallback(DeliveryCallback deliveryCallback);
+
+    /**
+     * Stops dispatching thread(s) once all the events accepted so far are delivered. Does not block.
+     */
+    void shutdown();
+
+    /**
+     * Blocks until dispatching thread(s) stopped by {@link #shutdown()} terminate or the timeout occurs.
+     * @return true if there are no running dispatching threads left, false otherwise
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Callback notified (from the dispatching thread) when event is no longer "in flight".
+     */
+    interface DeliveryCallback {
+
+        void delivered(ReplicationEvent event);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.io.ByteArrayOutputStream;
+import com.github.shyiko.mysql.binlog.network.protocol.command.Command;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * COM_BINLOG_DUMP_GTID asking server to stream all the transactions which are not in the given GTID set.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+class DumpBinaryLogGtidCommand implements Command {
+
+    private static final int COM_BINLOG_DUMP_GTID = 0x1E;
+    private static final int BINLOG_THROUGH_GTID = 0x04;
+
+    private final long serverId;
+    private final GtidSet gtidSet;
+
+    DumpBinaryLogGtidCommand(long serverId, GtidSet gtidSet) {
+        this.serverId = serverId;
+        this.gtidSet = gtidSet;
+    }
+
+    @Override
+    public byte[] toByteArray() throws IOException {
+        Map<String, List<GtidSet.Interval>> intervalsByUUID = gtidSet.getIntervals();
+        int dataLength = 8;
+        for (List<GtidSet.Interval> intervals : intervalsByUUID.values()) {
+            dataLength += 16 + 8 + intervals.size() * 16;
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        buffer.writeInteger(COM_BINLOG_DUMP_GTID, 1);
+        buffer.writeInteger(BINLOG_THROUGH_GTID, 2);
+        buffer.writeLong(serverId, 4);
+        buffer.writeInteger(0, 4); // binlog filename length (filename/position are ignored in favour of GTID set)
+        buffer.writeLong(4, 8); // binlog position
+        buffer.writeInteger(dataLength, 4);
+        buffer.writeLong(intervalsByUUID.size(), 8);
+        for (Map.Entry<String, List<GtidSet.Interval>> entry : intervalsByUUID.entrySet()) {
+            String uuid = entry.getKey().replace("-", "");
+            for (int i = 0; i < uuid.length(); i += 2) {
+                buffer.write(Integer.parseInt(uuid.substring(i, i + 2), 16));
+            }
+            List<GtidSet.Interval> intervals = entry.getValue();
+            buffer.writeLong(intervals.size(), 8);
+            for (GtidSet.Interval interval : intervals) {
+                buffer.writeLong(interval.getStart(), 8);
+                buffer.writeLong(interval.getEnd() + 1, 8); // exclusive
+            }
+        }
+        return buffer.toByteArray();
+    }
+}
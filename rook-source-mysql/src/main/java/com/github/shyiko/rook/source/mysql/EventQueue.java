@@ -0,0 +1,206 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer with a single consumer. Producers are serialized with a (normally uncontended) monitor,
+ * consumer side is lock-free unless {@link WaitStrategy#BLOCKING} is used and there is nothing to consume.
+ *
+ * @param <E> type of elements held in this queue
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+class EventQueue<E> {
+
+    private static final int SPIN_TRIES = 100;
+
+    private final Object[] buffer;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    private final AtomicLong head = new AtomicLong(); // next slot to be consumed
+    private final AtomicLong tail = new AtomicLong(); // next slot to be published
+    private final Object producerLock = new Object();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private volatile boolean consumerWaiting;
+    private final AtomicInteger producersWaiting = new AtomicInteger();
+
+    EventQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * @return false if queue is full, true otherwise
+     */
+    public boolean offer(E element) {
+        synchronized (producerLock) {
+            long position = tail.get();
+            if (position - head.get() == buffer.length) {
+                return false;
+            }
+            buffer[(int) position & mask] = element;
+            tail.set(position + 1);
+        }
+        if (consumerWaiting) {
+            signal(notEmpty);
+        }
+        return true;
+    }
+
+    public void put(E element) throws InterruptedException {
+        for (int counter = 0; !offer(element); counter++) {
+            if (waitStrategy == WaitStrategy.BLOCKING) {
+                awaitNotFull();
+            } else {
+                idle(counter);
+            }
+        }
+    }
+
+    /**
+     * Must be called from the consumer thread only.
+     * @return head of the queue or null if queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head.get();
+        if (position == tail.get()) {
+            return null;
+        }
+        int index = (int) position & mask;
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.set(position + 1);
+        if (producersWaiting.get() != 0) {
+            signal(notFull);
+        }
+        return element;
+    }
+
+    /**
+     * Must be called from the consumer thread only.
+     */
+    public E take() throws InterruptedException {
+        E element;
+        for (int counter = 0; (element = poll()) == null; counter++) {
+            if (waitStrategy == WaitStrategy.BLOCKING) {
+                awaitNotEmpty(0);
+            } else {
+                idle(counter);
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Must be called from the consumer thread only.
+     * @return head of the queue or null if nothing became available within the specified timeout
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        E element;
+        for (int counter = 0; (element = poll()) == null; counter++) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            if (waitStrategy == WaitStrategy.BLOCKING) {
+                awaitNotEmpty(remaining);
+            } else {
+                idle(counter);
+            }
+        }
+        return element;
+    }
+
+    private void awaitNotEmpty(long timeoutInNanos) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            consumerWaiting = true;
+            if (isEmpty()) {
+                if (timeoutInNanos > 0) {
+                    notEmpty.awaitNanos(timeoutInNanos);
+                } else {
+                    notEmpty.await();
+                }
+            }
+        } finally {
+            consumerWaiting = false;
+            lock.unlock();
+        }
+    }
+
+    private void awaitNotFull() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            producersWaiting.incrementAndGet();
+            if (size() == buffer.length) {
+                notFull.await();
+            }
+        } finally {
+            producersWaiting.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void idle(int counter) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (waitStrategy == WaitStrategy.YIELDING && counter > SPIN_TRIES) {
+            Thread.yield();
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link CheckpointStore} backed by a local file. Each write goes to a temporary file which is fsync-ed and then
+ * renamed over the original one (so that file is never left half-written), after which parent directory is fsync-ed
+ * too (so that rename itself survives a crash). Use {@link #setBatchSize(int)} and/or
+ * {@link #setMaxDelay(long, java.util.concurrent.TimeUnit)} to amortize the cost of fsync.
+ * <p>
+ * On Java 7+ rename is atomic (Files.move with ATOMIC_MOVE + REPLACE_EXISTING). Otherwise, on platforms where rename
+ * does not replace existing file, previous checkpoint is moved aside (to the ".bak" file, which is what
+ * {@link #read()} falls back to) and removed only after the new one is in place.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class FileCheckpointStore extends BatchingCheckpointStore {
+
+    private static final String CHARSET = "UTF-8";
+
+    // java.nio.file (Java 7+) is accessed reflectively as the source level is 1.6
+    private static final Method TO_PATH;
+    private static final Method MOVE;
+    private static final Object MOVE_OPTIONS;
+    private static final Method OPEN_CHANNEL;
+    private static final Object OPEN_OPTIONS;
+
+    static {
+        Method toPath = null, move = null, openChannel = null;
+        Object moveOptions = null, openOptions = null;
+        try {
+            Class<?> pathClass = Class.forName("java.nio.file.Path");
+            Class<?> copyOptionClass = Class.forName("java.nio.file.CopyOption");
+            Class<?> openOptionClass = Class.forName("java.nio.file.OpenOption");
+            toPath = File.class.getMethod("toPath");
+            moveOptions = Array.newInstance(copyOptionClass, 2);
+            Array.set(moveOptions, 0, enumConstant("java.nio.file.StandardCopyOption", "ATOMIC_MOVE"));
+            Array.set(moveOptions, 1, enumConstant("java.nio.file.StandardCopyOption", "REPLACE_EXISTING"));
+            move = Class.forName("java.nio.file.Files").getMethod("move", pathClass, pathClass,
+                moveOptions.getClass());
+            openOptions = Array.newInstance(openOptionClass, 1);
+            Array.set(openOptions, 0, enumConstant("java.nio.file.StandardOpenOption", "READ"));
+            openChannel = FileChannel.class.getMethod("open", pathClass, openOptions.getClass());
+        } catch (Exception e) {
+            // Java 6
+            toPath = null;
+        }
+        TO_PATH = toPath;
+        MOVE = move;
+        MOVE_OPTIONS = moveOptions;
+        OPEN_CHANNEL = openChannel;
+        OPEN_OPTIONS = openOptions;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File file;
+    private final File tmpFile;
+    private final File backupFile;
+
+    public FileCheckpointStore(File file) {
+        this.file = file;
+        this.tmpFile = new File(file.getPath() + ".tmp");
+        this.backupFile = new File(file.getPath() + ".bak");
+    }
+
+    @Override
+    protected BinlogPosition read() throws IOException {
+        File file = this.file;
+        if (!file.exists()) {
+            // crashed in the middle of the (non-atomic) rename
+            if (!backupFile.exists()) {
+                return null;
+            }
+            file = backupFile;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+        try {
+            String filename = reader.readLine();
+            String position = reader.readLine();
+            String gtidSet = reader.readLine(); // absent unless GTID-based positioning is on
+            if (filename == null || position == null) {
+                throw new IOException("Malformed checkpoint file " + file);
+            }
+            try {
+                return new BinlogPosition(filename, Long.parseLong(position.trim()), gtidSet);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed checkpoint file " + file, e);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    protected void write(BinlogPosition position) throws IOException {
+        FileOutputStream outputStream = new FileOutputStream(tmpFile);
+        try {
+            String gtidSet = position.getGtidSet();
+            outputStream.write((position.getFilename() + "\n" + position.getPosition() + "\n" +
+                (gtidSet != null ? gtidSet + "\n" : "")).getBytes(CHARSET));
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!atomicMove(tmpFile, file) && !tmpFile.renameTo(file)) {
+            // rename does not replace existing file on some platforms
+            if (file.exists() && !file.renameTo(backupFile)) {
+                throw new IOException("Failed to rename " + file + " to " + backupFile);
+            }
+            if (!tmpFile.renameTo(file)) {
+                backupFile.renameTo(file);
+                throw new IOException("Failed to rename " + tmpFile + " to " + file);
+            }
+            backupFile.delete();
+        }
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * @return false if atomic move is not supported (either by JVM or file system), true otherwise
+     */
+    private boolean atomicMove(File source, File target) throws IOException {
+        if (TO_PATH == null) {
+            return false;
+        }
+        try {
+            MOVE.invoke(null, TO_PATH.invoke(source), TO_PATH.invoke(target), MOVE_OPTIONS);
+            return true;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if ("java.nio.file.AtomicMoveNotSupportedException".equals(cause.getClass().getName())) {
+                return false;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to move " + source + " to " + target, cause);
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Makes sure directory entry (changed by rename) is persisted. Not every platform allows to open directory (e.g.
+     * Windows doesn't), in which case it's a no-op.
+     */
+    private void syncDirectory(File directory) {
+        if (TO_PATH == null || directory == null) {
+            return;
+        }
+        try {
+            FileChannel channel = (FileChannel) OPEN_CHANNEL.invoke(null, TO_PATH.invoke(directory), OPEN_OPTIONS);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch (Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to fsync " + directory, e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object enumConstant(String enumClassName, String name) throws ClassNotFoundException {
+        return Enum.valueOf(Class.forName(enumClassName).asSubclass(Enum.class), name);
+    }
+
+    @Override
+    public String toString() {
+        return "FileCheckpointStore{file=" + file + '}';
+    }
+}
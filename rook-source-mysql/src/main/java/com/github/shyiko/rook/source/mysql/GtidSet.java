@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Set of GTIDs in MySQL notation, e.g. "3e11fa47-71ca-11e1-9e33-c80aa9429562:1-5:11,3e11fa47-...:1-2" (intervals
+ * are inclusive). Not thread-safe.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class GtidSet {
+
+    private final Map<String, List<Interval>> intervalsByUUID = new TreeMap<String, List<Interval>>();
+    // cached until the set changes
+    private Snapshot snapshot;
+
+    /**
+     * @param gtidSet GTID set (as reported by @@global.gtid_executed), "" for an empty set
+     */
+    GtidSet(String gtidSet) {
+        for (String uuidSet : gtidSet.split(",")) {
+            uuidSet = uuidSet.trim();
+            if (uuidSet.isEmpty()) {
+                continue;
+            }
+            String[] parts = uuidSet.split(":");
+            if (parts.length < 2) {
+                throw new IllegalArgumentException("Malformed GTID set \"" + gtidSet + "\"");
+            }
+            String uuid = parts[0].toLowerCase();
+            for (int i = 1; i < parts.length; i++) {
+                int separatorIndex = parts[i].indexOf('-');
+                try {
+                    if (separatorIndex == -1) {
+                        long transactionId = Long.parseLong(parts[i]);
+                        add(uuid, transactionId, transactionId);
+                    } else {
+                        add(uuid, Long.parseLong(parts[i].substring(0, separatorIndex)),
+                            Long.parseLong(parts[i].substring(separatorIndex + 1)));
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Malformed GTID set \"" + gtidSet + "\"", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param gtid GTID (e.g. "3e11fa47-71ca-11e1-9e33-c80aa9429562:23")
+     */
+    public void add(String gtid) {
+        int separatorIndex = gtid.lastIndexOf(':');
+        long transactionId = Long.parseLong(gtid.substring(separatorIndex + 1));
+        add(gtid.substring(0, separatorIndex).toLowerCase(), transactionId, transactionId);
+    }
+
+    public boolean contains(String uuid, long transactionId) {
+        List<Interval> intervals = intervalsByUUID.get(uuid.toLowerCase());
+        if (intervals != null) {
+            for (Interval interval : intervals) {
+                if (interval.start <= transactionId && transactionId <= interval.end) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void add(String uuid, long start, long end) {
+        snapshot = null;
+        List<Interval> intervals = intervalsByUUID.get(uuid);
+        if (intervals == null) {
+            intervalsByUUID.put(uuid, intervals = new ArrayList<Interval>());
+        }
+        int size = intervals.size();
+        // transactions of the same server usually come in order
+        if (size != 0 && intervals.get(size - 1).end + 1 == start) {
+            intervals.get(size - 1).end = Math.max(intervals.get(size - 1).end, end);
+            return;
+        }
+        int index = 0;
+        while (index < size && intervals.get(index).end + 1 < start) {
+            index++;
+        }
+        Interval interval = new Interval(start, end);
+        // absorbing all the intervals overlapping (or adjacent to) the new one
+        while (index < intervals.size() && intervals.get(index).start <= end + 1) {
+            Interval absorbed = intervals.remove(index);
+            interval.start = Math.min(interval.start, absorbed.start);
+            interval.end = Math.max(interval.end, absorbed.end);
+        }
+        intervals.add(index, interval);
+    }
+
+    /**
+     * @return intervals by server UUID (in lexicographical order)
+     */
+    Map<String, List<Interval>> getIntervals() {
+        return Collections.unmodifiableMap(intervalsByUUID);
+    }
+
+    /**
+     * @return immutable copy of the set (the same one until the set changes)
+     */
+    Snapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new Snapshot(intervalsByUUID);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * Inclusive range of transaction numbers (of a single UUID).
+     */
+    static final class Interval {
+
+        private long start;
+        private long end;
+
+        private Interval(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * @return last transaction id of the interval (inclusive)
+         */
+        public long getEnd() {
+            return end;
+        }
+    }
+
+    /**
+     * Immutable copy of the set, rendered into MySQL notation only when (and if) asked to. Lets executed GTID set be
+     * attached to every transaction (and checkpoint) without paying for toString() of the ones nobody looks at.
+     */
+    static final class Snapshot implements Serializable {
+
+        private final String[] uuids;
+        // start, end, start, end, ... for each uuid
+        private final long[][] intervals;
+        private transient volatile String rendered;
+
+        /**
+         * @param gtidSet GTID set in MySQL notation (taken as is)
+         */
+        Snapshot(String gtidSet) {
+            this.uuids = null;
+            this.intervals = null;
+            this.rendered = gtidSet;
+        }
+
+        private Snapshot(Map<String, List<Interval>> intervalsByUUID) {
+            this.uuids = new String[intervalsByUUID.size()];
+            this.intervals = new long[uuids.length][];
+            int index = 0;
+            for (Map.Entry<String, List<Interval>> entry : intervalsByUUID.entrySet()) {
+                List<Interval> uuidIntervals = entry.getValue();
+                long[] bounds = new long[uuidIntervals.size() * 2];
+                for (int i = 0, size = uuidIntervals.size(); i < size; i++) {
+                    bounds[i * 2] = uuidIntervals.get(i).start;
+                    bounds[i * 2 + 1] = uuidIntervals.get(i).end;
+                }
+                uuids[index] = entry.getKey();
+                intervals[index++] = bounds;
+            }
+        }
+
+        @Override
+        public String toString() {
+            String result = rendered;
+            if (result == null) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < uuids.length; i++) {
+                    if (i != 0) {
+                        sb.append(",");
+                    }
+                    sb.append(uuids[i]);
+                    long[] bounds = intervals[i];
+                    for (int j = 0; j < bounds.length; j += 2) {
+                        sb.append(":").append(bounds[j]);
+                        if (bounds[j + 1] != bounds[j]) {
+                            sb.append("-").append(bounds[j + 1]);
+                        }
+                    }
+                }
+                rendered = result = sb.toString();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+
+import java.util.List;
+
+/**
+ * Transaction delivered when GTID-based positioning is on (see {@link MySQLReplicationStream#setGtidSet(String)}).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class GtidTXReplicationEvent extends TXReplicationEvent {
+
+    private final String gtid;
+    private final GtidSet.Snapshot gtidSet;
+
+    public GtidTXReplicationEvent(List<ReplicationEvent> events, String gtid, String gtidSet) {
+        this(events, gtid, gtidSet == null ? null : new GtidSet.Snapshot(gtidSet));
+    }
+
+    /**
+     * @param gtidSet executed GTID set (rendered only if {@link #getGtidSet()} is called)
+     */
+    GtidTXReplicationEvent(List<ReplicationEvent> events, String gtid, GtidSet.Snapshot gtidSet) {
+        super(events);
+        this.gtid = gtid;
+        this.gtidSet = gtidSet;
+    }
+
+    /**
+     * @return GTID of the transaction (e.g. "3e11fa47-71ca-11e1-9e33-c80aa9429562:23")
+     */
+    public String getGtid() {
+        return gtid;
+    }
+
+    /**
+     * @return executed GTID set (including this transaction), which is what replication can be resumed from on any
+     * server of the topology
+     */
+    public String getGtidSet() {
+        return gtidSet == null ? null : gtidSet.toString();
+    }
+
+    @Override
+    public GtidTXReplicationEvent copy() {
+        return new GtidTXReplicationEvent(super.copy().getEvents(), gtid, gtidSet);
+    }
+
+    @Override
+    public String toString() {
+        return "GtidTXReplicationEvent{gtid=" + gtid + ", " +
+            super.toString().substring("TXReplicationEvent{".length());
+    }
+}
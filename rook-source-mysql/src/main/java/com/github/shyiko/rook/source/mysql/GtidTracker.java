@@ -0,0 +1,132 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * GTID bookkeeping of the binary log being read (one per connection): GTID of the transaction in progress, executed
+ * GTID set and rows events of the transaction which were handed over to the listeners so far.
+ * <p>
+ * Transaction interrupted by reconnect is re-sent from the very beginning (when replication is resumed by GTID).
+ * Rows events of such transaction which have already been delivered (e.g. when events are not grouped by
+ * transaction or transaction exceeded max transaction size) are skipped (see {@link #skip()}), so that listeners
+ * would not get them twice. Not thread-safe (executed GTID set is guarded by its own monitor, as it's also read by
+ * {@link MySQLReplicationStream#getGtidSet()}).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class GtidTracker {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final GtidSet gtidSet;
+    // GTID of the transaction in progress (if any)
+    private String gtid;
+    private boolean transactionBegun;
+    // rows events of the transaction in progress handed over to the listeners so far
+    private int deliveredEvents;
+    // rows events of the re-sent transaction which have already been delivered
+    private int eventsToSkip;
+
+    /**
+     * @param gtidSet executed GTID set, null if GTID-based positioning is off
+     */
+    GtidTracker(GtidSet gtidSet) {
+        this.gtidSet = gtidSet;
+    }
+
+    /**
+     * @return GTID of the transaction in progress, null if there is none
+     */
+    public String getGtid() {
+        return gtid;
+    }
+
+    /**
+     * Handles GTID event (which precedes each transaction).
+     */
+    public void transactionStarted(String gtid) {
+        eventsToSkip = gtid.equals(this.gtid) ? deliveredEvents : 0;
+        if (eventsToSkip != 0 && logger.isDebugEnabled()) {
+            logger.debug("Skipping " + eventsToSkip + " already delivered event(s) of re-sent transaction " + gtid);
+        }
+        deliveredEvents = 0;
+        this.gtid = gtid;
+        transactionBegun = false;
+    }
+
+    /**
+     * Handles BEGIN of the transaction (which is absent in case of a standalone statement).
+     */
+    public void transactionBegun() {
+        transactionBegun = true;
+    }
+
+    public boolean isTransactionBegun() {
+        return transactionBegun;
+    }
+
+    /**
+     * @return true if rows event was delivered before transaction got re-sent (and so it must be skipped), false
+     * otherwise
+     */
+    public boolean skip() {
+        if (eventsToSkip > 0) {
+            eventsToSkip--;
+            deliveredEvents++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param numberOfEvents number of rows events of the transaction in progress handed over to the listeners
+     */
+    public void delivered(int numberOfEvents) {
+        deliveredEvents += numberOfEvents;
+    }
+
+    /**
+     * Adds GTID of the transaction in progress (if any) to the executed GTID set.
+     * @return executed GTID set, null if GTID-based positioning is off
+     */
+    public GtidSet.Snapshot completeTransaction() {
+        if (gtidSet == null) {
+            return null;
+        }
+        synchronized (gtidSet) {
+            if (gtid != null) {
+                gtidSet.add(gtid);
+                gtid = null;
+            }
+            return gtidSet.snapshot();
+        }
+    }
+
+    /**
+     * @return executed GTID set (not rendered until someone asks for it), null if GTID-based positioning is off
+     */
+    public GtidSet.Snapshot executedGtidSet() {
+        if (gtidSet == null) {
+            return null;
+        }
+        synchronized (gtidSet) {
+            return gtidSet.snapshot();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * {@link CheckpointStore} backed by a database table, e.g.
+ * <pre>
+ * CREATE TABLE rook_checkpoint (
+ *     id VARCHAR(255) NOT NULL PRIMARY KEY,
+ *     binlog_filename VARCHAR(255) NOT NULL,
+ *     binlog_position BIGINT NOT NULL,
+ *     gtid_set TEXT -- needed only if GTID set is stored (see JdbcCheckpointStore(DataSource, String, String, boolean))
+ * )
+ * </pre>
+ * Single table can be shared by multiple streams (as long as each one of them has a unique id).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class JdbcCheckpointStore extends BatchingCheckpointStore {
+
+    private final DataSource dataSource;
+    private final String id;
+    private final boolean storeGtidSet;
+    private final String selectQuery;
+    private final String updateQuery;
+    private final String insertQuery;
+
+    public JdbcCheckpointStore(DataSource dataSource, String id) {
+        this(dataSource, "rook_checkpoint", id);
+    }
+
+    public JdbcCheckpointStore(DataSource dataSource, String table, String id) {
+        this(dataSource, table, id, false);
+    }
+
+    /**
+     * @param storeGtidSet true if executed GTID set (see {@link BinlogPosition#getGtidSet()}) should be stored too
+     * (in gtid_set column)
+     */
+    public JdbcCheckpointStore(DataSource dataSource, String table, String id, boolean storeGtidSet) {
+        this.dataSource = dataSource;
+        this.id = id;
+        this.storeGtidSet = storeGtidSet;
+        if (storeGtidSet) {
+            this.selectQuery = "SELECT binlog_filename, binlog_position, gtid_set FROM " + table + " WHERE id = ?";
+            this.updateQuery = "UPDATE " + table + " SET binlog_filename = ?, binlog_position = ?, gtid_set = ? " +
+                "WHERE id = ?";
+            this.insertQuery = "INSERT INTO " + table + " (binlog_filename, binlog_position, gtid_set, id) " +
+                "VALUES (?, ?, ?, ?)";
+        } else {
+            this.selectQuery = "SELECT binlog_filename, binlog_position FROM " + table + " WHERE id = ?";
+            this.updateQuery = "UPDATE " + table + " SET binlog_filename = ?, binlog_position = ? WHERE id = ?";
+            this.insertQuery = "INSERT INTO " + table + " (binlog_filename, binlog_position, id) VALUES (?, ?, ?)";
+        }
+    }
+
+    @Override
+    protected BinlogPosition read() throws IOException {
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                PreparedStatement statement = connection.prepareStatement(selectQuery);
+                try {
+                    statement.setString(1, id);
+                    ResultSet resultSet = statement.executeQuery();
+                    try {
+                        return resultSet.next() ? new BinlogPosition(resultSet.getString(1), resultSet.getLong(2),
+                            storeGtidSet ? resultSet.getString(3) : null) : null;
+                    } finally {
+                        resultSet.close();
+                    }
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to load checkpoint " + id, e);
+        }
+    }
+
+    @Override
+    protected void write(BinlogPosition position) throws IOException {
+        try {
+            Connection connection = dataSource.getConnection();
+            try {
+                if (execute(connection, updateQuery, position) == 0) {
+                    execute(connection, insertQuery, position);
+                }
+                if (!connection.getAutoCommit()) {
+                    connection.commit();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw new IOException("Failed to save checkpoint " + id, e);
+        }
+    }
+
+    private int execute(Connection connection, String query, BinlogPosition position) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(query);
+        try {
+            statement.setString(1, position.getFilename());
+            statement.setLong(2, position.getPosition());
+            int index = 3;
+            if (storeGtidSet) {
+                statement.setString(index++, position.getGtidSet());
+            }
+            statement.setString(index, id);
+            return statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JdbcCheckpointStore{id=" + id + '}';
+    }
+}
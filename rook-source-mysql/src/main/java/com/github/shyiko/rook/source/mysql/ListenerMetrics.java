@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link com.github.shyiko.rook.api.ReplicationEventListener#onEvent} latency & error count of a particular listener.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public final class ListenerMetrics implements ListenerMetricsMBean {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    ListenerMetrics() {
+    }
+
+    void record(long latencyInNanos, boolean failed) {
+        latency.record(latencyInNanos);
+        invocations.incrementAndGet();
+        if (failed) {
+            errors.incrementAndGet();
+        }
+    }
+
+    @Override
+    public long getInvocationCount() {
+        return invocations.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public long getLatencyP50() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(0.5));
+    }
+
+    @Override
+    public long getLatencyP99() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(0.99));
+    }
+
+    @Override
+    public long getLatencyMax() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMax());
+    }
+
+    @Override
+    public void resetLatency() {
+        latency.reset();
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ColumnProjection;
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.TXChunkAware;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBeginReplicationEvent;
+import com.github.shyiko.rook.api.event.TXChunkReplicationEvent;
+import com.github.shyiko.rook.api.event.TXCommitReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Listeners of {@link MySQLReplicationStream} along with everything that determines how events get to them
+ * (dispatch settings, decorators listeners are wrapped into, exception handler and checkpoint tracking).
+ * Dispatch settings apply to already registered listeners too (decorators are replaced as settings change).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+class ListenerRegistry {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<ReplicationEventListener> listeners = new CopyOnWriteArrayList<ReplicationEventListener>();
+    // decorators do not override equals/hashCode (so this is effectively an identity set)
+    private final Set<ReplicationEventListener> decorators =
+        Collections.newSetFromMap(new ConcurrentHashMap<ReplicationEventListener, Boolean>());
+    // incremented each time set of listeners changes (as projection depends on it)
+    private final AtomicInteger tableResolutionVersion;
+    private volatile ReplicationEventExceptionHandler exceptionHandler;
+    private volatile CheckpointTracker checkpointTracker;
+    private volatile ReplicationMetrics metrics;
+
+    // dispatch settings (guarded by listeners)
+    private boolean asyncDispatch;
+    private int asyncDispatchQueueCapacity = AsyncReplicationEventListener.DEFAULT_QUEUE_CAPACITY;
+    private WaitStrategy asyncDispatchWaitStrategy = WaitStrategy.BLOCKING;
+    private OverflowPolicy asyncDispatchOverflowPolicy = OverflowPolicy.BLOCK;
+    private int partitionedDispatchLanes;
+    private ReplicationEventPartitioner partitioner;
+    private boolean txBoundaryBarrier;
+    private int batchedDispatchMaxTransactions;
+    private int batchedDispatchMaxRows;
+    private long batchedDispatchMaxLatency;
+    private int writesetDispatchWorkers;
+    private ReplicationEventPartitioner writesetPartitioner;
+
+    ListenerRegistry(AtomicInteger tableResolutionVersion) {
+        this.tableResolutionVersion = tableResolutionVersion;
+    }
+
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        synchronized (listeners) {
+            this.exceptionHandler = exceptionHandler;
+            for (ReplicationEventListener listener : listeners) {
+                if (decorators.contains(listener)) {
+                    ((DispatchingReplicationEventListener) listener).setExceptionHandler(exceptionHandler);
+                }
+            }
+        }
+    }
+
+    public void setAsyncDispatch(boolean asyncDispatch) {
+        synchronized (listeners) {
+            this.asyncDispatch = asyncDispatch;
+            redecorateListeners();
+        }
+    }
+
+    public void setAsyncDispatchQueueCapacity(int queueCapacity) {
+        synchronized (listeners) {
+            this.asyncDispatchQueueCapacity = queueCapacity;
+        }
+    }
+
+    public void setAsyncDispatchWaitStrategy(WaitStrategy waitStrategy) {
+        synchronized (listeners) {
+            this.asyncDispatchWaitStrategy = waitStrategy;
+        }
+    }
+
+    public void setAsyncDispatchOverflowPolicy(OverflowPolicy overflowPolicy) {
+        synchronized (listeners) {
+            this.asyncDispatchOverflowPolicy = overflowPolicy;
+        }
+    }
+
+    /**
+     * @param partitioner partitioner used to determine the lane ({@link TablePartitioner} if null)
+     */
+    public void setPartitionedDispatch(int numberOfLanes, ReplicationEventPartitioner partitioner,
+            boolean txBoundaryBarrier) {
+        synchronized (listeners) {
+            this.partitionedDispatchLanes = numberOfLanes;
+            this.partitioner = partitioner == null ? new TablePartitioner() : partitioner;
+            this.txBoundaryBarrier = txBoundaryBarrier;
+            redecorateListeners();
+        }
+    }
+
+    public void setWritesetDispatch(int numberOfWorkers, ReplicationEventPartitioner partitioner) {
+        synchronized (listeners) {
+            this.writesetDispatchWorkers = numberOfWorkers;
+            this.writesetPartitioner = partitioner;
+            redecorateListeners();
+        }
+    }
+
+    public void setBatchedDispatch(int maxTransactions, int maxRows, long maxLatency, TimeUnit unit) {
+        synchronized (listeners) {
+            this.batchedDispatchMaxTransactions = maxTransactions;
+            this.batchedDispatchMaxRows = maxRows;
+            this.batchedDispatchMaxLatency = unit.toNanos(maxLatency);
+            redecorateListeners();
+        }
+    }
+
+    public void setCheckpointStore(CheckpointStore checkpointStore) {
+        synchronized (listeners) {
+            CheckpointTracker checkpointTracker = checkpointStore == null ? null :
+                new CheckpointTracker(checkpointStore);
+            for (ReplicationEventListener listener : listeners) {
+                if (decorators.contains(listener)) {
+                    ((DispatchingReplicationEventListener) listener).setDeliveryCallback(checkpointTracker);
+                }
+            }
+            this.checkpointTracker = checkpointTracker;
+        }
+    }
+
+    /**
+     * @return checkpoint tracker, null if checkpoint store is not set
+     */
+    public CheckpointTracker getCheckpointTracker() {
+        return checkpointTracker;
+    }
+
+    public void setMetrics(ReplicationMetrics metrics) {
+        synchronized (listeners) {
+            this.metrics = metrics;
+            redecorateListeners();
+        }
+    }
+
+    public ReplicationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void register(ReplicationEventListener listener) {
+        synchronized (listeners) {
+            listeners.add(decorate(listener));
+            tableResolutionVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * Registers listener which dispatches events on its own (meaning that it's exempt from dispatch settings and
+     * reports deliveries to the checkpoint tracker by itself). Listener's {@link
+     * DispatchingReplicationEventListener#getListener()} is expected to return the listener itself.
+     */
+    public void attach(DispatchingReplicationEventListener listener) {
+        synchronized (listeners) {
+            listener.setDeliveryCallback(checkpointTracker);
+            decorators.add(listener);
+            listeners.add(listener);
+            tableResolutionVersion.incrementAndGet();
+        }
+    }
+
+    public void unregister(ReplicationEventListener listener) {
+        synchronized (listeners) {
+            for (ReplicationEventListener replicationListener : listeners) {
+                if (replicationListener == listener || undecorate(replicationListener) == listener) {
+                    listeners.remove(replicationListener);
+                    shutdownIfDecorator(replicationListener, false);
+                    forgetMetrics(undecorate(replicationListener));
+                }
+            }
+            tableResolutionVersion.incrementAndGet();
+        }
+    }
+
+    public void unregister(Class<? extends ReplicationEventListener> listenerClass) {
+        synchronized (listeners) {
+            for (ReplicationEventListener replicationListener : listeners) {
+                if (listenerClass.isInstance(undecorate(replicationListener))) {
+                    listeners.remove(replicationListener);
+                    shutdownIfDecorator(replicationListener, false);
+                    forgetMetrics(undecorate(replicationListener));
+                }
+            }
+            tableResolutionVersion.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return decorators (async/partitioned/batched/writeset dispatchers, consumers, multi-source listeners) events
+     * are currently handed over to, empty list if all the listeners are called synchronously
+     */
+    public List<ReplicationEventListener> getDecorators() {
+        synchronized (listeners) {
+            return new ArrayList<ReplicationEventListener>(decorators);
+        }
+    }
+
+    public boolean hasDecorators() {
+        return !decorators.isEmpty();
+    }
+
+    /**
+     * Stops decorators (each one is going to be restarted automatically on the next event).
+     */
+    public void shutdownDecorators() {
+        synchronized (listeners) {
+            for (ReplicationEventListener listener : listeners) {
+                if (decorators.contains(listener)) {
+                    ((DispatchingReplicationEventListener) listener).shutdown();
+                }
+            }
+        }
+    }
+
+    private void redecorateListeners() {
+        for (ReplicationEventListener listener : listeners) {
+            if (decorators.contains(listener) && undecorate(listener) == listener) {
+                continue; // attached listener
+            }
+            ReplicationEventListener replacement = decorate(undecorate(listener));
+            if (replacement != listener) {
+                // previous decorator must be done with the events it has accepted before replacement kicks in
+                shutdownIfDecorator(listener, true);
+                listeners.set(listeners.indexOf(listener), replacement);
+            }
+        }
+    }
+
+    private ReplicationEventListener decorate(ReplicationEventListener listener) {
+        ReplicationMetrics metrics = this.metrics;
+        if (metrics != null) {
+            // measured inside of the dispatching decorator (so that it's the listener itself that gets timed)
+            listener = metrics.measure(listener);
+        }
+        DispatchingReplicationEventListener result;
+        if (writesetDispatchWorkers > 0) {
+            result = new WritesetReplicationEventListener(listener, writesetDispatchWorkers, writesetPartitioner);
+        } else
+        if (partitionedDispatchLanes > 0) {
+            result = new PartitionedReplicationEventListener(listener, partitionedDispatchLanes, partitioner,
+                txBoundaryBarrier);
+        } else
+        if (batchedDispatchMaxTransactions > 0) {
+            result = new BatchingReplicationEventListener(listener, batchedDispatchMaxTransactions,
+                batchedDispatchMaxRows, batchedDispatchMaxLatency, TimeUnit.NANOSECONDS);
+        } else
+        if (asyncDispatch) {
+            result = new AsyncReplicationEventListener(listener,
+                asyncDispatchQueueCapacity, asyncDispatchWaitStrategy, asyncDispatchOverflowPolicy);
+        } else {
+            return listener;
+        }
+        result.setExceptionHandler(exceptionHandler);
+        result.setDeliveryCallback(checkpointTracker);
+        decorators.add(result);
+        return result;
+    }
+
+    private ReplicationEventListener undecorate(ReplicationEventListener listener) {
+        ReplicationEventListener result = decorators.contains(listener) ?
+            ((DispatchingReplicationEventListener) listener).getListener() : listener;
+        return result instanceof MeasuredReplicationEventListener ?
+            ((MeasuredReplicationEventListener) result).getListener() : result;
+    }
+
+    private void forgetMetrics(ReplicationEventListener listener) {
+        ReplicationMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.forget(listener);
+        }
+    }
+
+    private void shutdownIfDecorator(ReplicationEventListener listener, boolean awaitTermination) {
+        if (decorators.remove(listener)) {
+            DispatchingReplicationEventListener decorator = (DispatchingReplicationEventListener) listener;
+            decorator.shutdown();
+            if (awaitTermination) {
+                try {
+                    decorator.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param position position to checkpoint once event is delivered, null if event does not end on a transaction
+     * boundary
+     * @param chunkSize maximum number of events per chunk transactions are delivered to {@link TXChunkAware}
+     * listeners in (0 if transactions are not to be chunked)
+     */
+    public void notifyListeners(ReplicationEvent event, BinlogPosition position, int chunkSize) {
+        CheckpointTracker checkpointTracker = this.checkpointTracker;
+        if (event instanceof TXReplicationEvent && ((TXReplicationEvent) event).getEvents().isEmpty()) {
+            if (checkpointTracker != null) {
+                checkpointTracker.mark(position);
+            }
+            return;
+        }
+        if (chunkSize > 0 && event instanceof TXReplicationEvent &&
+                ((TXReplicationEvent) event).getEvents().size() > chunkSize) {
+            notifyListenersInChunks((TXReplicationEvent) event, position, chunkSize, checkpointTracker);
+            return;
+        }
+        if (checkpointTracker == null) {
+            for (ReplicationEventListener listener : listeners) {
+                deliver(listener, event);
+            }
+            return;
+        }
+        ReplicationEventListener[] recipients = listeners.toArray(new ReplicationEventListener[listeners.size()]);
+        checkpointTracker.register(event, position, recipients.length);
+        dispatch(recipients, event, checkpointTracker);
+    }
+
+    private void notifyListenersInChunks(TXReplicationEvent event, BinlogPosition position, int chunkSize,
+            CheckpointTracker checkpointTracker) {
+        List<ReplicationEventListener> chunkAwareRecipients = new ArrayList<ReplicationEventListener>();
+        List<ReplicationEventListener> otherRecipients = new ArrayList<ReplicationEventListener>();
+        for (ReplicationEventListener listener : listeners) {
+            (undecorate(listener) instanceof TXChunkAware ? chunkAwareRecipients : otherRecipients).add(listener);
+        }
+        ReplicationEventListener[] chunkAwareListeners =
+            chunkAwareRecipients.toArray(new ReplicationEventListener[chunkAwareRecipients.size()]);
+        ReplicationEventListener[] otherListeners =
+            otherRecipients.toArray(new ReplicationEventListener[otherRecipients.size()]);
+        TXCommitReplicationEvent commitEvent = new TXCommitReplicationEvent();
+        if (checkpointTracker != null) {
+            // position is saved only when both kinds of listeners are done with the transaction
+            checkpointTracker.register(event, null, otherListeners.length);
+            checkpointTracker.register(commitEvent, position, chunkAwareListeners.length);
+        }
+        dispatch(otherListeners, event, checkpointTracker);
+        if (chunkAwareListeners.length == 0) {
+            return;
+        }
+        dispatch(chunkAwareListeners, new TXBeginReplicationEvent(), null);
+        List<ReplicationEvent> chunk = new ArrayList<ReplicationEvent>(chunkSize);
+        for (ReplicationEvent txEvent : event.getEvents()) {
+            chunk.add(txEvent);
+            if (chunk.size() == chunkSize) {
+                dispatch(chunkAwareListeners, new TXChunkReplicationEvent(chunk), null);
+                chunk = new ArrayList<ReplicationEvent>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            dispatch(chunkAwareListeners, new TXChunkReplicationEvent(chunk), null);
+        }
+        dispatch(chunkAwareListeners, commitEvent, checkpointTracker);
+    }
+
+    /**
+     * @param checkpointTracker tracker to notify once event is delivered, null if event is not tracked
+     */
+    private void dispatch(ReplicationEventListener[] recipients, ReplicationEvent event,
+            CheckpointTracker checkpointTracker) {
+        for (ReplicationEventListener listener : recipients) {
+            // decorators notify tracker on their own (unless they fail to accept the event)
+            if ((!deliver(listener, event) || !decorators.contains(listener)) && checkpointTracker != null) {
+                checkpointTracker.delivered(event);
+            }
+        }
+    }
+
+    private boolean deliver(ReplicationEventListener listener, ReplicationEvent event) {
+        try {
+            listener.onEvent(event);
+            return true;
+        } catch (Exception e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn(listener + " choked on " + event, e);
+            }
+            ReplicationEventExceptionHandler exceptionHandler = this.exceptionHandler;
+            if (exceptionHandler != null) {
+                exceptionHandler.handle(e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Records position which can be checkpointed once everything dispatched so far is delivered.
+     */
+    public void markCheckpoint(BinlogPosition position) {
+        CheckpointTracker checkpointTracker = this.checkpointTracker;
+        if (checkpointTracker != null) {
+            checkpointTracker.mark(position);
+        }
+    }
+
+    /**
+     * @return positions of the columns at least one of the listeners needs, null if all of them
+     */
+    public BitSet resolveProjection(String schema, String table, List<String> columnNames) {
+        BitSet result = new BitSet();
+        synchronized (listeners) {
+            if (listeners.isEmpty()) {
+                return null;
+            }
+            for (ReplicationEventListener listener : listeners) {
+                ReplicationEventListener target = undecorate(listener);
+                int[] columns = target instanceof ColumnProjection ?
+                    ((ColumnProjection) target).getProjection(schema, table, columnNames) : null;
+                if (columns == null) {
+                    return null;
+                }
+                for (int column : columns) {
+                    result.set(column);
+                }
+            }
+        }
+        return result;
+    }
+}
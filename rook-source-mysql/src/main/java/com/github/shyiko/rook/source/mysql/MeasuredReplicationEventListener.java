@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+
+/**
+ * {@link ReplicationEventListener} decorator which records latency (and outcome) of each delegate invocation.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class MeasuredReplicationEventListener implements ReplicationEventListener {
+
+    private final ReplicationEventListener listener;
+    private final ListenerMetrics metrics;
+
+    MeasuredReplicationEventListener(ReplicationEventListener listener, ListenerMetrics metrics) {
+        this.listener = listener;
+        this.metrics = metrics;
+    }
+
+    public ReplicationEventListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void onEvent(ReplicationEvent event) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            listener.onEvent(event);
+            failed = false;
+        } finally {
+            metrics.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return listener.toString();
+    }
+}
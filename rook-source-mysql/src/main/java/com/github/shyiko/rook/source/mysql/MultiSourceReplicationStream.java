@@ -0,0 +1,439 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ColumnProjection;
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.ReplicationStream;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link ReplicationStream} multiplexing any number of {@link MySQLReplicationStream}s (e.g. shards), e.g.
+ * <pre>
+ * MultiSourceReplicationStream stream = new MultiSourceReplicationStream();
+ * for (int i = 0; i &lt; 64; i++) {
+ *     MySQLReplicationStream shard = new MySQLReplicationStream("shard" + i, 3306, "rook", "secret");
+ *     shard.setCheckpointStore(new JdbcCheckpointStore(dataSource, "shard" + i));
+ *     stream.addSource("shard" + i, shard);
+ * }
+ * stream.registerListener(new SecondLevelCacheSynchronizer(...));
+ * stream.connect();
+ * </pre>
+ * Listeners are registered once (with this stream) and receive events of all the sources from a shared pool of
+ * dispatch threads (each source is pinned to one of them, so that events of the same source are delivered in
+ * order). Listeners implementing {@link SourceAwareReplicationEventListener} are told which source event came
+ * from. Keep in mind that (unless there is just one dispatch thread) the same listener is called concurrently for
+ * the events of the sources pinned to different threads, so listeners must be thread-safe. Each source keeps its
+ * own checkpoint (position is saved once event is delivered to all the listeners), filters and the rest of the
+ * settings (dispatch settings (async, partitioned, etc.) of the sources do not apply).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class MultiSourceReplicationStream implements ReplicationStream {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final long DEFAULT_CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, SourceListener> sources = new LinkedHashMap<String, SourceListener>();
+    private final List<ReplicationEventListener> listeners = new CopyOnWriteArrayList<ReplicationEventListener>();
+    private final Dispatcher[] dispatchers;
+    private volatile ReplicationEventExceptionHandler exceptionHandler;
+    private volatile long connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    public MultiSourceReplicationStream() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param numberOfDispatchThreads number of threads delivering events to the listeners
+     * @param queueCapacity maximum number of events waiting for delivery (per dispatch thread), source is held up
+     * (until there is a free slot) once this limit is reached
+     */
+    public MultiSourceReplicationStream(int numberOfDispatchThreads, int queueCapacity) {
+        if (numberOfDispatchThreads < 1) {
+            throw new IllegalArgumentException("Number of dispatch threads must be greater than 0");
+        }
+        this.dispatchers = new Dispatcher[numberOfDispatchThreads];
+        for (int i = 0; i < dispatchers.length; i++) {
+            dispatchers[i] = new Dispatcher(i, queueCapacity);
+        }
+    }
+
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    /**
+     * @param connectTimeout maximum amount of time {@link #connect()} waits for each source to connect.
+     * {@link #DEFAULT_CONNECT_TIMEOUT} by default
+     */
+    public void setConnectTimeout(long connectTimeout, TimeUnit unit) {
+        this.connectTimeout = unit.toMillis(connectTimeout);
+    }
+
+    /**
+     * @param name unique name of the source (passed to {@link SourceAwareReplicationEventListener}s)
+     * @param stream source stream (listeners are not supposed to be registered with it directly)
+     */
+    public synchronized void addSource(String name, MySQLReplicationStream stream) {
+        if (sources.containsKey(name)) {
+            throw new IllegalArgumentException("Source " + name + " already exists");
+        }
+        SourceListener sourceListener = new SourceListener(name, stream,
+            dispatchers[sources.size() % dispatchers.length]);
+        stream.attachListener(sourceListener);
+        sources.put(name, sourceListener);
+    }
+
+    /**
+     * @return source stream, null if there was no source with such name
+     */
+    public synchronized MySQLReplicationStream removeSource(String name) {
+        SourceListener sourceListener = sources.remove(name);
+        if (sourceListener == null) {
+            return null;
+        }
+        sourceListener.stream.unregisterListener(sourceListener);
+        return sourceListener.stream;
+    }
+
+    public synchronized Set<String> getSources() {
+        return Collections.unmodifiableSet(new LinkedHashSet<String>(sources.keySet()));
+    }
+
+    /**
+     * Connects all the sources (each one gets a thread of its own, unless sources share
+     * {@link BinlogEventLoopGroup}). If any of them fails to connect, the ones connected so far are disconnected.
+     */
+    @Override
+    public void connect() throws IOException {
+        try {
+            connect(connectTimeout);
+        } catch (TimeoutException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param timeoutInMilliseconds maximum amount of time to wait for each source to connect
+     */
+    @Override
+    public synchronized void connect(long timeoutInMilliseconds) throws IOException, TimeoutException {
+        List<MySQLReplicationStream> connectedStreams = new ArrayList<MySQLReplicationStream>();
+        try {
+            for (Map.Entry<String, SourceListener> entry : sources.entrySet()) {
+                MySQLReplicationStream stream = entry.getValue().stream;
+                if (!stream.isConnected()) {
+                    if (logger.isInfoEnabled()) {
+                        logger.info("Connecting to " + entry.getKey());
+                    }
+                    stream.connect(timeoutInMilliseconds);
+                    connectedStreams.add(stream);
+                }
+            }
+            connectedStreams.clear();
+        } finally {
+            for (MySQLReplicationStream stream : connectedStreams) {
+                try {
+                    stream.disconnect();
+                } catch (IOException e) {
+                    if (logger.isWarnEnabled()) {
+                        logger.warn("Failed to disconnect " + stream, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if all the sources are connected, false otherwise
+     */
+    @Override
+    public synchronized boolean isConnected() {
+        for (SourceListener sourceListener : sources.values()) {
+            if (!sourceListener.stream.isConnected()) {
+                return false;
+            }
+        }
+        return !sources.isEmpty();
+    }
+
+    /**
+     * Listener is shared by all the sources, meaning that it receives events from all the dispatch threads at once
+     * (has to be thread-safe).
+     */
+    @Override
+    public void registerListener(ReplicationEventListener listener) {
+        listeners.add(listener);
+        invalidateTableResolution();
+    }
+
+    @Override
+    public void unregisterListener(ReplicationEventListener listener) {
+        listeners.remove(listener);
+        invalidateTableResolution();
+    }
+
+    @Override
+    public void unregisterListener(Class<? extends ReplicationEventListener> listenerClass) {
+        for (ReplicationEventListener listener : listeners) {
+            if (listenerClass.isInstance(listener)) {
+                listeners.remove(listener);
+            }
+        }
+        invalidateTableResolution();
+    }
+
+    private synchronized void invalidateTableResolution() {
+        for (SourceListener sourceListener : sources.values()) {
+            sourceListener.stream.invalidateTableResolution();
+        }
+    }
+
+    /**
+     * Disconnects all the sources, stops dispatch threads (once everything received so far is delivered) and
+     * flushes checkpoints of the sources.
+     */
+    @Override
+    public synchronized void disconnect() throws IOException {
+        IOException exception = null;
+        // sources go first (otherwise they would keep feeding dispatch threads)
+        for (SourceListener sourceListener : sources.values()) {
+            try {
+                sourceListener.stream.disconnect();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        for (Dispatcher dispatcher : dispatchers) {
+            dispatcher.shutdown();
+        }
+        // source flushes its checkpoint on disconnect, but positions of the events drained from the dispatch
+        // queues are saved only afterwards
+        for (SourceListener sourceListener : sources.values()) {
+            DispatchingReplicationEventListener.DeliveryCallback deliveryCallback = sourceListener.deliveryCallback;
+            if (deliveryCallback instanceof CheckpointTracker) {
+                ((CheckpointTracker) deliveryCallback).flush();
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * @return positions of the columns at least one of the listeners needs, null if all of them
+     */
+    private int[] resolveProjection(String schema, String table, List<String> columnNames) {
+        BitSet columns = new BitSet();
+        for (ReplicationEventListener listener : listeners) {
+            int[] projection = listener instanceof ColumnProjection ?
+                ((ColumnProjection) listener).getProjection(schema, table, columnNames) : null;
+            if (projection == null) {
+                return null;
+            }
+            for (int column : projection) {
+                columns.set(column);
+            }
+        }
+        int[] result = new int[columns.cardinality()];
+        for (int i = columns.nextSetBit(0), index = 0; i >= 0; i = columns.nextSetBit(i + 1)) {
+            result[index++] = i;
+        }
+        return result;
+    }
+
+    private void deliver(SourceListener source, ReplicationEvent event) {
+        for (ReplicationEventListener listener : listeners) {
+            try {
+                if (listener instanceof SourceAwareReplicationEventListener) {
+                    ((SourceAwareReplicationEventListener) listener).onEvent(source.name, event);
+                } else {
+                    listener.onEvent(event);
+                }
+            } catch (Exception e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(listener + " choked on " + event + " (coming from " + source.name + ")", e);
+                }
+                ReplicationEventExceptionHandler exceptionHandler = this.exceptionHandler;
+                if (exceptionHandler != null) {
+                    exceptionHandler.handle(e);
+                }
+            }
+        }
+        DispatchingReplicationEventListener.DeliveryCallback deliveryCallback = source.deliveryCallback;
+        if (deliveryCallback != null) {
+            deliveryCallback.delivered(event);
+        }
+    }
+
+    /**
+     * Listener attached to the source stream.
+     */
+    private final class SourceListener implements DispatchingReplicationEventListener, ColumnProjection {
+
+        private final String name;
+        private final MySQLReplicationStream stream;
+        private final Dispatcher dispatcher;
+        private volatile DeliveryCallback deliveryCallback;
+
+        private SourceListener(String name, MySQLReplicationStream stream, Dispatcher dispatcher) {
+            this.name = name;
+            this.stream = stream;
+            this.dispatcher = dispatcher;
+        }
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+            dispatcher.enqueue(new Dispatch(this, event));
+        }
+
+        @Override
+        public int[] getProjection(String schema, String table, List<String> columnNames) {
+            return resolveProjection(schema, table, columnNames);
+        }
+
+        @Override
+        public ReplicationEventListener getListener() {
+            return this;
+        }
+
+        @Override
+        public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+            // see MultiSourceReplicationStream#setExceptionHandler
+        }
+
+        @Override
+        public void setDeliveryCallback(DeliveryCallback deliveryCallback) {
+            this.deliveryCallback = deliveryCallback;
+        }
+
+        @Override
+        public void shutdown() {
+            // dispatch threads are shared (and so stopped by MultiSourceReplicationStream#disconnect)
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "MultiSourceReplicationStream.Source{name=" + name + '}';
+        }
+    }
+
+    private static final class Dispatch {
+
+        private static final Dispatch SHUTDOWN_MARKER = new Dispatch(null, null);
+
+        private final SourceListener source;
+        private final ReplicationEvent event;
+
+        private Dispatch(SourceListener source, ReplicationEvent event) {
+            this.source = source;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Dispatch thread (started lazily, on the first event) along with its queue.
+     */
+    private final class Dispatcher implements Runnable {
+
+        private final int index;
+        private final EventQueue<Dispatch> queue;
+        private volatile Thread thread;
+
+        private Dispatcher(int index, int queueCapacity) {
+            this.index = index;
+            this.queue = new EventQueue<Dispatch>(queueCapacity, WaitStrategy.BLOCKING);
+        }
+
+        public void enqueue(Dispatch dispatch) {
+            if (thread == null) {
+                start();
+            }
+            try {
+                queue.put(dispatch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a free slot in the queue of " +
+                    "dispatch thread #" + index, e);
+            }
+        }
+
+        private synchronized void start() {
+            if (thread != null) {
+                return;
+            }
+            thread = new Thread(this, "rook-multi-source-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Dispatch dispatch;
+                try {
+                    dispatch = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (dispatch == Dispatch.SHUTDOWN_MARKER) {
+                    return;
+                }
+                deliver(dispatch.source, dispatch.event);
+            }
+        }
+
+        /**
+         * Stops dispatch thread once everything queued so far is delivered (and waits for it to terminate).
+         */
+        public synchronized void shutdown() {
+            if (thread == null) {
+                return;
+            }
+            try {
+                queue.put(Dispatch.SHUTDOWN_MARKER);
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+}
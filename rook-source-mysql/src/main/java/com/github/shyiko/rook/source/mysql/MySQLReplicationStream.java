@@ -18,11 +18,17 @@ package com.github.shyiko.rook.source.mysql;
 import com.github.shyiko.mysql.binlog.BinaryLogClient;
 import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
 import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventHeader;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
 import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.GtidEventData;
 import com.github.shyiko.mysql.binlog.event.QueryEventData;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
 import com.github.shyiko.mysql.binlog.event.TableMapEventData;
 import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
 import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventConsumer;
 import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
 import com.github.shyiko.rook.api.ReplicationEventListener;
 import com.github.shyiko.rook.api.ReplicationStream;
@@ -35,16 +41,15 @@ import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
@@ -53,20 +58,33 @@ public class MySQLReplicationStream implements ReplicationStream {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final String hostname;
-    private final int port;
+    private String hostname;
+    private int port;
     private final String username;
     private final String password;
 
     private BinaryLogClient binaryLogClient;
+    private NioBinaryLogClient nioBinaryLogClient;
+    private volatile BinlogEventLoopGroup eventLoopGroup;
 
-    private final List<ReplicationEventListener> listeners = new LinkedList<ReplicationEventListener>();
-    private ReplicationEventExceptionHandler exceptionHandler;
+    public static final int DEFAULT_MAX_TRANSACTION_SIZE = 1024 * 1024;
 
     private volatile boolean groupEventsByTX = true;
+    private volatile long transactionSpillThreshold;
+    private volatile File transactionSpillDirectory;
+    private volatile int maxTransactionSize = DEFAULT_MAX_TRANSACTION_SIZE;
+    private volatile int transactionChunkSize;
+    private volatile boolean lowGarbageMode;
 
     private Set<Long> ignoredServerIds = new HashSet<Long>();
     private Set<String> ignoredTables = new HashSet<String>();
+    private volatile TableFilter tableFilter = TableFilter.ACCEPT_ALL;
+    private volatile SchemaRegistry schemaRegistry;
+    // executed GTID set (null unless GTID-based positioning is on), access is synchronized on the set itself
+    private volatile GtidSet gtidSet;
+    // incremented each time something per-table decisions (filtering, projection) depend on is changed
+    private final AtomicInteger tableResolutionVersion = new AtomicInteger();
+    private final ListenerRegistry listenerRegistry = new ListenerRegistry(tableResolutionVersion);
 
     public MySQLReplicationStream(String username, String password) {
         this("localhost", 3306, username, password);
@@ -83,71 +101,430 @@ public class MySQLReplicationStream implements ReplicationStream {
         this.groupEventsByTX = groupEventsByTX;
     }
 
+    /**
+     * @param spillThreshold size (in bytes of the binlog events) of the transaction after which its events are moved
+     * from heap to a memory-mapped temporary file (and decoded back one by one as
+     * {@link TXReplicationEvent#getEvents()} is iterated over). 0 (never spill) by default. Applies only when
+     * events are grouped by transaction. Takes effect on the next connect.
+     */
+    public void setTransactionSpillThreshold(long spillThreshold) {
+        this.transactionSpillThreshold = spillThreshold;
+    }
+
+    /**
+     * @param spillDirectory directory to create spill files in. Default temporary-file directory if null
+     * (which is the default). Takes effect on the next connect.
+     */
+    public void setTransactionSpillDirectory(File spillDirectory) {
+        this.transactionSpillDirectory = spillDirectory;
+    }
+
+    /**
+     * Safety cap for transactions which never end with XID/COMMIT (e.g. because of a non-transactional engine
+     * or a missed event). Once reached, events buffered so far are delivered as a (partial) transaction.
+     * @param maxTransactionSize maximum number of events per transaction. {@value #DEFAULT_MAX_TRANSACTION_SIZE}
+     * by default
+     */
+    public void setMaxTransactionSize(int maxTransactionSize) {
+        if (maxTransactionSize < 1) {
+            throw new IllegalArgumentException("Max transaction size must be greater than 0");
+        }
+        this.maxTransactionSize = maxTransactionSize;
+    }
+
+    /**
+     * When enabled, transactions consisting of more than chunkSize events are delivered to listeners implementing
+     * {@link com.github.shyiko.rook.api.TXChunkAware} as
+     * {@link com.github.shyiko.rook.api.event.TXBeginReplicationEvent},
+     * {@link com.github.shyiko.rook.api.event.TXChunkReplicationEvent}(s) (of at most chunkSize events each) and
+     * {@link com.github.shyiko.rook.api.event.TXCommitReplicationEvent}, which (combined with
+     * {@link #setTransactionSpillThreshold(long)}) keeps memory needed to process a transaction bounded.
+     * All other listeners keep receiving {@link TXReplicationEvent}s. Disabled by default.
+     * @param chunkSize maximum number of events per chunk (0 to disable chunked delivery)
+     */
+    public void setTransactionChunkSize(int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("Chunk size cannot be negative");
+        }
+        this.transactionChunkSize = chunkSize;
+    }
+
+    /**
+     * When enabled, {@link RowsMutationReplicationEvent}s (along with their row lists) are taken from a pool and
+     * reused once the transaction (or standalone event) they belong to is delivered. Listeners must not hold on to
+     * the events (or their rows) past {@link ReplicationEventListener#onEvent(ReplicationEvent)} (use
+     * {@link RowsMutationReplicationEvent#copy()}/{@link TXReplicationEvent#copy()} if that's needed). Objects are
+     * recycled only while events are delivered synchronously (that is, as long as none of the async/partitioned/
+     * batched/writeset dispatch modes is enabled and there are no consumers or multi-source streams attached),
+     * otherwise pool is bypassed (with a warning each time that happens). Disabled by default. Takes effect on the
+     * next connect.
+     * <p>
+     * Keep in mind that this is a marginal optimisation. Row arrays and column values are still allocated for each
+     * row, which leaves savings at about 8% of the bytes allocated per row (see LowGarbageModeBenchmark in
+     * rook-benchmarks). Measure before turning it on.
+     */
+    public void setLowGarbageMode(boolean lowGarbageMode) {
+        this.lowGarbageMode = lowGarbageMode;
+    }
+
     public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
-        this.exceptionHandler = exceptionHandler;
+        listenerRegistry.setExceptionHandler(exceptionHandler);
+    }
+
+    /**
+     * When enabled, each listener gets its own bounded queue and a thread delivering events from it (see
+     * {@link AsyncReplicationEventListener}). As a result, binary log reader never waits for listeners
+     * (unless one of the queues is full and {@link OverflowPolicy#BLOCK} is in effect) and a slow listener
+     * does not hold up the others. Applies to already registered listeners too. Disabled by default.
+     */
+    public void setAsyncDispatch(boolean asyncDispatch) {
+        listenerRegistry.setAsyncDispatch(asyncDispatch);
+    }
+
+    /**
+     * @param queueCapacity maximum number of events waiting to be delivered to the listener (in
+     * async dispatch mode). Takes effect for listeners registered afterwards. {@value
+     * AsyncReplicationEventListener#DEFAULT_QUEUE_CAPACITY} by default
+     */
+    public void setAsyncDispatchQueueCapacity(int queueCapacity) {
+        listenerRegistry.setAsyncDispatchQueueCapacity(queueCapacity);
+    }
+
+    /**
+     * @param waitStrategy wait strategy to use in async dispatch mode. Takes effect for listeners registered
+     * afterwards. {@link WaitStrategy#BLOCKING} by default
+     */
+    public void setAsyncDispatchWaitStrategy(WaitStrategy waitStrategy) {
+        listenerRegistry.setAsyncDispatchWaitStrategy(waitStrategy);
+    }
+
+    /**
+     * @param overflowPolicy what to do when listener's queue is full (in async dispatch mode). Takes effect for
+     * listeners registered afterwards. {@link OverflowPolicy#BLOCK} by default
+     */
+    public void setAsyncDispatchOverflowPolicy(OverflowPolicy overflowPolicy) {
+        listenerRegistry.setAsyncDispatchOverflowPolicy(overflowPolicy);
+    }
+
+    /**
+     * When enabled, each listener receives rows through the specified number of lanes (see
+     * {@link PartitionedReplicationEventListener}), which means that listeners must be thread-safe.
+     * Takes precedence over {@link #setAsyncDispatch(boolean)}. Applies to already registered listeners too.
+     * Disabled by default.
+     * @param numberOfLanes number of lanes (0 to disable partitioned dispatch)
+     * @param partitioner partitioner used to determine the lane ({@link TablePartitioner} if null)
+     * @param txBoundaryBarrier true if lanes need to be synchronized on transaction boundaries, false otherwise
+     */
+    public void setPartitionedDispatch(int numberOfLanes, ReplicationEventPartitioner partitioner,
+            boolean txBoundaryBarrier) {
+        listenerRegistry.setPartitionedDispatch(numberOfLanes, partitioner, txBoundaryBarrier);
+    }
+
+    /**
+     * When enabled, non-conflicting transactions (those not touching the same rows) are delivered to each
+     * listener in parallel by the specified number of workers (see {@link WritesetReplicationEventListener}),
+     * which means that listeners must be thread-safe. Takes precedence over both
+     * {@link #setPartitionedDispatch(int, ReplicationEventPartitioner, boolean)} and
+     * {@link #setAsyncDispatch(boolean)}. Applies to already registered listeners too. Disabled by default.
+     * @param numberOfWorkers number of workers (0 to disable writeset-based dispatch)
+     * @param partitioner partitioner used to hash rows, normally {@link PrimaryKeyPartitioner} (required unless
+     * writeset-based dispatch is being disabled; there is no implicit fallback to {@link TablePartitioner}, as with
+     * it any two transactions touching the same table conflict, which defeats the purpose)
+     * @throws IllegalArgumentException if numberOfWorkers is greater than 0 and partitioner is null
+     */
+    public void setWritesetDispatch(int numberOfWorkers, ReplicationEventPartitioner partitioner) {
+        if (numberOfWorkers > 0 && partitioner == null) {
+            throw new IllegalArgumentException("Writeset-based dispatch requires row-level partitioner " +
+                "(e.g. PrimaryKeyPartitioner)");
+        }
+        listenerRegistry.setWritesetDispatch(numberOfWorkers, partitioner);
+    }
+
+    /**
+     * When set, position of the last fully delivered event is saved to the store (position is considered safe
+     * to save only when all events preceding it are processed by all the listeners, including the ones in
+     * async/partitioned/writeset dispatch mode) and replication is resumed from the saved position on connect.
+     * This gives at-least-once delivery guarantee (events between last saved position and the point of failure
+     * are replayed). Not set by default (replication starts from the current position of the master).
+     * @see FileCheckpointStore
+     * @see JdbcCheckpointStore
+     */
+    public void setCheckpointStore(CheckpointStore checkpointStore) {
+        listenerRegistry.setCheckpointStore(checkpointStore);
+    }
+
+    /**
+     * When enabled, consecutive transactions are merged into batches (see
+     * {@link BatchingReplicationEventListener}) and delivered to each listener by a thread of its own.
+     * Takes precedence over {@link #setAsyncDispatch(boolean)} (but not over partitioned or writeset-based
+     * dispatch). Applies to already registered listeners too. Disabled by default.
+     * @param maxTransactions maximum number of transactions per batch (0 to disable batching)
+     * @param maxRows maximum number of rows per batch
+     * @param maxLatency maximum amount of time transaction can wait for the batch to close (upper bound of
+     * adaptive batching window)
+     */
+    public void setBatchedDispatch(int maxTransactions, int maxRows, long maxLatency, TimeUnit unit) {
+        listenerRegistry.setBatchedDispatch(maxTransactions, maxRows, maxLatency, unit);
     }
 
     public void setIgnoredHostsIds(Set<Long> ignoredServerIds) {
         this.ignoredServerIds = ignoredServerIds;
     }
 
+    /**
+     * @deprecated use {@link #setTableFilter(TableFilter)} instead (e.g. exclude rule "table" is equivalent to
+     * ignored "table")
+     */
+    @Deprecated
     public void setIgnoredTables(Set<String> ignoredTables) {
         this.ignoredTables = ignoredTables;
+        tableResolutionVersion.incrementAndGet();
+    }
+
+    /**
+     * Filter is resolved once per table id (when TABLE_MAP event arrives) and so row events of filtered out tables
+     * are discarded before any {@link ReplicationEvent} is created. Takes effect starting from the next TABLE_MAP
+     * event. Accepts all tables by default.
+     */
+    public void setTableFilter(TableFilter tableFilter) {
+        this.tableFilter = tableFilter == null ? TableFilter.ACCEPT_ALL : tableFilter;
+        tableResolutionVersion.incrementAndGet();
+    }
+
+    /**
+     * Registry used to resolve column names of the tables TABLE_MAP events of which don't carry them (by default,
+     * column names are reported only when MySQL 8.0.1+ is configured with binlog_row_metadata=FULL).
+     * Registry is notified about CREATE/ALTER/RENAME/DROP TABLE statements (so that it stays in sync with the schema
+     * without stream being restarted). Takes effect starting from the next TABLE_MAP event. None by default.
+     * <p>
+     * Registry is asked to prefetch column names right away. Tables column names of which were not resolved within
+     * registry's lookup timeout are reported without column names until the lookup completes (see
+     * {@link SchemaRegistry#setLookupTimeout(long)}).
+     */
+    public void setSchemaRegistry(SchemaRegistry schemaRegistry) {
+        if (schemaRegistry != null) {
+            schemaRegistry.prefetch();
+        }
+        this.schemaRegistry = schemaRegistry;
+        tableResolutionVersion.incrementAndGet();
+    }
+
+    /**
+     * @param metrics metrics to record lag, throughput (overall and per table), transaction queue depth and
+     * per-listener latency to, null to stop recording. Applies to already registered listeners too. None by default.
+     */
+    public void setMetrics(ReplicationMetrics metrics) {
+        listenerRegistry.setMetrics(metrics);
+    }
+
+    /**
+     * @param eventLoopGroup event loops binlog connection is going to be served by (instead of a thread of its own),
+     * null to use blocking {@link BinaryLogClient}. In the former case {@link #connect()} returns as soon as
+     * replication is started, connection is re-established automatically (until {@link #disconnect()}) and
+     * {@link #configureBinaryLogClient(BinaryLogClient)} is not called. Listeners (the synchronous ones) are called
+     * by the decoding threads of the group (see {@link BinlogEventLoopGroup} on what happens if they block). Takes
+     * effect on the next {@link #connect()}. None by default.
+     */
+    public void setEventLoopGroup(BinlogEventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    /**
+     * Turns GTID-based positioning on. Executed GTID set is tracked as transactions go by (and exposed through
+     * {@link GtidTXReplicationEvent}s, {@link BinlogPosition#getGtidSet()} of the checkpoints and
+     * {@link #getGtidSet()}), replication is (re)started from it instead of binlog filename/offset and, as a result,
+     * can be resumed on any server of the topology (see {@link #failover(String, int)}). Checkpointed GTID set (if
+     * any) takes precedence over the one given here. Requires {@link #setEventLoopGroup(BinlogEventLoopGroup)}.
+     * Takes effect on the next {@link #connect()}. Off by default.
+     * @param gtidSet GTID set to start from (e.g. @@global.gtid_executed of the master to skip everything it has
+     * already executed, "" to get all the transactions master still has in its binary logs), null to turn GTID-based
+     * positioning off
+     */
+    public synchronized void setGtidSet(String gtidSet) {
+        this.gtidSet = gtidSet == null ? null : new GtidSet(gtidSet);
+    }
+
+    /**
+     * @return executed GTID set (as of the last transaction read from the binary log), null if GTID-based positioning
+     * is off
+     */
+    public String getGtidSet() {
+        GtidSet gtidSet = this.gtidSet;
+        if (gtidSet == null) {
+            return null;
+        }
+        synchronized (gtidSet) {
+            return gtidSet.toString();
+        }
+    }
+
+    /**
+     * Reconnects to another server of the topology (e.g. newly promoted master) resuming from the executed GTID set
+     * (or the checkpointed one, if checkpoint store is set).
+     * @throws IllegalStateException if GTID-based positioning is off (see {@link #setGtidSet(String)})
+     */
+    public void failover(String hostname, int port) throws IOException {
+        synchronized (this) {
+            if (gtidSet == null) {
+                throw new IllegalStateException("Failover requires GTID-based positioning to be on");
+            }
+            disconnect();
+            if (logger.isInfoEnabled()) {
+                logger.info("Failing over from " + this.hostname + ":" + this.port + " to " + hostname + ":" + port);
+            }
+            this.hostname = hostname;
+            this.port = port;
+        }
+        connect();
     }
 
     @Override
     public void connect() throws IOException {
-        allocateBinaryLogClient().connect();
+        BinlogEventLoopGroup eventLoopGroup = this.eventLoopGroup;
+        if (eventLoopGroup != null) {
+            allocateNioBinaryLogClient(eventLoopGroup).connect();
+        } else {
+            allocateBinaryLogClient().connect();
+        }
     }
 
     @Override
     public void connect(long timeoutInMilliseconds) throws IOException, TimeoutException {
-        allocateBinaryLogClient().connect(timeoutInMilliseconds);
+        BinlogEventLoopGroup eventLoopGroup = this.eventLoopGroup;
+        if (eventLoopGroup != null) {
+            allocateNioBinaryLogClient(eventLoopGroup).connect(timeoutInMilliseconds);
+        } else {
+            allocateBinaryLogClient().connect(timeoutInMilliseconds);
+        }
     }
 
-    private synchronized BinaryLogClient allocateBinaryLogClient() {
+    private synchronized BinaryLogClient allocateBinaryLogClient() throws IOException {
         if (isConnected()) {
             throw new IllegalStateException("MySQL replication stream is already open");
         }
+        if (gtidSet != null) {
+            // BinaryLogClient (as of 0.2.2) neither parses nor encodes GTID sets the way MySQL does
+            throw new IllegalStateException("GTID-based positioning requires event loop group " +
+                "(see setEventLoopGroup(BinlogEventLoopGroup))");
+        }
         binaryLogClient = new BinaryLogClient(hostname, port, username, password);
-        binaryLogClient.registerEventListener(new DelegatingEventListener());
+        BinlogPosition binlogPosition = loadCheckpoint();
+        if (binlogPosition != null) {
+            binaryLogClient.setBinlogFilename(binlogPosition.getFilename());
+            binaryLogClient.setBinlogPosition(binlogPosition.getPosition());
+        }
+        DelegatingEventListener eventListener = createEventListener();
+        binaryLogClient.setEventDeserializer(eventListener.eventDeserializer);
+        binaryLogClient.registerEventListener(eventListener);
         configureBinaryLogClient(binaryLogClient);
         return binaryLogClient;
     }
 
+    private synchronized NioBinaryLogClient allocateNioBinaryLogClient(BinlogEventLoopGroup eventLoopGroup)
+            throws IOException {
+        if (isConnected()) {
+            throw new IllegalStateException("MySQL replication stream is already open");
+        }
+        if (nioBinaryLogClient != null) {
+            nioBinaryLogClient.disconnect(); // might still be trying to reconnect
+        }
+        nioBinaryLogClient = new NioBinaryLogClient(eventLoopGroup, hostname, port, username, password);
+        BinlogPosition binlogPosition = loadCheckpoint();
+        if (gtidSet != null) {
+            if (binlogPosition != null && binlogPosition.getGtidSet() != null) {
+                gtidSet = new GtidSet(binlogPosition.getGtidSet());
+            }
+            nioBinaryLogClient.setGtidSet(gtidSet);
+        } else
+        if (binlogPosition != null) {
+            nioBinaryLogClient.setBinlogFilename(binlogPosition.getFilename());
+            nioBinaryLogClient.setBinlogPosition(binlogPosition.getPosition());
+        }
+        DelegatingEventListener eventListener = createEventListener();
+        nioBinaryLogClient.setEventDeserializer(eventListener.eventDeserializer);
+        nioBinaryLogClient.setEventListener(eventListener);
+        return nioBinaryLogClient;
+    }
+
+    /**
+     * @return checkpointed position, null if there is none (or checkpoint store is not set)
+     */
+    BinlogPosition loadCheckpoint() throws IOException {
+        CheckpointTracker checkpointTracker = listenerRegistry.getCheckpointTracker();
+        if (checkpointTracker == null) {
+            return null;
+        }
+        BinlogPosition binlogPosition = checkpointTracker.getCheckpointStore().load();
+        if (binlogPosition != null && logger.isInfoEnabled()) {
+            logger.info("Resuming replication from " + binlogPosition);
+        }
+        return binlogPosition;
+    }
+
+    DelegatingEventListener createEventListener() {
+        // rows of filtered out tables are skipped without being decoded
+        TableFilteringEventDeserializer eventDeserializer = new TableFilteringEventDeserializer();
+        ReplicationEventPool eventPool = lowGarbageMode ? new ReplicationEventPool() : null;
+        eventDeserializer.setEventPool(eventPool);
+        return new DelegatingEventListener(eventDeserializer, eventPool, gtidSet);
+    }
+
     protected void configureBinaryLogClient(BinaryLogClient binaryLogClient) {
         // template method
     }
 
     @Override
     public synchronized boolean isConnected() {
-        return binaryLogClient != null && binaryLogClient.isConnected();
+        return binaryLogClient != null && binaryLogClient.isConnected() ||
+            nioBinaryLogClient != null && nioBinaryLogClient.isConnected();
     }
 
+    /**
+     * Listeners implementing {@link com.github.shyiko.rook.api.ColumnProjection} get rows with only projected columns
+     * decoded (values of the other columns are null) provided that all registered listeners implement it (projection
+     * is a union of individual projections).
+     */
     @Override
     public void registerListener(ReplicationEventListener listener) {
-        synchronized (listeners) {
-            listeners.add(listener);
-        }
+        listenerRegistry.register(listener);
+    }
+
+    /**
+     * @param capacity maximum number of events buffered for the consumer (rounded up to the nearest power of two)
+     * @return consumer which gets the same events as registered listeners do but only when it polls for them (see
+     * {@link ReplicationEventConsumer}). Dispatch settings (async, partitioned, etc.) do not apply to consumers.
+     * Consumer is unregistered on {@link ReplicationEventConsumer#close()}
+     */
+    public ReplicationEventConsumer createConsumer(int capacity) {
+        BufferingReplicationEventConsumer consumer = new BufferingReplicationEventConsumer(this, capacity);
+        attachListener(consumer);
+        return consumer;
+    }
+
+    /**
+     * Registers listener which dispatches events on its own (meaning that it's exempt from dispatch settings and
+     * reports deliveries to the checkpoint tracker by itself). Listener's {@link
+     * DispatchingReplicationEventListener#getListener()} is expected to return the listener itself.
+     */
+    void attachListener(DispatchingReplicationEventListener listener) {
+        listenerRegistry.attach(listener);
+    }
+
+    /**
+     * Makes filter & projection get re-resolved starting from the next TABLE_MAP event (e.g. because projection of
+     * the attached listener has changed).
+     */
+    void invalidateTableResolution() {
+        tableResolutionVersion.incrementAndGet();
     }
 
     @Override
     public void unregisterListener(ReplicationEventListener listener) {
-        synchronized (listeners) {
-            listeners.remove(listener);
-        }
+        listenerRegistry.unregister(listener);
     }
 
     public void unregisterListener(Class<? extends ReplicationEventListener> listenerClass) {
-        synchronized (listeners) {
-            Iterator<ReplicationEventListener> iterator = listeners.iterator();
-            while (iterator.hasNext()) {
-                ReplicationEventListener replicationListener = iterator.next();
-                if (listenerClass.isInstance(replicationListener)) {
-                    iterator.remove();
-                }
-            }
-        }
+        listenerRegistry.unregister(listenerClass);
     }
 
     @Override
@@ -156,65 +533,73 @@ public class MySQLReplicationStream implements ReplicationStream {
             binaryLogClient.disconnect();
             binaryLogClient = null;
         }
-    }
-
-    private void notifyListeners(ReplicationEvent event) {
-        if ((event = filterEvent(event)) == null) {
-            return;
+        if (nioBinaryLogClient != null) {
+            nioBinaryLogClient.disconnect();
+            nioBinaryLogClient = null;
         }
-        synchronized (listeners) {
-            for (ReplicationEventListener listener : listeners) {
-                try {
-                    listener.onEvent(event);
-                } catch (Exception e) {
-                    if (logger.isWarnEnabled()) {
-                        logger.warn(listener + " choked on " + event, e);
-                    }
-                    if (exceptionHandler != null) {
-                        exceptionHandler.handle(e);
-                    }
-                }
-            }
+        listenerRegistry.shutdownDecorators();
+        CheckpointTracker checkpointTracker = listenerRegistry.getCheckpointTracker();
+        if (checkpointTracker != null) {
+            checkpointTracker.flush();
         }
     }
 
-    private ReplicationEvent filterEvent(ReplicationEvent event) {
-        if (event instanceof TXReplicationEvent) {
-            List<ReplicationEvent> filteredEvents = new ArrayList<ReplicationEvent>();
-            List<ReplicationEvent> txEvents = ((TXReplicationEvent) event).getEvents();
-            for (ReplicationEvent e : txEvents) {
-                ReplicationEvent fe = filterOutTxEvent(e);
-                if (fe != null) {
-                    filteredEvents.add(fe);
+    /**
+     * Listener attached to the {@link BinaryLogClient} (one per connect), which turns binlog events into
+     * {@link ReplicationEvent}s and hands them over to the registered listeners.
+     */
+    final class DelegatingEventListener implements BinaryLogClient.EventListener {
+
+        private final TableRegistry tableRegistry;
+        private final TransactionBuffer txQueue = new TransactionBuffer(transactionSpillThreshold,
+            transactionSpillDirectory);
+        private final TableFilteringEventDeserializer eventDeserializer;
+        private final ReplicationEventPool eventPool;
+        private final GtidTracker gtidTracker;
+        private boolean transactionInProgress;
+        private String binlogFilename;
+        private boolean eventPoolBypassed;
+
+        private DelegatingEventListener(final TableFilteringEventDeserializer eventDeserializer,
+                ReplicationEventPool eventPool, GtidSet gtidSet) {
+            this.eventDeserializer = eventDeserializer;
+            this.eventPool = eventPool;
+            this.gtidTracker = new GtidTracker(gtidSet);
+            this.tableRegistry = new TableRegistry(new TableRegistry.EvictionListener() {
+
+                @Override
+                public void evicted(long tableId) {
+                    eventDeserializer.forget(tableId);
                 }
-            }
-            return filteredEvents.isEmpty() ? null : new TXReplicationEvent(filteredEvents);
+            });
         }
-        return event;
-    }
 
-    private ReplicationEvent filterOutTxEvent(ReplicationEvent e) {
-        if (e instanceof RowsMutationReplicationEvent) {
-            RowsMutationReplicationEvent re = (RowsMutationReplicationEvent) e;
-            return !ignoredServerIds.contains(re.getServerId()) && !ignoredTables.contains(re.getTable()) ? e : null;
+        TableFilteringEventDeserializer getEventDeserializer() {
+            return eventDeserializer;
         }
-        return e;
-    }
-
-    private final class DelegatingEventListener implements BinaryLogClient.EventListener {
 
-        private final Map<Long, TableMapEventData> tablesById = new HashMap<Long, TableMapEventData>();
-        private final List<ReplicationEvent> txQueue = new LinkedList<ReplicationEvent>();
-        private boolean transactionInProgress;
+        /**
+         * Deserializes and handles events one by one (until the end of the stream is reached).
+         */
+        void replay(ByteArrayInputStream inputStream) throws IOException {
+            Event event;
+            while ((event = eventDeserializer.nextEvent(inputStream)) != null) {
+                onEvent(event);
+            }
+        }
 
         @Override
         public void onEvent(Event event) {
-            // todo: do something about schema changes
+            ReplicationMetrics metrics = listenerRegistry.getMetrics();
+            if (metrics != null) {
+                EventHeader eventHeader = event.getHeader();
+                metrics.recordEvent(eventHeader.getTimestamp(),
+                    eventHeader.getHeaderLength() + eventHeader.getDataLength());
+            }
             EventType eventType = event.getHeader().getEventType();
             switch (eventType) {
                 case TABLE_MAP:
-                    TableMapEventData tableMapEventData = event.getData();
-                    tablesById.put(tableMapEventData.getTableId(), tableMapEventData);
+                    handleTableMapEvent((TableMapEventData) event.getData());
                     break;
                 case PRE_GA_WRITE_ROWS:
                 case WRITE_ROWS:
@@ -231,20 +616,168 @@ public class MySQLReplicationStream implements ReplicationStream {
                 case EXT_DELETE_ROWS:
                     handleDeleteRowsEvent(event);
                     break;
+                case GTID:
+                    handleGtidEvent((GtidEventData) event.getData());
+                    break;
                 case QUERY:
-                    if (groupEventsByTX) {
-                        QueryEventData queryEventData = event.getData();
-                        String query = queryEventData.getSql();
-                        if ("BEGIN".equals(query)) {
-                            transactionInProgress = true;
+                    handleQueryEvent(event);
+                    break;
+                case XID:
+                    handleXidEvent(event);
+                    break;
+                case ROTATE:
+                    RotateEventData rotateEventData = event.getData();
+                    binlogFilename = rotateEventData.getBinlogFilename();
+                    break;
+                default:
+                    // ignore
+            }
+        }
+
+        /**
+         * @param executedGtidSet executed GTID set as of the next event, null if GTID-based positioning is off
+         * @return position of the next event, null if unknown
+         */
+        private BinlogPosition positionAfter(Event event, GtidSet.Snapshot executedGtidSet) {
+            EventHeader eventHeader = event.getHeader();
+            if (binlogFilename == null || !(eventHeader instanceof EventHeaderV4)) {
+                return null;
+            }
+            return new BinlogPosition(binlogFilename, ((EventHeaderV4) eventHeader).getNextPosition(),
+                executedGtidSet);
+        }
+
+        private void handleQueryEvent(Event event) {
+            QueryEventData queryEventData = event.getData();
+            String query = queryEventData.getSql();
+            if ("BEGIN".equals(query)) {
+                transactionInProgress = groupEventsByTX;
+                gtidTracker.transactionBegun();
+            } else
+            if (transactionInProgress && "COMMIT".equals(query)) {
+                // transaction involving non-transactional tables only (no XID)
+                String gtid = gtidTracker.getGtid();
+                GtidSet.Snapshot executedGtidSet = gtidTracker.completeTransaction();
+                commitTransaction(positionAfter(event, executedGtidSet), gtid, executedGtidSet);
+            } else
+            if (!transactionInProgress) {
+                handleStatement(queryEventData);
+                // statement is a transaction of its own unless it's enclosed in BEGIN/COMMIT
+                listenerRegistry.markCheckpoint(positionAfter(event, !gtidTracker.isTransactionBegun() ||
+                    "COMMIT".equals(query) ? gtidTracker.completeTransaction() : gtidTracker.executedGtidSet()));
+            }
+        }
+
+        private void handleXidEvent(Event event) {
+            String gtid = gtidTracker.getGtid();
+            GtidSet.Snapshot executedGtidSet = gtidTracker.completeTransaction();
+            if (transactionInProgress) {
+                commitTransaction(positionAfter(event, executedGtidSet), gtid, executedGtidSet);
+            } else {
+                listenerRegistry.markCheckpoint(positionAfter(event, executedGtidSet));
+            }
+        }
+
+        /**
+         * GTID event arriving in the middle of the transaction means that transaction got interrupted (connection
+         * was re-established by GTID) and is going to be re-sent from the very beginning. Events which haven't been
+         * delivered yet are discarded (the ones which have are skipped, see {@link GtidTracker}).
+         */
+        private void handleGtidEvent(GtidEventData gtidEventData) {
+            if (transactionInProgress) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Discarding incomplete transaction " + gtidTracker.getGtid());
+                }
+                txQueue.drain();
+                recordTransactionQueueDepth();
+                transactionInProgress = false;
+                recycleEvents();
+            }
+            gtidTracker.transactionStarted(gtidEventData.getGtid());
+        }
+
+        /**
+         * Filter & projection are resolved only once per table id (unless table structure or configuration
+         * changes), even though TABLE_MAP precedes rows of each transaction.
+         */
+        private void handleTableMapEvent(TableMapEventData tableMapEventData) {
+            long tableId = tableMapEventData.getTableId();
+            TableRegistry.Table table = tableRegistry.get(tableId);
+            if (table == null || !isSameTable(table.getTableMapEventData(), tableMapEventData)) {
+                table = tableRegistry.register(tableMapEventData);
+            }
+            int version = tableResolutionVersion.get();
+            if (table.getResolutionVersion() == version) {
+                return;
+            }
+            boolean accepted = isAccepted(tableMapEventData);
+            List<String> columnNames = accepted ? resolveColumnNames(tableMapEventData) : null;
+            SchemaRegistry schemaRegistry = MySQLReplicationStream.this.schemaRegistry;
+            // left unresolved (to be re-resolved on the next TABLE_MAP) while column names are still being looked up
+            table.resolved(accepted, columnNames, columnNames == null && schemaRegistry != null &&
+                schemaRegistry.isLookupInProgress(tableMapEventData.getDatabase(), tableMapEventData.getTable()) ?
+                -1 : version);
+            eventDeserializer.setSkipped(tableId, !accepted);
+            eventDeserializer.setProjection(tableId, accepted ? listenerRegistry.resolveProjection(
+                tableMapEventData.getDatabase(), tableMapEventData.getTable(), columnNames) : null);
+        }
+
+        /**
+         * @return column names as reported by TABLE_MAP event or, if there are none, by schema registry (provided
+         * number of columns matches), null if unknown
+         */
+        private List<String> resolveColumnNames(TableMapEventData tableMapEventData) {
+            List<String> columnNames = eventDeserializer.getColumnNames(tableMapEventData.getTableId());
+            SchemaRegistry schemaRegistry = MySQLReplicationStream.this.schemaRegistry;
+            if (columnNames == null && schemaRegistry != null) {
+                columnNames = schemaRegistry.getColumnNames(tableMapEventData.getDatabase(),
+                    tableMapEventData.getTable());
+                if (columnNames != null && columnNames.size() != tableMapEventData.getColumnTypes().length) {
+                    if (logger.isWarnEnabled()) {
+                        logger.warn("Column names of " + tableMapEventData.getDatabase() + "." +
+                            tableMapEventData.getTable() + " (" + columnNames + ") do not match TABLE_MAP event. " +
+                            "Table structure must have changed since the event was written");
+                    }
+                    columnNames = null;
+                }
+            }
+            return columnNames;
+        }
+
+        /**
+         * Keeps registries in sync with the schema (dropped tables are evicted so that neither registry nor
+         * deserializer keep them around, created/altered ones are re-resolved on the next TABLE_MAP).
+         */
+        private void handleStatement(QueryEventData queryEventData) {
+            DDLStatement statement = DDLStatement.parse(queryEventData.getSql(), queryEventData.getDatabase());
+            if (statement == null) {
+                return;
+            }
+            SchemaRegistry schemaRegistry = MySQLReplicationStream.this.schemaRegistry;
+            List<String[]> tables = statement.getTables();
+            switch (statement.getType()) {
+                case CREATE_TABLE:
+                case ALTER_TABLE:
+                    for (String[] table : tables) {
+                        tableRegistry.invalidate(table[0], table[1]);
+                        if (schemaRegistry != null) {
+                            schemaRegistry.refresh(table[0], table[1]);
                         }
                     }
                     break;
-                case XID:
-                    if (groupEventsByTX) {
-                        notifyListeners(new TXReplicationEvent(new ArrayList<ReplicationEvent>(txQueue)));
-                        txQueue.clear();
-                        transactionInProgress = false;
+                case RENAME_TABLE:
+                case DROP_TABLE:
+                    for (String[] table : tables) {
+                        tableRegistry.evict(table[0], table[1]);
+                        if (schemaRegistry != null) {
+                            schemaRegistry.refresh(table[0], table[1]);
+                        }
+                    }
+                    break;
+                case DROP_DATABASE:
+                    tableRegistry.evictDatabase(statement.getDatabase());
+                    if (schemaRegistry != null) {
+                        schemaRegistry.refreshSchema(statement.getDatabase());
                     }
                     break;
                 default:
@@ -252,32 +785,130 @@ public class MySQLReplicationStream implements ReplicationStream {
             }
         }
 
+        private boolean isSameTable(TableMapEventData first, TableMapEventData second) {
+            return first.getTable().equals(second.getTable()) && first.getDatabase().equals(second.getDatabase()) &&
+                Arrays.equals(first.getColumnTypes(), second.getColumnTypes()) &&
+                Arrays.equals(first.getColumnMetadata(), second.getColumnMetadata());
+        }
+
         private void handleWriteRowsEvent(Event event) {
             WriteRowsEventData eventData = event.getData();
-            TableMapEventData tableMapEvent = tablesById.get(eventData.getTableId());
-            enqueue(new InsertRowsReplicationEvent(event.getHeader().getServerId(), tableMapEvent.getDatabase(),
-                    tableMapEvent.getTable(), eventData.getRows()));
+            TableRegistry.Table table = tableRegistry.get(eventData.getTableId());
+            if (table == null || !table.isAccepted()) {
+                return; // filtered out
+            }
+            long serverId = event.getHeader().getServerId();
+            enqueue(event, eventPool != null ?
+                eventPool.insertRows(serverId, table.getDescriptor(), table.getColumnNames(), eventData.getRows()) :
+                new InsertRowsReplicationEvent(serverId, table.getDescriptor(), table.getColumnNames(),
+                    eventData.getRows()));
         }
 
         private void handleUpdateRowsEvent(Event event) {
             UpdateRowsEventData eventData = event.getData();
-            TableMapEventData tableMapEvent = tablesById.get(eventData.getTableId());
-            enqueue(new UpdateRowsReplicationEvent(event.getHeader().getServerId(), tableMapEvent.getDatabase(),
-                    tableMapEvent.getTable(), eventData.getRows()));
+            TableRegistry.Table table = tableRegistry.get(eventData.getTableId());
+            if (table == null || !table.isAccepted()) {
+                return; // filtered out
+            }
+            long serverId = event.getHeader().getServerId();
+            enqueue(event, eventPool != null ?
+                eventPool.updateRows(serverId, table.getDescriptor(), table.getColumnNames(), eventData.getRows()) :
+                new UpdateRowsReplicationEvent(serverId, table.getDescriptor(), table.getColumnNames(),
+                    eventData.getRows()));
         }
 
         private void handleDeleteRowsEvent(Event event) {
             DeleteRowsEventData eventData = event.getData();
-            TableMapEventData tableMapEvent = tablesById.get(eventData.getTableId());
-            enqueue(new DeleteRowsReplicationEvent(event.getHeader().getServerId(), tableMapEvent.getDatabase(),
-                    tableMapEvent.getTable(), eventData.getRows()));
+            TableRegistry.Table table = tableRegistry.get(eventData.getTableId());
+            if (table == null || !table.isAccepted()) {
+                return; // filtered out
+            }
+            long serverId = event.getHeader().getServerId();
+            enqueue(event, eventPool != null ?
+                eventPool.deleteRows(serverId, table.getDescriptor(), table.getColumnNames(), eventData.getRows()) :
+                new DeleteRowsReplicationEvent(serverId, table.getDescriptor(), table.getColumnNames(),
+                    eventData.getRows()));
         }
 
-        private void enqueue(ReplicationEvent event) {
-            if (groupEventsByTX && transactionInProgress) {
-                txQueue.add(event);
-            } else {
-                notifyListeners(event);
+        private boolean isAccepted(TableMapEventData tableMapEventData) {
+            String table = tableMapEventData.getTable();
+            return !ignoredTables.contains(table) && tableFilter.accepts(tableMapEventData.getDatabase(), table);
+        }
+
+        private void enqueue(Event binlogEvent, RowsMutationReplicationEvent event) {
+            ReplicationMetrics metrics = listenerRegistry.getMetrics();
+            if (metrics != null) {
+                metrics.recordRows(event.getTableDescriptor(), event.getRows().size());
+            }
+            if (gtidTracker.skip()) {
+                return;
+            }
+            if (!transactionInProgress) {
+                listenerRegistry.notifyListeners(event, null, transactionChunkSize);
+                gtidTracker.delivered(1);
+                recycleEvents();
+                return;
+            }
+            if (ignoredServerIds.contains(event.getServerId())) {
+                return;
+            }
+            EventHeader eventHeader = binlogEvent.getHeader();
+            txQueue.add(event, eventHeader instanceof EventHeaderV4 ?
+                ((EventHeaderV4) eventHeader).getEventLength() : 0);
+            recordTransactionQueueDepth();
+            if (txQueue.size() >= maxTransactionSize) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Transaction exceeded " + maxTransactionSize + " events without XID/COMMIT. " +
+                        "Delivering events accumulated so far");
+                }
+                List<ReplicationEvent> events = txQueue.drain();
+                listenerRegistry.notifyListeners(new TXReplicationEvent(events), null, transactionChunkSize);
+                gtidTracker.delivered(events.size());
+                recordTransactionQueueDepth();
+                recycleEvents();
+            }
+        }
+
+        /**
+         * @param executedGtidSet executed GTID set (including this transaction), null if GTID-based positioning is off
+         */
+        private void commitTransaction(BinlogPosition position, String gtid, GtidSet.Snapshot executedGtidSet) {
+            List<ReplicationEvent> events = txQueue.drain();
+            listenerRegistry.notifyListeners(executedGtidSet != null ?
+                new GtidTXReplicationEvent(events, gtid, executedGtidSet) : new TXReplicationEvent(events), position,
+                transactionChunkSize);
+            recordTransactionQueueDepth();
+            transactionInProgress = false;
+            recycleEvents();
+        }
+
+        private void recordTransactionQueueDepth() {
+            ReplicationMetrics metrics = listenerRegistry.getMetrics();
+            if (metrics != null) {
+                metrics.recordTransactionQueueDepth(txQueue.size());
+            }
+        }
+
+        /**
+         * Returns pooled events (and rows) to the pool (provided everything dispatched so far has been delivered).
+         */
+        private void recycleEvents() {
+            if (eventPool == null) {
+                return;
+            }
+            if (!listenerRegistry.hasDecorators()) {
+                eventPool.release();
+                eventPoolBypassed = false;
+            } else
+            if (!eventPoolBypassed) {
+                // decorators (async/partitioned/batched/writeset dispatchers, consumers, multi-source listeners)
+                // may still be holding on to the events, in which case pool simply stops retaining new objects
+                // until it's safe to release
+                eventPoolBypassed = true;
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Low-garbage mode is bypassed as long as events are dispatched asynchronously " +
+                        "(by " + listenerRegistry.getDecorators() + ")");
+                }
             }
         }
 
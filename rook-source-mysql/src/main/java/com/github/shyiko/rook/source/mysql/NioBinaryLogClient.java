@@ -0,0 +1,755 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventData;
+import com.github.shyiko.mysql.binlog.event.EventHeader;
+import com.github.shyiko.mysql.binlog.event.EventHeaderV4;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.RotateEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.ChecksumType;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDataDeserializationException;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.mysql.binlog.network.AuthenticationException;
+import com.github.shyiko.mysql.binlog.network.ServerException;
+import com.github.shyiko.mysql.binlog.network.protocol.ErrorPacket;
+import com.github.shyiko.mysql.binlog.network.protocol.GreetingPacket;
+import com.github.shyiko.mysql.binlog.network.protocol.ResultSetRowPacket;
+import com.github.shyiko.mysql.binlog.network.protocol.command.AuthenticateCommand;
+import com.github.shyiko.mysql.binlog.network.protocol.command.Command;
+import com.github.shyiko.mysql.binlog.network.protocol.command.DumpBinaryLogCommand;
+import com.github.shyiko.mysql.binlog.network.protocol.command.QueryCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Non-blocking counterpart of {@link BinaryLogClient} (connection is served by {@link BinlogEventLoopGroup} instead
+ * of a thread of its own). Speaks the same subset of the protocol: handshake, "show master status" (unless binlog
+ * position is known), checksum negotiation and COM_BINLOG_DUMP (COM_BINLOG_DUMP_GTID if GTID set is given).
+ * <p>
+ * Once connection is lost, client keeps trying to reconnect (resuming from the last known position or, if GTID set
+ * is given, from whatever it contains at that moment) every
+ * {@link #setReconnectInterval(long, TimeUnit)} until {@link #disconnect()} is called.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class NioBinaryLogClient {
+
+    public static final long DEFAULT_SERVER_ID = 65535;
+    public static final long DEFAULT_RECONNECT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    private static final int MAX_PACKET_LENGTH = 0xFFFFFF;
+    private static final int MAX_CHUNKS_PER_DECODING_RUN = 16;
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final BinlogEventLoopGroup eventLoopGroup;
+    private final String hostname;
+    private final int port;
+    private final String username;
+    private final String password;
+
+    private volatile long serverId = DEFAULT_SERVER_ID;
+    private volatile long reconnectInterval = DEFAULT_RECONNECT_INTERVAL;
+    private volatile String binlogFilename;
+    private volatile long binlogPosition = 4;
+    private volatile GtidSet gtidSet;
+    private volatile EventDeserializer eventDeserializer = new EventDeserializer();
+    private volatile BinaryLogClient.EventListener eventListener;
+    private final AtomicLong numberOfReadSuspensions = new AtomicLong();
+
+    private Session session;
+    private boolean disconnectRequested;
+
+    public NioBinaryLogClient(BinlogEventLoopGroup eventLoopGroup, String hostname, int port, String username,
+            String password) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.hostname = hostname;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+    }
+
+    public void setServerId(long serverId) {
+        this.serverId = serverId;
+    }
+
+    /**
+     * @param reconnectInterval delay between reconnection attempts, 0 to give up as soon as connection is lost
+     */
+    public void setReconnectInterval(long reconnectInterval, TimeUnit unit) {
+        this.reconnectInterval = unit.toMillis(reconnectInterval);
+    }
+
+    public String getBinlogFilename() {
+        return binlogFilename;
+    }
+
+    /**
+     * @param binlogFilename binlog to start from, null to start from the current master position
+     */
+    public void setBinlogFilename(String binlogFilename) {
+        this.binlogFilename = binlogFilename;
+    }
+
+    public long getBinlogPosition() {
+        return binlogPosition;
+    }
+
+    public void setBinlogPosition(long binlogPosition) {
+        this.binlogPosition = binlogPosition;
+    }
+
+    /**
+     * @param gtidSet set of transactions to skip, null to position by binlog filename/offset. Set is expected to be
+     * kept up to date by whoever owns it (access is synchronized on the set itself)
+     */
+    public void setGtidSet(GtidSet gtidSet) {
+        this.gtidSet = gtidSet;
+    }
+
+    public void setEventDeserializer(EventDeserializer eventDeserializer) {
+        this.eventDeserializer = eventDeserializer;
+    }
+
+    /**
+     * Listener is called by the decoding threads of the {@link BinlogEventLoopGroup} (see the notes there).
+     */
+    public void setEventListener(BinaryLogClient.EventListener eventListener) {
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * @return number of times reading from the socket was suspended because of the backlog (see
+     * {@link BinlogEventLoopGroup#setMaxPendingBytes(int)})
+     */
+    long getNumberOfReadSuspensions() {
+        return numberOfReadSuspensions.get();
+    }
+
+    /**
+     * Unlike {@link BinaryLogClient#connect()}, returns as soon as replication is started.
+     */
+    public void connect() throws IOException {
+        Session session = openSession();
+        try {
+            session.handshakeLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(session);
+            throw new IOException("Interrupted while connecting to " + hostname + ":" + port, e);
+        }
+        ensureEstablished(session);
+    }
+
+    public void connect(long timeoutInMilliseconds) throws IOException, TimeoutException {
+        Session session = openSession();
+        boolean completed;
+        try {
+            completed = session.handshakeLatch.await(timeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon(session);
+            throw new IOException("Interrupted while connecting to " + hostname + ":" + port, e);
+        }
+        if (!completed) {
+            abandon(session);
+            throw new TimeoutException("BinaryLogClient was unable to connect in " + timeoutInMilliseconds + "ms");
+        }
+        ensureEstablished(session);
+    }
+
+    private synchronized Session openSession() throws IOException {
+        if (session != null) {
+            throw new IllegalStateException("BinaryLogClient is already connected");
+        }
+        disconnectRequested = false;
+        session = new Session(false);
+        session.open();
+        return session;
+    }
+
+    private void ensureEstablished(Session session) throws IOException {
+        if (session.failure != null) {
+            abandon(session);
+            if (session.failure instanceof IOException) {
+                throw (IOException) session.failure;
+            }
+            throw new IOException(session.failure);
+        }
+    }
+
+    private synchronized void abandon(Session session) {
+        if (this.session == session) {
+            this.session = null;
+        }
+        session.close();
+    }
+
+    public synchronized boolean isConnected() {
+        return session != null && session.streaming;
+    }
+
+    public void disconnect() {
+        Session session;
+        synchronized (this) {
+            disconnectRequested = true;
+            session = this.session;
+            this.session = null;
+        }
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    /**
+     * Invoked once established (or re-established) connection is lost.
+     */
+    private void lost(Session lostSession, Exception cause) {
+        synchronized (this) {
+            if (session != lostSession || disconnectRequested) {
+                return;
+            }
+            if (reconnectInterval <= 0) {
+                session = null;
+            }
+        }
+        if (logger.isWarnEnabled()) {
+            logger.warn("Connection to " + hostname + ":" + port + " failed (" + cause + ")" +
+                (reconnectInterval > 0 ? ", reconnecting in " + reconnectInterval + "ms" : ""));
+        }
+        if (reconnectInterval > 0) {
+            scheduleReconnect(lostSession);
+        }
+    }
+
+    private void scheduleReconnect(final Session lostSession) {
+        eventLoopGroup.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                Session reconnectSession;
+                synchronized (NioBinaryLogClient.this) {
+                    if (session != lostSession || disconnectRequested) {
+                        return;
+                    }
+                    reconnectSession = session = new Session(true);
+                }
+                if (logger.isInfoEnabled()) {
+                    logger.info("Reconnecting to " + hostname + ":" + port + " at " + describePosition());
+                }
+                try {
+                    reconnectSession.open();
+                } catch (IOException e) {
+                    reconnectSession.fail(e);
+                }
+            }
+        }, reconnectInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private String describePosition() {
+        GtidSet gtidSet = this.gtidSet;
+        if (gtidSet == null) {
+            return binlogFilename + "/" + binlogPosition;
+        }
+        synchronized (gtidSet) {
+            return "GTID set \"" + gtidSet + "\"";
+        }
+    }
+
+    private enum State {
+        GREETING, AUTHENTICATION, MASTER_STATUS, CHECKSUM, CHECKSUM_CONFIRMATION, STREAMING
+    }
+
+    /**
+     * Single connection (attempt). I/O is done by the event loop thread, everything else - by the decoding threads
+     * (one at a time).
+     */
+    private final class Session implements BinlogEventLoopGroup.SelectionHandler, Runnable {
+
+        private final boolean reconnect;
+        private final BinlogEventLoopGroup.EventLoop eventLoop;
+        private final CountDownLatch handshakeLatch = new CountDownLatch(1);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile Exception failure;
+        private volatile boolean streaming;
+        private SocketChannel channel;
+
+        // event loop only
+        private SelectionKey selectionKey;
+        private final Queue<ByteBuffer> outbound = new LinkedList<ByteBuffer>();
+
+        // shared between event loop & decoding threads
+        private final Queue<byte[]> inbound = new ConcurrentLinkedQueue<byte[]>();
+        private final AtomicInteger pendingBytes = new AtomicInteger();
+        private final AtomicBoolean decodingScheduled = new AtomicBoolean();
+        private volatile boolean readingSuspended;
+
+        // decoding threads only
+        private State state = State.GREETING;
+        private final byte[] header = new byte[4];
+        private int headerLength;
+        private byte[] payload;
+        private int payloadLength;
+        private ByteArrayOutputStream splitPacket;
+        private GreetingPacket greetingPacket;
+        private boolean resultSetColumnsRead;
+        private final List<ResultSetRowPacket> resultSet = new ArrayList<ResultSetRowPacket>();
+        private ChecksumType checksumType;
+
+        private Session(boolean reconnect) {
+            this.reconnect = reconnect;
+            this.eventLoop = eventLoopGroup.nextEventLoop();
+        }
+
+        public void open() throws IOException {
+            channel = SocketChannel.open();
+            try {
+                channel.configureBlocking(false);
+                final boolean connected = channel.connect(new InetSocketAddress(hostname, port));
+                eventLoop.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            selectionKey = channel.register(eventLoop.getSelector(),
+                                connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, Session.this);
+                        } catch (IOException e) {
+                            fail(e);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void handle(SelectionKey selectionKey) {
+            try {
+                if (selectionKey.isConnectable()) {
+                    try {
+                        channel.finishConnect();
+                    } catch (IOException e) {
+                        throw new IOException("Failed to connect to MySQL on " + hostname + ":" + port +
+                            ". Please make sure it's running.", e);
+                    }
+                    selectionKey.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+                if (selectionKey.isWritable()) {
+                    flush();
+                }
+                if (selectionKey.isValid() && selectionKey.isReadable()) {
+                    read();
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void read() throws IOException {
+            ByteBuffer buffer = eventLoop.getReadBuffer();
+            int maxPendingBytes = eventLoopGroup.getMaxPendingBytes();
+            int numberOfBytesRead = 0;
+            while (numberOfBytesRead <= maxPendingBytes) {
+                buffer.clear();
+                int length = channel.read(buffer);
+                if (length == -1) {
+                    // whatever was received before EOF (e.g. error packet) has to be handled first
+                    selectionKey.interestOps(0);
+                    inbound.add(END_OF_STREAM);
+                    break;
+                }
+                if (length == 0) {
+                    break;
+                }
+                buffer.flip();
+                byte[] chunk = new byte[length];
+                buffer.get(chunk);
+                inbound.add(chunk);
+                numberOfBytesRead += length;
+            }
+            if (pendingBytes.addAndGet(numberOfBytesRead) > maxPendingBytes && selectionKey.isValid()) {
+                selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+                readingSuspended = true;
+                numberOfReadSuspensions.incrementAndGet();
+                // decoding thread might have cleared the backlog before it could see the flag
+                resumeReadingIfPossible();
+            }
+            scheduleDecoding();
+        }
+
+        private void resumeReadingIfPossible() {
+            if (readingSuspended && pendingBytes.get() <= eventLoopGroup.getMaxPendingBytes() &&
+                    selectionKey.isValid()) {
+                readingSuspended = false;
+                selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        private void flush() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                outbound.poll();
+            }
+            selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        private void send(Command command, int sequence) throws IOException {
+            byte[] body = command.toByteArray();
+            final ByteBuffer buffer = ByteBuffer.allocate(4 + body.length);
+            buffer.put((byte) body.length).put((byte) (body.length >>> 8)).put((byte) (body.length >>> 16)).
+                put((byte) sequence).put(body).flip();
+            eventLoop.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (selectionKey == null || !selectionKey.isValid()) {
+                        return;
+                    }
+                    outbound.add(buffer);
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        fail(e);
+                    }
+                }
+            });
+        }
+
+        private void scheduleDecoding() {
+            if (decodingScheduled.compareAndSet(false, true)) {
+                eventLoopGroup.decode(this);
+            }
+        }
+
+        /**
+         * Decoding task (frames received bytes into packets and handles them).
+         */
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < MAX_CHUNKS_PER_DECODING_RUN && !closed.get(); i++) {
+                    byte[] chunk = inbound.poll();
+                    if (chunk == null) {
+                        break;
+                    }
+                    if (chunk == END_OF_STREAM) {
+                        throw new EOFException("Connection closed by " + hostname + ":" + port);
+                    }
+                    feed(chunk);
+                    if (pendingBytes.addAndGet(-chunk.length) <= eventLoopGroup.getMaxPendingBytes() &&
+                            readingSuspended) {
+                        eventLoop.execute(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                resumeReadingIfPossible();
+                            }
+                        });
+                    }
+                }
+            } catch (Exception e) {
+                fail(e);
+            } finally {
+                decodingScheduled.set(false);
+            }
+            // rescheduling (instead of looping) gives other connections a chance to be decoded too
+            if (!closed.get() && !inbound.isEmpty()) {
+                scheduleDecoding();
+            }
+        }
+
+        private void feed(byte[] chunk) throws IOException {
+            int offset = 0;
+            while (offset < chunk.length && !closed.get()) {
+                if (payload == null) {
+                    int length = Math.min(header.length - headerLength, chunk.length - offset);
+                    System.arraycopy(chunk, offset, header, headerLength, length);
+                    headerLength += length;
+                    offset += length;
+                    if (headerLength < header.length) {
+                        break;
+                    }
+                    headerLength = 0;
+                    payload = new byte[(header[0] & 0xFF) | (header[1] & 0xFF) << 8 | (header[2] & 0xFF) << 16];
+                    payloadLength = 0;
+                }
+                int length = Math.min(payload.length - payloadLength, chunk.length - offset);
+                System.arraycopy(chunk, offset, payload, payloadLength, length);
+                payloadLength += length;
+                offset += length;
+                if (payloadLength == payload.length) {
+                    byte[] packet = payload;
+                    payload = null;
+                    if (packet.length == MAX_PACKET_LENGTH) {
+                        // packet continues in the next one
+                        if (splitPacket == null) {
+                            splitPacket = new ByteArrayOutputStream();
+                        }
+                        splitPacket.write(packet, 0, packet.length);
+                    } else {
+                        if (splitPacket != null) {
+                            splitPacket.write(packet, 0, packet.length);
+                            packet = splitPacket.toByteArray();
+                            splitPacket = null;
+                        }
+                        handle(packet);
+                    }
+                }
+            }
+        }
+
+        private void handle(byte[] packet) throws IOException {
+            switch (state) {
+                case GREETING:
+                    ensureNotError(packet);
+                    greetingPacket = new GreetingPacket(packet);
+                    AuthenticateCommand authenticateCommand = new AuthenticateCommand(null, username, password,
+                        greetingPacket.getScramble());
+                    authenticateCommand.setCollation(greetingPacket.getServerCollation());
+                    send(authenticateCommand, 1);
+                    state = State.AUTHENTICATION;
+                    break;
+                case AUTHENTICATION:
+                    if (packet[0] != 0 /* ok */) {
+                        if (packet[0] == (byte) 0xFF /* error */) {
+                            ErrorPacket errorPacket = new ErrorPacket(Arrays.copyOfRange(packet, 1, packet.length));
+                            throw new AuthenticationException(errorPacket.getErrorMessage(),
+                                errorPacket.getErrorCode(), errorPacket.getSqlState());
+                        }
+                        throw new AuthenticationException("Unexpected authentication result (" + packet[0] + ")");
+                    }
+                    if (binlogFilename == null && gtidSet == null) {
+                        query("show master status", State.MASTER_STATUS);
+                    } else {
+                        query("show global variables like 'binlog_checksum'", State.CHECKSUM);
+                    }
+                    break;
+                case MASTER_STATUS:
+                    if (readResultSet(packet)) {
+                        if (resultSet.isEmpty()) {
+                            throw new IOException("Failed to determine binlog filename/position");
+                        }
+                        ResultSetRowPacket masterStatus = resultSet.get(0);
+                        binlogFilename = masterStatus.getValue(0);
+                        binlogPosition = Long.parseLong(masterStatus.getValue(1));
+                        query("show global variables like 'binlog_checksum'", State.CHECKSUM);
+                    }
+                    break;
+                case CHECKSUM:
+                    if (readResultSet(packet)) {
+                        checksumType = resultSet.isEmpty() ? ChecksumType.NONE :
+                            ChecksumType.valueOf(resultSet.get(0).getValue(1).toUpperCase());
+                        if (checksumType != ChecksumType.NONE) {
+                            query("set @master_binlog_checksum= @@global.binlog_checksum",
+                                State.CHECKSUM_CONFIRMATION);
+                        } else {
+                            requestBinaryLogStream();
+                        }
+                    }
+                    break;
+                case CHECKSUM_CONFIRMATION:
+                    ensureNotError(packet);
+                    requestBinaryLogStream();
+                    break;
+                case STREAMING:
+                    handleEventPacket(packet);
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected state " + state);
+            }
+        }
+
+        private void query(String sql, State nextState) throws IOException {
+            resultSetColumnsRead = false;
+            resultSet.clear();
+            send(new QueryCommand(sql), 0);
+            state = nextState;
+        }
+
+        /**
+         * @return true if result set has been read completely, false otherwise
+         */
+        private boolean readResultSet(byte[] packet) throws IOException {
+            ensureNotError(packet);
+            if (packet[0] == (byte) 0xFE /* eof */) {
+                if (resultSetColumnsRead) {
+                    return true;
+                }
+                resultSetColumnsRead = true;
+            } else
+            if (resultSetColumnsRead) {
+                resultSet.add(new ResultSetRowPacket(packet));
+            }
+            return false;
+        }
+
+        private void requestBinaryLogStream() throws IOException {
+            if (binlogPosition < 4) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Binary log position adjusted from " + binlogPosition + " to 4");
+                }
+                binlogPosition = 4;
+            }
+            EventDeserializer eventDeserializer = NioBinaryLogClient.this.eventDeserializer;
+            if (checksumType != null) {
+                eventDeserializer.setChecksumType(checksumType);
+            }
+            GtidSet gtidSet = NioBinaryLogClient.this.gtidSet;
+            if (gtidSet != null) {
+                synchronized (gtidSet) {
+                    send(new DumpBinaryLogGtidCommand(serverId, gtidSet), 0);
+                }
+            } else {
+                send(new DumpBinaryLogCommand(serverId, binlogFilename, binlogPosition), 0);
+            }
+            state = State.STREAMING;
+            streaming = true;
+            if (logger.isInfoEnabled()) {
+                logger.info("Connected to " + hostname + ":" + port + " at " + describePosition() +
+                    " (sid:" + serverId + ", cid:" + greetingPacket.getThreadId() + ")");
+            }
+            handshakeLatch.countDown();
+        }
+
+        private void handleEventPacket(byte[] packet) throws IOException {
+            ensureNotError(packet);
+            if (packet[0] == (byte) 0xFE /* eof */) {
+                throw new EOFException("Binary log stream has been closed by " + hostname + ":" + port);
+            }
+            Event event;
+            try {
+                event = eventDeserializer.nextEvent(new ByteArrayInputStream(
+                    new java.io.ByteArrayInputStream(packet, 1, packet.length - 1)));
+            } catch (EventDataDeserializationException e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Failed to deserialize event (" + e.getEventHeader() + ")", e);
+                }
+                return;
+            }
+            if (event == null) {
+                return;
+            }
+            BinaryLogClient.EventListener eventListener = NioBinaryLogClient.this.eventListener;
+            if (eventListener != null) {
+                try {
+                    eventListener.onEvent(event);
+                } catch (Exception e) {
+                    if (logger.isWarnEnabled()) {
+                        logger.warn(eventListener + " choked on " + event, e);
+                    }
+                }
+            }
+            updateBinlogFilenameAndPosition(event);
+        }
+
+        private void updateBinlogFilenameAndPosition(Event event) {
+            EventHeader eventHeader = event.getHeader();
+            EventData eventData = event.getData();
+            if (eventHeader.getEventType() == EventType.ROTATE && eventData instanceof RotateEventData) {
+                RotateEventData rotateEventData = (RotateEventData) eventData;
+                binlogFilename = rotateEventData.getBinlogFilename();
+                binlogPosition = rotateEventData.getBinlogPosition();
+            } else
+            // resuming right after TABLE_MAP would leave rows event(s) following it without table metadata
+            if (eventHeader.getEventType() != EventType.TABLE_MAP && eventHeader instanceof EventHeaderV4) {
+                long nextBinlogPosition = ((EventHeaderV4) eventHeader).getNextPosition();
+                if (nextBinlogPosition > 0) {
+                    binlogPosition = nextBinlogPosition;
+                }
+            }
+        }
+
+        private void ensureNotError(byte[] packet) throws IOException {
+            if (packet[0] == (byte) 0xFF /* error */) {
+                ErrorPacket errorPacket = new ErrorPacket(Arrays.copyOfRange(packet, 1, packet.length));
+                throw new ServerException(errorPacket.getErrorMessage(), errorPacket.getErrorCode(),
+                    errorPacket.getSqlState());
+            }
+        }
+
+        @Override
+        public void fail(Exception exception) {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            boolean reportedByConnect = !streaming && !reconnect;
+            if (reportedByConnect) {
+                failure = exception;
+            }
+            closeChannel();
+            if (!reportedByConnect) {
+                lost(this, exception);
+            }
+        }
+
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                closeChannel();
+            }
+        }
+
+        private void closeChannel() {
+            streaming = false;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Failed to close connection to " + hostname + ":" + port, e);
+                }
+            }
+            eventLoop.getSelector().wakeup();
+            if (handshakeLatch.getCount() > 0) {
+                if (failure == null) {
+                    failure = new IOException("Connection to " + hostname + ":" + port + " has been closed");
+                }
+                handshakeLatch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+/**
+ * Determines what happens to the event when listener's queue is full.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wait (using configured {@link WaitStrategy}) until there is a free slot.
+     */
+    BLOCK,
+    /**
+     * Drop the event (a warning is logged).
+     */
+    DISCARD,
+    /**
+     * Drop the event and throw {@link IllegalStateException} (which, in case of {@link MySQLReplicationStream},
+     * ends up in the {@link com.github.shyiko.rook.api.ReplicationEventExceptionHandler}).
+     */
+    FAIL
+}
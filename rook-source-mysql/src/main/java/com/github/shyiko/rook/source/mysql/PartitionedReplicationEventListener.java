@@ -0,0 +1,465 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBeginReplicationEvent;
+import com.github.shyiko.rook.api.event.TXChunkReplicationEvent;
+import com.github.shyiko.rook.api.event.TXCommitReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ReplicationEventListener} decorator which spreads rows across N lanes (each one having its own queue and
+ * thread) using {@link ReplicationEventPartitioner}. Rows are delivered in order within a lane but not across the
+ * lanes.
+ * <p>
+ * {@link TXReplicationEvent}s are split into per-lane {@link TXReplicationEvent}s. If transaction boundary barrier is
+ * requested, none of the lanes will start processing transaction N + 1 until all the lanes are done with
+ * transaction N (otherwise lanes are completely independent from each other). The same goes for
+ * {@link TXChunkReplicationEvent}s (with chunk markers acting as transactions of their own when barrier is on).
+ * <p>
+ * Updates are partitioned by both before and after images of the row. If they map to different lanes (e.g.
+ * UPDATE ... SET id = ... with {@link PrimaryKeyPartitioner}), event (the whole transaction, in case of
+ * {@link TXReplicationEvent}) is delivered through a single lane only after all the other lanes are done with
+ * everything dispatched before it, and none of them proceed until it is processed.
+ * <p>
+ * Note that delegate is called concurrently and so it must be thread-safe.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class PartitionedReplicationEventListener implements DispatchingReplicationEventListener {
+
+    private final ReplicationEventListener listener;
+    private final ReplicationEventPartitioner partitioner;
+    private final boolean txBoundaryBarrier;
+    private final AsyncReplicationEventListener[] lanes;
+
+    private volatile DeliveryCallback deliveryCallback;
+    private CountDownLatch previousTXCompletion;
+    // set by laneOf(...) whenever row has to be ordered in respect to more than one lane
+    private boolean fenceRequired;
+
+    public PartitionedReplicationEventListener(ReplicationEventListener listener, int numberOfLanes) {
+        this(listener, numberOfLanes, new TablePartitioner(), false);
+    }
+
+    public PartitionedReplicationEventListener(ReplicationEventListener listener, int numberOfLanes,
+            ReplicationEventPartitioner partitioner, boolean txBoundaryBarrier) {
+        this(listener, numberOfLanes, partitioner, txBoundaryBarrier,
+            AsyncReplicationEventListener.DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param listener listener to deliver events to
+     * @param numberOfLanes number of lanes (threads)
+     * @param partitioner partitioner used to determine the lane
+     * @param txBoundaryBarrier true if lanes need to be synchronized on transaction boundaries, false otherwise
+     * @param queueCapacity maximum number of events waiting for delivery (per lane)
+     */
+    public PartitionedReplicationEventListener(ReplicationEventListener listener, int numberOfLanes,
+            ReplicationEventPartitioner partitioner, boolean txBoundaryBarrier, int queueCapacity) {
+        if (numberOfLanes < 1) {
+            throw new IllegalArgumentException("Number of lanes must be greater than 0");
+        }
+        this.listener = listener;
+        this.partitioner = partitioner;
+        this.txBoundaryBarrier = txBoundaryBarrier;
+        this.lanes = new AsyncReplicationEventListener[numberOfLanes];
+        ReplicationEventListener laneListener = new LaneListener();
+        for (int i = 0; i < numberOfLanes; i++) {
+            lanes[i] = new AsyncReplicationEventListener(laneListener, queueCapacity, WaitStrategy.BLOCKING,
+                OverflowPolicy.BLOCK);
+        }
+    }
+
+    @Override
+    public ReplicationEventListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        for (AsyncReplicationEventListener lane : lanes) {
+            lane.setExceptionHandler(exceptionHandler);
+        }
+    }
+
+    @Override
+    public void setDeliveryCallback(final DeliveryCallback deliveryCallback) {
+        DeliveryCallback laneDeliveryCallback = deliveryCallback == null ? null : new DeliveryCallback() {
+
+            @Override
+            public void delivered(ReplicationEvent event) {
+                Part part = (Part) event;
+                if (part.remainingParts.decrementAndGet() == 0) {
+                    deliveryCallback.delivered(part.origin);
+                }
+            }
+        };
+        this.deliveryCallback = deliveryCallback;
+        for (AsyncReplicationEventListener lane : lanes) {
+            lane.setDeliveryCallback(laneDeliveryCallback);
+        }
+    }
+
+    @Override
+    public void onEvent(ReplicationEvent event) {
+        if (event instanceof TXReplicationEvent) {
+            dispatchTX(event, ((TXReplicationEvent) event).getEvents());
+        } else
+        if (event instanceof TXChunkReplicationEvent) {
+            dispatchTX(event, ((TXChunkReplicationEvent) event).getEvents());
+        } else
+        if (event instanceof RowsMutationReplicationEvent) {
+            fenceRequired = false;
+            List<ReplicationEvent>[] eventsByLane = partition((RowsMutationReplicationEvent) event, null);
+            if (fenceRequired) {
+                dispatchFenced(event, add(null, 0, event));
+            } else {
+                dispatch(event, eventsByLane, null, null);
+            }
+        } else
+        if (txBoundaryBarrier && (event instanceof TXBeginReplicationEvent ||
+                event instanceof TXCommitReplicationEvent)) {
+            // chunked transaction markers must not overtake chunks (and vice versa)
+            dispatchWithBarrier(event, add(null, 0, event));
+        } else {
+            dispatch(event, add(null, 0, event), null, null);
+        }
+    }
+
+    private void dispatchTX(ReplicationEvent event, List<ReplicationEvent> txEvents) {
+        fenceRequired = false;
+        List<ReplicationEvent>[] eventsByLane = null;
+        for (ReplicationEvent txEvent : txEvents) {
+            if (txEvent instanceof RowsMutationReplicationEvent) {
+                eventsByLane = partition((RowsMutationReplicationEvent) txEvent, eventsByLane);
+            } else {
+                eventsByLane = add(eventsByLane, 0, txEvent);
+            }
+        }
+        if (fenceRequired) {
+            eventsByLane = null;
+            for (ReplicationEvent txEvent : txEvents) {
+                eventsByLane = add(eventsByLane, 0, txEvent);
+            }
+            dispatchFenced(event, eventsByLane);
+            return;
+        }
+        if (eventsByLane == null || !txBoundaryBarrier) {
+            dispatch(event, eventsByLane, null, null);
+            return;
+        }
+        dispatchWithBarrier(event, eventsByLane);
+    }
+
+    private void dispatchWithBarrier(ReplicationEvent event, List<ReplicationEvent>[] eventsByLane) {
+        CountDownLatch txCompletion = new CountDownLatch(numberOfParts(event, eventsByLane));
+        dispatch(event, eventsByLane, previousTXCompletion, txCompletion);
+        previousTXCompletion = txCompletion;
+    }
+
+    /**
+     * Delivers origin (all parts of which are expected to be in the first lane) once all the other lanes are done
+     * with everything dispatched before it, holding them until origin is processed.
+     */
+    private void dispatchFenced(ReplicationEvent origin, List<ReplicationEvent>[] eventsByLane) {
+        CountDownLatch previousTXCompletion = null, txCompletion = null;
+        if (txBoundaryBarrier) {
+            previousTXCompletion = this.previousTXCompletion;
+            txCompletion = new CountDownLatch(numberOfParts(origin, eventsByLane));
+            this.previousTXCompletion = txCompletion;
+        }
+        CountDownLatch otherLanesReached = new CountDownLatch(lanes.length - 1);
+        CountDownLatch originProcessed = new CountDownLatch(1);
+        // gates count as parts (so that origin is reported as delivered only when all the lanes are released)
+        AtomicInteger remainingParts = new AtomicInteger(numberOfParts(origin, eventsByLane) + lanes.length + 1);
+        lanes[0].onEvent(new Part(origin, new Gate(null, otherLanesReached), remainingParts, null, null));
+        dispatch(origin, eventsByLane, remainingParts, previousTXCompletion, txCompletion);
+        lanes[0].onEvent(new Part(origin, new Gate(originProcessed, null), remainingParts, null, null));
+        for (int i = 1; i < lanes.length; i++) {
+            lanes[i].onEvent(new Part(origin, new Gate(otherLanesReached, originProcessed), remainingParts, null,
+                null));
+        }
+    }
+
+    private void dispatch(ReplicationEvent origin, List<ReplicationEvent>[] eventsByLane,
+            CountDownLatch previousTXCompletion, CountDownLatch txCompletion) {
+        if (eventsByLane == null) {
+            DeliveryCallback deliveryCallback = this.deliveryCallback;
+            if (deliveryCallback != null) {
+                deliveryCallback.delivered(origin);
+            }
+            return;
+        }
+        dispatch(origin, eventsByLane, new AtomicInteger(numberOfParts(origin, eventsByLane)), previousTXCompletion,
+            txCompletion);
+    }
+
+    private void dispatch(ReplicationEvent origin, List<ReplicationEvent>[] eventsByLane,
+            AtomicInteger remainingParts, CountDownLatch previousTXCompletion, CountDownLatch txCompletion) {
+        for (int i = 0; i < eventsByLane.length; i++) {
+            List<ReplicationEvent> laneEvents = eventsByLane[i];
+            if (laneEvents == null) {
+                continue;
+            }
+            if (origin instanceof TXReplicationEvent) {
+                lanes[i].onEvent(new Part(origin, new TXReplicationEvent(laneEvents), remainingParts,
+                    previousTXCompletion, txCompletion));
+            } else
+            if (origin instanceof TXChunkReplicationEvent) {
+                lanes[i].onEvent(new Part(origin, new TXChunkReplicationEvent(laneEvents), remainingParts,
+                    previousTXCompletion, txCompletion));
+            } else {
+                for (ReplicationEvent laneEvent : laneEvents) {
+                    lanes[i].onEvent(new Part(origin, laneEvent, remainingParts, previousTXCompletion,
+                        txCompletion));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of lane events origin is going to be split into
+     */
+    private static int numberOfParts(ReplicationEvent origin, List<ReplicationEvent>[] eventsByLane) {
+        boolean container = origin instanceof TXReplicationEvent || origin instanceof TXChunkReplicationEvent;
+        int result = 0;
+        for (List<ReplicationEvent> laneEvents : eventsByLane) {
+            if (laneEvents != null) {
+                result += container ? 1 : laneEvents.size();
+            }
+        }
+        return result;
+    }
+
+    private List<ReplicationEvent>[] partition(RowsMutationReplicationEvent event,
+            List<ReplicationEvent>[] eventsByLane) {
+        Collection rows = event.getRows();
+        if (rows.isEmpty()) {
+            return eventsByLane;
+        }
+        int[] laneByRow = new int[rows.size()];
+        boolean singleLane = true;
+        int index = 0;
+        for (Object row : rows) {
+            int lane = laneOf(event, row);
+            laneByRow[index] = lane;
+            singleLane &= lane == laneByRow[0];
+            index++;
+        }
+        if (singleLane) {
+            return add(eventsByLane, laneByRow[0], event);
+        }
+        List<List<Object>> rowsByLane = new ArrayList<List<Object>>(
+            Collections.<List<Object>>nCopies(lanes.length, null));
+        index = 0;
+        for (Object row : rows) {
+            int lane = laneByRow[index++];
+            if (rowsByLane.get(lane) == null) {
+                rowsByLane.set(lane, new ArrayList<Object>());
+            }
+            rowsByLane.get(lane).add(row);
+        }
+        List<ReplicationEvent>[] result = eventsByLane;
+        for (int i = 0; i < lanes.length; i++) {
+            if (rowsByLane.get(i) != null) {
+                result = add(result, i, copyOf(event, rowsByLane.get(i)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return lane of the row (in case of update - lane of the before image, with {@link #fenceRequired} raised if
+     * after image belongs to a different one)
+     */
+    private int laneOf(RowsMutationReplicationEvent event, Object row) {
+        if (row instanceof Map.Entry) {
+            Map.Entry entry = (Map.Entry) row;
+            int lane = laneOf(event, (Serializable[]) entry.getKey());
+            if (lane != laneOf(event, (Serializable[]) entry.getValue())) {
+                fenceRequired = true;
+            }
+            return lane;
+        }
+        return laneOf(event, (Serializable[]) row);
+    }
+
+    private int laneOf(RowsMutationReplicationEvent event, Serializable[] row) {
+        return (partitioner.partition(event, row) & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ReplicationEvent>[] add(List<ReplicationEvent>[] eventsByLane, int lane, ReplicationEvent event) {
+        List<ReplicationEvent>[] result = eventsByLane == null ? new List[lanes.length] : eventsByLane;
+        if (result[lane] == null) {
+            result[lane] = new ArrayList<ReplicationEvent>();
+        }
+        result[lane].add(event);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RowsMutationReplicationEvent copyOf(RowsMutationReplicationEvent event, List rows) {
+        if (event instanceof InsertRowsReplicationEvent) {
+            return new InsertRowsReplicationEvent(event.getServerId(), event.getTableDescriptor(),
+                event.getColumnNames(), rows);
+        }
+        if (event instanceof UpdateRowsReplicationEvent) {
+            return new UpdateRowsReplicationEvent(event.getServerId(), event.getTableDescriptor(),
+                event.getColumnNames(), rows);
+        }
+        if (event instanceof DeleteRowsReplicationEvent) {
+            return new DeleteRowsReplicationEvent(event.getServerId(), event.getTableDescriptor(),
+                event.getColumnNames(), rows);
+        }
+        throw new UnsupportedOperationException("Unexpected " + event.getClass());
+    }
+
+    @Override
+    public void shutdown() {
+        for (AsyncReplicationEventListener lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (AsyncReplicationEventListener lane : lanes) {
+            long remaining = Math.max(deadline - System.nanoTime(), 0);
+            if (!lane.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionedReplicationEventListener{listener=" + listener + ", lanes=" + lanes.length + '}';
+    }
+
+    /**
+     * Part of the event handed over to a single lane. In case of barrier, part can be delivered only after previous
+     * transaction is fully processed.
+     */
+    private static final class Part implements ReplicationEvent {
+
+        private final ReplicationEvent origin;
+        private final ReplicationEvent event;
+        private final AtomicInteger remainingParts;
+        private final CountDownLatch previousTXCompletion;
+        private final CountDownLatch txCompletion;
+
+        private Part(ReplicationEvent origin, ReplicationEvent event, AtomicInteger remainingParts,
+                CountDownLatch previousTXCompletion, CountDownLatch txCompletion) {
+            this.origin = origin;
+            this.event = event;
+            this.remainingParts = remainingParts;
+            this.previousTXCompletion = previousTXCompletion;
+            this.txCompletion = txCompletion;
+        }
+
+        @Override
+        public String toString() {
+            return event.toString();
+        }
+    }
+
+    /**
+     * Point lane has to pass through in order to proceed. Used to order event in respect to all the lanes at once.
+     */
+    private static final class Gate implements ReplicationEvent {
+
+        private final CountDownLatch arrival;
+        private final CountDownLatch release;
+
+        private Gate(CountDownLatch arrival, CountDownLatch release) {
+            this.arrival = arrival;
+            this.release = release;
+        }
+
+        private void pass() {
+            if (arrival != null) {
+                arrival.countDown();
+            }
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Gate";
+        }
+    }
+
+    /**
+     * Listener each of the lanes delivers events to.
+     */
+    private final class LaneListener implements ReplicationEventListener {
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+            Part part = (Part) event;
+            if (part.event instanceof Gate) {
+                ((Gate) part.event).pass();
+                return;
+            }
+            if (part.txCompletion == null) {
+                listener.onEvent(part.event);
+                return;
+            }
+            try {
+                if (part.previousTXCompletion != null) {
+                    part.previousTXCompletion.await();
+                }
+                listener.onEvent(part.event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                part.txCompletion.countDown();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return listener.toString();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Partitions rows by schema.table + primary key (which allows changes to the same table to be delivered
+ * in parallel). Rows of the tables primary key of which is unknown are partitioned by schema.table.
+ * <p>
+ * Keep in mind that changes to the primary key (UPDATE ... SET id = ...) make before and after images of the row
+ * end up in different partitions (it's up to the caller to order such rows in respect to both of them, see
+ * {@link PartitionedReplicationEventListener} and {@link WritesetReplicationEventListener}).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class PrimaryKeyPartitioner implements ReplicationEventPartitioner {
+
+    private final Map<String, int[]> keyColumnsByTable = new HashMap<String, int[]>();
+
+    /**
+     * @param keyColumnsByTable "schema.table" (case-insensitive) -&gt; positions of primary key columns
+     * within the row
+     */
+    public PrimaryKeyPartitioner(Map<String, int[]> keyColumnsByTable) {
+        for (Map.Entry<String, int[]> entry : keyColumnsByTable.entrySet()) {
+            this.keyColumnsByTable.put(entry.getKey().toLowerCase(), entry.getValue().clone());
+        }
+    }
+
+    @Override
+    public int partition(RowsMutationReplicationEvent event, Serializable[] row) {
+        String qualifiedName = event.getTableDescriptor().getQualifiedName();
+        int hash = qualifiedName.hashCode();
+        int[] keyColumns = keyColumnsByTable.get(qualifiedName);
+        if (keyColumns != null) {
+            for (int keyColumn : keyColumns) {
+                Serializable value = row[keyColumn];
+                hash = 31 * hash + (value == null ? 0 : value.hashCode());
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counter which, apart from the total, keeps track of the per-second counts over the last
+ * {@link #WINDOW} seconds (rate is an average over the complete seconds of the window, which makes it approximate
+ * but cheap to maintain).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class RateMeter {
+
+    static final int WINDOW = 10;
+
+    private static final int SLOTS = 16; // power of two greater than WINDOW
+
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLongArray counts = new AtomicLongArray(SLOTS);
+    private final AtomicLongArray seconds = new AtomicLongArray(SLOTS);
+
+    /**
+     * @param timeInMillis current time (as reported by {@link System#currentTimeMillis()})
+     */
+    public void mark(long n, long timeInMillis) {
+        total.addAndGet(n);
+        long second = timeInMillis / 1000;
+        int slot = (int) (second & (SLOTS - 1));
+        long slotSecond = seconds.get(slot);
+        if (slotSecond != second && seconds.compareAndSet(slot, slotSecond, second)) {
+            // slot is taken over (marks racing with the takeover might be lost)
+            counts.set(slot, n);
+        } else {
+            counts.addAndGet(slot, n);
+        }
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    /**
+     * @return average number of marks per second
+     */
+    public double getRate(long timeInMillis) {
+        long second = timeInMillis / 1000;
+        long sum = 0;
+        for (long s = second - WINDOW; s < second; s++) {
+            int slot = (int) (s & (SLOTS - 1));
+            if (seconds.get(slot) == s) {
+                sum += counts.get(slot);
+            }
+        }
+        return (double) sum / WINDOW;
+    }
+}
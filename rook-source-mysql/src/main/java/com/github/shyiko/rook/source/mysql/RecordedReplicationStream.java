@@ -0,0 +1,214 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.ReplicationStream;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link ReplicationStream} feeding back events recorded by {@link RecordingReplicationEventListener} (segment after
+ * segment), either as fast as possible or at (a multiple of) the pace they were originally recorded with. Handy for
+ * reproducing production load against listeners without access to the MySQL server (or binary logs).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class RecordedReplicationStream implements ReplicationStream {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+    private final List<ReplicationEventListener> listeners = new CopyOnWriteArrayList<ReplicationEventListener>();
+    private volatile ReplicationEventExceptionHandler exceptionHandler;
+    private volatile double replaySpeed;
+    private volatile int mappingWindowSize = MappedFileInputStream.DEFAULT_WINDOW_SIZE;
+    private SegmentReplay replay;
+
+    /**
+     * @param directory directory {@link RecordingReplicationEventListener} was recording to
+     */
+    public RecordedReplicationStream(File directory) {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException(directory + " is not a directory");
+        }
+        this.directory = directory;
+    }
+
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    /**
+     * @param replaySpeed 1.0 to replay events at the pace they were recorded with, 2.0 to replay them twice as fast
+     * and so on, 0 to replay as fast as possible (which is the default)
+     */
+    public void setReplaySpeed(double replaySpeed) {
+        if (replaySpeed < 0) {
+            throw new IllegalArgumentException("Replay speed cannot be negative");
+        }
+        this.replaySpeed = replaySpeed;
+    }
+
+    /**
+     * @param mappingWindowSize maximum size (in bytes) of the segment region mapped into memory at a time.
+     * 64 MB by default. Takes effect on the next connect.
+     */
+    public void setMappingWindowSize(int mappingWindowSize) {
+        if (mappingWindowSize < 1) {
+            throw new IllegalArgumentException("Mapping window size must be greater than 0");
+        }
+        this.mappingWindowSize = mappingWindowSize;
+    }
+
+    /**
+     * Replays recorded events in the calling thread. Returns once all the segments are replayed or
+     * {@link #disconnect()} is called.
+     */
+    @Override
+    public void connect() throws IOException {
+        startReplay().replay();
+    }
+
+    /**
+     * Unlike {@link #connect()}, replays recorded events in a separate thread (and so returns as soon as the header
+     * of the first segment is read).
+     */
+    @Override
+    public void connect(long timeoutInMilliseconds) throws IOException, TimeoutException {
+        startReplay().start("rook-recorded-replay", timeoutInMilliseconds);
+    }
+
+    private synchronized SegmentReplay startReplay() throws IOException {
+        if (isConnected()) {
+            throw new IllegalStateException("Replay is already in progress");
+        }
+        File[] segments = RecordingReplicationEventListener.listSegments(directory);
+        if (segments.length == 0) {
+            throw new IOException("No recorded events found in " + directory);
+        }
+        replay = new SegmentReplay(segments, mappingWindowSize);
+        return replay;
+    }
+
+    /**
+     * @return true while replay is in progress, false otherwise
+     */
+    @Override
+    public synchronized boolean isConnected() {
+        return replay != null && !replay.isCompleted();
+    }
+
+    @Override
+    public void registerListener(ReplicationEventListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(ReplicationEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void unregisterListener(Class<? extends ReplicationEventListener> listenerClass) {
+        for (ReplicationEventListener listener : listeners) {
+            if (listenerClass.isInstance(listener)) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        SegmentReplay replay;
+        synchronized (this) {
+            replay = this.replay;
+        }
+        if (replay != null) {
+            replay.stop();
+        }
+    }
+
+    private void deliver(ReplicationEvent event) {
+        for (ReplicationEventListener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (Exception e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(listener + " choked on " + event, e);
+                }
+                ReplicationEventExceptionHandler exceptionHandler = this.exceptionHandler;
+                if (exceptionHandler != null) {
+                    exceptionHandler.handle(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Single run over the recorded segments.
+     */
+    private final class SegmentReplay extends Replay {
+
+        private final File[] segments;
+        private final int mappingWindowSize;
+
+        private SegmentReplay(File[] segments, int mappingWindowSize) {
+            super(segments.length);
+            this.segments = segments;
+            this.mappingWindowSize = mappingWindowSize;
+        }
+
+        @Override
+        protected boolean replay(int sourceIndex) throws IOException {
+            File segment = segments[sourceIndex];
+            if (logger.isInfoEnabled()) {
+                logger.info("Replaying " + segment);
+            }
+            MappedFileInputStream inputStream = new MappedFileInputStream(segment, 0, mappingWindowSize);
+            try {
+                ReplicationEventCodec.Decoder decoder = new ReplicationEventCodec.Decoder(inputStream);
+                markStarted();
+                while (!isStopRequested()) {
+                    ReplicationEvent event = decoder.decode();
+                    if (event == null) {
+                        break;
+                    }
+                    if (pacer.pace(decoder.getTimestamp(), replaySpeed)) {
+                        deliver(event);
+                    }
+                }
+            } catch (EOFException e) {
+                // recording was interrupted in the middle of the event (or even segment header)
+                if (logger.isWarnEnabled()) {
+                    logger.warn(segment + " is truncated at " + inputStream.getPosition());
+                }
+            } finally {
+                inputStream.close();
+            }
+            return true;
+        }
+    }
+}
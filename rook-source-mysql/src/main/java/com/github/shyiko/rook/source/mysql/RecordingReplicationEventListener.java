@@ -0,0 +1,188 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBatchReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * {@link ReplicationEventListener} recording events (in {@link ReplicationEventCodec} format) to a directory of
+ * segment files (events-000001.rook, events-000002.rook, ...), which can later be fed back with
+ * {@link RecordedReplicationStream}. New segment is started once current one exceeds
+ * {@link #setMaxSegmentSize(int)} (and each time listener is created, so that recording can be resumed into the same
+ * directory). {@link TXBatchReplicationEvent}s are recorded as separate transactions.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class RecordingReplicationEventListener implements ReplicationEventListener, Closeable {
+
+    public static final int DEFAULT_MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final String SEGMENT_PREFIX = "events-";
+    static final String SEGMENT_SUFFIX = ".rook";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+    private volatile int maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+    private int segmentIndex;
+    private OutputStream segmentOutputStream;
+    private ReplicationEventCodec.Encoder encoder;
+
+    public RecordingReplicationEventListener(File directory) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Failed to create " + directory);
+        }
+        this.directory = directory;
+        File[] segments = listSegments(directory);
+        for (File segment : segments) {
+            segmentIndex = Math.max(segmentIndex, parseSegmentIndex(segment));
+        }
+    }
+
+    /**
+     * @param maxSegmentSize size (in bytes) segment is allowed to grow to before next one is started
+     * ({@value #DEFAULT_MAX_SEGMENT_SIZE} by default). Note that event is never split between the segments (which
+     * means that segment may get slightly bigger than that).
+     */
+    public void setMaxSegmentSize(int maxSegmentSize) {
+        if (maxSegmentSize < 1) {
+            throw new IllegalArgumentException("Max segment size must be greater than 0");
+        }
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    @Override
+    public synchronized void onEvent(ReplicationEvent event) {
+        try {
+            long timestamp = System.currentTimeMillis();
+            if (event instanceof TXBatchReplicationEvent) {
+                for (TXReplicationEvent transaction : ((TXBatchReplicationEvent) event).getTransactions()) {
+                    record(transaction, timestamp);
+                }
+            } else {
+                record(event, timestamp);
+            }
+        } catch (IOException e) {
+            // whatever has been written so far is left as is (decoder treats truncated record as the end of segment)
+            closeSegment();
+            throw new RuntimeException("Failed to record " + event, e);
+        }
+    }
+
+    private void record(ReplicationEvent event, long timestamp) throws IOException {
+        if (encoder == null) {
+            openSegment();
+        }
+        encoder.encode(event, timestamp);
+        if (encoder.size() >= maxSegmentSize) {
+            closeSegment();
+        }
+    }
+
+    private void openSegment() throws IOException {
+        File segment = new File(directory, String.format("%s%06d%s", SEGMENT_PREFIX, ++segmentIndex, SEGMENT_SUFFIX));
+        if (logger.isDebugEnabled()) {
+            logger.debug("Recording events to " + segment);
+        }
+        segmentOutputStream = new BufferedOutputStream(new FileOutputStream(segment));
+        try {
+            encoder = new ReplicationEventCodec.Encoder(segmentOutputStream);
+        } catch (IOException e) {
+            closeSegment();
+            throw e;
+        }
+    }
+
+    private void closeSegment() {
+        encoder = null;
+        if (segmentOutputStream != null) {
+            try {
+                segmentOutputStream.close();
+            } catch (IOException e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Failed to close segment", e);
+                }
+            }
+            segmentOutputStream = null;
+        }
+    }
+
+    /**
+     * Flushes buffered events to disk.
+     */
+    public synchronized void flush() throws IOException {
+        if (encoder != null) {
+            encoder.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeSegment();
+    }
+
+    /**
+     * @return segment files (sorted in the order they were recorded in)
+     */
+    static File[] listSegments(File directory) {
+        File[] result = directory.listFiles(new FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && parseSegmentIndex(file) != -1;
+            }
+        });
+        if (result == null) {
+            return new File[0];
+        }
+        Arrays.sort(result, new Comparator<File>() {
+
+            @Override
+            public int compare(File file, File anotherFile) {
+                int index = parseSegmentIndex(file), anotherIndex = parseSegmentIndex(anotherFile);
+                return index < anotherIndex ? -1 : (index == anotherIndex ? 0 : 1);
+            }
+        });
+        return result;
+    }
+
+    private static int parseSegmentIndex(File file) {
+        String name = file.getName();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
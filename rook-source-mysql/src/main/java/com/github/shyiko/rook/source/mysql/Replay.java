@@ -0,0 +1,137 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single run over a sequence of sources (recorded segments, binary log files, ...), either in the calling thread
+ * ({@link #replay()}) or in a separate one ({@link #start(String, long)}). Subclasses replay one source at a time,
+ * calling {@link #markStarted()} once the first one is open, checking {@link #isStopRequested()} between events and
+ * holding events back with {@link #pacer}.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+abstract class Replay implements Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final int numberOfSources;
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private final CountDownLatch startLatch = new CountDownLatch(1);
+    private final CountDownLatch completionLatch = new CountDownLatch(1);
+    protected final ReplayPacer pacer = new ReplayPacer(stopLatch);
+    private volatile Thread thread;
+    private volatile boolean completed;
+    private volatile IOException failure;
+
+    protected Replay(int numberOfSources) {
+        this.numberOfSources = numberOfSources;
+    }
+
+    /**
+     * @param sourceIndex index of the source, [0, numberOfSources)
+     * @return false if replay should not proceed to the next source, true otherwise
+     */
+    protected abstract boolean replay(int sourceIndex) throws IOException;
+
+    @Override
+    public void run() {
+        try {
+            replay();
+        } catch (IOException e) {
+            if (logger.isErrorEnabled()) {
+                logger.error("Replay failed", e);
+            }
+        }
+    }
+
+    public void replay() throws IOException {
+        thread = Thread.currentThread();
+        try {
+            for (int i = 0; i < numberOfSources && !isStopRequested(); i++) {
+                if (!replay(i)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            completed = true;
+            startLatch.countDown();
+            completionLatch.countDown();
+        }
+    }
+
+    /**
+     * Replays sources in a separate thread, waiting for the first one to be opened.
+     * @throws IOException if replay failed before it could get to the first event
+     * @throws TimeoutException if first source wasn't opened within a given timeout (in which case replay is stopped)
+     */
+    public void start(String threadName, long timeoutInMilliseconds) throws IOException, TimeoutException {
+        new Thread(this, threadName).start();
+        boolean started;
+        try {
+            started = startLatch.await(timeoutInMilliseconds, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+            throw new IOException("Interrupted while waiting for replay to start", e);
+        }
+        if (!started) {
+            stop();
+            throw new TimeoutException("Replay failed to start within " + timeoutInMilliseconds + "ms");
+        }
+        IOException failure = this.failure;
+        if (failure != null) {
+            throw new IOException(failure.getMessage(), failure);
+        }
+    }
+
+    protected void markStarted() {
+        startLatch.countDown();
+    }
+
+    protected boolean isStopRequested() {
+        return stopLatch.getCount() == 0;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    /**
+     * Requests replay to stop and waits for it to do so (unless called from the replay thread itself).
+     */
+    public void stop() {
+        stopLatch.countDown();
+        if (Thread.currentThread() == thread) {
+            return;
+        }
+        try {
+            completionLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
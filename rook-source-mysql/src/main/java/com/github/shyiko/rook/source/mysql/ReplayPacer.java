@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds replay back so that events are delivered at the pace they were originally produced with (scaled by replay
+ * speed). Not thread-safe.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class ReplayPacer {
+
+    private final CountDownLatch stopLatch;
+    private long firstEventTimestamp;
+    private long firstEventNanoTime;
+
+    /**
+     * @param stopLatch latch counted down once replay is requested to stop
+     */
+    ReplayPacer(CountDownLatch stopLatch) {
+        this.stopLatch = stopLatch;
+    }
+
+    /**
+     * Blocks until it's time for the event with a given timestamp.
+     * @param timestamp event timestamp (in milliseconds), 0 if unknown (in which case event is not held back)
+     * @param replaySpeed 1.0 for original pace, 2.0 for twice as fast, etc., 0 for as fast as possible
+     * @return false if stop was requested in the meantime, true otherwise
+     */
+    public boolean pace(long timestamp, double replaySpeed) {
+        if (replaySpeed <= 0 || timestamp <= 0) {
+            return true;
+        }
+        if (firstEventTimestamp == 0) {
+            firstEventTimestamp = timestamp;
+            firstEventNanoTime = System.nanoTime();
+            return true;
+        }
+        long delay = firstEventNanoTime + (long) (TimeUnit.MILLISECONDS.toNanos(timestamp - firstEventTimestamp) /
+            replaySpeed) - System.nanoTime();
+        if (delay > 0) {
+            try {
+                return !stopLatch.await(delay, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stopLatch.countDown();
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.shyiko.rook.source.mysql.ColumnValueCodec.readString;
+import static com.github.shyiko.rook.source.mysql.ColumnValueCodec.readVarLong;
+import static com.github.shyiko.rook.source.mysql.ColumnValueCodec.unzigzag;
+import static com.github.shyiko.rook.source.mysql.ColumnValueCodec.writeString;
+import static com.github.shyiko.rook.source.mysql.ColumnValueCodec.writeVarLong;
+import static com.github.shyiko.rook.source.mysql.ColumnValueCodec.zigzag;
+
+/**
+ * Versioned compact binary representation of {@link TXReplicationEvent}s (including {@link GtidTXReplicationEvent}s)
+ * and {@link RowsMutationReplicationEvent}s meant for recording event streams (see
+ * {@link RecordingReplicationEventListener}). Stream starts with a header (magic number + format version) followed by
+ * records (timestamp + event). Tables are defined once per stream (schema, name and column names) and then referred
+ * to by id, numbers are written as (zigzag) varints and column values as (1 byte) type tag + value (see
+ * {@link ColumnValueCodec}). Unlike {@link RowsEventCodec} (used for short-lived spill files), format is meant to be
+ * stable across releases and so it never falls back to the java serialization (values of unsupported types are
+ * rejected).
+ * <p>
+ * Format (version 1):
+ * <pre>
+ * stream := "ROOK" version:varint record*
+ * record := timestampDelta:zigzag-varint event
+ * event := tableDefinition* (TX count:varint event* | GTID_TX gtid:string gtidSet:string count:varint event* |
+ *     INSERT/DELETE serverId:varint tableId:varint count:varint row* |
+ *     UPDATE serverId:varint tableId:varint count:varint (row row)*)
+ * tableDefinition := TABLE tableId:varint schema:string table:string (columnCount + 1):varint column:string*
+ * row := length:varint (tag value)*
+ * </pre>
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class ReplicationEventCodec {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC_HEADER = {'R', 'O', 'O', 'K'};
+
+    private static final byte TABLE = 0;
+    private static final byte TX = 1;
+    private static final byte GTID_TX = 2;
+    private static final byte INSERT = 3;
+    private static final byte UPDATE = 4;
+    private static final byte DELETE = 5;
+
+    private static final ColumnValueCodec COLUMN_VALUE_CODEC = new ColumnValueCodec(false);
+
+    private ReplicationEventCodec() {
+    }
+
+    /**
+     * Not thread-safe.
+     */
+    static final class Encoder {
+
+        private final DataOutputStream output;
+        private final Map<TableDescriptor, Table> tables = new HashMap<TableDescriptor, Table>();
+        private int numberOfTableDefinitions;
+        private long lastTimestamp;
+
+        /**
+         * Writes stream header.
+         */
+        Encoder(OutputStream outputStream) throws IOException {
+            this.output = new DataOutputStream(outputStream);
+            output.write(MAGIC_HEADER);
+            writeVarLong(VERSION, output);
+        }
+
+        /**
+         * @param timestamp time (in milliseconds) event was recorded at
+         * @throws IOException if event (or any of its values) is not supported
+         */
+        public void encode(ReplicationEvent event, long timestamp) throws IOException {
+            writeVarLong(zigzag(timestamp - lastTimestamp), output);
+            lastTimestamp = timestamp;
+            writeEvent(event);
+        }
+
+        /**
+         * @return number of bytes written so far (saturated at Integer.MAX_VALUE)
+         */
+        public int size() {
+            return output.size();
+        }
+
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        private void writeEvent(ReplicationEvent event) throws IOException {
+            if (event instanceof RowsMutationReplicationEvent) {
+                writeRowsEvent((RowsMutationReplicationEvent) event);
+            } else
+            if (event instanceof GtidTXReplicationEvent) {
+                GtidTXReplicationEvent gtidTXEvent = (GtidTXReplicationEvent) event;
+                defineTables(gtidTXEvent.getEvents());
+                output.writeByte(GTID_TX);
+                writeString(gtidTXEvent.getGtid(), output);
+                writeString(gtidTXEvent.getGtidSet(), output);
+                writeEvents(gtidTXEvent.getEvents());
+            } else
+            if (event.getClass() == TXReplicationEvent.class) {
+                defineTables(((TXReplicationEvent) event).getEvents());
+                output.writeByte(TX);
+                writeEvents(((TXReplicationEvent) event).getEvents());
+            } else {
+                throw new IOException("Unsupported event " + event.getClass());
+            }
+        }
+
+        /**
+         * Writes definitions of the tables (not defined yet) events refer to. Those go before TX tag (and not
+         * somewhere in the middle of it) so that decoder could simply skip them.
+         */
+        private void defineTables(List<ReplicationEvent> events) throws IOException {
+            for (ReplicationEvent event : events) {
+                if (event instanceof RowsMutationReplicationEvent) {
+                    resolveTable((RowsMutationReplicationEvent) event);
+                }
+            }
+        }
+
+        private void writeEvents(List<ReplicationEvent> events) throws IOException {
+            writeVarLong(events.size(), output);
+            for (ReplicationEvent event : events) {
+                writeEvent(event);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void writeRowsEvent(RowsMutationReplicationEvent event) throws IOException {
+            int tableId = resolveTable(event);
+            if (event instanceof InsertRowsReplicationEvent) {
+                output.writeByte(INSERT);
+            } else
+            if (event instanceof UpdateRowsReplicationEvent) {
+                output.writeByte(UPDATE);
+            } else
+            if (event instanceof DeleteRowsReplicationEvent) {
+                output.writeByte(DELETE);
+            } else {
+                throw new IOException("Unsupported event " + event.getClass());
+            }
+            writeVarLong(event.getServerId(), output);
+            writeVarLong(tableId, output);
+            Collection rows = event.getRows();
+            writeVarLong(rows.size(), output);
+            for (Object row : rows) {
+                if (row instanceof Map.Entry) {
+                    Map.Entry<Serializable[], Serializable[]> entry = (Map.Entry<Serializable[], Serializable[]>) row;
+                    writeRow(entry.getKey());
+                    writeRow(entry.getValue());
+                } else {
+                    writeRow((Serializable[]) row);
+                }
+            }
+        }
+
+        /**
+         * @return id of the table (definition of which is written if that's the first time table is seen or its
+         * columns have changed)
+         */
+        private int resolveTable(RowsMutationReplicationEvent<?> event) throws IOException {
+            TableDescriptor tableDescriptor = event.getTableDescriptor();
+            List<String> columnNames = event.getColumnNames();
+            Table table = tables.get(tableDescriptor);
+            if (table != null && (table.columnNames == columnNames ||
+                    table.columnNames != null && table.columnNames.equals(columnNames))) {
+                return table.id;
+            }
+            table = new Table(numberOfTableDefinitions++, tableDescriptor, columnNames);
+            tables.put(tableDescriptor, table);
+            output.writeByte(TABLE);
+            writeVarLong(table.id, output);
+            writeString(tableDescriptor.getSchema(), output);
+            writeString(tableDescriptor.getTable(), output);
+            writeVarLong(columnNames == null ? 0 : columnNames.size() + 1, output);
+            if (columnNames != null) {
+                for (String columnName : columnNames) {
+                    writeString(columnName, output);
+                }
+            }
+            return table.id;
+        }
+
+        private void writeRow(Serializable[] row) throws IOException {
+            COLUMN_VALUE_CODEC.writeRow(row, output);
+        }
+    }
+
+    /**
+     * Not thread-safe.
+     */
+    static final class Decoder {
+
+        private final DataInputStream input;
+        private final List<Table> tables = new ArrayList<Table>();
+        private long timestamp;
+
+        /**
+         * Reads (and validates) stream header.
+         */
+        Decoder(InputStream inputStream) throws IOException {
+            this.input = new DataInputStream(inputStream);
+            byte[] magicHeader = new byte[MAGIC_HEADER.length];
+            input.readFully(magicHeader);
+            if (!Arrays.equals(magicHeader, MAGIC_HEADER)) {
+                throw new IOException("Not a recorded event stream");
+            }
+            long version = readVarLong(input);
+            if (version != VERSION) {
+                throw new IOException("Unsupported format version " + version + " (expected " + VERSION + ")");
+            }
+        }
+
+        /**
+         * @return next event, null if the end of the stream has been reached
+         * @throws java.io.EOFException if stream ends in the middle of the record (e.g. recording was interrupted)
+         */
+        public ReplicationEvent decode() throws IOException {
+            int firstByte = input.read();
+            if (firstByte == -1) {
+                return null;
+            }
+            timestamp += unzigzag(readVarLong(firstByte, input));
+            return readEvent();
+        }
+
+        /**
+         * @return timestamp of the last decoded event
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        private ReplicationEvent readEvent() throws IOException {
+            byte tag = input.readByte();
+            while (tag == TABLE) {
+                readTable();
+                tag = input.readByte();
+            }
+            switch (tag) {
+                case TX:
+                    return new TXReplicationEvent(readEvents());
+                case GTID_TX:
+                    String gtid = readString(input);
+                    String gtidSet = readString(input);
+                    return new GtidTXReplicationEvent(readEvents(), gtid, gtidSet);
+                case INSERT:
+                case UPDATE:
+                case DELETE:
+                    return readRowsEvent(tag);
+                default:
+                    throw new IOException("Unknown event tag " + tag);
+            }
+        }
+
+        private List<ReplicationEvent> readEvents() throws IOException {
+            int numberOfEvents = (int) readVarLong(input);
+            List<ReplicationEvent> result = new ArrayList<ReplicationEvent>(numberOfEvents);
+            for (int i = 0; i < numberOfEvents; i++) {
+                result.add(readEvent());
+            }
+            return result;
+        }
+
+        private void readTable() throws IOException {
+            int id = (int) readVarLong(input);
+            TableDescriptor tableDescriptor = new TableDescriptor(readString(input), readString(input));
+            // descriptors are interned (just like they are by the stream)
+            for (Table table : tables) {
+                if (table.tableDescriptor.equals(tableDescriptor)) {
+                    tableDescriptor = table.tableDescriptor;
+                    break;
+                }
+            }
+            int numberOfColumns = (int) readVarLong(input) - 1;
+            List<String> columnNames = null;
+            if (numberOfColumns >= 0) {
+                columnNames = new ArrayList<String>(numberOfColumns);
+                for (int i = 0; i < numberOfColumns; i++) {
+                    columnNames.add(readString(input));
+                }
+                columnNames = Collections.unmodifiableList(columnNames);
+            }
+            if (id != tables.size()) {
+                throw new IOException("Unexpected table id " + id + " (expected " + tables.size() + ")");
+            }
+            tables.add(new Table(id, tableDescriptor, columnNames));
+        }
+
+        private ReplicationEvent readRowsEvent(byte tag) throws IOException {
+            long serverId = readVarLong(input);
+            int tableId = (int) readVarLong(input);
+            if (tableId >= tables.size()) {
+                throw new IOException("Unknown table id " + tableId);
+            }
+            Table table = tables.get(tableId);
+            int numberOfRows = (int) readVarLong(input);
+            switch (tag) {
+                case INSERT:
+                    return new InsertRowsReplicationEvent(serverId, table.tableDescriptor, table.columnNames,
+                        readRows(numberOfRows));
+                case UPDATE:
+                    List<Map.Entry<Serializable[], Serializable[]>> rows =
+                        new ArrayList<Map.Entry<Serializable[], Serializable[]>>(numberOfRows);
+                    for (int i = 0; i < numberOfRows; i++) {
+                        rows.add(new AbstractMap.SimpleEntry<Serializable[], Serializable[]>(readRow(), readRow()));
+                    }
+                    return new UpdateRowsReplicationEvent(serverId, table.tableDescriptor, table.columnNames, rows);
+                default:
+                    return new DeleteRowsReplicationEvent(serverId, table.tableDescriptor, table.columnNames,
+                        readRows(numberOfRows));
+            }
+        }
+
+        private List<Serializable[]> readRows(int numberOfRows) throws IOException {
+            List<Serializable[]> result = new ArrayList<Serializable[]>(numberOfRows);
+            for (int i = 0; i < numberOfRows; i++) {
+                result.add(readRow());
+            }
+            return result;
+        }
+
+        private Serializable[] readRow() throws IOException {
+            return COLUMN_VALUE_CODEC.readRow(input);
+        }
+    }
+
+    private static final class Table {
+
+        private final int id;
+        private final TableDescriptor tableDescriptor;
+        private final List<String> columnNames;
+
+        private Table(int id, TableDescriptor tableDescriptor, List<String> columnNames) {
+            this.id = id;
+            this.tableDescriptor = tableDescriptor;
+            this.columnNames = columnNames;
+        }
+    }
+}
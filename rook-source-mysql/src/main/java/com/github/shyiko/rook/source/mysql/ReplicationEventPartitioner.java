@@ -0,0 +1,37 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+
+import java.io.Serializable;
+
+/**
+ * Determines which partition (lane) row belongs to. Rows sharing the same partition are guaranteed to be
+ * delivered in order (see {@link PartitionedReplicationEventListener}).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface ReplicationEventPartitioner {
+
+    /**
+     * @param event event row belongs to
+     * @param row row (in case of update - either row state before or after the update, as both of them are
+     * partitioned)
+     * @return partition hash (any int, including negative ones)
+     */
+    int partition(RowsMutationReplicationEvent event, Serializable[] row);
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool of the objects (events, row lists and before/after row pairs) which are reused from one transaction
+ * (or standalone event) to another in low-garbage mode. Everything acquired since the last {@link #release()} is
+ * considered to be in use. What pool retains is bounded both by the number of objects of each kind
+ * (see {@link #ReplicationEventPool(int, int)}) and by the size of the row lists (lists grown beyond the limit by
+ * some huge transaction are left to GC instead of being kept around for good). Not thread-safe.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+class ReplicationEventPool {
+
+    public static final int DEFAULT_MAX_RETAINED_OBJECTS = 1024;
+    public static final int DEFAULT_MAX_RETAINED_LIST_SIZE = 1024;
+
+    private final Pool<PooledInsertRowsReplicationEvent> insertRowsEvents;
+    private final Pool<PooledUpdateRowsReplicationEvent> updateRowsEvents;
+    private final Pool<PooledDeleteRowsReplicationEvent> deleteRowsEvents;
+    private final Pool<List<Serializable[]>> rowLists;
+    private final Pool<List<Map.Entry<Serializable[], Serializable[]>>> rowPairLists;
+    private final Pool<RowPair> rowPairs;
+
+    public ReplicationEventPool() {
+        this(DEFAULT_MAX_RETAINED_OBJECTS, DEFAULT_MAX_RETAINED_LIST_SIZE);
+    }
+
+    /**
+     * @param maxRetainedObjects maximum number of objects of each kind to keep for reuse (objects acquired
+     * beyond this limit are simply left to GC)
+     * @param maxRetainedListSize maximum number of rows list might have held to be reused
+     */
+    public ReplicationEventPool(int maxRetainedObjects, int maxRetainedListSize) {
+        insertRowsEvents = new InsertRowsEventPool(maxRetainedObjects);
+        updateRowsEvents = new UpdateRowsEventPool(maxRetainedObjects);
+        deleteRowsEvents = new DeleteRowsEventPool(maxRetainedObjects);
+        rowLists = new ListPool<Serializable[]>(maxRetainedObjects, maxRetainedListSize);
+        rowPairLists = new ListPool<Map.Entry<Serializable[], Serializable[]>>(maxRetainedObjects,
+            maxRetainedListSize);
+        rowPairs = new RowPairPool(maxRetainedObjects);
+    }
+
+    public InsertRowsReplicationEvent insertRows(long serverId, TableDescriptor tableDescriptor,
+            List<String> columnNames, List<Serializable[]> rows) {
+        return insertRowsEvents.acquire().set(serverId, tableDescriptor, columnNames, rows);
+    }
+
+    public UpdateRowsReplicationEvent updateRows(long serverId, TableDescriptor tableDescriptor,
+            List<String> columnNames, List<Map.Entry<Serializable[], Serializable[]>> rows) {
+        return updateRowsEvents.acquire().set(serverId, tableDescriptor, columnNames, rows);
+    }
+
+    public DeleteRowsReplicationEvent deleteRows(long serverId, TableDescriptor tableDescriptor,
+            List<String> columnNames, List<Serializable[]> rows) {
+        return deleteRowsEvents.acquire().set(serverId, tableDescriptor, columnNames, rows);
+    }
+
+    /**
+     * @return empty list
+     */
+    public List<Serializable[]> rowList() {
+        return rowLists.acquire();
+    }
+
+    /**
+     * @return empty list
+     */
+    public List<Map.Entry<Serializable[], Serializable[]>> rowPairList() {
+        return rowPairLists.acquire();
+    }
+
+    public Map.Entry<Serializable[], Serializable[]> rowPair(Serializable[] before, Serializable[] after) {
+        return rowPairs.acquire().set(before, after);
+    }
+
+    /**
+     * Makes all the objects acquired so far available for reuse.
+     */
+    public void release() {
+        insertRowsEvents.release();
+        updateRowsEvents.release();
+        deleteRowsEvents.release();
+        rowLists.release();
+        rowPairLists.release();
+        rowPairs.release();
+    }
+
+    private abstract static class Pool<T> {
+
+        private final int maxRetainedObjects;
+        private final List<T> objects = new ArrayList<T>();
+        private int numberOfObjectsInUse;
+
+        protected Pool(int maxRetainedObjects) {
+            this.maxRetainedObjects = maxRetainedObjects;
+        }
+
+        public T acquire() {
+            if (numberOfObjectsInUse < objects.size()) {
+                return objects.get(numberOfObjectsInUse++);
+            }
+            T object = create();
+            if (objects.size() < maxRetainedObjects) {
+                objects.add(object);
+                numberOfObjectsInUse++;
+            }
+            return object;
+        }
+
+        public void release() {
+            for (int i = 0; i < numberOfObjectsInUse; i++) {
+                if (!recycle(objects.get(i))) {
+                    objects.set(i, create());
+                }
+            }
+            numberOfObjectsInUse = 0;
+        }
+
+        protected abstract T create();
+
+        /**
+         * Clears the object (so that pool does not keep rows reachable).
+         * @return false if object should not be reused
+         */
+        protected abstract boolean recycle(T object);
+    }
+
+    /**
+     * Pool of {@link PooledInsertRowsReplicationEvent}s.
+     */
+    private static final class InsertRowsEventPool extends Pool<PooledInsertRowsReplicationEvent> {
+
+        private InsertRowsEventPool(int maxRetainedObjects) {
+            super(maxRetainedObjects);
+        }
+
+        @Override
+        protected PooledInsertRowsReplicationEvent create() {
+            return new PooledInsertRowsReplicationEvent();
+        }
+
+        @Override
+        protected boolean recycle(PooledInsertRowsReplicationEvent event) {
+            event.set(0, null, null, null);
+            return true;
+        }
+    }
+
+    /**
+     * Pool of {@link PooledUpdateRowsReplicationEvent}s.
+     */
+    private static final class UpdateRowsEventPool extends Pool<PooledUpdateRowsReplicationEvent> {
+
+        private UpdateRowsEventPool(int maxRetainedObjects) {
+            super(maxRetainedObjects);
+        }
+
+        @Override
+        protected PooledUpdateRowsReplicationEvent create() {
+            return new PooledUpdateRowsReplicationEvent();
+        }
+
+        @Override
+        protected boolean recycle(PooledUpdateRowsReplicationEvent event) {
+            event.set(0, null, null, null);
+            return true;
+        }
+    }
+
+    /**
+     * Pool of {@link PooledDeleteRowsReplicationEvent}s.
+     */
+    private static final class DeleteRowsEventPool extends Pool<PooledDeleteRowsReplicationEvent> {
+
+        private DeleteRowsEventPool(int maxRetainedObjects) {
+            super(maxRetainedObjects);
+        }
+
+        @Override
+        protected PooledDeleteRowsReplicationEvent create() {
+            return new PooledDeleteRowsReplicationEvent();
+        }
+
+        @Override
+        protected boolean recycle(PooledDeleteRowsReplicationEvent event) {
+            event.set(0, null, null, null);
+            return true;
+        }
+    }
+
+    /**
+     * Pool of row lists (lists which have grown beyond maxRetainedListSize are not reused).
+     */
+    private static final class ListPool<T> extends Pool<List<T>> {
+
+        private final int maxRetainedListSize;
+
+        private ListPool(int maxRetainedObjects, int maxRetainedListSize) {
+            super(maxRetainedObjects);
+            this.maxRetainedListSize = maxRetainedListSize;
+        }
+
+        @Override
+        protected List<T> create() {
+            return new ArrayList<T>();
+        }
+
+        @Override
+        protected boolean recycle(List<T> list) {
+            if (list.size() > maxRetainedListSize) {
+                return false;
+            }
+            list.clear();
+            return true;
+        }
+    }
+
+    /**
+     * Pool of {@link RowPair}s.
+     */
+    private static final class RowPairPool extends Pool<RowPair> {
+
+        private RowPairPool(int maxRetainedObjects) {
+            super(maxRetainedObjects);
+        }
+
+        @Override
+        protected RowPair create() {
+            return new RowPair();
+        }
+
+        @Override
+        protected boolean recycle(RowPair rowPair) {
+            rowPair.set(null, null);
+            return true;
+        }
+    }
+
+    /**
+     * Reusable (hence mutable) {@link InsertRowsReplicationEvent}. Immutable state of the superclass is not used.
+     */
+    private static final class PooledInsertRowsReplicationEvent extends InsertRowsReplicationEvent {
+
+        private long serverId;
+        private TableDescriptor tableDescriptor;
+        private List<String> columnNames;
+        private List<Serializable[]> rows;
+
+        private PooledInsertRowsReplicationEvent() {
+            super(0, (TableDescriptor) null, (List<Serializable[]>) null);
+        }
+
+        private PooledInsertRowsReplicationEvent set(long serverId, TableDescriptor tableDescriptor,
+                List<String> columnNames, List<Serializable[]> rows) {
+            this.serverId = serverId;
+            this.tableDescriptor = tableDescriptor;
+            this.columnNames = columnNames;
+            this.rows = rows;
+            return this;
+        }
+
+        @Override
+        public long getServerId() {
+            return serverId;
+        }
+
+        @Override
+        public TableDescriptor getTableDescriptor() {
+            return tableDescriptor;
+        }
+
+        @Override
+        public List<String> getColumnNames() {
+            return columnNames;
+        }
+
+        @Override
+        public List<Serializable[]> getRows() {
+            return rows;
+        }
+
+        @Override
+        public InsertRowsReplicationEvent copy() {
+            return new InsertRowsReplicationEvent(serverId, tableDescriptor, columnNames,
+                new ArrayList<Serializable[]>(rows));
+        }
+    }
+
+    /**
+     * Reusable (hence mutable) {@link UpdateRowsReplicationEvent}. Immutable state of the superclass is not used.
+     */
+    private static final class PooledUpdateRowsReplicationEvent extends UpdateRowsReplicationEvent {
+
+        private long serverId;
+        private TableDescriptor tableDescriptor;
+        private List<String> columnNames;
+        private List<Map.Entry<Serializable[], Serializable[]>> rows;
+
+        private PooledUpdateRowsReplicationEvent() {
+            super(0, (TableDescriptor) null, (List<Map.Entry<Serializable[], Serializable[]>>) null);
+        }
+
+        private PooledUpdateRowsReplicationEvent set(long serverId, TableDescriptor tableDescriptor,
+                List<String> columnNames, List<Map.Entry<Serializable[], Serializable[]>> rows) {
+            this.serverId = serverId;
+            this.tableDescriptor = tableDescriptor;
+            this.columnNames = columnNames;
+            this.rows = rows;
+            return this;
+        }
+
+        @Override
+        public long getServerId() {
+            return serverId;
+        }
+
+        @Override
+        public TableDescriptor getTableDescriptor() {
+            return tableDescriptor;
+        }
+
+        @Override
+        public List<String> getColumnNames() {
+            return columnNames;
+        }
+
+        @Override
+        public List<Map.Entry<Serializable[], Serializable[]>> getRows() {
+            return rows;
+        }
+
+        @Override
+        public UpdateRowsReplicationEvent copy() {
+            // row pairs are pooled too
+            List<Map.Entry<Serializable[], Serializable[]>> rowsCopy =
+                new ArrayList<Map.Entry<Serializable[], Serializable[]>>(rows.size());
+            for (Map.Entry<Serializable[], Serializable[]> row : rows) {
+                rowsCopy.add(new AbstractMap.SimpleImmutableEntry<Serializable[], Serializable[]>(row));
+            }
+            return new UpdateRowsReplicationEvent(serverId, tableDescriptor, columnNames, rowsCopy);
+        }
+    }
+
+    /**
+     * Reusable (hence mutable) {@link DeleteRowsReplicationEvent}. Immutable state of the superclass is not used.
+     */
+    private static final class PooledDeleteRowsReplicationEvent extends DeleteRowsReplicationEvent {
+
+        private long serverId;
+        private TableDescriptor tableDescriptor;
+        private List<String> columnNames;
+        private List<Serializable[]> rows;
+
+        private PooledDeleteRowsReplicationEvent() {
+            super(0, (TableDescriptor) null, (List<Serializable[]>) null);
+        }
+
+        private PooledDeleteRowsReplicationEvent set(long serverId, TableDescriptor tableDescriptor,
+                List<String> columnNames, List<Serializable[]> rows) {
+            this.serverId = serverId;
+            this.tableDescriptor = tableDescriptor;
+            this.columnNames = columnNames;
+            this.rows = rows;
+            return this;
+        }
+
+        @Override
+        public long getServerId() {
+            return serverId;
+        }
+
+        @Override
+        public TableDescriptor getTableDescriptor() {
+            return tableDescriptor;
+        }
+
+        @Override
+        public List<String> getColumnNames() {
+            return columnNames;
+        }
+
+        @Override
+        public List<Serializable[]> getRows() {
+            return rows;
+        }
+
+        @Override
+        public DeleteRowsReplicationEvent copy() {
+            return new DeleteRowsReplicationEvent(serverId, tableDescriptor, columnNames,
+                new ArrayList<Serializable[]>(rows));
+        }
+    }
+
+    /**
+     * Mutable (before, after) pair of row images.
+     */
+    private static final class RowPair implements Map.Entry<Serializable[], Serializable[]> {
+
+        private Serializable[] before;
+        private Serializable[] after;
+
+        private RowPair set(Serializable[] before, Serializable[] after) {
+            this.before = before;
+            this.after = after;
+            return this;
+        }
+
+        @Override
+        public Serializable[] getKey() {
+            return before;
+        }
+
+        @Override
+        public Serializable[] getValue() {
+            return after;
+        }
+
+        @Override
+        public Serializable[] setValue(Serializable[] value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.TableDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replication metrics of a {@link MySQLReplicationStream} (see {@link MySQLReplicationStream#setMetrics}), e.g.
+ * <pre>
+ * ReplicationMetrics metrics = new ReplicationMetrics("orders");
+ * metrics.register(ManagementFactory.getPlatformMBeanServer());
+ * replicationStream.setMetrics(metrics);
+ * </pre>
+ * Once registered, metrics are exposed as the following MBeans:
+ * <ul>
+ *     <li>com.github.shyiko.rook:type=ReplicationStream,name=&lt;name&gt; ({@link ReplicationMetricsMBean})</li>
+ *     <li>com.github.shyiko.rook:type=Table,stream=&lt;name&gt;,name=&lt;schema.table&gt;
+ *     ({@link TableMetricsMBean})</li>
+ *     <li>com.github.shyiko.rook:type=Listener,stream=&lt;name&gt;,name=&lt;listener&gt;
+ *     ({@link ListenerMetricsMBean})</li>
+ * </ul>
+ * Table and listener MBeans are registered as soon as table/listener is first seen. All recorders are lock-free.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class ReplicationMetrics implements ReplicationMetricsMBean {
+
+    public static final String DOMAIN = "com.github.shyiko.rook";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final RateMeter events = new RateMeter();
+    private final RateMeter rows = new RateMeter();
+    private final RateMeter bytes = new RateMeter();
+    private volatile long lag;
+    private volatile long lastEventTime = -1;
+    private volatile int transactionQueueDepth;
+
+    private final Map<TableDescriptor, TableMetrics> tableMetrics = new HashMap<TableDescriptor, TableMetrics>();
+    private final Map<ReplicationEventListener, ListenerMetrics> listenerMetrics =
+        new IdentityHashMap<ReplicationEventListener, ListenerMetrics>();
+    private final Map<ObjectName, Object> mBeans = new LinkedHashMap<ObjectName, Object>();
+    private MBeanServer mBeanServer;
+
+    public ReplicationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Registers MBeans (both existing and the ones to be created later on) with the given server.
+     */
+    public synchronized void register(MBeanServer mBeanServer) throws JMException {
+        if (this.mBeanServer != null) {
+            throw new IllegalStateException(this + " is already registered");
+        }
+        mBeanServer.registerMBean(this, new ObjectName(DOMAIN + ":type=ReplicationStream,name=" + quote(name)));
+        this.mBeanServer = mBeanServer;
+        for (Map.Entry<ObjectName, Object> entry : mBeans.entrySet()) {
+            registerMBean(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (mBeanServer == null) {
+            return;
+        }
+        for (ObjectName objectName : mBeans.keySet()) {
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        }
+        mBeanServer.unregisterMBean(new ObjectName(DOMAIN + ":type=ReplicationStream,name=" + quote(name)));
+        mBeanServer = null;
+    }
+
+    /**
+     * @return metrics of the table, null if no rows events of the table were seen so far
+     */
+    public synchronized TableMetricsMBean getTableMetrics(String schema, String table) {
+        return tableMetrics.get(new TableDescriptor(schema, table));
+    }
+
+    /**
+     * @return metrics of the listener, null if listener is unknown
+     */
+    public synchronized ListenerMetricsMBean getListenerMetrics(ReplicationEventListener listener) {
+        return listenerMetrics.get(listener);
+    }
+
+    /**
+     * @param timestamp (binary log) event timestamp, 0 if unknown
+     * @param length size of the event (in bytes)
+     */
+    void recordEvent(long timestamp, long length) {
+        long currentTime = System.currentTimeMillis();
+        lastEventTime = currentTime;
+        events.mark(1, currentTime);
+        bytes.mark(length, currentTime);
+        if (timestamp > 0) {
+            lag = Math.max(0, currentTime - timestamp);
+        }
+    }
+
+    void recordRows(TableDescriptor table, int numberOfRows) {
+        long currentTime = lastEventTime;
+        rows.mark(numberOfRows, currentTime);
+        TableMetrics metrics = (TableMetrics) table.getAttachment(this);
+        if (metrics == null) {
+            metrics = resolveTableMetrics(table);
+        }
+        metrics.record(numberOfRows, currentTime);
+    }
+
+    void recordTransactionQueueDepth(int depth) {
+        transactionQueueDepth = depth;
+    }
+
+    /**
+     * @return decorator recording latency of the listener
+     */
+    synchronized ReplicationEventListener measure(ReplicationEventListener listener) {
+        ListenerMetrics metrics = listenerMetrics.get(listener);
+        if (metrics == null) {
+            listenerMetrics.put(listener, metrics = new ListenerMetrics());
+            addMBean("type=Listener,stream=" + quote(name) + ",name=" + quote(listener.getClass().getName() + "@" +
+                Integer.toHexString(System.identityHashCode(listener))), metrics);
+        }
+        return new MeasuredReplicationEventListener(listener, metrics);
+    }
+
+    /**
+     * Discards metrics of the listener (unregistering corresponding MBean).
+     */
+    synchronized void forget(ReplicationEventListener listener) {
+        ListenerMetrics metrics = listenerMetrics.remove(listener);
+        if (metrics == null) {
+            return;
+        }
+        for (Map.Entry<ObjectName, Object> entry : mBeans.entrySet()) {
+            if (entry.getValue() == metrics) {
+                ObjectName objectName = entry.getKey();
+                mBeans.remove(objectName);
+                if (mBeanServer != null) {
+                    try {
+                        mBeanServer.unregisterMBean(objectName);
+                    } catch (JMException e) {
+                        if (logger.isWarnEnabled()) {
+                            logger.warn("Failed to unregister " + objectName, e);
+                        }
+                    }
+                }
+                break;
+            }
+        }
+    }
+
+    private synchronized TableMetrics resolveTableMetrics(TableDescriptor table) {
+        // descriptors are interned per connection, metrics are kept for as long as stream exists
+        // keyed by exact (schema, table) pair ("Foo" and "foo" are different tables given lower_case_table_names=0)
+        TableMetrics metrics = tableMetrics.get(table);
+        if (metrics == null) {
+            tableMetrics.put(table, metrics = new TableMetrics());
+            addMBean("type=Table,stream=" + quote(name) + ",name=" + quote(table.toString()), metrics);
+        }
+        table.setAttachment(this, metrics);
+        return metrics;
+    }
+
+    private void addMBean(String properties, Object mBean) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":" + properties);
+            mBeans.put(objectName, mBean);
+            if (mBeanServer != null) {
+                registerMBean(objectName, mBean);
+            }
+        } catch (JMException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to register " + properties, e);
+            }
+        }
+    }
+
+    private void registerMBean(ObjectName objectName, Object mBean) throws JMException {
+        if (!mBeanServer.isRegistered(objectName)) {
+            mBeanServer.registerMBean(mBean, objectName);
+        }
+    }
+
+    private static String quote(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (",=:\"*?\n".indexOf(value.charAt(i)) != -1) {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public long getLag() {
+        return lag;
+    }
+
+    @Override
+    public long getTimeSinceLastEvent() {
+        long lastEventTime = this.lastEventTime;
+        return lastEventTime == -1 ? -1 : System.currentTimeMillis() - lastEventTime;
+    }
+
+    @Override
+    public long getEventCount() {
+        return events.getTotal();
+    }
+
+    @Override
+    public double getEventRate() {
+        return events.getRate(System.currentTimeMillis());
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows.getTotal();
+    }
+
+    @Override
+    public double getRowRate() {
+        return rows.getRate(System.currentTimeMillis());
+    }
+
+    @Override
+    public long getByteCount() {
+        return bytes.getTotal();
+    }
+
+    @Override
+    public double getByteRate() {
+        return bytes.getRate(System.currentTimeMillis());
+    }
+
+    @Override
+    public int getTransactionQueueDepth() {
+        return transactionQueueDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationMetrics{name=" + name + '}';
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+/**
+ * Management interface of {@link ReplicationMetrics}. Rates are averaged over the last
+ * {@value RateMeter#WINDOW} seconds.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface ReplicationMetricsMBean {
+
+    /**
+     * @return number of milliseconds between the moment last event was written to the binary log and the moment it
+     * was received (MySQL clock is assumed to be in sync with the local one)
+     */
+    long getLag();
+
+    /**
+     * @return number of milliseconds since the last event was received, -1 if none was
+     */
+    long getTimeSinceLastEvent();
+
+    long getEventCount();
+
+    double getEventRate();
+
+    long getRowCount();
+
+    double getRowRate();
+
+    long getByteCount();
+
+    double getByteRate();
+
+    /**
+     * @return number of events accumulated by the transaction in progress
+     */
+    int getTransactionQueueDepth();
+}
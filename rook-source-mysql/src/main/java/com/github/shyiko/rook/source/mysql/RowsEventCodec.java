@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary representation of {@link RowsMutationReplicationEvent}s. Column values are written by
+ * {@link ColumnValueCodec}, with values of the types not produced by binary log deserializer falling back to the java
+ * serialization (which is fine as spilled events never outlive the process).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class RowsEventCodec {
+
+    private static final byte INSERT = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+
+    private static final ColumnValueCodec COLUMN_VALUE_CODEC = new ColumnValueCodec(true);
+
+    private RowsEventCodec() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void encode(ReplicationEvent event, DataOutput output) throws IOException {
+        if (event instanceof InsertRowsReplicationEvent) {
+            output.writeByte(INSERT);
+        } else
+        if (event instanceof UpdateRowsReplicationEvent) {
+            output.writeByte(UPDATE);
+        } else
+        if (event instanceof DeleteRowsReplicationEvent) {
+            output.writeByte(DELETE);
+        } else {
+            throw new IOException("Unsupported event " + event.getClass());
+        }
+        RowsMutationReplicationEvent rowsEvent = (RowsMutationReplicationEvent) event;
+        output.writeLong(rowsEvent.getServerId());
+        output.writeUTF(rowsEvent.getSchema());
+        output.writeUTF(rowsEvent.getTable());
+        List<String> columnNames = rowsEvent.getColumnNames();
+        output.writeInt(columnNames == null ? -1 : columnNames.size());
+        if (columnNames != null) {
+            for (String columnName : columnNames) {
+                output.writeUTF(columnName);
+            }
+        }
+        Collection rows = rowsEvent.getRows();
+        output.writeInt(rows.size());
+        for (Object row : rows) {
+            if (row instanceof Map.Entry) {
+                Map.Entry<Serializable[], Serializable[]> entry = (Map.Entry<Serializable[], Serializable[]>) row;
+                writeRow(entry.getKey(), output);
+                writeRow(entry.getValue(), output);
+            } else {
+                writeRow((Serializable[]) row, output);
+            }
+        }
+    }
+
+    public static ReplicationEvent decode(DataInput input) throws IOException {
+        return decode(input, null);
+    }
+
+    /**
+     * @param tableDescriptors descriptors to reuse (instead of creating new ones) for the events of known tables
+     * (might be null)
+     */
+    public static ReplicationEvent decode(DataInput input, Map<TableDescriptor, TableDescriptor> tableDescriptors)
+            throws IOException {
+        byte type = input.readByte();
+        long serverId = input.readLong();
+        TableDescriptor table = new TableDescriptor(input.readUTF(), input.readUTF());
+        if (tableDescriptors != null && tableDescriptors.containsKey(table)) {
+            table = tableDescriptors.get(table);
+        }
+        List<String> columnNames = readColumnNames(input);
+        int numberOfRows = input.readInt();
+        switch (type) {
+            case INSERT:
+                return new InsertRowsReplicationEvent(serverId, table, columnNames, readRows(input, numberOfRows));
+            case UPDATE:
+                List<Map.Entry<Serializable[], Serializable[]>> rows =
+                    new ArrayList<Map.Entry<Serializable[], Serializable[]>>(numberOfRows);
+                for (int i = 0; i < numberOfRows; i++) {
+                    rows.add(new AbstractMap.SimpleEntry<Serializable[], Serializable[]>(readRow(input),
+                        readRow(input)));
+                }
+                return new UpdateRowsReplicationEvent(serverId, table, columnNames, rows);
+            case DELETE:
+                return new DeleteRowsReplicationEvent(serverId, table, columnNames, readRows(input, numberOfRows));
+            default:
+                throw new IOException("Unknown event type " + type);
+        }
+    }
+
+    private static List<String> readColumnNames(DataInput input) throws IOException {
+        int numberOfColumns = input.readInt();
+        if (numberOfColumns < 0) {
+            return null;
+        }
+        List<String> result = new ArrayList<String>(numberOfColumns);
+        for (int i = 0; i < numberOfColumns; i++) {
+            result.add(input.readUTF());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static void writeRow(Serializable[] row, DataOutput output) throws IOException {
+        COLUMN_VALUE_CODEC.writeRow(row, output);
+    }
+
+    private static List<Serializable[]> readRows(DataInput input, int numberOfRows) throws IOException {
+        List<Serializable[]> result = new ArrayList<Serializable[]>(numberOfRows);
+        for (int i = 0; i < numberOfRows; i++) {
+            result.add(readRow(input));
+        }
+        return result;
+    }
+
+    private static Serializable[] readRow(DataInput input) throws IOException {
+        return COLUMN_VALUE_CODEC.readRow(input);
+    }
+}
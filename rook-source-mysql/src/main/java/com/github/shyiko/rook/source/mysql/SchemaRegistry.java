@@ -0,0 +1,345 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Column names of the tables, as reported by information_schema.COLUMNS.
+ * <p>
+ * All subscribed schemas are loaded with a single query (on {@link #prefetch()} or first access), the rest are
+ * loaded lazily (also one query per schema). Tables that are not known (yet) are looked up individually (and
+ * remembered as missing until {@link #refresh(String, String)}).
+ * <p>
+ * Queries are executed by a (single, daemon) background thread so that the caller (normally the thread reading
+ * binary log) is held back for no longer than lookup timeout. Lookup that didn't make it in time keeps going and
+ * its result is returned by one of the subsequent calls (until then {@link #getColumnNames(String, String)} returns
+ * null right away).
+ * <p>
+ * Keep in mind that information_schema reflects the current state of the database, which (while catching up)
+ * might not match the one binary log events were written with. That's why column names carried by TABLE_MAP events
+ * (when available) always take precedence (see {@link MySQLReplicationStream#setSchemaRegistry(SchemaRegistry)}).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class SchemaRegistry {
+
+    public static final long DEFAULT_LOOKUP_TIMEOUT = 1000;
+
+    private static final String SELECT_COLUMNS = "SELECT TABLE_SCHEMA, TABLE_NAME, COLUMN_NAME " +
+        "FROM information_schema.COLUMNS WHERE ";
+    private static final String ORDER_BY = " ORDER BY TABLE_SCHEMA, TABLE_NAME, ORDINAL_POSITION";
+    private static final List<String> MISSING = Collections.emptyList();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final DataSource dataSource;
+    private final Set<String> subscribedSchemas = new LinkedHashSet<String>();
+    private final Set<String> loadedSchemas = new HashSet<String>();
+    private final Map<String, List<String>> columnNamesByTable = new HashMap<String, List<String>>();
+    private final Map<String, Future<List<String>>> lookups = new HashMap<String, Future<List<String>>>();
+    private final ThreadPoolExecutor executor;
+    private volatile long lookupTimeout = DEFAULT_LOOKUP_TIMEOUT;
+    // incremented on refresh so that lookups started before it would not put stale column names into the cache
+    private int generation;
+
+    public SchemaRegistry(DataSource dataSource, String... schemas) {
+        this.dataSource = dataSource;
+        for (String schema : schemas) {
+            this.subscribedSchemas.add(schema);
+        }
+        this.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "rook-schema-registry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @param lookupTimeout maximum amount of time (in milliseconds) {@link #getColumnNames(String, String)} waits for
+     * information_schema to respond. {@value #DEFAULT_LOOKUP_TIMEOUT} by default.
+     */
+    public void setLookupTimeout(long lookupTimeout) {
+        if (lookupTimeout < 0) {
+            throw new IllegalArgumentException("Lookup timeout cannot be negative");
+        }
+        this.lookupTimeout = lookupTimeout;
+    }
+
+    /**
+     * Starts loading subscribed schemas in the background (returns right away). Called by
+     * {@link MySQLReplicationStream#setSchemaRegistry(SchemaRegistry)}.
+     */
+    public void prefetch() {
+        final int generation;
+        final List<String> schemas = new ArrayList<String>();
+        synchronized (this) {
+            generation = this.generation;
+            for (String subscribedSchema : subscribedSchemas) {
+                if (!loadedSchemas.contains(subscribedSchema.toLowerCase())) {
+                    schemas.add(subscribedSchema);
+                }
+            }
+        }
+        if (!schemas.isEmpty()) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    loadSchemas(schemas, generation);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return (immutable) list of column names in the ordinal order, null if table is unknown (or information_schema
+     * is not reachable / failed to respond within lookup timeout)
+     */
+    public List<String> getColumnNames(final String schema, final String table) {
+        final String key = qualifiedName(schema, table);
+        Future<List<String>> lookup;
+        boolean lookupInProgress;
+        synchronized (this) {
+            if (loadedSchemas.contains(schema.toLowerCase())) {
+                List<String> result = columnNamesByTable.get(key);
+                if (result != null) {
+                    return result == MISSING ? null : result;
+                }
+            }
+            lookup = lookups.get(key);
+            lookupInProgress = lookup != null;
+            if (!lookupInProgress) {
+                final int generation = this.generation;
+                FutureTask<List<String>> newLookup = new FutureTask<List<String>>(new Callable<List<String>>() {
+
+                    @Override
+                    public List<String> call() throws Exception {
+                        return load(schema, table, generation);
+                    }
+                }) {
+
+                    @Override
+                    protected void done() {
+                        synchronized (SchemaRegistry.this) {
+                            // unless discarded by refresh (and possibly superseded by another lookup)
+                            if (lookups.get(key) == this) {
+                                lookups.remove(key);
+                            }
+                        }
+                    }
+                };
+                lookups.put(key, newLookup);
+                executor.execute(newLookup);
+                lookup = newLookup;
+            }
+        }
+        try {
+            // caller has already been held back by this lookup once
+            List<String> result = lookupInProgress && !lookup.isDone() ? null :
+                lookup.get(lookupTimeout, TimeUnit.MILLISECONDS);
+            return result == MISSING ? null : result;
+        } catch (TimeoutException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Columns of " + schema + "." + table + " were not resolved within " + lookupTimeout +
+                    "ms (lookup continues in the background)");
+            }
+            return null;
+        } catch (ExecutionException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to load columns of " + schema + "." + table, e.getCause());
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * @return true if column names of the table are still being looked up (in which case
+     * {@link #getColumnNames(String, String)} should be called again later), false otherwise
+     */
+    synchronized boolean isLookupInProgress(String schema, String table) {
+        return lookups.containsKey(qualifiedName(schema, table));
+    }
+
+    /**
+     * Discards whatever is known about the table (so that next {@link #getColumnNames(String, String)} would
+     * re-query information_schema). Supposed to be called whenever table is created/altered/renamed/dropped.
+     */
+    public synchronized void refresh(String schema, String table) {
+        generation++;
+        columnNamesByTable.remove(qualifiedName(schema, table));
+        lookups.remove(qualifiedName(schema, table));
+    }
+
+    /**
+     * Discards whatever is known about the schema.
+     */
+    public synchronized void refreshSchema(String schema) {
+        generation++;
+        String prefix = schema.toLowerCase() + ".";
+        for (Iterator<String> iterator = columnNamesByTable.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+        for (Iterator<String> iterator = lookups.keySet().iterator(); iterator.hasNext(); ) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+        loadedSchemas.remove(schema.toLowerCase());
+    }
+
+    /**
+     * Executed by the background thread.
+     * @return column names of the table, MISSING if there is no such table
+     */
+    private List<String> load(String schema, String table, int generation) throws SQLException {
+        List<String> schemas = new ArrayList<String>();
+        synchronized (this) {
+            if (!loadedSchemas.contains(schema.toLowerCase())) {
+                schemas.add(schema);
+                for (String subscribedSchema : subscribedSchemas) {
+                    if (!loadedSchemas.contains(subscribedSchema.toLowerCase()) &&
+                        !subscribedSchema.equalsIgnoreCase(schema)) {
+                        schemas.add(subscribedSchema);
+                    }
+                }
+            }
+        }
+        if (!schemas.isEmpty()) {
+            loadSchemas(schemas, generation);
+        }
+        String key = qualifiedName(schema, table);
+        synchronized (this) {
+            List<String> result = columnNamesByTable.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        Map<String, List<String>> columnNames = query("TABLE_SCHEMA = ? AND TABLE_NAME = ?", schema, table);
+        List<String> result = columnNames.isEmpty() ? MISSING : columnNames.values().iterator().next();
+        synchronized (this) {
+            if (this.generation == generation) {
+                columnNamesByTable.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    private void loadSchemas(List<String> schemas, int generation) {
+        StringBuilder condition = new StringBuilder("TABLE_SCHEMA IN (");
+        for (int i = 0; i < schemas.size(); i++) {
+            condition.append(i == 0 ? "?" : ", ?");
+        }
+        condition.append(")");
+        Map<String, List<String>> columnNames = Collections.emptyMap();
+        try {
+            columnNames = query(condition.toString(), schemas.toArray(new String[schemas.size()]));
+        } catch (SQLException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to load columns of " + schemas, e);
+            }
+        }
+        synchronized (this) {
+            if (this.generation != generation) {
+                return;
+            }
+            columnNamesByTable.putAll(columnNames);
+            // marked as loaded even in case of failure (tables are going to be looked up individually)
+            for (String loadedSchema : schemas) {
+                loadedSchemas.add(loadedSchema.toLowerCase());
+            }
+        }
+    }
+
+    private Map<String, List<String>> query(String condition, String... parameters) throws SQLException {
+        Map<String, List<String>> result = new HashMap<String, List<String>>();
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(SELECT_COLUMNS + condition + ORDER_BY);
+            try {
+                for (int i = 0; i < parameters.length; i++) {
+                    statement.setString(i + 1, parameters[i]);
+                }
+                ResultSet resultSet = statement.executeQuery();
+                try {
+                    String key = null;
+                    List<String> columnNames = null;
+                    while (resultSet.next()) {
+                        String tableKey = qualifiedName(resultSet.getString(1), resultSet.getString(2));
+                        if (!tableKey.equals(key)) {
+                            columnNames = new ArrayList<String>();
+                            result.put(tableKey, Collections.unmodifiableList(columnNames));
+                            key = tableKey;
+                        }
+                        columnNames.add(resultSet.getString(3));
+                    }
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } finally {
+            connection.close();
+        }
+        return result;
+    }
+
+    private static String qualifiedName(String schema, String table) {
+        return (schema + "." + table).toLowerCase();
+    }
+
+    @Override
+    public String toString() {
+        return "SchemaRegistry{schemas=" + subscribedSchemas + '}';
+    }
+}
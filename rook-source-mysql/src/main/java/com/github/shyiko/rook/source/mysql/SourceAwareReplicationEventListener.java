@@ -0,0 +1,34 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+
+/**
+ * {@link ReplicationEventListener} which needs to know where event came from (see
+ * {@link MultiSourceReplicationStream}).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public interface SourceAwareReplicationEventListener extends ReplicationEventListener {
+
+    /**
+     * Invoked instead of {@link #onEvent(ReplicationEvent)}.
+     * @param source name of the source event came from
+     */
+    void onEvent(String source, ReplicationEvent event);
+}
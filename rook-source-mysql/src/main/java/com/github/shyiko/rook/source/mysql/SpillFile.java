@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only temporary file accessed through memory-mapped regions (so that neither writes nor reads involve
+ * heap buffers or system calls, apart from mapping the next region). File is unlinked right after creation (where
+ * platform allows it), which means that disk space is reclaimed as soon as regions are garbage collected.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class SpillFile extends OutputStream {
+
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final int regionSize;
+    private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    private MappedByteBuffer region;
+    private long length;
+    private boolean closed;
+
+    /**
+     * @param directory directory to create file in (default temporary-file directory if null)
+     */
+    public SpillFile(File directory, int regionSize) throws IOException {
+        this.file = File.createTempFile("rook-tx-", ".spill", directory);
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.regionSize = regionSize;
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * @return number of bytes written so far
+     */
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (region == null || !region.hasRemaining()) {
+            mapNextRegion();
+        }
+        region.put((byte) b);
+        length++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (region == null || !region.hasRemaining()) {
+                mapNextRegion();
+            }
+            int chunk = Math.min(len, region.remaining());
+            region.put(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+            length += chunk;
+        }
+    }
+
+    private void mapNextRegion() throws IOException {
+        if (closed) {
+            throw new IOException(file + " is closed for writing");
+        }
+        region = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+            (long) regions.size() * regionSize, regionSize);
+        regions.add(region);
+    }
+
+    /**
+     * Closes file for writing. Content remains available through {@link #openInputStream()}.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            randomAccessFile.close();
+            file.delete();
+        }
+    }
+
+    /**
+     * @return stream over the bytes written so far
+     */
+    public InputStream openInputStream() {
+        return new RegionInputStream();
+    }
+
+    private final class RegionInputStream extends InputStream {
+
+        private final long limit = length;
+        private long position;
+        private int regionIndex = -1;
+        private ByteBuffer buffer;
+
+        @Override
+        public int read() throws IOException {
+            if (!prepareBuffer()) {
+                return -1;
+            }
+            position++;
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!prepareBuffer()) {
+                return -1;
+            }
+            int chunk = (int) Math.min(Math.min(len, buffer.remaining()), limit - position);
+            buffer.get(b, off, chunk);
+            position += chunk;
+            return chunk;
+        }
+
+        private boolean prepareBuffer() {
+            if (position >= limit) {
+                return false;
+            }
+            if (buffer == null || !buffer.hasRemaining()) {
+                buffer = regions.get(++regionIndex).duplicate();
+                buffer.clear();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Include/exclude rules for schema.table. Each rule is either
+ * <ul>
+ *     <li>"schema.table" (exact match),</li>
+ *     <li>"table" (same as "*.table"),</li>
+ *     <li>wildcard (* - any sequence of characters, ? - any single character), e.g. "shop.order_*",</li>
+ *     <li>regular expression prefixed with "regex:" and matched against "schema.table", e.g.
+ *     "regex:shop\.order_\d+".</li>
+ * </ul>
+ * All the rules are case-insensitive. Table is accepted if it does not match any of the exclude rules and either
+ * matches one of the include rules or there are no include rules at all.
+ * <p>
+ * Rules are compiled once (literal ones into hash sets, the rest into {@link Pattern}s) and so filter is meant to be
+ * evaluated once per table (rather than once per row).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TableFilter {
+
+    public static final TableFilter ACCEPT_ALL = new TableFilter(Collections.<String>emptySet(),
+        Collections.<String>emptySet());
+
+    private static final String REGEX_PREFIX = "regex:";
+
+    private final Rules includes;
+    private final Rules excludes;
+
+    public TableFilter(Collection<String> includes, Collection<String> excludes) {
+        this.includes = new Rules(includes);
+        this.excludes = new Rules(excludes);
+    }
+
+    public boolean accepts(String schema, String table) {
+        String lowerCaseSchema = schema == null ? "" : schema.toLowerCase();
+        String lowerCaseTable = table.toLowerCase();
+        return (includes.isEmpty() || includes.matches(lowerCaseSchema, lowerCaseTable)) &&
+            !excludes.matches(lowerCaseSchema, lowerCaseTable);
+    }
+
+    @Override
+    public String toString() {
+        return "TableFilter{includes=" + includes + ", excludes=" + excludes + '}';
+    }
+
+    /**
+     * Compiled rules.
+     */
+    private static final class Rules {
+
+        private final Set<String> tables = new HashSet<String>(); // schema.table
+        private final Set<String> schemas = new HashSet<String>(); // schema.*
+        private final Set<String> tablesOfAnySchema = new HashSet<String>(); // *.table
+        private final List<Pattern> patterns = new ArrayList<Pattern>();
+        private final String source;
+
+        private Rules(Collection<String> rules) {
+            for (String rule : rules) {
+                compile(rule.trim());
+            }
+            this.source = rules.toString();
+        }
+
+        private void compile(String rule) {
+            if (rule.startsWith(REGEX_PREFIX)) {
+                patterns.add(Pattern.compile(rule.substring(REGEX_PREFIX.length()), Pattern.CASE_INSENSITIVE));
+                return;
+            }
+            String lowerCaseRule = rule.toLowerCase();
+            int separatorIndex = lowerCaseRule.indexOf('.');
+            String schema = separatorIndex < 0 ? "*" : lowerCaseRule.substring(0, separatorIndex);
+            String table = lowerCaseRule.substring(separatorIndex + 1);
+            boolean literalSchema = isLiteral(schema), literalTable = isLiteral(table);
+            if (literalSchema && literalTable) {
+                tables.add(schema + "." + table);
+            } else
+            if (literalSchema && "*".equals(table)) {
+                schemas.add(schema);
+            } else
+            if ("*".equals(schema) && literalTable) {
+                tablesOfAnySchema.add(table);
+            } else {
+                patterns.add(Pattern.compile(toRegex(schema) + "\\." + toRegex(table)));
+            }
+        }
+
+        private static boolean isLiteral(String value) {
+            return value.indexOf('*') < 0 && value.indexOf('?') < 0;
+        }
+
+        private static String toRegex(String wildcard) {
+            StringBuilder sb = new StringBuilder();
+            int literalStart = 0;
+            for (int i = 0; i < wildcard.length(); i++) {
+                char c = wildcard.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (literalStart < i) {
+                        sb.append(Pattern.quote(wildcard.substring(literalStart, i)));
+                    }
+                    sb.append(c == '*' ? ".*" : ".");
+                    literalStart = i + 1;
+                }
+            }
+            if (literalStart < wildcard.length()) {
+                sb.append(Pattern.quote(wildcard.substring(literalStart)));
+            }
+            return sb.toString();
+        }
+
+        public boolean isEmpty() {
+            return tables.isEmpty() && schemas.isEmpty() && tablesOfAnySchema.isEmpty() && patterns.isEmpty();
+        }
+
+        public boolean matches(String schema, String table) {
+            if (schemas.contains(schema) || tablesOfAnySchema.contains(table)) {
+                return true;
+            }
+            String qualifiedName = schema + "." + table;
+            if (tables.contains(qualifiedName)) {
+                return true;
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(qualifiedName).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,660 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.ColumnType;
+import com.github.shyiko.mysql.binlog.event.deserialization.DeleteRowsEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.EventHeaderV4Deserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.FormatDescriptionEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.GtidEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.NullEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.QueryEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.RotateEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.RowsQueryEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.TableMapEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.UpdateRowsEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.WriteRowsEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.event.deserialization.XidEventDataDeserializer;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link EventDeserializer} which does not decode rows of the tables marked as skipped (see
+ * {@link #setSkipped(long, boolean)}). Instead, row bytes are simply skipped and the resulting
+ * {@link com.github.shyiko.mysql.binlog.event.WriteRowsEventData}/...UpdateRowsEventData/...DeleteRowsEventData
+ * contains table id and nothing else worth looking at (rows are not to be used).
+ * <p>
+ * In addition to that, decoding can be limited to a subset of columns (see {@link #setProjection(long, BitSet)}).
+ * Bytes of the columns outside of the projection are skipped (values are left null), while the rest are copied
+ * into a buffer and decoded by the standard deserializer (using synthetic TABLE_MAP which contains projected
+ * columns only).
+ * <p>
+ * Table id is expected to be (un)marked right after TABLE_MAP event is received (and before the rows which follow
+ * it are deserialized). Not thread-safe (meant to be accessed by the binary log reader only).
+ * <p>
+ * Column names are extracted from the optional metadata of TABLE_MAP events (provided server is configured to
+ * include it, e.g. MySQL 8.0 with binlog_row_metadata=FULL) and made available through
+ * {@link #getColumnNames(long)}.
+ * <p>
+ * When event pool is set (see {@link #setEventPool(ReplicationEventPool)}), rows event data objects are reused
+ * (each deserialized rows event overwrites the previous one of the same type) and row lists/pairs come from the
+ * pool.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TableFilteringEventDeserializer extends EventDeserializer {
+
+    private final Map<Long, TableMapEventData> tableMapEventByTableId;
+    private final Set<Long> skippedTableIds = new HashSet<Long>();
+    private final Map<Long, Projection> projectionByTableId = new HashMap<Long, Projection>();
+    private final LongHashMap<List<String>> columnNamesByTableId = new LongHashMap<List<String>>();
+    private final RowBuffer rowBuffer = new RowBuffer();
+    private long lastTableId = -1;
+    private boolean lastTableSkipped;
+    private Projection lastTableProjection;
+    private ReplicationEventPool eventPool;
+
+    public TableFilteringEventDeserializer() {
+        this(new HashMap<Long, TableMapEventData>());
+    }
+
+    private TableFilteringEventDeserializer(Map<Long, TableMapEventData> tableMapEventByTableId) {
+        super(new EventHeaderV4Deserializer(), new NullEventDataDeserializer(),
+            new IdentityHashMap<EventType, EventDataDeserializer>(), tableMapEventByTableId);
+        this.tableMapEventByTableId = tableMapEventByTableId;
+        setEventDataDeserializer(EventType.FORMAT_DESCRIPTION, new FormatDescriptionEventDataDeserializer());
+        setEventDataDeserializer(EventType.ROTATE, new RotateEventDataDeserializer());
+        setEventDataDeserializer(EventType.QUERY, new QueryEventDataDeserializer());
+        setEventDataDeserializer(EventType.TABLE_MAP, new TableMapDeserializer());
+        setEventDataDeserializer(EventType.XID, new XidEventDataDeserializer());
+        setEventDataDeserializer(EventType.WRITE_ROWS, new WriteRowsDeserializer(tableMapEventByTableId));
+        setEventDataDeserializer(EventType.UPDATE_ROWS, new UpdateRowsDeserializer(tableMapEventByTableId));
+        setEventDataDeserializer(EventType.DELETE_ROWS, new DeleteRowsDeserializer(tableMapEventByTableId));
+        setEventDataDeserializer(EventType.EXT_WRITE_ROWS,
+            new WriteRowsDeserializer(tableMapEventByTableId).setMayContainExtraInformation(true));
+        setEventDataDeserializer(EventType.EXT_UPDATE_ROWS,
+            new UpdateRowsDeserializer(tableMapEventByTableId).setMayContainExtraInformation(true));
+        setEventDataDeserializer(EventType.EXT_DELETE_ROWS,
+            new DeleteRowsDeserializer(tableMapEventByTableId).setMayContainExtraInformation(true));
+        setEventDataDeserializer(EventType.ROWS_QUERY, new RowsQueryEventDataDeserializer());
+        setEventDataDeserializer(EventType.GTID, new GtidEventDataDeserializer());
+    }
+
+    public void setSkipped(long tableId, boolean skipped) {
+        if (skipped) {
+            skippedTableIds.add(tableId);
+        } else {
+            skippedTableIds.remove(tableId);
+        }
+        lastTableId = -1;
+    }
+
+    public boolean isSkipped(long tableId) {
+        resolve(tableId);
+        return lastTableSkipped;
+    }
+
+    /**
+     * @param tableId table id (TABLE_MAP event for which must have already been deserialized)
+     * @param columns positions of the columns to decode, null to decode all of them. Ignored if table contains
+     * column(s) of unsupported type
+     */
+    public void setProjection(long tableId, BitSet columns) {
+        Projection projection = null;
+        if (columns != null) {
+            TableMapEventData tableMapEventData = tableMapEventByTableId.get(tableId);
+            if (tableMapEventData != null) {
+                projection = new Projection(tableMapEventData, columns);
+                if (!projection.supported) {
+                    projection = null;
+                }
+            }
+        }
+        Projection previousProjection = projection == null ? projectionByTableId.remove(tableId) :
+            projectionByTableId.put(tableId, projection);
+        if (previousProjection != null) {
+            tableMapEventByTableId.remove(previousProjection.syntheticTableMap.getTableId());
+        }
+        if (projection != null) {
+            tableMapEventByTableId.put(projection.syntheticTableMap.getTableId(), projection.syntheticTableMap);
+        }
+        lastTableId = -1;
+    }
+
+    /**
+     * @return names of the columns as reported by the last TABLE_MAP event of the table, null if TABLE_MAP didn't
+     * contain them
+     */
+    public List<String> getColumnNames(long tableId) {
+        return columnNamesByTableId.get(tableId);
+    }
+
+    /**
+     * Discards everything known about the table id (TABLE_MAP, column names, skip flag and projection).
+     */
+    public void forget(long tableId) {
+        setProjection(tableId, null);
+        columnNamesByTableId.remove(tableId);
+        skippedTableIds.remove(tableId);
+        tableMapEventByTableId.remove(tableId);
+        lastTableId = -1;
+    }
+
+    /**
+     * @param eventPool pool to take row lists/pairs from, null to allocate new ones for each event (default)
+     */
+    void setEventPool(ReplicationEventPool eventPool) {
+        this.eventPool = eventPool;
+    }
+
+    private void resolve(long tableId) {
+        if (tableId != lastTableId) {
+            // rows of the same table tend to come in batches
+            lastTableSkipped = skippedTableIds.contains(tableId);
+            lastTableProjection = projectionByTableId.get(tableId);
+            lastTableId = tableId;
+        }
+    }
+
+    /**
+     * @return null if row was skipped, deserialized row otherwise
+     */
+    private Serializable[] skipOrDeserialize(RowDeserializer deserializer, long tableId, BitSet includedColumns,
+            ByteArrayInputStream inputStream) throws IOException {
+        resolve(tableId);
+        if (lastTableSkipped) {
+            // consuming everything (up to the end of the event) makes deserializer think there are no more rows
+            // (note that ByteArrayInputStream.skipToTheEndOfTheBlock() cannot be used here as it resets the block)
+            inputStream.skip(inputStream.available());
+            return null;
+        }
+        if (lastTableProjection != null) {
+            return deserializeProjection(deserializer, lastTableProjection, includedColumns, inputStream);
+        }
+        return deserializer.deserialize(tableId, includedColumns, inputStream);
+    }
+
+    private Serializable[] deserializeProjection(RowDeserializer deserializer, Projection projection,
+            BitSet includedColumns, ByteArrayInputStream inputStream) throws IOException {
+        int numberOfColumns = projection.columnTypes.length;
+        int numberOfIncludedColumns = includedColumns.cardinality();
+        BitSet nullColumns = inputStream.readBitSet(numberOfIncludedColumns, true);
+        // synthetic row = null bitmap + (non-null) projected cells
+        BitSet syntheticIncludedColumns = new BitSet();
+        BitSet syntheticNullColumns = new BitSet();
+        int numberOfSyntheticIncludedColumns = 0;
+        for (int i = 0, index = 0; i < numberOfColumns; i++) {
+            if (includedColumns.get(i)) {
+                int syntheticIndex = projection.syntheticIndexes[i];
+                if (syntheticIndex != -1) {
+                    syntheticIncludedColumns.set(syntheticIndex);
+                    if (nullColumns.get(index)) {
+                        syntheticNullColumns.set(numberOfSyntheticIncludedColumns);
+                    }
+                    numberOfSyntheticIncludedColumns++;
+                }
+                index++;
+            }
+        }
+        rowBuffer.reset();
+        rowBuffer.writeBitSet(syntheticNullColumns, numberOfSyntheticIncludedColumns);
+        for (int i = 0, index = 0; i < numberOfColumns; i++) {
+            if (includedColumns.get(i)) {
+                if (!nullColumns.get(index)) {
+                    projection.transferCell(i, inputStream, projection.syntheticIndexes[i] != -1 ? rowBuffer : null);
+                }
+                index++;
+            }
+        }
+        Serializable[] syntheticRow = deserializer.deserialize(projection.syntheticTableMap.getTableId(),
+            syntheticIncludedColumns, new ByteArrayInputStream(rowBuffer.toInputStream()));
+        Serializable[] result = new Serializable[numberOfIncludedColumns];
+        for (int i = 0, index = 0, syntheticIndex = 0; i < numberOfColumns; i++) {
+            if (includedColumns.get(i)) {
+                if (projection.syntheticIndexes[i] != -1) {
+                    result[index] = syntheticRow[syntheticIndex++];
+                }
+                index++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mirrors the header part of AbstractRowsEventDataDeserializer subclasses.
+     * @return table id
+     */
+    private static long readRowsEventHeader(ByteArrayInputStream inputStream, boolean mayContainExtraInformation)
+            throws IOException {
+        long tableId = inputStream.readLong(6);
+        inputStream.skip(2); // flags
+        if (mayContainExtraInformation) {
+            int extraInfoLength = inputStream.readInteger(2);
+            inputStream.skip(extraInfoLength - 2);
+        }
+        return tableId;
+    }
+
+    /**
+     * Subset of table columns to decode.
+     */
+    private static final class Projection {
+
+        private static final int[] DIG_TO_BYTES = {0, 1, 1, 2, 2, 3, 3, 4, 4, 4};
+
+        private final ColumnType[] columnTypes;
+        private final int[] columnMetadata;
+        private final int[] columnLengths;
+        private final int[] syntheticIndexes; // column index -> index within synthetic TABLE_MAP (-1 if not projected)
+        private final TableMapEventData syntheticTableMap;
+        private final boolean supported;
+
+        private Projection(TableMapEventData tableMapEventData, BitSet columns) {
+            byte[] types = tableMapEventData.getColumnTypes();
+            int[] metadata = tableMapEventData.getColumnMetadata();
+            int numberOfColumns = types.length;
+            this.columnTypes = new ColumnType[numberOfColumns];
+            this.columnMetadata = metadata;
+            this.columnLengths = new int[numberOfColumns];
+            this.syntheticIndexes = new int[numberOfColumns];
+            int numberOfProjectedColumns = columns.get(0, numberOfColumns).cardinality();
+            byte[] syntheticTypes = new byte[numberOfProjectedColumns];
+            int[] syntheticMetadata = new int[numberOfProjectedColumns];
+            boolean supported = true;
+            for (int i = 0, syntheticIndex = 0; i < numberOfColumns; i++) {
+                resolveColumnType(i, types[i] & 0xFF, metadata[i]);
+                supported &= fixedCellLength(i) != -1 || lengthPrefixLength(i) != -1;
+                if (columns.get(i)) {
+                    syntheticTypes[syntheticIndex] = types[i];
+                    syntheticMetadata[syntheticIndex] = metadata[i];
+                    syntheticIndexes[i] = syntheticIndex++;
+                } else {
+                    syntheticIndexes[i] = -1;
+                }
+            }
+            syntheticTableMap = new TableMapEventData();
+            syntheticTableMap.setTableId(-1 - tableMapEventData.getTableId());
+            syntheticTableMap.setDatabase(tableMapEventData.getDatabase());
+            syntheticTableMap.setTable(tableMapEventData.getTable());
+            syntheticTableMap.setColumnTypes(syntheticTypes);
+            syntheticTableMap.setColumnMetadata(syntheticMetadata);
+            this.supported = supported;
+        }
+
+        /**
+         * Mirrors AbstractRowsEventDataDeserializer (STRING is used as a container for ENUM, SET, etc.).
+         */
+        private void resolveColumnType(int index, int typeCode, int meta) {
+            int length = 0;
+            if (typeCode == ColumnType.STRING.getCode()) {
+                if (meta >= 256) {
+                    int meta0 = meta >> 8, meta1 = meta & 0xFF;
+                    if ((meta0 & 0x30) != 0x30) {
+                        typeCode = meta0 | 0x30;
+                        length = meta1 | (((meta0 & 0x30) ^ 0x30) << 4);
+                    } else {
+                        if (meta0 == ColumnType.ENUM.getCode() || meta0 == ColumnType.SET.getCode()) {
+                            typeCode = meta0;
+                        }
+                        length = meta1;
+                    }
+                } else {
+                    length = meta;
+                }
+            }
+            columnTypes[index] = ColumnType.byCode(typeCode);
+            columnLengths[index] = length;
+        }
+
+        /**
+         * @return length of the cell, -1 if it cannot be determined without looking at the data
+         */
+        private int fixedCellLength(int index) {
+            if (columnTypes[index] == null) {
+                return -1;
+            }
+            int meta = columnMetadata[index];
+            switch (columnTypes[index]) {
+                case BIT:
+                    return (((meta >> 8) << 3) + (meta & 0xFF) + 7) >> 3;
+                case TINY:
+                case YEAR:
+                    return 1;
+                case SHORT:
+                    return 2;
+                case INT24:
+                case DATE:
+                case TIME:
+                    return 3;
+                case LONG:
+                case FLOAT:
+                case TIMESTAMP:
+                    return 4;
+                case LONGLONG:
+                case DOUBLE:
+                case DATETIME:
+                    return 8;
+                case NEWDECIMAL:
+                    return decimalLength(meta & 0xFF, meta >> 8);
+                case TIME_V2:
+                    return 3 + fractionalSecondsStorageSize(meta);
+                case TIMESTAMP_V2:
+                    return 4 + fractionalSecondsStorageSize(meta);
+                case DATETIME_V2:
+                    return 5 + fractionalSecondsStorageSize(meta);
+                case ENUM:
+                case SET:
+                    return columnLengths[index];
+                default:
+                    return -1;
+            }
+        }
+
+        /**
+         * @return length of the length prefix, -1 if column is not of variable length
+         */
+        private int lengthPrefixLength(int index) {
+            if (columnTypes[index] == null) {
+                return -1;
+            }
+            switch (columnTypes[index]) {
+                case STRING:
+                    return columnLengths[index] < 256 ? 1 : 2;
+                case VARCHAR:
+                case VAR_STRING:
+                    return columnMetadata[index] < 256 ? 1 : 2;
+                case BLOB:
+                    return columnMetadata[index];
+                default:
+                    return -1;
+            }
+        }
+
+        /**
+         * Copies cell into the buffer (or skips it if buffer is null).
+         */
+        private void transferCell(int index, ByteArrayInputStream inputStream, RowBuffer buffer)
+                throws IOException {
+            int length = fixedCellLength(index);
+            if (length == -1) {
+                int lengthPrefixLength = lengthPrefixLength(index);
+                length = inputStream.readInteger(lengthPrefixLength);
+                if (buffer != null) {
+                    buffer.writeInteger(length, lengthPrefixLength);
+                }
+            }
+            if (buffer != null) {
+                buffer.writeFrom(inputStream, length);
+            } else {
+                inputStream.skip(length);
+            }
+        }
+
+        private static int fractionalSecondsStorageSize(int fsp) {
+            return (fsp + 1) >> 1;
+        }
+
+        private static int decimalLength(int precision, int scale) {
+            int x = precision - scale;
+            int ipDigits = x / 9;
+            int fpDigits = scale / 9;
+            return (ipDigits << 2) + DIG_TO_BYTES[x - ipDigits * 9] + (fpDigits << 2) +
+                DIG_TO_BYTES[scale - fpDigits * 9];
+        }
+    }
+
+    /**
+     * Reusable buffer for the synthetic row.
+     */
+    private static final class RowBuffer extends ByteArrayOutputStream {
+
+        public void writeBitSet(BitSet bitSet, int length) {
+            for (int i = 0; i < length; i += 8) {
+                int value = 0;
+                for (int j = 0; j < 8 && i + j < length; j++) {
+                    if (bitSet.get(i + j)) {
+                        value |= 1 << j;
+                    }
+                }
+                write(value);
+            }
+        }
+
+        public void writeInteger(int value, int length) {
+            for (int i = 0; i < length; i++) {
+                write((value >>> (i << 3)) & 0xFF);
+            }
+        }
+
+        public void writeFrom(ByteArrayInputStream inputStream, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                write(inputStream.read());
+            }
+        }
+
+        public java.io.ByteArrayInputStream toInputStream() {
+            return new java.io.ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    /**
+     * Access to AbstractRowsEventDataDeserializer.deserializeRow(...).
+     */
+    private interface RowDeserializer {
+
+        Serializable[] deserialize(long tableId, BitSet includedColumns, ByteArrayInputStream inputStream)
+            throws IOException;
+    }
+
+    private final class WriteRowsDeserializer extends WriteRowsEventDataDeserializer implements RowDeserializer {
+
+        private final WriteRowsEventData eventData = new WriteRowsEventData();
+        private boolean mayContainExtraInformation;
+
+        private WriteRowsDeserializer(Map<Long, TableMapEventData> tableMapEventByTableId) {
+            super(tableMapEventByTableId);
+        }
+
+        @Override
+        public WriteRowsDeserializer setMayContainExtraInformation(boolean mayContainExtraInformation) {
+            super.setMayContainExtraInformation(mayContainExtraInformation);
+            this.mayContainExtraInformation = mayContainExtraInformation;
+            return this;
+        }
+
+        @Override
+        public WriteRowsEventData deserialize(ByteArrayInputStream inputStream) throws IOException {
+            if (eventPool == null) {
+                return super.deserialize(inputStream);
+            }
+            long tableId = readRowsEventHeader(inputStream, mayContainExtraInformation);
+            BitSet includedColumns = inputStream.readBitSet(inputStream.readPackedInteger(), true);
+            List<Serializable[]> rows = eventPool.rowList();
+            while (inputStream.available() > 0) {
+                rows.add(deserializeRow(tableId, includedColumns, inputStream));
+            }
+            eventData.setTableId(tableId);
+            eventData.setIncludedColumns(includedColumns);
+            eventData.setRows(rows);
+            return eventData;
+        }
+
+        @Override
+        protected Serializable[] deserializeRow(long tableId, BitSet includedColumns,
+                ByteArrayInputStream inputStream) throws IOException {
+            return skipOrDeserialize(this, tableId, includedColumns, inputStream);
+        }
+
+        @Override
+        public Serializable[] deserialize(long tableId, BitSet includedColumns, ByteArrayInputStream inputStream)
+                throws IOException {
+            return super.deserializeRow(tableId, includedColumns, inputStream);
+        }
+    }
+
+    private final class UpdateRowsDeserializer extends UpdateRowsEventDataDeserializer implements RowDeserializer {
+
+        private final UpdateRowsEventData eventData = new UpdateRowsEventData();
+        private boolean mayContainExtraInformation;
+
+        private UpdateRowsDeserializer(Map<Long, TableMapEventData> tableMapEventByTableId) {
+            super(tableMapEventByTableId);
+        }
+
+        @Override
+        public UpdateRowsDeserializer setMayContainExtraInformation(boolean mayContainExtraInformation) {
+            super.setMayContainExtraInformation(mayContainExtraInformation);
+            this.mayContainExtraInformation = mayContainExtraInformation;
+            return this;
+        }
+
+        @Override
+        public UpdateRowsEventData deserialize(ByteArrayInputStream inputStream) throws IOException {
+            if (eventPool == null) {
+                return super.deserialize(inputStream);
+            }
+            long tableId = readRowsEventHeader(inputStream, mayContainExtraInformation);
+            int numberOfColumns = inputStream.readPackedInteger();
+            BitSet includedColumnsBeforeUpdate = inputStream.readBitSet(numberOfColumns, true);
+            BitSet includedColumns = inputStream.readBitSet(numberOfColumns, true);
+            List<Map.Entry<Serializable[], Serializable[]>> rows = eventPool.rowPairList();
+            while (inputStream.available() > 0) {
+                Serializable[] before = deserializeRow(tableId, includedColumnsBeforeUpdate, inputStream);
+                Serializable[] after = deserializeRow(tableId, includedColumns, inputStream);
+                rows.add(eventPool.rowPair(before, after));
+            }
+            eventData.setTableId(tableId);
+            eventData.setIncludedColumnsBeforeUpdate(includedColumnsBeforeUpdate);
+            eventData.setIncludedColumns(includedColumns);
+            eventData.setRows(rows);
+            return eventData;
+        }
+
+        @Override
+        protected Serializable[] deserializeRow(long tableId, BitSet includedColumns,
+                ByteArrayInputStream inputStream) throws IOException {
+            return skipOrDeserialize(this, tableId, includedColumns, inputStream);
+        }
+
+        @Override
+        public Serializable[] deserialize(long tableId, BitSet includedColumns, ByteArrayInputStream inputStream)
+                throws IOException {
+            return super.deserializeRow(tableId, includedColumns, inputStream);
+        }
+    }
+
+    private final class DeleteRowsDeserializer extends DeleteRowsEventDataDeserializer implements RowDeserializer {
+
+        private final DeleteRowsEventData eventData = new DeleteRowsEventData();
+        private boolean mayContainExtraInformation;
+
+        private DeleteRowsDeserializer(Map<Long, TableMapEventData> tableMapEventByTableId) {
+            super(tableMapEventByTableId);
+        }
+
+        @Override
+        public DeleteRowsDeserializer setMayContainExtraInformation(boolean mayContainExtraInformation) {
+            super.setMayContainExtraInformation(mayContainExtraInformation);
+            this.mayContainExtraInformation = mayContainExtraInformation;
+            return this;
+        }
+
+        @Override
+        public DeleteRowsEventData deserialize(ByteArrayInputStream inputStream) throws IOException {
+            if (eventPool == null) {
+                return super.deserialize(inputStream);
+            }
+            long tableId = readRowsEventHeader(inputStream, mayContainExtraInformation);
+            BitSet includedColumns = inputStream.readBitSet(inputStream.readPackedInteger(), true);
+            List<Serializable[]> rows = eventPool.rowList();
+            while (inputStream.available() > 0) {
+                rows.add(deserializeRow(tableId, includedColumns, inputStream));
+            }
+            eventData.setTableId(tableId);
+            eventData.setIncludedColumns(includedColumns);
+            eventData.setRows(rows);
+            return eventData;
+        }
+
+        @Override
+        protected Serializable[] deserializeRow(long tableId, BitSet includedColumns,
+                ByteArrayInputStream inputStream) throws IOException {
+            return skipOrDeserialize(this, tableId, includedColumns, inputStream);
+        }
+
+        @Override
+        public Serializable[] deserialize(long tableId, BitSet includedColumns, ByteArrayInputStream inputStream)
+                throws IOException {
+            return super.deserializeRow(tableId, includedColumns, inputStream);
+        }
+    }
+
+    /**
+     * TABLE_MAP deserializer which also looks into optional metadata fields (if any).
+     */
+    private final class TableMapDeserializer extends TableMapEventDataDeserializer {
+
+        private static final int COLUMN_NAME = 4;
+
+        @Override
+        public TableMapEventData deserialize(ByteArrayInputStream inputStream) throws IOException {
+            TableMapEventData eventData = super.deserialize(inputStream);
+            List<String> columnNames = null;
+            while (inputStream.available() > 0) {
+                int fieldType = inputStream.read();
+                int fieldLength = inputStream.readPackedInteger();
+                if (fieldType == COLUMN_NAME) {
+                    columnNames = readColumnNames(new ByteArrayInputStream(inputStream.read(fieldLength)));
+                } else {
+                    inputStream.skip(fieldLength);
+                }
+            }
+            if (columnNames != null && columnNames.size() == eventData.getColumnTypes().length) {
+                columnNamesByTableId.put(eventData.getTableId(), columnNames);
+            } else {
+                columnNamesByTableId.remove(eventData.getTableId());
+            }
+            return eventData;
+        }
+
+        private List<String> readColumnNames(ByteArrayInputStream inputStream) throws IOException {
+            List<String> result = new ArrayList<String>();
+            while (inputStream.available() > 0) {
+                result.add(new String(inputStream.read(inputStream.readPackedInteger()), "UTF-8"));
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+/**
+ * Rows events of a particular table.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public final class TableMetrics implements TableMetricsMBean {
+
+    private final RateMeter events = new RateMeter();
+    private final RateMeter rows = new RateMeter();
+
+    TableMetrics() {
+    }
+
+    void record(int numberOfRows, long timeInMillis) {
+        events.mark(1, timeInMillis);
+        rows.mark(numberOfRows, timeInMillis);
+    }
+
+    @Override
+    public long getEventCount() {
+        return events.getTotal();
+    }
+
+    @Override
+    public double getEventRate() {
+        return events.getRate(System.currentTimeMillis());
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows.getTotal();
+    }
+
+    @Override
+    public double getRowRate() {
+        return rows.getRate(System.currentTimeMillis());
+    }
+}
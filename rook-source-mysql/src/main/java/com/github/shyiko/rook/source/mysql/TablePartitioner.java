@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+
+import java.io.Serializable;
+
+/**
+ * Partitions rows by schema.table (case-insensitive). As a result, all changes to the same table are delivered
+ * in order.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TablePartitioner implements ReplicationEventPartitioner {
+
+    @Override
+    public int partition(RowsMutationReplicationEvent event, Serializable[] row) {
+        return hash(event.getSchema(), event.getTable());
+    }
+
+    static int hash(String schema, String table) {
+        return 31 * caseInsensitiveHash(schema) + caseInsensitiveHash(table);
+    }
+
+    private static int caseInsensitiveHash(String value) {
+        int hash = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            hash = 31 * hash + Character.toLowerCase(value.charAt(i));
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.rook.api.TableDescriptor;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry of the tables (as identified by TABLE_MAP events) which interns {@link TableDescriptor}s (one per
+ * table, for as long as table exists).
+ * <p>
+ * MySQL assigns new id to the table each time its definition is (re)loaded (e.g. after ALTER TABLE or
+ * FLUSH TABLES), so previous id of the table is evicted as soon as the new one is registered. Dropped tables are
+ * to be evicted explicitly ({@link #evict(String, String)}/{@link #evictDatabase(String)}). Not thread-safe.
+ * <p>
+ * Tables are told apart by exact (case-sensitive) schema and table names, since on a server with
+ * lower_case_table_names=0 "Foo" and "foo" are two different tables.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class TableRegistry {
+
+    private final LongHashMap<Table> tablesById = new LongHashMap<Table>();
+    private final Map<TableDescriptor, Table> tablesByDescriptor = new LinkedHashMap<TableDescriptor, Table>();
+    private final EvictionListener evictionListener;
+
+    public TableRegistry(EvictionListener evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    /**
+     * @return table registered under the given id, null if there is none
+     */
+    public Table get(long tableId) {
+        return tablesById.get(tableId);
+    }
+
+    /**
+     * @return newly registered table (descriptor of which is the same as the one of any previous registration of
+     * the same (schema, table) pair)
+     */
+    public Table register(TableMapEventData tableMapEventData) {
+        long tableId = tableMapEventData.getTableId();
+        TableDescriptor descriptor = new TableDescriptor(tableMapEventData.getDatabase(),
+            tableMapEventData.getTable());
+        Table previousTable = tablesByDescriptor.get(descriptor);
+        if (previousTable != null) {
+            descriptor = previousTable.descriptor;
+            if (previousTable.id != tableId) {
+                evictId(previousTable);
+            }
+        }
+        Table table = new Table(tableId, tableMapEventData, descriptor);
+        tablesById.put(tableId, table);
+        tablesByDescriptor.put(descriptor, table);
+        return table;
+    }
+
+    /**
+     * Evicts id of the table while keeping descriptor intact (so that next TABLE_MAP is registered anew even if
+     * server keeps using the same id).
+     */
+    public void invalidate(String schema, String table) {
+        for (Table invalidatedTable : lookup(schema, table)) {
+            evictId(invalidatedTable);
+        }
+    }
+
+    public void evict(String schema, String table) {
+        for (Table evictedTable : lookup(schema, table)) {
+            tablesByDescriptor.remove(evictedTable.descriptor);
+            evictId(evictedTable);
+        }
+    }
+
+    /**
+     * Evicts all the tables of the schema (compared case-insensitively, as DDL statement might refer to it by a
+     * name spelled differently from the one in TABLE_MAP).
+     */
+    public void evictDatabase(String schema) {
+        for (Iterator<Table> iterator = tablesByDescriptor.values().iterator(); iterator.hasNext(); ) {
+            Table table = iterator.next();
+            String tableSchema = table.descriptor.getSchema();
+            if (tableSchema == null ? schema == null : tableSchema.equalsIgnoreCase(schema)) {
+                iterator.remove();
+                evictId(table);
+            }
+        }
+    }
+
+    /**
+     * @return table registered under the exact (schema, table) pair or, if there is none (e.g. DDL statement
+     * referring to the table of the lower_case_table_names=1 server in a different case), all the tables name of
+     * which matches case-insensitively
+     */
+    private List<Table> lookup(String schema, String table) {
+        List<Table> result = new ArrayList<Table>();
+        Table exactMatch = tablesByDescriptor.get(new TableDescriptor(schema, table));
+        if (exactMatch != null) {
+            result.add(exactMatch);
+        } else {
+            String qualifiedName = new TableDescriptor(schema, table).getQualifiedName();
+            for (Table candidate : tablesByDescriptor.values()) {
+                if (candidate.descriptor.getQualifiedName().equals(qualifiedName)) {
+                    result.add(candidate);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of table ids currently registered
+     */
+    public int size() {
+        return tablesById.size();
+    }
+
+    private void evictId(Table table) {
+        // id might have already been taken over by another table
+        if (tablesById.get(table.id) == table) {
+            tablesById.remove(table.id);
+            if (evictionListener != null) {
+                evictionListener.evicted(table.id);
+            }
+        }
+    }
+
+    /**
+     * Registered table.
+     */
+    public static final class Table {
+
+        private final long id;
+        private final TableMapEventData tableMapEventData;
+        private final TableDescriptor descriptor;
+        // state of the (stream-specific) filtering/projection decisions
+        private boolean accepted;
+        private List<String> columnNames;
+        private int resolutionVersion = -1;
+
+        private Table(long id, TableMapEventData tableMapEventData, TableDescriptor descriptor) {
+            this.id = id;
+            this.tableMapEventData = tableMapEventData;
+            this.descriptor = descriptor;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public TableMapEventData getTableMapEventData() {
+            return tableMapEventData;
+        }
+
+        public TableDescriptor getDescriptor() {
+            return descriptor;
+        }
+
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        /**
+         * @return names of the columns, null if unknown
+         */
+        public List<String> getColumnNames() {
+            return columnNames;
+        }
+
+        public int getResolutionVersion() {
+            return resolutionVersion;
+        }
+
+        public void resolved(boolean accepted, List<String> columnNames, int resolutionVersion) {
+            this.accepted = accepted;
+            this.columnNames = columnNames;
+            this.resolutionVersion = resolutionVersion;
+        }
+    }
+
+    /**
+     * Callback notified when table id is no longer in use.
+     */
+    public interface EvictionListener {
+
+        void evicted(long tableId);
+    }
+}
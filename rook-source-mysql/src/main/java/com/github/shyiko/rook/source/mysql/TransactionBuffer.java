@@ -0,0 +1,356 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Buffer for the events of a transaction in progress. Events are kept on heap until their total size (as reported
+ * by the caller, e.g. size of the binlog events they originate from) exceeds spill threshold, after which they are
+ * encoded (using {@link RowsEventCodec}) into a memory-mapped {@link SpillFile} and decoded back one at a time
+ * while list returned by {@link #drain()} is iterated over.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+class TransactionBuffer {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final long spillThreshold;
+    private final File spillDirectory;
+    private final int spillRegionSize;
+
+    private List<ReplicationEvent> events = new ArrayList<ReplicationEvent>();
+    private long sizeInBytes;
+    private int size;
+    private SpillFile spillFile;
+    private DataOutputStream spillOutputStream;
+    private boolean spillFailed;
+    // so that decoded events refer to the same (interned) table descriptors as the original ones
+    private Map<TableDescriptor, TableDescriptor> spilledTableDescriptors;
+
+    /**
+     * @param spillThreshold size after which events are moved off heap (0 to keep everything on heap)
+     * @param spillDirectory directory to create spill files in (default temporary-file directory if null)
+     */
+    public TransactionBuffer(long spillThreshold, File spillDirectory) {
+        this(spillThreshold, spillDirectory, SpillFile.DEFAULT_REGION_SIZE);
+    }
+
+    TransactionBuffer(long spillThreshold, File spillDirectory, int spillRegionSize) {
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+        this.spillRegionSize = spillRegionSize;
+    }
+
+    public void add(ReplicationEvent event, long eventSize) {
+        size++;
+        sizeInBytes += eventSize;
+        if (spillOutputStream == null && (spillThreshold <= 0 || sizeInBytes <= spillThreshold || spillFailed)) {
+            events.add(event);
+            return;
+        }
+        try {
+            if (spillOutputStream == null) {
+                spill();
+            }
+            encode(event, spillOutputStream);
+        } catch (IOException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to spill transaction to disk. Keeping it on heap", e);
+            }
+            recover();
+            events.add(event);
+        }
+    }
+
+    private void spill() throws IOException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Transaction exceeded " + spillThreshold + " bytes. Spilling it to disk");
+        }
+        SpillFile file = new SpillFile(spillDirectory, spillRegionSize);
+        DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(file));
+        spilledTableDescriptors = new HashMap<TableDescriptor, TableDescriptor>();
+        try {
+            for (ReplicationEvent event : events) {
+                encode(event, outputStream);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        spillFile = file;
+        spillOutputStream = outputStream;
+        events = new ArrayList<ReplicationEvent>();
+    }
+
+    private void encode(ReplicationEvent event, DataOutputStream outputStream) throws IOException {
+        RowsEventCodec.encode(event, outputStream);
+        if (event instanceof RowsMutationReplicationEvent) {
+            TableDescriptor tableDescriptor = ((RowsMutationReplicationEvent) event).getTableDescriptor();
+            if (!spilledTableDescriptors.containsKey(tableDescriptor)) {
+                spilledTableDescriptors.put(tableDescriptor, tableDescriptor);
+            }
+        }
+    }
+
+    /**
+     * Brings spilled events back on heap (used as a fallback when spill file cannot be written to).
+     */
+    private void recover() {
+        spillFailed = true;
+        if (spillFile == null) {
+            return;
+        }
+        List<ReplicationEvent> recoveredEvents = new ArrayList<ReplicationEvent>();
+        try {
+            spillOutputStream.flush();
+            recoveredEvents.addAll(new SpilledEventList(spillFile, size - 1 - events.size(),
+                spilledTableDescriptors));
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to read back spilled transaction", e);
+        } finally {
+            closeSpillFile();
+        }
+        recoveredEvents.addAll(events);
+        events = recoveredEvents;
+    }
+
+    private void closeSpillFile() {
+        try {
+            spillOutputStream.close();
+        } catch (IOException e) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Failed to close " + spillFile, e);
+            }
+        }
+        spillOutputStream = null;
+        spillFile = null;
+        spilledTableDescriptors = null;
+    }
+
+    /**
+     * @return number of events in the buffer
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return events accumulated so far (buffer is reset). Note that list of spilled events is decoded lazily and
+     * only sequential access is efficient. Each (list) iterator decodes events on its own, so the list can be handed
+     * out to several threads at once (get(int) is synchronized and shares a single cursor, though, so threads
+     * reading by index will slow each other down)
+     */
+    public List<ReplicationEvent> drain() {
+        List<ReplicationEvent> result;
+        if (spillOutputStream != null) {
+            SpillFile file = spillFile;
+            int numberOfEvents = size;
+            closeSpillFile();
+            result = new SpilledEventList(file, numberOfEvents, spilledTableDescriptors);
+            events = new ArrayList<ReplicationEvent>();
+        } else {
+            result = events;
+            events = new ArrayList<ReplicationEvent>();
+        }
+        size = 0;
+        sizeInBytes = 0;
+        spillFailed = false;
+        return result;
+    }
+
+    /**
+     * Read-only view of the events stored in a spill file.
+     */
+    private static final class SpilledEventList extends AbstractList<ReplicationEvent> {
+
+        private final SpillFile spillFile;
+        private final int size;
+        private final Map<TableDescriptor, TableDescriptor> tableDescriptors;
+        private final Cursor cursor = new Cursor();
+
+        private SpilledEventList(SpillFile spillFile, int size,
+                Map<TableDescriptor, TableDescriptor> tableDescriptors) {
+            this.spillFile = spillFile;
+            this.size = size;
+            this.tableDescriptors = tableDescriptors;
+        }
+
+        @Override
+        public Iterator<ReplicationEvent> iterator() {
+            return new EventIterator();
+        }
+
+        @Override
+        public ListIterator<ReplicationEvent> listIterator(int index) {
+            if (index < 0 || index > size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return new EventListIterator(index);
+        }
+
+        @Override
+        public synchronized ReplicationEvent get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return cursor.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Random access on top of the {@link EventIterator} (which is reopened whenever cursor needs to go back).
+         */
+        private final class Cursor {
+
+            private EventIterator iterator;
+            private ReplicationEvent event;
+
+            public ReplicationEvent get(int index) {
+                if (iterator != null && iterator.index == index + 1) {
+                    return event;
+                }
+                if (iterator == null || iterator.index > index) {
+                    iterator = new EventIterator();
+                }
+                do {
+                    event = iterator.next();
+                } while (iterator.index <= index);
+                return event;
+            }
+        }
+
+        private final class EventListIterator implements ListIterator<ReplicationEvent> {
+
+            private final Cursor cursor = new Cursor();
+            private int index;
+
+            private EventListIterator(int index) {
+                this.index = index;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public ReplicationEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return cursor.get(index++);
+            }
+
+            @Override
+            public boolean hasPrevious() {
+                return index > 0;
+            }
+
+            @Override
+            public ReplicationEvent previous() {
+                if (!hasPrevious()) {
+                    throw new NoSuchElementException();
+                }
+                return cursor.get(--index);
+            }
+
+            @Override
+            public int nextIndex() {
+                return index;
+            }
+
+            @Override
+            public int previousIndex() {
+                return index - 1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void set(ReplicationEvent event) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void add(ReplicationEvent event) {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        private final class EventIterator implements Iterator<ReplicationEvent> {
+
+            private final DataInputStream inputStream =
+                new DataInputStream(new BufferedInputStream(spillFile.openInputStream()));
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public ReplicationEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    ReplicationEvent event = RowsEventCodec.decode(inputStream, tableDescriptors);
+                    index++;
+                    return event;
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to read event #" + index + " from the spill file", e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+}
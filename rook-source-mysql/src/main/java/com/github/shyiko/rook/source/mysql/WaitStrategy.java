@@ -0,0 +1,38 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+/**
+ * Determines how a consumer thread waits for the next event to become available (and how a producer waits for
+ * a free slot when {@link OverflowPolicy#BLOCK} is in effect).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public enum WaitStrategy {
+
+    /**
+     * Park waiting thread until it's signaled. Lowest CPU usage at the cost of wake-up latency.
+     */
+    BLOCKING,
+    /**
+     * Spin for a while and then {@link Thread#yield()}. Trades CPU for a lower latency.
+     */
+    YIELDING,
+    /**
+     * Spin continuously. Lowest latency but keeps a CPU core busy even when there is nothing to do.
+     */
+    BUSY_SPIN
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventExceptionHandler;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.TXChunkReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ReplicationEventListener} decorator which delivers transactions to the delegate in parallel (using a pool
+ * of worker threads) as long as they do not touch the same rows.
+ * <p>
+ * Each transaction is assigned a sequence number and a writeset (set of hashes of schema.table + primary key of
+ * every affected row, computed by {@link ReplicationEventPartitioner}). Transaction depends on the last preceding
+ * transaction which wrote any of the rows from its writeset and is not delivered until all the transactions up to
+ * (and including) that one are fully processed. In other words, conflicting transactions are delivered in commit
+ * order, while non-conflicting ones can overtake each other (similar to MySQL's WRITESET-based dependency tracking).
+ * Hash collisions only produce false dependencies (never missed ones).
+ * <p>
+ * Chunks of a large transaction ({@link TXChunkReplicationEvent}s) are scheduled the same way as transactions.
+ * Events which are not row mutations (as well as transactions without any row mutations inside) act as barriers,
+ * i.e. they are delivered only after all the preceding transactions and before all the following ones.
+ * <p>
+ * Workers are started lazily (on the first event) and can be stopped with {@link #shutdown()}, in which case all
+ * the events accepted so far are going to be delivered before workers exit. Note that delegate is called
+ * concurrently and so it must be thread-safe.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class WritesetReplicationEventListener implements DispatchingReplicationEventListener {
+
+    public static final int DEFAULT_MAX_TX_IN_FLIGHT = 1024;
+    public static final int DEFAULT_HISTORY_SIZE = 25000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ReplicationEventListener listener;
+    private final int numberOfWorkers;
+    private final ReplicationEventPartitioner partitioner;
+    private final int historySize;
+    private volatile ReplicationEventExceptionHandler exceptionHandler;
+    private volatile DeliveryCallback deliveryCallback;
+
+    // scheduler state (guarded by this)
+    private final Map<Integer, Long> lastWriterByHash = new HashMap<Integer, Long>();
+    private long lastSequence;
+    private long lastBarrier;
+    private ExecutorService workers;
+    private ExecutorService retiredWorkers;
+
+    // completion tracking (guarded by completionLock)
+    private final Object completionLock = new Object();
+    private final boolean[] completed;
+    private long lowWaterMark; // all transactions up to (and including) this one are processed
+    private final Semaphore inFlight;
+
+    public WritesetReplicationEventListener(ReplicationEventListener listener, int numberOfWorkers,
+            ReplicationEventPartitioner partitioner) {
+        this(listener, numberOfWorkers, partitioner, DEFAULT_MAX_TX_IN_FLIGHT, DEFAULT_HISTORY_SIZE);
+    }
+
+    /**
+     * @param listener listener to deliver events to
+     * @param numberOfWorkers number of worker threads
+     * @param partitioner partitioner used to hash rows (e.g. {@link PrimaryKeyPartitioner}). Any two versions of
+     * the same row must produce the same hash
+     * @param maxTXInFlight maximum number of transactions accepted but not yet processed (thread calling
+     * {@link #onEvent(ReplicationEvent)} is blocked until there is a room for another transaction)
+     * @param historySize maximum number of row hashes to keep track of. Once this number is exceeded, history is
+     * discarded and next transaction is made dependent on all the preceding ones
+     */
+    public WritesetReplicationEventListener(ReplicationEventListener listener, int numberOfWorkers,
+            ReplicationEventPartitioner partitioner, int maxTXInFlight, int historySize) {
+        if (numberOfWorkers < 1) {
+            throw new IllegalArgumentException("Number of workers must be greater than 0");
+        }
+        if (partitioner == null) {
+            throw new IllegalArgumentException("Partitioner cannot be null");
+        }
+        if (maxTXInFlight < 1) {
+            throw new IllegalArgumentException("Maximum number of transactions in flight must be greater than 0");
+        }
+        this.listener = listener;
+        this.numberOfWorkers = numberOfWorkers;
+        this.partitioner = partitioner;
+        this.historySize = historySize;
+        this.completed = new boolean[maxTXInFlight];
+        this.inFlight = new Semaphore(maxTXInFlight);
+    }
+
+    @Override
+    public ReplicationEventListener getListener() {
+        return listener;
+    }
+
+    @Override
+    public void setExceptionHandler(ReplicationEventExceptionHandler exceptionHandler) {
+        this.exceptionHandler = exceptionHandler;
+    }
+
+    @Override
+    public void setDeliveryCallback(DeliveryCallback deliveryCallback) {
+        this.deliveryCallback = deliveryCallback;
+    }
+
+    @Override
+    public void onEvent(ReplicationEvent event) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a free slot in the queue of " +
+                listener, e);
+        }
+        synchronized (this) {
+            long sequence = ++lastSequence;
+            long dependency = schedule(event, sequence);
+            if (workers == null) {
+                workers = startWorkers();
+            }
+            workers.execute(new Delivery(event, sequence, dependency));
+        }
+    }
+
+    /**
+     * @return sequence number of the transaction given event depends on
+     */
+    private long schedule(ReplicationEvent event, long sequence) {
+        if (lastWriterByHash.size() > historySize) {
+            lastWriterByHash.clear();
+            lastBarrier = sequence - 1;
+        }
+        long dependency = lastBarrier;
+        boolean hasRows = false;
+        if (event instanceof TXReplicationEvent || event instanceof TXChunkReplicationEvent) {
+            List<ReplicationEvent> txEvents = event instanceof TXReplicationEvent ?
+                ((TXReplicationEvent) event).getEvents() : ((TXChunkReplicationEvent) event).getEvents();
+            for (ReplicationEvent txEvent : txEvents) {
+                if (txEvent instanceof RowsMutationReplicationEvent) {
+                    dependency = Math.max(dependency, register((RowsMutationReplicationEvent) txEvent, sequence));
+                    hasRows = true;
+                }
+            }
+        } else
+        if (event instanceof RowsMutationReplicationEvent) {
+            dependency = register((RowsMutationReplicationEvent) event, sequence);
+            hasRows = true;
+        }
+        if (!hasRows) {
+            lastBarrier = sequence;
+            return sequence - 1;
+        }
+        return dependency;
+    }
+
+    @SuppressWarnings("unchecked")
+    private long register(RowsMutationReplicationEvent event, long sequence) {
+        long dependency = lastBarrier;
+        if (event instanceof UpdateRowsReplicationEvent) {
+            // primary key may change and so both before & after images are part of the writeset
+            for (Map.Entry<Serializable[], Serializable[]> row : ((UpdateRowsReplicationEvent) event).getRows()) {
+                dependency = Math.max(dependency, register(partitioner.partition(event, row.getKey()), sequence));
+                dependency = Math.max(dependency, register(partitioner.partition(event, row.getValue()), sequence));
+            }
+        } else {
+            for (Object row : event.getRows()) {
+                dependency = Math.max(dependency, register(partitioner.partition(event, (Serializable[]) row),
+                    sequence));
+            }
+        }
+        return dependency;
+    }
+
+    private long register(int hash, long sequence) {
+        Long lastWriter = lastWriterByHash.put(hash, sequence);
+        return lastWriter == null || lastWriter == sequence ? 0 : lastWriter;
+    }
+
+    private ExecutorService startWorkers() {
+        final AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor result = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, 0, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "rook-writeset-" + listener.getClass().getSimpleName() + "-" +
+                    threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        result.prestartAllCoreThreads();
+        return result;
+    }
+
+    private void awaitCompletionOf(long sequence) throws InterruptedException {
+        synchronized (completionLock) {
+            while (lowWaterMark < sequence) {
+                completionLock.wait();
+            }
+        }
+    }
+
+    private void complete(long sequence) {
+        int released = 0;
+        synchronized (completionLock) {
+            completed[(int) (sequence % completed.length)] = true;
+            int index;
+            while (completed[index = (int) ((lowWaterMark + 1) % completed.length)]) {
+                completed[index] = false;
+                lowWaterMark++;
+                released++;
+            }
+            if (released != 0) {
+                completionLock.notifyAll();
+            }
+        }
+        inFlight.release(released);
+    }
+
+    /**
+     * Stops workers once all the events accepted so far are delivered. Does not block. Workers are going to be
+     * restarted automatically when the next event arrives.
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (workers != null) {
+            workers.shutdown();
+            retiredWorkers = workers;
+            workers = null;
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        ExecutorService executorService;
+        synchronized (this) {
+            executorService = retiredWorkers;
+        }
+        if (executorService != null) {
+            return executorService.awaitTermination(timeout, unit);
+        }
+        synchronized (this) {
+            return workers == null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WritesetReplicationEventListener{listener=" + listener + ", workers=" + numberOfWorkers + '}';
+    }
+
+    /**
+     * Delivery of a single transaction (or standalone event).
+     */
+    private final class Delivery implements Runnable {
+
+        private final ReplicationEvent event;
+        private final long sequence;
+        private final long dependency;
+
+        private Delivery(ReplicationEvent event, long sequence, long dependency) {
+            this.event = event;
+            this.sequence = sequence;
+            this.dependency = dependency;
+        }
+
+        @Override
+        public void run() {
+            try {
+                awaitCompletionOf(dependency);
+                listener.onEvent(event);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (logger.isWarnEnabled()) {
+                    logger.warn("Interrupted while waiting for TX #" + dependency + ". Discarding " + event);
+                }
+            } catch (Exception e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn(listener + " choked on " + event, e);
+                }
+                ReplicationEventExceptionHandler exceptionHandler = WritesetReplicationEventListener.this.
+                    exceptionHandler;
+                if (exceptionHandler != null) {
+                    exceptionHandler.handle(e);
+                }
+            } finally {
+                complete(sequence);
+                DeliveryCallback deliveryCallback = WritesetReplicationEventListener.this.deliveryCallback;
+                if (deliveryCallback != null) {
+                    deliveryCallback.delivered(event);
+                }
+            }
+        }
+    }
+}
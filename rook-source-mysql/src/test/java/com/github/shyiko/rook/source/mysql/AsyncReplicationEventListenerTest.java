@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class AsyncReplicationEventListenerTest {
+
+    @Test(timeOut = 10000)
+    public void testEventsAreDeliveredInOrder() throws Exception {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            CollectingListener listener = new CollectingListener(null);
+            AsyncReplicationEventListener asyncListener =
+                new AsyncReplicationEventListener(listener, 8, waitStrategy, OverflowPolicy.BLOCK);
+            for (int i = 0; i < 1000; i++) {
+                asyncListener.onEvent(newEvent(i));
+            }
+            asyncListener.shutdown();
+            assertTrue(asyncListener.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(listener.events.size(), 1000);
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(((DeleteRowsReplicationEvent) listener.events.get(i)).getRows().get(0)[0], i);
+            }
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testSlowListenerDoesNotBlockTheCaller() throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        CollectingListener listener = new CollectingListener(latch);
+        AsyncReplicationEventListener asyncListener =
+            new AsyncReplicationEventListener(listener, 4, WaitStrategy.BLOCKING, OverflowPolicy.DISCARD);
+        for (int i = 0; i < 10; i++) {
+            asyncListener.onEvent(newEvent(i));
+        }
+        latch.countDown();
+        asyncListener.shutdown();
+        assertTrue(asyncListener.awaitTermination(5, TimeUnit.SECONDS));
+        // first event is taken by the consumer right away, up to 4 are queued, the rest is discarded
+        assertTrue(listener.events.size() <= 5);
+        assertEquals(((DeleteRowsReplicationEvent) listener.events.get(0)).getRows().get(0)[0], 0);
+    }
+
+    @Test(timeOut = 10000, expectedExceptions = IllegalStateException.class)
+    public void testFailOnOverflow() throws Exception {
+        AsyncReplicationEventListener asyncListener = new AsyncReplicationEventListener(
+            new CollectingListener(new CountDownLatch(1)), 1, WaitStrategy.BLOCKING, OverflowPolicy.FAIL);
+        for (int i = 0; i < 3; i++) {
+            asyncListener.onEvent(newEvent(i));
+        }
+    }
+
+    private static ReplicationEvent newEvent(int id) {
+        return new DeleteRowsReplicationEvent(0, "rook", "entity", new Serializable[]{id});
+    }
+
+    /**
+     * Listener that collects events (optionally waiting for the latch before accepting each one of them).
+     */
+    private static final class CollectingListener implements ReplicationEventListener {
+
+        private final List<ReplicationEvent> events = new CopyOnWriteArrayList<ReplicationEvent>();
+        private final CountDownLatch latch;
+
+        private CollectingListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBatchReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class BatchingReplicationEventListenerTest {
+
+    @Test(timeOut = 10000)
+    public void testTransactionsAreMergedWhileListenerIsBusy() throws Exception {
+        final CountDownLatch firstDeliveryLatch = new CountDownLatch(1);
+        final List<ReplicationEvent> events = Collections.synchronizedList(new ArrayList<ReplicationEvent>());
+        BatchingReplicationEventListener listener = new BatchingReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    try {
+                        firstDeliveryLatch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    events.add(event);
+                }
+            }, 10, 1000, 1, TimeUnit.SECONDS);
+        listener.onEvent(tx(0));
+        Thread.sleep(100); // first transaction is picked up right away (window is 0 initially)
+        for (int i = 1; i <= 25; i++) {
+            listener.onEvent(tx(i));
+        }
+        listener.onEvent(new ReplicationEvent() { });
+        firstDeliveryLatch.countDown();
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(events.size(), 5);
+        assertEquals(events.get(0).getClass(), TXReplicationEvent.class);
+        assertEquals(((TXBatchReplicationEvent) events.get(1)).getTransactions().size(), 10);
+        assertEquals(((TXBatchReplicationEvent) events.get(2)).getTransactions().size(), 10);
+        assertEquals(((TXBatchReplicationEvent) events.get(3)).getTransactions().size(), 5);
+        assertEquals(((TXBatchReplicationEvent) events.get(3)).getEvents().size(), 5);
+        assertTrue(!(events.get(4) instanceof TXReplicationEvent));
+        assertTrue(listener.getWindow(TimeUnit.NANOSECONDS) > 0);
+    }
+
+    @Test(timeOut = 10000)
+    public void testTransactionsAreNotHeldBackWhenIdle() throws Exception {
+        final CountDownLatch deliveryLatch = new CountDownLatch(3);
+        BatchingReplicationEventListener listener = new BatchingReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    deliveryLatch.countDown();
+                }
+            }, 10, 1000, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 3; i++) {
+            listener.onEvent(tx(i));
+            Thread.sleep(50);
+        }
+        assertTrue(deliveryLatch.await(5, TimeUnit.SECONDS));
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    private static TXReplicationEvent tx(int id) {
+        return new TXReplicationEvent(Arrays.<ReplicationEvent>asList(
+            new InsertRowsReplicationEvent(0, "rook", "entity", new Serializable[]{id})));
+    }
+}
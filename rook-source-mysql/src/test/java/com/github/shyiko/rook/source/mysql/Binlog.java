@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Helpers for composing (v4) binary log events.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+final class Binlog {
+
+    static final int MYSQL_TYPE_LONG = 3;
+    static final int MYSQL_TYPE_VARCHAR = 15;
+    static final int MYSQL_TYPE_BLOB = 252;
+
+    private Binlog() {
+    }
+
+    static byte[] tableMap(long tableId, String database, String table) {
+        return tableMap(tableId, database, table, new int[]{MYSQL_TYPE_LONG}, new byte[0]);
+    }
+
+    static byte[] tableMap(long tableId, String database, String table, int[] columnTypes, byte[] metadata) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, tableId, 6);
+        writeInteger(out, 0, 2); // flags
+        writeInteger(out, database.length(), 1);
+        out.write(database.getBytes(), 0, database.length());
+        out.write(0);
+        writeInteger(out, table.length(), 1);
+        out.write(table.getBytes(), 0, table.length());
+        out.write(0);
+        out.write(columnTypes.length);
+        for (int columnType : columnTypes) {
+            out.write(columnType);
+        }
+        out.write(metadata.length);
+        out.write(metadata, 0, metadata.length);
+        writeInteger(out, 0, (columnTypes.length + 7) >> 3); // nullability bitmap
+        return out.toByteArray();
+    }
+
+    /**
+     * @return TABLE_MAP (of MYSQL_TYPE_LONG columns) followed by COLUMN_NAME optional metadata field
+     */
+    static byte[] tableMap(long tableId, String database, String table, String... columnNames) {
+        int[] columnTypes = new int[columnNames.length];
+        Arrays.fill(columnTypes, MYSQL_TYPE_LONG);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] header = tableMap(tableId, database, table, columnTypes, new byte[0]);
+        out.write(header, 0, header.length);
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        for (String columnName : columnNames) {
+            writeString(value, columnName, 1);
+        }
+        out.write(4); // COLUMN_NAME
+        out.write(value.size());
+        out.write(value.toByteArray(), 0, value.size());
+        return out.toByteArray();
+    }
+
+    /**
+     * @return WRITE_ROWS/DELETE_ROWS event data (single INT column table)
+     */
+    static byte[] writeRows(long tableId, int... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, tableId, 6);
+        writeInteger(out, 0, 2); // flags
+        out.write(1); // number of columns
+        out.write(1); // included columns bitmap
+        for (int value : values) {
+            out.write(0); // null bitmap
+            writeInteger(out, value, 4);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return UPDATE_ROWS event data (single INT column table)
+     * @param values before/after pairs
+     */
+    static byte[] updateRows(long tableId, int... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, tableId, 6);
+        writeInteger(out, 0, 2); // flags
+        out.write(1); // number of columns
+        out.write(1); // included columns bitmap (before update)
+        out.write(1); // included columns bitmap
+        for (int value : values) {
+            out.write(0); // null bitmap
+            writeInteger(out, value, 4);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] query(String sql) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, 0, 4); // thread id
+        writeInteger(out, 0, 4); // execution time
+        out.write(0); // database name length
+        writeInteger(out, 0, 2); // error code
+        writeInteger(out, 0, 2); // status variables length
+        out.write(0); // database name (empty)
+        out.write(sql.getBytes(), 0, sql.length());
+        return out.toByteArray();
+    }
+
+    static byte[] xid(long xid) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, xid, 8);
+        return out.toByteArray();
+    }
+
+    static byte[] gtid(String uuid, long transactionId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(1); // flags
+        String sid = uuid.replace("-", "");
+        for (int i = 0; i < sid.length(); i += 2) {
+            out.write(Integer.parseInt(sid.substring(i, i + 2), 16));
+        }
+        writeInteger(out, transactionId, 8);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param checksum true if binlog_checksum=CRC32
+     */
+    static byte[] formatDescription(String serverVersion, boolean checksum) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, 4, 2); // binlog version
+        byte[] version = Arrays.copyOf(serverVersion.getBytes(), 50);
+        out.write(version, 0, version.length);
+        writeInteger(out, 0, 4); // timestamp
+        out.write(19); // header length
+        out.write(new byte[38], 0, 38); // post-header lengths
+        out.write(checksum ? 1 : 0); // checksum algorithm
+        writeInteger(out, 0, 4); // checksum
+        return out.toByteArray();
+    }
+
+    static byte[] rotate(String binlogFilename, long position) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, position, 8);
+        out.write(binlogFilename.getBytes(), 0, binlogFilename.length());
+        return out.toByteArray();
+    }
+
+    static void writeEvent(ByteArrayOutputStream out, EventType eventType, byte[] data) {
+        writeEvent(out, 0, eventType, data);
+    }
+
+    /**
+     * @param timestamp seconds since epoch
+     */
+    static void writeEvent(ByteArrayOutputStream out, long timestamp, EventType eventType, byte[] data) {
+        writeInteger(out, timestamp, 4);
+        out.write(eventType.ordinal());
+        writeInteger(out, 1, 4); // server id
+        writeInteger(out, 19 + data.length, 4); // event length
+        writeInteger(out, out.size() + 6 + data.length, 4); // next position
+        writeInteger(out, 0, 2); // flags
+        out.write(data, 0, data.length);
+    }
+
+    /**
+     * Same as {@link #writeEvent(ByteArrayOutputStream, EventType, byte[])} except that event is followed by a
+     * (zeroed) checksum.
+     */
+    static void writeEventWithChecksum(ByteArrayOutputStream out, EventType eventType, byte[] data) {
+        byte[] dataWithChecksum = Arrays.copyOf(data, data.length + 4); // checksums are not verified
+        writeEvent(out, eventType, dataWithChecksum);
+    }
+
+    static void writeString(ByteArrayOutputStream out, String value, int lengthPrefixLength) {
+        writeInteger(out, value.length(), lengthPrefixLength);
+        out.write(value.getBytes(), 0, value.length());
+    }
+
+    static void writeInteger(ByteArrayOutputStream out, long value, int length) {
+        for (int i = 0; i < length; i++) {
+            out.write((int) (value >>> (i << 3)) & 0xFF);
+        }
+    }
+}
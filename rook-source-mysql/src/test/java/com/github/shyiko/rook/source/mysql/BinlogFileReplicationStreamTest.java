@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.formatDescription;
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.rotate;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEventWithChecksum;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class BinlogFileReplicationStreamTest {
+
+    private static final byte[] MAGIC_HEADER = {(byte) 0xFE, 'b', 'i', 'n'};
+
+    private File directory;
+    private List<File> files;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = File.createTempFile("rook-binlog", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        files = new ArrayList<File>();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (File file : files) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testEventsAreTheSameAsThoseOfLiveStream() throws Exception {
+        ByteArrayOutputStream firstBinlog = newBinlog();
+        writeTransaction(firstBinlog, 0, "entity", 1);
+        writeTransaction(firstBinlog, 0, "skipped", 2);
+        writeEvent(firstBinlog, EventType.QUERY, query("CREATE TABLE rook.another_entity (id INT)"));
+        writeTransaction(firstBinlog, 0, "entity", 3);
+        writeEvent(firstBinlog, EventType.ROTATE, rotate("mysql-bin.000002", 4));
+        ByteArrayOutputStream secondBinlog = newBinlog();
+        writeTransaction(secondBinlog, 0, "entity", 4);
+        BinlogFileReplicationStream fileStream = new BinlogFileReplicationStream(
+            createBinlogFile("mysql-bin.000001", firstBinlog), createBinlogFile("mysql-bin.000002", secondBinlog));
+        fileStream.setMappingWindowSize(7); // so that events span multiple windows
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        fileStream.setCheckpointStore(checkpointStore);
+        List<String> fileEvents = collectEvents(fileStream);
+        fileStream.connect();
+        assertFalse(fileStream.isConnected());
+        fileStream.disconnect();
+        // the same events streamed by the server (which starts with fake ROTATE)
+        ByteArrayOutputStream liveBinlog = new ByteArrayOutputStream();
+        writeEvent(liveBinlog, EventType.ROTATE, rotate("mysql-bin.000001", 4));
+        liveBinlog.write(firstBinlog.toByteArray(), MAGIC_HEADER.length, firstBinlog.size() - MAGIC_HEADER.length);
+        liveBinlog.write(secondBinlog.toByteArray(), MAGIC_HEADER.length, secondBinlog.size() - MAGIC_HEADER.length);
+        MySQLReplicationStream liveStream = new MySQLReplicationStream("rook", "");
+        List<String> liveEvents = collectEvents(liveStream);
+        liveStream.createEventListener().replay(new ByteArrayInputStream(liveBinlog.toByteArray()));
+        assertEquals(fileEvents.size(), 3);
+        assertEquals(fileEvents, liveEvents);
+        assertEquals(checkpointStore.getPosition(),
+            new BinlogPosition("mysql-bin.000002", secondBinlog.size()));
+    }
+
+    @Test
+    public void testReplayIsBoundedByStartAndStopPositions() throws Exception {
+        ByteArrayOutputStream firstBinlog = newBinlog();
+        writeTransaction(firstBinlog, 0, "entity", 1);
+        int startPosition = firstBinlog.size();
+        writeTransaction(firstBinlog, 0, "entity", 2);
+        ByteArrayOutputStream secondBinlog = newBinlog();
+        writeTransaction(secondBinlog, 0, "entity", 3);
+        int stopPosition = secondBinlog.size();
+        writeTransaction(secondBinlog, 0, "entity", 4);
+        BinlogFileReplicationStream stream = new BinlogFileReplicationStream(
+            createBinlogFile("mysql-bin.000001", firstBinlog), createBinlogFile("mysql-bin.000002", secondBinlog));
+        stream.setStartPosition(new BinlogPosition("mysql-bin.000001", startPosition));
+        stream.setStopPosition(new BinlogPosition("mysql-bin.000002", stopPosition));
+        List<String> events = collectEvents(stream);
+        stream.connect();
+        assertEquals(events.size(), 2);
+        assertTrue(events.get(0).contains("[2]"));
+        assertTrue(events.get(1).contains("[3]"));
+    }
+
+    @Test
+    public void testChecksumsAreDetected() throws Exception {
+        ByteArrayOutputStream binlog = newBinlog();
+        writeEvent(binlog, EventType.FORMAT_DESCRIPTION, formatDescription("5.6.17-log", true));
+        writeEventWithChecksum(binlog, EventType.QUERY, query("BEGIN"));
+        writeEventWithChecksum(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEventWithChecksum(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2));
+        writeEventWithChecksum(binlog, EventType.XID, xid(1));
+        BinlogFileReplicationStream stream = new BinlogFileReplicationStream(
+            createBinlogFile("mysql-bin.000001", binlog));
+        List<String> events = collectEvents(stream);
+        stream.connect();
+        assertEquals(events.size(), 1);
+        assertTrue(events.get(0).contains("[1]") && events.get(0).contains("[2]"));
+    }
+
+    @Test
+    public void testReplaySpeed() throws Exception {
+        ByteArrayOutputStream binlog = newBinlog();
+        writeTransaction(binlog, 1000, "entity", 1);
+        writeTransaction(binlog, 1001, "entity", 2);
+        BinlogFileReplicationStream stream = new BinlogFileReplicationStream(
+            createBinlogFile("mysql-bin.000001", binlog));
+        stream.setReplaySpeed(10);
+        List<String> events = collectEvents(stream);
+        long startTime = System.nanoTime();
+        stream.connect();
+        assertTrue(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(90)); // 1s of events at 10x
+        assertEquals(events.size(), 2);
+    }
+
+    private List<String> collectEvents(MySQLReplicationStream stream) {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        stream.setTableFilter(new TableFilter(Collections.<String>emptySet(), Arrays.asList("rook.skipped")));
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                events.add(event.toString());
+            }
+        });
+        return events;
+    }
+
+    private void writeTransaction(ByteArrayOutputStream binlog, long timestamp, String table, int value) {
+        writeEvent(binlog, timestamp, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, timestamp, EventType.TABLE_MAP, tableMap(1, "rook", table));
+        writeEvent(binlog, timestamp, EventType.WRITE_ROWS, writeRows(1, value));
+        writeEvent(binlog, timestamp, EventType.XID, xid(value));
+    }
+
+    private ByteArrayOutputStream newBinlog() {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        binlog.write(MAGIC_HEADER, 0, MAGIC_HEADER.length);
+        return binlog;
+    }
+
+    private File createBinlogFile(String name, ByteArrayOutputStream binlog) throws IOException {
+        File file = new File(directory, name);
+        files.add(file);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(binlog.toByteArray());
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+}
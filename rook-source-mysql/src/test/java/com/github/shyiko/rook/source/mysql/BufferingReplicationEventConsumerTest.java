@@ -0,0 +1,161 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventConsumer;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.rotate;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class BufferingReplicationEventConsumerTest {
+
+    @Test
+    public void testPositionIsCheckpointedOnlyOnCommit() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        stream.setCheckpointStore(checkpointStore);
+        ReplicationEventConsumer consumer = stream.createConsumer(16);
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.ROTATE, rotate("mysql-bin.000001", 4));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2));
+        writeEvent(binlog, EventType.XID, xid(1));
+        long positionAfterFirstTX = binlog.size();
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 3));
+        writeEvent(binlog, EventType.XID, xid(2));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 4));
+        writeEvent(binlog, EventType.XID, xid(3));
+        long positionAfterLastTX = binlog.size();
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        List<ReplicationEvent> batch = consumer.poll(1, 0, TimeUnit.MILLISECONDS);
+        assertEquals(batch.size(), 1);
+        assertEquals(((TXReplicationEvent) batch.get(0)).getEvents().size(), 1);
+        assertNull(checkpointStore.getPosition());
+        consumer.commit();
+        assertEquals(checkpointStore.getPosition(), new BinlogPosition("mysql-bin.000001", positionAfterFirstTX));
+        assertEquals(consumer.poll(10, 0, TimeUnit.MILLISECONDS).size(), 2);
+        assertTrue(consumer.poll(10, 1, TimeUnit.MILLISECONDS).isEmpty());
+        assertEquals(checkpointStore.getPosition(), new BinlogPosition("mysql-bin.000001", positionAfterFirstTX));
+        consumer.commit();
+        assertEquals(checkpointStore.getPosition(), new BinlogPosition("mysql-bin.000001", positionAfterLastTX));
+        assertEquals(checkpointStore.getNumberOfFlushes(), 2);
+        consumer.close();
+    }
+
+    @Test
+    public void testUncommittedTransactionIsReplayedOnceConsumerIsClosed() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        binlog.write(new byte[]{(byte) 0xFE, 'b', 'i', 'n'});
+        for (int i = 1; i <= 3; i++) {
+            writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+            writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+            writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, i));
+            writeEvent(binlog, EventType.XID, xid(i));
+        }
+        File binlogFile = new File(File.createTempFile("rook-binlog", "").getPath() + ".000001");
+        try {
+            FileOutputStream outputStream = new FileOutputStream(binlogFile);
+            try {
+                outputStream.write(binlog.toByteArray());
+            } finally {
+                outputStream.close();
+            }
+            InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+            BinlogFileReplicationStream stream = new BinlogFileReplicationStream(binlogFile);
+            stream.setCheckpointStore(checkpointStore);
+            ReplicationEventConsumer consumer = stream.createConsumer(16);
+            stream.connect();
+            assertTrue(consumer.poll(1, 0, TimeUnit.MILLISECONDS).get(0).toString().contains("[1]"));
+            consumer.commit();
+            BinlogPosition committedPosition = checkpointStore.getPosition();
+            assertNotNull(committedPosition);
+            assertTrue(consumer.poll(1, 0, TimeUnit.MILLISECONDS).get(0).toString().contains("[2]"));
+            consumer.close(); // neither polled (#2) nor queued (#3) transaction is committed
+            assertEquals(checkpointStore.getPosition(), committedPosition);
+            // restart
+            stream = new BinlogFileReplicationStream(binlogFile);
+            stream.setCheckpointStore(checkpointStore);
+            consumer = stream.createConsumer(16);
+            stream.connect();
+            List<ReplicationEvent> events = consumer.poll(16, 0, TimeUnit.MILLISECONDS);
+            assertEquals(events.size(), 2);
+            assertTrue(events.get(0).toString().contains("[2]"));
+            assertTrue(events.get(1).toString().contains("[3]"));
+            consumer.commit();
+            assertEquals(checkpointStore.getPosition(), new BinlogPosition(binlogFile.getName(), binlog.size()));
+            consumer.close();
+        } finally {
+            binlogFile.delete();
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testBinlogReaderWaitsForFreeSlot() throws Exception {
+        final MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        ReplicationEventConsumer consumer = stream.createConsumer(1);
+        final ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        for (int i = 0; i < 3; i++) {
+            writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, i));
+        }
+        Thread reader = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        reader.start();
+        int numberOfEvents = 0;
+        while (numberOfEvents < 3) {
+            numberOfEvents += consumer.poll(10, 10, TimeUnit.MILLISECONDS).size();
+        }
+        reader.join();
+        consumer.close();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class CheckpointTrackerTest {
+
+    @Test
+    public void testFileCheckpointStore() throws Exception {
+        File file = File.createTempFile("rook-checkpoint", ".tmp");
+        assertTrue(file.delete());
+        try {
+            FileCheckpointStore checkpointStore = new FileCheckpointStore(file);
+            assertNull(checkpointStore.load());
+            checkpointStore.save(new BinlogPosition("mysql-bin.000001", 4));
+            checkpointStore.save(new BinlogPosition("mysql-bin.000002", 120));
+            assertEquals(new FileCheckpointStore(file).load(), new BinlogPosition("mysql-bin.000002", 120));
+            checkpointStore.setBatchSize(2);
+            checkpointStore.save(new BinlogPosition("mysql-bin.000002", 240));
+            assertEquals(checkpointStore.load(), new BinlogPosition("mysql-bin.000002", 240));
+            assertEquals(new FileCheckpointStore(file).load(), new BinlogPosition("mysql-bin.000002", 120));
+            checkpointStore.flush();
+            assertEquals(new FileCheckpointStore(file).load(), new BinlogPosition("mysql-bin.000002", 240));
+            BinlogPosition gtidPosition = new BinlogPosition("mysql-bin.000003", 4,
+                "3e11fa47-71ca-11e1-9e33-c80aa9429562:1-5");
+            checkpointStore.save(gtidPosition);
+            checkpointStore.flush();
+            assertEquals(new FileCheckpointStore(file).load(), gtidPosition);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFileCheckpointStoreFallsBackToPreviousCheckpoint() throws Exception {
+        File file = File.createTempFile("rook-checkpoint", ".tmp");
+        File backupFile = new File(file.getPath() + ".bak");
+        try {
+            new FileCheckpointStore(file).save(new BinlogPosition("mysql-bin.000001", 4));
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+            assertFalse(backupFile.exists());
+            // crash after previous checkpoint was moved aside but before the new one took its place
+            assertTrue(file.renameTo(backupFile));
+            assertEquals(new FileCheckpointStore(file).load(), new BinlogPosition("mysql-bin.000001", 4));
+        } finally {
+            file.delete();
+            backupFile.delete();
+        }
+    }
+
+    @Test
+    public void testPositionIsSavedOnlyWhenEverythingBeforeItIsDelivered() throws Exception {
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        CheckpointTracker checkpointTracker = new CheckpointTracker(checkpointStore);
+        checkpointTracker.mark(new BinlogPosition("mysql-bin.000001", 100));
+        assertEquals(checkpointStore.position, new BinlogPosition("mysql-bin.000001", 100));
+        ReplicationEvent first = new ReplicationEvent() { };
+        ReplicationEvent second = new ReplicationEvent() { };
+        checkpointTracker.register(first, new BinlogPosition("mysql-bin.000001", 200), 2);
+        checkpointTracker.register(second, new BinlogPosition("mysql-bin.000001", 300), 1);
+        checkpointTracker.mark(new BinlogPosition("mysql-bin.000001", 400));
+        checkpointTracker.delivered(second);
+        checkpointTracker.delivered(first);
+        assertEquals(checkpointStore.position, new BinlogPosition("mysql-bin.000001", 100));
+        checkpointTracker.delivered(first);
+        assertEquals(checkpointStore.position, new BinlogPosition("mysql-bin.000001", 400));
+    }
+
+    @Test(timeOut = 5000)
+    public void testDeliveryDoesNotWaitForSlowStore() throws Exception {
+        final CountDownLatch saveStarted = new CountDownLatch(1);
+        final CountDownLatch saveReleased = new CountDownLatch(1);
+        final List<BinlogPosition> savedPositions = Collections.synchronizedList(new ArrayList<BinlogPosition>());
+        final CheckpointTracker checkpointTracker = new CheckpointTracker(new CheckpointStore() {
+
+            @Override
+            public BinlogPosition load() throws IOException {
+                return null;
+            }
+
+            @Override
+            public void save(BinlogPosition position) throws IOException {
+                saveStarted.countDown();
+                try {
+                    saveReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                savedPositions.add(position);
+            }
+
+            @Override
+            public void flush() throws IOException {
+            }
+        });
+        final ReplicationEvent first = new ReplicationEvent() { };
+        ReplicationEvent second = new ReplicationEvent() { };
+        checkpointTracker.register(first, new BinlogPosition("mysql-bin.000001", 100), 1);
+        checkpointTracker.register(second, new BinlogPosition("mysql-bin.000001", 200), 1);
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                checkpointTracker.delivered(first);
+            }
+        });
+        thread.start();
+        saveStarted.await();
+        // returns right away (position is handed over to the thread which is busy saving)
+        checkpointTracker.delivered(second);
+        assertTrue(savedPositions.isEmpty());
+        saveReleased.countDown();
+        thread.join();
+        assertEquals(savedPositions, Arrays.asList(new BinlogPosition("mysql-bin.000001", 100),
+            new BinlogPosition("mysql-bin.000001", 200)));
+    }
+
+    @Test
+    public void testDeliveryIsReportedByAsyncDispatchers() throws Exception {
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        CheckpointTracker checkpointTracker = new CheckpointTracker(checkpointStore);
+        DispatchingReplicationEventListener[] dispatchers = {
+            new AsyncReplicationEventListener(new NoopReplicationEventListener()),
+            new PartitionedReplicationEventListener(new NoopReplicationEventListener(), 2),
+            new WritesetReplicationEventListener(new NoopReplicationEventListener(), 2, new TablePartitioner())
+        };
+        for (DispatchingReplicationEventListener dispatcher : dispatchers) {
+            dispatcher.setDeliveryCallback(checkpointTracker);
+        }
+        for (int i = 1; i <= 100; i++) {
+            ReplicationEvent event = new ReplicationEvent() { };
+            checkpointTracker.register(event, new BinlogPosition("mysql-bin.000001", i), dispatchers.length);
+            for (DispatchingReplicationEventListener dispatcher : dispatchers) {
+                dispatcher.onEvent(event);
+            }
+        }
+        for (DispatchingReplicationEventListener dispatcher : dispatchers) {
+            dispatcher.shutdown();
+            assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+        }
+        assertEquals(checkpointStore.position, new BinlogPosition("mysql-bin.000001", 100));
+    }
+
+    private static final class InMemoryCheckpointStore implements CheckpointStore {
+
+        private volatile BinlogPosition position;
+
+        @Override
+        public BinlogPosition load() throws IOException {
+            return position;
+        }
+
+        @Override
+        public void save(BinlogPosition position) throws IOException {
+            this.position = position;
+        }
+
+        @Override
+        public void flush() throws IOException {
+        }
+    }
+
+    private static final class NoopReplicationEventListener implements ReplicationEventListener {
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+        }
+    }
+}
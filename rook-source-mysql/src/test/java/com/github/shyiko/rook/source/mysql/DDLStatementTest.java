@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class DDLStatementTest {
+
+    @Test
+    public void testDropTable() throws Exception {
+        DDLStatement statement = DDLStatement.parse(
+            "DROP TABLE IF EXISTS `entity`, rook_it.`other``entity` /* generated by server */", "rook");
+        assertEquals(statement.getType(), DDLStatement.Type.DROP_TABLE);
+        assertEquals(statement.getTables().size(), 2);
+        assertEquals(statement.getTables().get(0), new String[]{"rook", "entity"});
+        assertEquals(statement.getTables().get(1), new String[]{"rook_it", "other`entity"});
+    }
+
+    @Test
+    public void testCreateAlterRenameTable() throws Exception {
+        DDLStatement create = DDLStatement.parse("create table if not exists rook.entity (id int primary key)", null);
+        assertEquals(create.getType(), DDLStatement.Type.CREATE_TABLE);
+        assertEquals(create.getTables().get(0), new String[]{"rook", "entity"});
+        DDLStatement alter = DDLStatement.parse("ALTER ONLINE TABLE `entity` ADD COLUMN name VARCHAR(32)", "rook");
+        assertEquals(alter.getType(), DDLStatement.Type.ALTER_TABLE);
+        assertEquals(alter.getTables().get(0), new String[]{"rook", "entity"});
+        DDLStatement rename = DDLStatement.parse("RENAME TABLE a TO b, rook_it.c TO d", "rook");
+        assertEquals(rename.getType(), DDLStatement.Type.RENAME_TABLE);
+        assertEquals(rename.getTables().size(), 4);
+        assertEquals(rename.getTables().get(0), new String[]{"rook", "a"});
+        assertEquals(rename.getTables().get(1), new String[]{"rook", "b"});
+        assertEquals(rename.getTables().get(2), new String[]{"rook_it", "c"});
+        assertEquals(rename.getTables().get(3), new String[]{"rook", "d"});
+    }
+
+    @Test
+    public void testDropDatabase() throws Exception {
+        DDLStatement statement = DDLStatement.parse("/* comment */ drop schema `rook`", null);
+        assertEquals(statement.getType(), DDLStatement.Type.DROP_DATABASE);
+        assertEquals(statement.getDatabase(), "rook");
+    }
+
+    @Test
+    public void testUnrecognizedStatements() throws Exception {
+        assertNull(DDLStatement.parse("BEGIN", "rook"));
+        assertNull(DDLStatement.parse("DROP INDEX idx ON entity", "rook"));
+        assertNull(DDLStatement.parse("INSERT INTO entity VALUES (1)", "rook"));
+        assertNull(DDLStatement.parse("DROPTABLE entity", "rook"));
+        assertNull(DDLStatement.parse("CREATE INDEX idx ON entity (id)", "rook"));
+    }
+}
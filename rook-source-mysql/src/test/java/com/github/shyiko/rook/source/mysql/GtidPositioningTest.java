@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.gtid;
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.rotate;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class GtidPositioningTest {
+
+    private static final String UUID = "3e11fa47-71ca-11e1-9e33-c80aa9429562";
+
+    @Test
+    public void testExecutedGtidSetIsTracked() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.ROTATE, rotate("mysql-bin.000001", 4));
+        writeTransaction(binlog, 1);
+        // transaction interrupted by reconnect (and then re-sent from the start)
+        writeEvent(binlog, EventType.GTID, gtid(UUID, 2));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 2));
+        writeTransaction(binlog, 2);
+        writeEvent(binlog, EventType.GTID, gtid(UUID, 3));
+        writeEvent(binlog, EventType.QUERY, query("DROP TABLE rook.entity"));
+        MySQLReplicationStream stream = new MySQLReplicationStream("rook", "");
+        stream.setGtidSet("");
+        InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+        stream.setCheckpointStore(checkpointStore);
+        final List<GtidTXReplicationEvent> events = new ArrayList<GtidTXReplicationEvent>();
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                events.add((GtidTXReplicationEvent) event);
+            }
+        });
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertEquals(events.size(), 2);
+        assertEquals(events.get(0).getGtid(), UUID + ":1");
+        assertEquals(events.get(0).getGtidSet(), UUID + ":1");
+        assertEquals(events.get(1).getGtid(), UUID + ":2");
+        assertEquals(events.get(1).getGtidSet(), UUID + ":1-2");
+        assertEquals(events.get(1).getEvents().size(), 1);
+        assertEquals(stream.getGtidSet(), UUID + ":1-3");
+        assertEquals(checkpointStore.getPosition(),
+            new BinlogPosition("mysql-bin.000001", binlog.size(), UUID + ":1-3"));
+    }
+
+    @Test
+    public void testEventsOfResentTransactionAreNotDeliveredTwice() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.ROTATE, rotate("mysql-bin.000001", 4));
+        // transaction interrupted by reconnect (and then re-sent from the start)
+        writeEvent(binlog, EventType.GTID, gtid(UUID, 1));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 2));
+        writeEvent(binlog, EventType.GTID, gtid(UUID, 1));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        for (int i = 1; i < 4; i++) {
+            writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, i));
+        }
+        writeEvent(binlog, EventType.XID, xid(1));
+        writeEvent(binlog, EventType.GTID, gtid(UUID, 2));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 4));
+        writeEvent(binlog, EventType.XID, xid(2));
+        MySQLReplicationStream stream = new MySQLReplicationStream("rook", "");
+        stream.setGtidSet("");
+        stream.setGroupEventsByTX(false);
+        final List<Serializable> values = new ArrayList<Serializable>();
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                values.add(((InsertRowsReplicationEvent) event).getRows().get(0)[0]);
+            }
+        });
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertEquals(values, Arrays.<Serializable>asList(1, 2, 3, 4));
+        assertEquals(stream.getGtidSet(), UUID + ":1-2");
+    }
+
+    @Test
+    public void testFailoverResumesFromExecutedGtidSet() throws Exception {
+        ByteArrayOutputStream firstBinlog = new ByteArrayOutputStream();
+        firstBinlog.write(new byte[]{(byte) 0xFE, 'b', 'i', 'n'});
+        writeTransaction(firstBinlog, 1);
+        writeTransaction(firstBinlog, 2);
+        // same transactions (at different offsets of a differently named file) plus the one not yet replicated
+        ByteArrayOutputStream secondBinlog = new ByteArrayOutputStream();
+        secondBinlog.write(new byte[]{(byte) 0xFE, 'b', 'i', 'n'});
+        writeEvent(secondBinlog, EventType.QUERY, query("FLUSH LOGS"));
+        for (int i = 1; i < 4; i++) {
+            writeTransaction(secondBinlog, i);
+        }
+        StandInMySQLServer master = new StandInMySQLServer("rook", "mysql-bin.000001", firstBinlog.toByteArray());
+        StandInMySQLServer replica = new StandInMySQLServer("rook", "mysql-bin.000007", secondBinlog.toByteArray());
+        master.start();
+        replica.start();
+        BinlogEventLoopGroup eventLoopGroup = new BinlogEventLoopGroup(1, 1);
+        try {
+            MySQLReplicationStream stream = new MySQLReplicationStream("127.0.0.1", master.getPort(), "rook", "");
+            stream.setEventLoopGroup(eventLoopGroup);
+            stream.setGtidSet("");
+            InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+            stream.setCheckpointStore(checkpointStore);
+            final BlockingQueue<GtidTXReplicationEvent> events = new LinkedBlockingQueue<GtidTXReplicationEvent>();
+            stream.registerListener(new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    events.add((GtidTXReplicationEvent) event);
+                }
+            });
+            stream.connect();
+            assertEquals(events.poll(5, TimeUnit.SECONDS).getGtid(), UUID + ":1");
+            assertEquals(events.poll(5, TimeUnit.SECONDS).getGtid(), UUID + ":2");
+            assertEquals(stream.getGtidSet(), UUID + ":1-2");
+            // listener gets the event a moment before delivery is reported to the checkpoint tracker
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (!(UUID + ":1-2").equals(checkpointStore.getPosition().getGtidSet()) &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            master.stop();
+            stream.failover("127.0.0.1", replica.getPort());
+            GtidTXReplicationEvent event = events.poll(5, TimeUnit.SECONDS);
+            assertEquals(event.getGtid(), UUID + ":3");
+            assertEquals(event.getGtidSet(), UUID + ":1-3");
+            assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+            stream.disconnect();
+            assertEquals(master.getRequestedGtidSets(), Collections.singletonList(""));
+            assertEquals(replica.getRequestedGtidSets(), Arrays.asList(UUID + ":1-2"));
+            assertEquals(checkpointStore.getPosition(),
+                new BinlogPosition("mysql-bin.000007", secondBinlog.size(), UUID + ":1-3"));
+        } finally {
+            eventLoopGroup.shutdown();
+            replica.stop();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testGtidPositioningRequiresEventLoopGroup() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("rook", "");
+        stream.setGtidSet("");
+        stream.connect();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testFailoverRequiresGtidPositioning() throws Exception {
+        new MySQLReplicationStream("rook", "").failover("127.0.0.1", 3306);
+    }
+
+    private void writeTransaction(ByteArrayOutputStream binlog, long transactionId) {
+        writeEvent(binlog, EventType.GTID, gtid(UUID, transactionId));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, (int) transactionId));
+        writeEvent(binlog, EventType.XID, xid(transactionId));
+    }
+}
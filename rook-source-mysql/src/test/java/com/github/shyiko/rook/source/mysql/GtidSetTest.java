@@ -0,0 +1,64 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class GtidSetTest {
+
+    private static final String FIRST_UUID = "3e11fa47-71ca-11e1-9e33-c80aa9429562";
+    private static final String SECOND_UUID = "4a5c2a8e-71ca-11e1-9e33-c80aa9429562";
+
+    @Test
+    public void testParsing() throws Exception {
+        assertEquals(new GtidSet("").toString(), "");
+        GtidSet gtidSet = new GtidSet(SECOND_UUID + ":1-3:5,\n" + FIRST_UUID.toUpperCase() + ":7");
+        assertEquals(gtidSet.toString(), FIRST_UUID + ":7," + SECOND_UUID + ":1-3:5");
+        assertTrue(gtidSet.contains(SECOND_UUID, 3));
+        assertFalse(gtidSet.contains(SECOND_UUID, 4));
+        assertTrue(gtidSet.contains(FIRST_UUID, 7));
+        assertFalse(gtidSet.contains(FIRST_UUID, 1));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMalformedSetIsRejected() throws Exception {
+        new GtidSet(FIRST_UUID + ":1-a");
+    }
+
+    @Test
+    public void testAdjacentTransactionsAreMerged() throws Exception {
+        GtidSet gtidSet = new GtidSet("");
+        gtidSet.add(FIRST_UUID + ":1");
+        gtidSet.add(FIRST_UUID + ":2");
+        gtidSet.add(FIRST_UUID + ":5");
+        assertEquals(gtidSet.toString(), FIRST_UUID + ":1-2:5");
+        gtidSet.add(FIRST_UUID + ":4");
+        gtidSet.add(FIRST_UUID + ":8");
+        assertEquals(gtidSet.toString(), FIRST_UUID + ":1-2:4-5:8");
+        gtidSet.add(FIRST_UUID + ":3");
+        assertEquals(gtidSet.toString(), FIRST_UUID + ":1-5:8");
+        gtidSet.add(FIRST_UUID + ":2");
+        assertEquals(gtidSet.toString(), FIRST_UUID + ":1-5:8");
+        assertEquals(gtidSet.getIntervals().get(FIRST_UUID).size(), 2);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+/**
+ * {@link CheckpointStore} keeping position in memory (tests only).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+class InMemoryCheckpointStore implements CheckpointStore {
+
+    private volatile BinlogPosition position;
+    private volatile int numberOfFlushes;
+
+    @Override
+    public BinlogPosition load() {
+        return position;
+    }
+
+    @Override
+    public void save(BinlogPosition position) {
+        this.position = position;
+    }
+
+    @Override
+    public void flush() {
+        numberOfFlushes++;
+    }
+
+    public BinlogPosition getPosition() {
+        return position;
+    }
+
+    public int getNumberOfFlushes() {
+        return numberOfFlushes;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class LongHashMapTest {
+
+    @Test
+    public void testBehavesLikeHashMap() throws Exception {
+        LongHashMap<Long> map = new LongHashMap<Long>(4);
+        Map<Long, Long> reference = new HashMap<Long, Long>();
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            // small key space, so that there are plenty of collisions, overwrites and removals of existing keys
+            long key = random.nextInt(512) * (random.nextBoolean() ? 1L : 1L << 40);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(map.put(key, (long) i), reference.put(key, (long) i));
+                    break;
+                case 1:
+                    assertEquals(map.remove(key), reference.remove(key));
+                    break;
+                default:
+                    assertEquals(map.get(key), reference.get(key));
+            }
+            assertEquals(map.size(), reference.size());
+        }
+        for (Map.Entry<Long, Long> entry : reference.entrySet()) {
+            assertEquals(map.get(entry.getKey()), entry.getValue());
+        }
+        map.clear();
+        assertEquals(map.size(), 0);
+        assertEquals(map.get(reference.keySet().iterator().next()), null);
+    }
+}
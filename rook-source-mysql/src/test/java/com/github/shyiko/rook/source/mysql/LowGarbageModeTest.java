@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class LowGarbageModeTest {
+
+    @Test
+    public void testEventsAreReusedAcrossTransactions() throws Exception {
+        List<InsertRowsReplicationEvent> events = new ArrayList<InsertRowsReplicationEvent>();
+        List<InsertRowsReplicationEvent> copies = new ArrayList<InsertRowsReplicationEvent>();
+        replay(true, events, copies);
+        assertEquals(events.size(), 2);
+        assertSame(events.get(0), events.get(1));
+        assertSame(events.get(0).getRows(), events.get(1).getRows());
+        assertRows(copies.get(0), 1, 2);
+        assertRows(copies.get(1), 3);
+    }
+
+    @Test
+    public void testEventsAreNotReusedByDefault() throws Exception {
+        List<InsertRowsReplicationEvent> events = new ArrayList<InsertRowsReplicationEvent>();
+        List<InsertRowsReplicationEvent> copies = new ArrayList<InsertRowsReplicationEvent>();
+        replay(false, events, copies);
+        assertEquals(events.size(), 2);
+        assertNotSame(events.get(0), events.get(1));
+        assertRows(events.get(0), 1, 2);
+        assertRows(events.get(1), 3);
+    }
+
+    private void replay(boolean lowGarbageMode, final List<InsertRowsReplicationEvent> events,
+            final List<InsertRowsReplicationEvent> copies) throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setLowGarbageMode(lowGarbageMode);
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                InsertRowsReplicationEvent insertEvent =
+                    (InsertRowsReplicationEvent) ((TXReplicationEvent) event).getEvents().iterator().next();
+                events.add(insertEvent);
+                copies.add(insertEvent.copy());
+            }
+        });
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2));
+        writeEvent(binlog, EventType.XID, xid(1));
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 3));
+        writeEvent(binlog, EventType.XID, xid(2));
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+    }
+
+    private static void assertRows(InsertRowsReplicationEvent event, int... values) {
+        List<Serializable[]> rows = event.getRows();
+        assertEquals(rows.size(), values.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(rows.get(i), new Serializable[]{values[i]});
+        }
+    }
+}
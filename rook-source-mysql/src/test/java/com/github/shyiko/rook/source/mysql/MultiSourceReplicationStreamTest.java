@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.rotate;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class MultiSourceReplicationStreamTest {
+
+    @Test
+    public void testEventsOfAllSourcesAreDeliveredToSharedListeners() throws Exception {
+        MultiSourceReplicationStream stream = new MultiSourceReplicationStream(2, 16);
+        MySQLReplicationStream firstShard = new MySQLReplicationStream("username", "password");
+        InMemoryCheckpointStore firstCheckpointStore = new InMemoryCheckpointStore();
+        firstShard.setCheckpointStore(firstCheckpointStore);
+        stream.addSource("shard0", firstShard);
+        MySQLReplicationStream secondShard = new MySQLReplicationStream("username", "password");
+        InMemoryCheckpointStore secondCheckpointStore = new InMemoryCheckpointStore();
+        secondShard.setCheckpointStore(secondCheckpointStore);
+        stream.addSource("shard1", secondShard);
+        final CountDownLatch latch = new CountDownLatch(5);
+        final List<String> deliveries = Collections.synchronizedList(new ArrayList<String>());
+        stream.registerListener(new SourceAwareReplicationEventListener() {
+
+            @Override
+            public void onEvent(String source, ReplicationEvent event) {
+                deliveries.add(source + ":" + ((TXReplicationEvent) event).getEvents().size());
+                latch.countDown();
+            }
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                throw new UnsupportedOperationException();
+            }
+        });
+        final CountDownLatch plainLatch = new CountDownLatch(5);
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                plainLatch.countDown();
+            }
+        });
+        ByteArrayOutputStream firstBinlog = new ByteArrayOutputStream();
+        writeEvent(firstBinlog, EventType.ROTATE, rotate("mysql-bin.000001", 4));
+        for (int i = 0; i < 3; i++) {
+            writeTransaction(firstBinlog, i + 1);
+        }
+        ByteArrayOutputStream secondBinlog = new ByteArrayOutputStream();
+        writeEvent(secondBinlog, EventType.ROTATE, rotate("mysql-bin.000007", 4));
+        for (int i = 0; i < 2; i++) {
+            writeTransaction(secondBinlog, i + 1);
+        }
+        firstShard.createEventListener().replay(new ByteArrayInputStream(firstBinlog.toByteArray()));
+        secondShard.createEventListener().replay(new ByteArrayInputStream(secondBinlog.toByteArray()));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(plainLatch.await(5, TimeUnit.SECONDS));
+        List<String> firstShardDeliveries = new ArrayList<String>();
+        List<String> secondShardDeliveries = new ArrayList<String>();
+        synchronized (deliveries) {
+            for (String delivery : deliveries) {
+                (delivery.startsWith("shard0") ? firstShardDeliveries : secondShardDeliveries).add(delivery);
+            }
+        }
+        assertEquals(firstShardDeliveries, Arrays.asList("shard0:1", "shard0:2", "shard0:3"));
+        assertEquals(secondShardDeliveries, Arrays.asList("shard1:1", "shard1:2"));
+        stream.disconnect(); // waits for dispatch threads to finish
+        assertEquals(firstCheckpointStore.getPosition(), new BinlogPosition("mysql-bin.000001", firstBinlog.size()));
+        assertEquals(secondCheckpointStore.getPosition(), new BinlogPosition("mysql-bin.000007", secondBinlog.size()));
+    }
+
+    @Test
+    public void testCheckpointIsFlushedOnceEverythingReceivedIsDelivered() throws Exception {
+        MultiSourceReplicationStream stream = new MultiSourceReplicationStream(1, 16);
+        MySQLReplicationStream shard = new MySQLReplicationStream("username", "password");
+        final BinlogPosition[] flushedPosition = new BinlogPosition[1];
+        shard.setCheckpointStore(new InMemoryCheckpointStore() {
+
+            @Override
+            public void flush() {
+                flushedPosition[0] = getPosition();
+            }
+        });
+        stream.addSource("shard0", shard);
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.ROTATE, rotate("mysql-bin.000001", 4));
+        for (int i = 0; i < 3; i++) {
+            writeTransaction(binlog, 1);
+        }
+        shard.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        stream.disconnect();
+        assertEquals(flushedPosition[0], new BinlogPosition("mysql-bin.000001", binlog.size()));
+    }
+
+    /**
+     * @param numberOfRows number of rows inserted within transaction (one WRITE_ROWS event per row)
+     */
+    private void writeTransaction(ByteArrayOutputStream binlog, int numberOfRows) throws Exception {
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        for (int i = 0; i < numberOfRows; i++) {
+            writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, i));
+        }
+        writeEvent(binlog, EventType.XID, xid(numberOfRows));
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.network.AuthenticationException;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class NioBinaryLogClientTest {
+
+    private static final String BINLOG_FILENAME = "mysql-bin.000001";
+
+    private byte[] binlog;
+    private long positionAfterFirstTX;
+    private StandInMySQLServer server;
+    private BinlogEventLoopGroup eventLoopGroup;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        binlog.write(new byte[]{(byte) 0xFE, 'b', 'i', 'n'});
+        for (int i = 0; i < 3; i++) {
+            writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+            writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+            writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, i));
+            writeEvent(binlog, EventType.XID, xid(i));
+            if (i == 0) {
+                positionAfterFirstTX = binlog.size();
+            }
+        }
+        this.binlog = binlog.toByteArray();
+        server = new StandInMySQLServer("rook", BINLOG_FILENAME, this.binlog);
+        server.start();
+        eventLoopGroup = new BinlogEventLoopGroup(1, 2);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        eventLoopGroup.shutdown();
+        server.stop();
+    }
+
+    @Test
+    public void testConnectionsAreMultiplexedOverEventLoopGroup() throws Exception {
+        int numberOfStreams = 100;
+        final CountDownLatch latch = new CountDownLatch(numberOfStreams * 3 - numberOfStreams / 2);
+        List<MySQLReplicationStream> streams = new ArrayList<MySQLReplicationStream>();
+        List<InMemoryCheckpointStore> checkpointStores = new ArrayList<InMemoryCheckpointStore>();
+        List<AtomicInteger> counters = new ArrayList<AtomicInteger>();
+        for (int i = 0; i < numberOfStreams; i++) {
+            MySQLReplicationStream stream = new MySQLReplicationStream("127.0.0.1", server.getPort(), "rook", "");
+            stream.setEventLoopGroup(eventLoopGroup);
+            InMemoryCheckpointStore checkpointStore = new InMemoryCheckpointStore();
+            if (i % 2 == 1) {
+                checkpointStore.save(new BinlogPosition(BINLOG_FILENAME, positionAfterFirstTX));
+            }
+            stream.setCheckpointStore(checkpointStore);
+            final AtomicInteger counter = new AtomicInteger();
+            stream.registerListener(new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    counter.incrementAndGet();
+                    latch.countDown();
+                }
+            });
+            stream.connect(TimeUnit.SECONDS.toMillis(5));
+            streams.add(stream);
+            checkpointStores.add(checkpointStore);
+            counters.add(counter);
+        }
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse(thread.getName().startsWith("blc-"), "Connection was given a thread of its own");
+        }
+        for (int i = 0; i < numberOfStreams; i++) {
+            MySQLReplicationStream stream = streams.get(i);
+            assertTrue(stream.isConnected());
+            stream.disconnect();
+            assertFalse(stream.isConnected());
+            assertEquals(counters.get(i).get(), i % 2 == 1 ? 2 : 3);
+            assertEquals(checkpointStores.get(i).getPosition(), new BinlogPosition(BINLOG_FILENAME, binlog.length));
+        }
+        assertEquals(server.getRequestedPositions().size(), numberOfStreams);
+    }
+
+    @Test
+    public void testReadingIsResumedOnceBacklogIsDecoded() throws Exception {
+        eventLoopGroup.setMaxPendingBytes(16);
+        final CountDownLatch backlogLatch = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(13); // fake ROTATE + 12 events
+        NioBinaryLogClient client = new NioBinaryLogClient(eventLoopGroup, "127.0.0.1", server.getPort(), "rook", "");
+        client.setEventListener(new BinaryLogClient.EventListener() {
+
+            @Override
+            public void onEvent(Event event) {
+                await(backlogLatch);
+                latch.countDown();
+            }
+        });
+        client.connect();
+        // listener holds up decoding of the first event while the rest of the binlog keeps coming
+        for (int i = 0; i < 500 && client.getNumberOfReadSuspensions() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(client.getNumberOfReadSuspensions() > 0);
+        backlogLatch.countDown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        client.disconnect();
+    }
+
+    @Test
+    public void testBlockedListenerDoesNotHoldUpOtherConnections() throws Exception {
+        eventLoopGroup.shutdown();
+        eventLoopGroup = new BinlogEventLoopGroup(1, 1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        NioBinaryLogClient blockedClient =
+            new NioBinaryLogClient(eventLoopGroup, "127.0.0.1", server.getPort(), "rook", "");
+        blockedClient.setEventListener(new BinaryLogClient.EventListener() {
+
+            @Override
+            public void onEvent(Event event) {
+                await(releaseLatch);
+            }
+        });
+        blockedClient.connect();
+        final CountDownLatch latch = new CountDownLatch(13); // fake ROTATE + 12 events
+        NioBinaryLogClient client = new NioBinaryLogClient(eventLoopGroup, "127.0.0.1", server.getPort(), "rook", "");
+        client.setEventListener(new BinaryLogClient.EventListener() {
+
+            @Override
+            public void onEvent(Event event) {
+                latch.countDown();
+            }
+        });
+        try {
+            client.connect();
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(eventLoopGroup.getNumberOfDecodingThreads(), 2);
+        } finally {
+            releaseLatch.countDown();
+            client.disconnect();
+            blockedClient.disconnect();
+        }
+        for (int i = 0; i < 500 && eventLoopGroup.getNumberOfDecodingThreads() != 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(eventLoopGroup.getNumberOfDecodingThreads(), 1);
+    }
+
+    @Test
+    public void testDecodingPoolDoesNotGrowBeyondMaxSize() throws Exception {
+        eventLoopGroup.shutdown();
+        eventLoopGroup = new BinlogEventLoopGroup(1, 1, 2);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final CountDownLatch latch = new CountDownLatch(2 * 13); // (fake ROTATE + 12 events) x 2
+        List<NioBinaryLogClient> clients = new ArrayList<NioBinaryLogClient>();
+        try {
+            // each of the clients blocks a decoding thread (second one is served by the extra thread)
+            for (int i = 0; i < 2; i++) {
+                NioBinaryLogClient client =
+                    new NioBinaryLogClient(eventLoopGroup, "127.0.0.1", server.getPort(), "rook", "");
+                client.setEventListener(new BinaryLogClient.EventListener() {
+
+                    @Override
+                    public void onEvent(Event event) {
+                        await(releaseLatch);
+                        latch.countDown();
+                    }
+                });
+                clients.add(client);
+                client.connect();
+            }
+            Thread.sleep(5 * BinlogEventLoopGroup.BLOCKED_DECODING_THRESHOLD);
+            // second blocked thread is not compensated
+            assertEquals(eventLoopGroup.getNumberOfDecodingThreads(), 2);
+            releaseLatch.countDown();
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } finally {
+            releaseLatch.countDown();
+            for (NioBinaryLogClient client : clients) {
+                client.disconnect();
+            }
+        }
+        for (int i = 0; i < 500 && eventLoopGroup.getNumberOfDecodingThreads() != 1; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(eventLoopGroup.getNumberOfDecodingThreads(), 1);
+    }
+
+    @Test(expectedExceptions = AuthenticationException.class)
+    public void testAuthenticationFailureIsReportedByConnect() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("127.0.0.1", server.getPort(), "intruder", "");
+        stream.setEventLoopGroup(eventLoopGroup);
+        stream.connect();
+    }
+
+    @Test
+    public void testReplicationIsResumedFromLastKnownPositionAfterReconnect() throws Exception {
+        NioBinaryLogClient client = new NioBinaryLogClient(eventLoopGroup, "127.0.0.1", server.getPort(), "rook", "");
+        client.setReconnectInterval(10, TimeUnit.MILLISECONDS);
+        final CountDownLatch firstSessionLatch = new CountDownLatch(13);
+        final CountDownLatch secondSessionLatch = new CountDownLatch(14);
+        client.setEventListener(new BinaryLogClient.EventListener() {
+
+            @Override
+            public void onEvent(Event event) {
+                firstSessionLatch.countDown();
+                secondSessionLatch.countDown();
+            }
+        });
+        client.connect();
+        assertTrue(firstSessionLatch.await(5, TimeUnit.SECONDS)); // fake ROTATE + 12 events
+        server.dropConnections();
+        assertTrue(secondSessionLatch.await(5, TimeUnit.SECONDS)); // fake ROTATE
+        assertEquals(server.getRequestedPositions(), Arrays.asList(4L, (long) binlog.length));
+        assertTrue(client.isConnected());
+        client.disconnect();
+        assertFalse(client.isConnected());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBeginReplicationEvent;
+import com.github.shyiko.rook.api.event.TXChunkReplicationEvent;
+import com.github.shyiko.rook.api.event.TXCommitReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class PartitionedReplicationEventListenerTest {
+
+    @Test(timeOut = 10000)
+    public void testOrderIsPreservedWithinTheTable() throws Exception {
+        final Map<String, List<Serializable>> valuesByTable = new HashMap<String, List<Serializable>>();
+        PartitionedReplicationEventListener listener = new PartitionedReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    InsertRowsReplicationEvent rowsEvent = (InsertRowsReplicationEvent) event;
+                    List<Serializable> values;
+                    synchronized (valuesByTable) {
+                        values = valuesByTable.get(rowsEvent.getTable());
+                        if (values == null) {
+                            valuesByTable.put(rowsEvent.getTable(), values = new ArrayList<Serializable>());
+                        }
+                    }
+                    values.add(rowsEvent.getRows().get(0)[0]);
+                }
+            }, 4);
+        for (int i = 0; i < 1000; i++) {
+            listener.onEvent(new InsertRowsReplicationEvent(0, "rook", "table" + (i % 10), new Serializable[]{i}));
+        }
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(valuesByTable.size(), 10);
+        for (List<Serializable> values : valuesByTable.values()) {
+            assertEquals(values.size(), 100);
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue((Integer) values.get(i - 1) < (Integer) values.get(i));
+            }
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testTXBoundaryBarrier() throws Exception {
+        final AtomicInteger lastTX = new AtomicInteger();
+        final List<String> violations = Collections.synchronizedList(new ArrayList<String>());
+        PartitionedReplicationEventListener listener = new PartitionedReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    for (ReplicationEvent txEvent : ((TXReplicationEvent) event).getEvents()) {
+                        int tx = (Integer) ((InsertRowsReplicationEvent) txEvent).getRows().get(0)[0];
+                        if (tx < lastTX.get()) {
+                            violations.add("TX " + tx + " was delivered after TX " + lastTX.get());
+                        }
+                        lastTX.set(tx);
+                    }
+                }
+            }, 4, new TablePartitioner(), true);
+        for (int i = 0; i < 200; i++) {
+            List<ReplicationEvent> events = new ArrayList<ReplicationEvent>();
+            for (int j = 0; j < 3; j++) {
+                events.add(new InsertRowsReplicationEvent(0, "rook", "table" + ((i + j) % 7),
+                    new Serializable[]{i}));
+            }
+            listener.onEvent(new TXReplicationEvent(events));
+        }
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(violations.isEmpty(), violations.toString());
+        assertEquals(lastTX.get(), 199);
+    }
+
+    @Test
+    public void testRowsAreSplitByPrimaryKey() throws Exception {
+        final List<ReplicationEvent> events = Collections.synchronizedList(new ArrayList<ReplicationEvent>());
+        Map<String, int[]> keyColumnsByTable = new HashMap<String, int[]>();
+        keyColumnsByTable.put("rook.entity", new int[]{0});
+        PartitionedReplicationEventListener listener = new PartitionedReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    events.add(event);
+                }
+            }, 2, new PrimaryKeyPartitioner(keyColumnsByTable), false);
+        listener.onEvent(new InsertRowsReplicationEvent(0, "rook", "entity", Arrays.asList(
+            new Serializable[]{1L}, new Serializable[]{2L}, new Serializable[]{3L}, new Serializable[]{4L})));
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(events.size(), 2);
+        int numberOfRows = 0;
+        for (ReplicationEvent event : events) {
+            numberOfRows += ((InsertRowsReplicationEvent) event).getRows().size();
+        }
+        assertEquals(numberOfRows, 4);
+    }
+
+    @Test(timeOut = 10000)
+    public void testPrimaryKeyChangeIsOrderedInRespectToBothImages() throws Exception {
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        PartitionedReplicationEventListener listener = new PartitionedReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    ReplicationEvent rowsEvent = event instanceof TXReplicationEvent ?
+                        ((TXReplicationEvent) event).getEvents().get(0) : event;
+                    if (rowsEvent instanceof UpdateRowsReplicationEvent) {
+                        try {
+                            Thread.sleep(1); // gives following row (with the new key) a chance to overtake
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        log.add("update " + ((UpdateRowsReplicationEvent) rowsEvent).getRows().get(0).getValue()[0]);
+                    } else {
+                        log.add("delete " + ((DeleteRowsReplicationEvent) rowsEvent).getRows().get(0)[0]);
+                    }
+                }
+            }, 4, new PrimaryKeyPartitioner(Collections.singletonMap("rook.entity", new int[]{0})), false);
+        for (long i = 0; i < 100; i++) {
+            ReplicationEvent update = new UpdateRowsReplicationEvent(0, "rook", "entity", new Serializable[]{i},
+                new Serializable[]{i + 1001});
+            listener.onEvent(i % 2 == 0 ? update : new TXReplicationEvent(Arrays.asList(update)));
+            listener.onEvent(new DeleteRowsReplicationEvent(0, "rook", "entity", new Serializable[]{i + 1001}));
+        }
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(log.size(), 200);
+        for (long i = 1001; i < 1101; i++) {
+            assertTrue(log.indexOf("update " + i) < log.indexOf("delete " + i), log.toString());
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testChunkMarkersDoNotOvertakeChunksWhenBarrierIsOn() throws Exception {
+        final AtomicInteger numberOfRows = new AtomicInteger();
+        final List<Integer> numberOfRowsOnCommit = Collections.synchronizedList(new ArrayList<Integer>());
+        PartitionedReplicationEventListener listener = new PartitionedReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    if (event instanceof TXChunkReplicationEvent) {
+                        for (ReplicationEvent chunkEvent : ((TXChunkReplicationEvent) event).getEvents()) {
+                            numberOfRows.addAndGet(((InsertRowsReplicationEvent) chunkEvent).getRows().size());
+                        }
+                    } else
+                    if (event instanceof TXCommitReplicationEvent) {
+                        numberOfRowsOnCommit.add(numberOfRows.get());
+                    }
+                }
+            }, 4, new TablePartitioner(), true);
+        for (int tx = 0; tx < 10; tx++) {
+            listener.onEvent(new TXBeginReplicationEvent());
+            for (int chunk = 0; chunk < 5; chunk++) {
+                List<ReplicationEvent> chunkEvents = new ArrayList<ReplicationEvent>();
+                for (int i = 0; i < 20; i++) {
+                    chunkEvents.add(new InsertRowsReplicationEvent(0, "rook", "table" + i, new Serializable[]{i}));
+                }
+                listener.onEvent(new TXChunkReplicationEvent(chunkEvents));
+            }
+            listener.onEvent(new TXCommitReplicationEvent());
+        }
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(numberOfRowsOnCommit.size(), 10);
+        for (int tx = 0; tx < 10; tx++) {
+            assertEquals((int) numberOfRowsOnCommit.get(tx), (tx + 1) * 100);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBatchReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class RecordedReplicationStreamTest {
+
+    private final TableDescriptor entity = new TableDescriptor("rook", "entity");
+    private final List<String> columnNames = Arrays.asList("id", "name");
+
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = File.createTempFile("rook-recording", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testCodecPreservesEventsAndValues() throws Exception {
+        java.sql.Timestamp timestamp = new java.sql.Timestamp(1400000000123L);
+        timestamp.setNanos(123456789);
+        BitSet bitSet = new BitSet();
+        bitSet.set(1);
+        bitSet.set(70);
+        Serializable[] row = {null, 1, -2L, 3.5f, 4.25d, "рук", new byte[]{1, 2},
+            new BigDecimal("-12345678901234567890.12345"), bitSet, new java.util.Date(1400000000000L),
+            new java.sql.Date(1400000000000L), new java.sql.Time(-1L), timestamp, (short) -3, (byte) 4,
+            Long.MIN_VALUE, Integer.MAX_VALUE};
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ReplicationEventCodec.Encoder encoder = new ReplicationEventCodec.Encoder(buffer);
+        encoder.encode(new InsertRowsReplicationEvent(1, entity, null, Collections.singletonList(row)), 1000);
+        encoder.encode(new GtidTXReplicationEvent(Arrays.<ReplicationEvent>asList(
+            new UpdateRowsReplicationEvent(2, entity, columnNames,
+                Collections.<Map.Entry<Serializable[], Serializable[]>>singletonList(
+                    new AbstractMap.SimpleEntry<Serializable[], Serializable[]>(new Serializable[]{1, "a"},
+                        new Serializable[]{1, "b"}))),
+            new DeleteRowsReplicationEvent(2, new TableDescriptor("rook", "another_entity"), columnNames,
+                Collections.singletonList(new Serializable[]{2, "c"}))
+        ), "3E11FA47-71CA-11E1-9E33-C80AA9429562:7", "3E11FA47-71CA-11E1-9E33-C80AA9429562:1-7"), 999);
+        encoder.encode(new TXReplicationEvent(Collections.<ReplicationEvent>singletonList(
+            new InsertRowsReplicationEvent(3, entity, columnNames,
+                Collections.singletonList(new Serializable[]{3, "d"})))), 2000);
+        encoder.flush();
+        ReplicationEventCodec.Decoder decoder =
+            new ReplicationEventCodec.Decoder(new ByteArrayInputStream(buffer.toByteArray()));
+        InsertRowsReplicationEvent insert = (InsertRowsReplicationEvent) decoder.decode();
+        assertEquals(decoder.getTimestamp(), 1000);
+        assertEquals(insert.getServerId(), 1);
+        assertEquals(insert.getTableDescriptor(), entity);
+        assertNull(insert.getColumnNames());
+        assertRowEquals(insert.getRows().get(0), row);
+        GtidTXReplicationEvent gtidTX = (GtidTXReplicationEvent) decoder.decode();
+        assertEquals(decoder.getTimestamp(), 999);
+        assertEquals(gtidTX.getGtid(), "3E11FA47-71CA-11E1-9E33-C80AA9429562:7");
+        assertEquals(gtidTX.getGtidSet(), "3E11FA47-71CA-11E1-9E33-C80AA9429562:1-7");
+        UpdateRowsReplicationEvent update = (UpdateRowsReplicationEvent) gtidTX.getEvents().get(0);
+        assertEquals(update.getServerId(), 2);
+        assertEquals(update.getRows().get(0).getKey(), new Serializable[]{1, "a"});
+        assertEquals(update.getRows().get(0).getValue(), new Serializable[]{1, "b"});
+        DeleteRowsReplicationEvent delete = (DeleteRowsReplicationEvent) gtidTX.getEvents().get(1);
+        assertEquals(delete.getTable(), "another_entity");
+        assertEquals(delete.getColumnNames(), columnNames);
+        TXReplicationEvent tx = (TXReplicationEvent) decoder.decode();
+        assertEquals(tx.getClass(), TXReplicationEvent.class);
+        InsertRowsReplicationEvent nestedInsert = (InsertRowsReplicationEvent) tx.getEvents().get(0);
+        // column names changed, yet descriptor is still shared
+        assertEquals(nestedInsert.getColumnNames(), columnNames);
+        assertSame(nestedInsert.getTableDescriptor(), insert.getTableDescriptor());
+        assertEquals(decoder.getTimestamp(), 2000);
+        assertNull(decoder.decode());
+    }
+
+    @Test
+    public void testCodecRejectsUnsupportedValuesAndVersions() throws Exception {
+        ReplicationEventCodec.Encoder encoder = new ReplicationEventCodec.Encoder(new ByteArrayOutputStream());
+        try {
+            encoder.encode(new InsertRowsReplicationEvent(1, entity, null,
+                Collections.singletonList(new Serializable[]{new ArrayList<Object>()})), 0);
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            new ReplicationEventCodec.Decoder(new ByteArrayInputStream(new byte[]{'R', 'O', 'O', 'K', 2}));
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("version"));
+        }
+    }
+
+    @Test
+    public void testRecordedEventsAreReplayed() throws Exception {
+        RecordingReplicationEventListener recorder = new RecordingReplicationEventListener(directory);
+        recorder.setMaxSegmentSize(100);
+        List<ReplicationEvent> recordedEvents = new ArrayList<ReplicationEvent>();
+        for (int i = 0; i < 10; i++) {
+            TXReplicationEvent event = transaction(i);
+            recordedEvents.add(event);
+            if (i % 3 == 2) {
+                recorder.onEvent(new TXBatchReplicationEvent(Arrays.asList(transaction(i * 10), event)));
+                recordedEvents.add(recordedEvents.size() - 1, transaction(i * 10));
+            } else {
+                recorder.onEvent(event);
+            }
+        }
+        recorder.close();
+        // recording can be resumed (into a new segment)
+        recorder = new RecordingReplicationEventListener(directory);
+        recorder.onEvent(transaction(100));
+        recordedEvents.add(transaction(100));
+        recorder.close();
+        File[] segments = RecordingReplicationEventListener.listSegments(directory);
+        assertTrue(segments.length > 2);
+        // simulate crash in the middle of the record
+        FileOutputStream outputStream = new FileOutputStream(segments[segments.length - 1], true);
+        outputStream.write(new byte[]{0, ReplicationEventCodec.VERSION});
+        outputStream.close();
+        RecordedReplicationStream stream = new RecordedReplicationStream(directory);
+        final List<ReplicationEvent> replayedEvents = new ArrayList<ReplicationEvent>();
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                replayedEvents.add(event);
+            }
+        });
+        stream.connect();
+        assertFalse(stream.isConnected());
+        assertEquals(replayedEvents.size(), recordedEvents.size());
+        for (int i = 0; i < recordedEvents.size(); i++) {
+            assertEquals(replayedEvents.get(i).toString(), recordedEvents.get(i).toString());
+        }
+    }
+
+    @Test
+    public void testReplaySpeed() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ReplicationEventCodec.Encoder encoder = new ReplicationEventCodec.Encoder(buffer);
+        for (int i = 0; i < 3; i++) {
+            encoder.encode(transaction(i), 1000000 + i * 500);
+        }
+        encoder.flush();
+        FileOutputStream outputStream = new FileOutputStream(new File(directory, "events-000001.rook"));
+        outputStream.write(buffer.toByteArray());
+        outputStream.close();
+        RecordedReplicationStream stream = new RecordedReplicationStream(directory);
+        final List<ReplicationEvent> replayedEvents = new ArrayList<ReplicationEvent>();
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                replayedEvents.add(event);
+            }
+        });
+        stream.setReplaySpeed(10);
+        long start = System.nanoTime();
+        stream.connect();
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 90);
+        assertEquals(replayedEvents.size(), 3);
+    }
+
+    @Test
+    public void testConnectWithTimeoutReturnsOnceReplayIsUnderway() throws Exception {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ReplicationEventCodec.Encoder encoder = new ReplicationEventCodec.Encoder(buffer);
+        for (int i = 0; i < 3; i++) {
+            encoder.encode(transaction(i), 1000000 + i * 60000);
+        }
+        encoder.flush();
+        FileOutputStream outputStream = new FileOutputStream(new File(directory, "events-000001.rook"));
+        outputStream.write(buffer.toByteArray());
+        outputStream.close();
+        RecordedReplicationStream stream = new RecordedReplicationStream(directory);
+        final CountDownLatch firstEventLatch = new CountDownLatch(1);
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                firstEventLatch.countDown();
+            }
+        });
+        stream.setReplaySpeed(1);
+        stream.connect(TimeUnit.SECONDS.toMillis(5));
+        assertTrue(stream.isConnected());
+        assertTrue(firstEventLatch.await(5, TimeUnit.SECONDS));
+        stream.disconnect();
+        assertFalse(stream.isConnected());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testConnectWithTimeoutFailsIfSegmentCannotBeReplayed() throws Exception {
+        FileOutputStream outputStream = new FileOutputStream(new File(directory, "events-000001.rook"));
+        outputStream.write(new byte[]{'N', 'O', 'P', 'E'});
+        outputStream.close();
+        new RecordedReplicationStream(directory).connect(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private static void assertRowEquals(Serializable[] actual, Serializable[] expected) {
+        assertEquals(actual.length, expected.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] instanceof byte[]) {
+                assertTrue(Arrays.equals((byte[]) actual[i], (byte[]) expected[i]));
+            } else {
+                assertEquals(actual[i], expected[i], "Column #" + i);
+                assertEquals(actual[i] == null ? null : actual[i].getClass(),
+                    expected[i] == null ? null : expected[i].getClass(), "Column #" + i);
+            }
+        }
+    }
+
+    private TXReplicationEvent transaction(int id) {
+        return new TXReplicationEvent(Arrays.<ReplicationEvent>asList(
+            new InsertRowsReplicationEvent(1, entity, columnNames,
+                Collections.singletonList(new Serializable[]{id, "entity #" + id})),
+            new DeleteRowsReplicationEvent(1, entity, columnNames,
+                Collections.singletonList(new Serializable[]{id - 1, null}))
+        ));
+    }
+}
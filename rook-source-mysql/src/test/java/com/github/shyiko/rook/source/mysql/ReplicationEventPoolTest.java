@@ -0,0 +1,68 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.TableDescriptor;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class ReplicationEventPoolTest {
+
+    @Test
+    public void testObjectsAreReusedOnceReleased() throws Exception {
+        ReplicationEventPool pool = new ReplicationEventPool(2, 2);
+        List<Serializable[]> rows = pool.rowList();
+        rows.add(new Serializable[]{1});
+        InsertRowsReplicationEvent event = pool.insertRows(1, new TableDescriptor("rook", "entity"), null, rows);
+        InsertRowsReplicationEvent copy = event.copy();
+        pool.release();
+        assertTrue(rows.isEmpty());
+        assertSame(pool.rowList(), rows);
+        assertSame(pool.insertRows(2, new TableDescriptor("rook", "entity"), null, rows), event);
+        assertEquals(copy.getServerId(), 1);
+        assertEquals(copy.getRows().size(), 1);
+        assertEquals(copy.copy(), copy);
+    }
+
+    @Test
+    public void testRetentionIsBounded() throws Exception {
+        ReplicationEventPool pool = new ReplicationEventPool(2, 2);
+        List<Serializable[]> firstList = pool.rowList();
+        List<Serializable[]> secondList = pool.rowList();
+        List<Serializable[]> thirdList = pool.rowList();
+        for (int i = 0; i < 3; i++) {
+            firstList.add(new Serializable[]{i});
+        }
+        pool.release();
+        assertEquals(firstList.size(), 3); // left to GC
+        List<Serializable[]> list = pool.rowList();
+        assertNotSame(list, firstList);
+        assertTrue(list.isEmpty());
+        assertSame(pool.rowList(), secondList);
+        assertNotSame(pool.rowList(), thirdList);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventPublisher;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class ReplicationEventPublisherTest {
+
+    @Test(timeOut = 10000)
+    public void testBinlogReaderIsHeldUpUntilThereIsDemand() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        ReplicationEventPublisher publisher = new ReplicationEventPublisher(stream);
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe(subscriber);
+        Thread reader = replayInBackground(stream, 3);
+        awaitWaiting(reader);
+        assertEquals(subscriber.events.size(), 1);
+        subscriber.subscription.request(1);
+        while (subscriber.events.size() < 2) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        awaitWaiting(reader);
+        assertEquals(subscriber.events.size(), 2);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        reader.join();
+        assertEquals(subscriber.events.size(), 3);
+        publisher.complete();
+        assertEquals(subscriber.signals, "subscribe,complete");
+    }
+
+    @Test(timeOut = 10000)
+    public void testCancellationReleasesBinlogReader() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        ReplicationEventPublisher publisher = new ReplicationEventPublisher(stream);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        Thread reader = replayInBackground(stream, 2);
+        awaitWaiting(reader);
+        subscriber.subscription.cancel();
+        reader.join();
+        assertTrue(subscriber.events.isEmpty());
+        publisher.complete();
+        assertEquals(subscriber.signals, "subscribe");
+    }
+
+    @Test
+    public void testNonPositiveRequestIsSignalledAsError() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        ReplicationEventPublisher publisher = new ReplicationEventPublisher(stream);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertEquals(subscriber.signals, "subscribe,error");
+        replayInBackground(stream, 1).join();
+        assertTrue(subscriber.events.isEmpty());
+        RecordingSubscriber lateSubscriber = new RecordingSubscriber(0);
+        publisher.fail(new IllegalStateException());
+        publisher.subscribe(lateSubscriber);
+        assertEquals(lateSubscriber.signals, "subscribe,error");
+    }
+
+    private Thread replayInBackground(final MySQLReplicationStream stream, int numberOfEvents) {
+        final ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        for (int i = 0; i < numberOfEvents; i++) {
+            writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, i));
+        }
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            assertFalse(thread.getState() == Thread.State.TERMINATED);
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    private static final class RecordingSubscriber implements ReplicationEventPublisher.Subscriber {
+
+        private final long initialDemand;
+        private final List<ReplicationEvent> events = new CopyOnWriteArrayList<ReplicationEvent>();
+        private volatile String signals = "";
+        private volatile ReplicationEventPublisher.Subscription subscription;
+
+        private RecordingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(ReplicationEventPublisher.Subscription subscription) {
+            this.subscription = subscription;
+            signals += "subscribe";
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(ReplicationEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onError(Throwable cause) {
+            signals += ",error";
+        }
+
+        @Override
+        public void onComplete() {
+            signals += ",complete";
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class ReplicationMetricsTest {
+
+    @Test
+    public void testLatencyHistogram() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(histogram.getPercentile(0.99), 0);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(histogram.getCount(), 1000);
+        assertEquals(histogram.getMax(), 1000);
+        assertWithin(histogram.getPercentile(0.5), 500);
+        assertWithin(histogram.getPercentile(0.99), 990);
+        assertEquals(histogram.getPercentile(1), 1000);
+        for (long value = 0; value < 100000; value += 7) {
+            assertTrue(LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value)) >= value);
+        }
+        histogram.reset();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getMax(), 0);
+    }
+
+    @Test
+    public void testMetricsAreExposedOverJMX() throws Exception {
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        ReplicationMetrics metrics = new ReplicationMetrics("test");
+        metrics.register(mBeanServer);
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setMetrics(metrics);
+        final AtomicInteger numberOfInvocations = new AtomicInteger();
+        ReplicationEventListener listener = new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                if (numberOfInvocations.incrementAndGet() == 2) {
+                    throw new IllegalStateException();
+                }
+            }
+        };
+        stream.registerListener(listener);
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(2, "rook", "another_entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(2, 3));
+        writeEvent(binlog, EventType.XID, xid(1));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 4));
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        ObjectName streamName = new ObjectName(ReplicationMetrics.DOMAIN + ":type=ReplicationStream,name=test");
+        assertEquals(mBeanServer.getAttribute(streamName, "EventCount"), 8L);
+        assertEquals(mBeanServer.getAttribute(streamName, "RowCount"), 4L);
+        assertEquals(mBeanServer.getAttribute(streamName, "ByteCount"), (long) binlog.size());
+        assertEquals(mBeanServer.getAttribute(streamName, "TransactionQueueDepth"), 0);
+        assertEquals(mBeanServer.getAttribute(new ObjectName(ReplicationMetrics.DOMAIN +
+            ":type=Table,stream=test,name=rook.entity"), "RowCount"), 3L);
+        assertEquals(mBeanServer.getAttribute(new ObjectName(ReplicationMetrics.DOMAIN +
+            ":type=Table,stream=test,name=rook.another_entity"), "EventCount"), 1L);
+        ListenerMetricsMBean listenerMetrics = metrics.getListenerMetrics(listener);
+        assertEquals(listenerMetrics.getInvocationCount(), 2);
+        assertEquals(listenerMetrics.getErrorCount(), 1);
+        assertEquals(mBeanServer.queryNames(new ObjectName(ReplicationMetrics.DOMAIN + ":type=Listener,*"), null)
+            .size(), 1);
+        stream.unregisterListener(listener);
+        assertTrue(mBeanServer.queryNames(new ObjectName(ReplicationMetrics.DOMAIN + ":type=Listener,*"), null)
+            .isEmpty());
+        metrics.unregister();
+        assertFalse(mBeanServer.isRegistered(streamName));
+    }
+
+    @Test
+    public void testTablesDifferingInCaseOnlyHaveMetricsOfTheirOwn() throws Exception {
+        MBeanServer mBeanServer = MBeanServerFactory.newMBeanServer();
+        ReplicationMetrics metrics = new ReplicationMetrics("test");
+        metrics.register(mBeanServer);
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setMetrics(metrics);
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "Entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(2, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(2, 3));
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertEquals(metrics.getTableMetrics("rook", "Entity").getRowCount(), 2L);
+        assertEquals(metrics.getTableMetrics("rook", "entity").getRowCount(), 1L);
+        assertEquals(mBeanServer.getAttribute(new ObjectName(ReplicationMetrics.DOMAIN +
+            ":type=Table,stream=test,name=rook.Entity"), "RowCount"), 2L);
+        metrics.unregister();
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertTrue(actual >= expected && actual <= expected * 1.125, actual + " is not within 12.5% of " + expected);
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import org.testng.annotations.Test;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class SchemaRegistryTest {
+
+    @Test
+    public void testColumnNamesAreTakenFromTableMap() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setSchemaRegistry(new StubSchemaRegistry("ignored"));
+        List<RowsMutationReplicationEvent> events = collectEvents(stream);
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity", "id"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(2, "rook", "another_entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(2, 2));
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertEquals(events.size(), 2);
+        assertEquals(events.get(0).getColumnNames(), Arrays.asList("id"));
+        assertEquals(events.get(1).getColumnNames(), Arrays.asList("ignored"));
+    }
+
+    @Test
+    public void testColumnNamesAreRefreshedOnAlterTable() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        StubSchemaRegistry schemaRegistry = new StubSchemaRegistry("id");
+        stream.setSchemaRegistry(schemaRegistry);
+        List<RowsMutationReplicationEvent> events = collectEvents(stream);
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1));
+        writeEvent(binlog, EventType.QUERY, query("ALTER TABLE rook.entity CHANGE id entity_id INT"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 2));
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertEquals(events.size(), 2);
+        assertEquals(events.get(0).getColumnNames(), Arrays.asList("id"));
+        assertEquals(schemaRegistry.refreshedTables, Arrays.asList("rook.entity"));
+        assertEquals(events.get(1).getColumnNames(), Arrays.asList("entity_id"));
+    }
+
+    @Test
+    public void testColumnNamesOfDifferentStructureAreIgnored() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setSchemaRegistry(new StubSchemaRegistry("id", "name"));
+        List<RowsMutationReplicationEvent> events = collectEvents(stream);
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1));
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertEquals(events.size(), 1);
+        assertNull(events.get(0).getColumnNames());
+    }
+
+    @Test
+    public void testReaderIsNotHeldBackBySlowLookup() throws Exception {
+        CountDownLatch informationSchemaLatch = new CountDownLatch(1);
+        SchemaRegistry schemaRegistry = new SchemaRegistry(dataSource(informationSchemaLatch, "rook", "entity", "id"));
+        schemaRegistry.setLookupTimeout(50);
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setSchemaRegistry(schemaRegistry);
+        List<RowsMutationReplicationEvent> events = collectEvents(stream);
+        MySQLReplicationStream.DelegatingEventListener eventListener = stream.createEventListener();
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1));
+        long start = System.nanoTime();
+        eventListener.replay(new ByteArrayInputStream(binlog.toByteArray()));
+        eventListener.replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertTrue(schemaRegistry.isLookupInProgress("rook", "entity"));
+        informationSchemaLatch.countDown();
+        for (int i = 0; i < 100 && schemaRegistry.isLookupInProgress("rook", "entity"); i++) {
+            Thread.sleep(10);
+        }
+        eventListener.replay(new ByteArrayInputStream(binlog.toByteArray()));
+        assertEquals(events.size(), 3);
+        assertNull(events.get(0).getColumnNames());
+        assertNull(events.get(1).getColumnNames());
+        assertEquals(events.get(2).getColumnNames(), Arrays.asList("id"));
+    }
+
+    /**
+     * @return data source every connection of which is given out once latch is released and which reports the same
+     * (single) column for all the queries
+     */
+    private DataSource dataSource(final CountDownLatch latch, final String... column) {
+        final InvocationHandler resultSet = new InvocationHandler() {
+
+            private boolean next = true;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("next".equals(method.getName())) {
+                    boolean result = next;
+                    next = false;
+                    return result;
+                }
+                if ("getString".equals(method.getName())) {
+                    return column[(Integer) args[0] - 1];
+                }
+                return null;
+            }
+        };
+        final InvocationHandler connection = new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("prepareStatement".equals(method.getName())) {
+                    return proxy(PreparedStatement.class, this);
+                }
+                if ("executeQuery".equals(method.getName())) {
+                    return proxy(ResultSet.class, resultSet);
+                }
+                return null;
+            }
+        };
+        return proxy(DataSource.class, new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if ("getConnection".equals(method.getName())) {
+                    latch.await();
+                    return proxy(Connection.class, connection);
+                }
+                return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler invocationHandler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class[]{type}, invocationHandler);
+    }
+
+    private List<RowsMutationReplicationEvent> collectEvents(MySQLReplicationStream stream) {
+        final List<RowsMutationReplicationEvent> events = new ArrayList<RowsMutationReplicationEvent>();
+        stream.registerListener(new ReplicationEventListener() {
+
+            @Override
+            public void onEvent(ReplicationEvent event) {
+                events.add((RowsMutationReplicationEvent) event);
+            }
+        });
+        return events;
+    }
+
+    /**
+     * Registry which reports the same column names for every table (until refreshed, after which names get
+     * "entity_" prefix).
+     */
+    private static final class StubSchemaRegistry extends SchemaRegistry {
+
+        private final List<String> refreshedTables = new ArrayList<String>();
+        private final String[] columnNames;
+
+        private StubSchemaRegistry(String... columnNames) {
+            super(null);
+            this.columnNames = columnNames;
+        }
+
+        @Override
+        public synchronized List<String> getColumnNames(String schema, String table) {
+            List<String> result = new ArrayList<String>();
+            for (String columnName : columnNames) {
+                result.add(refreshedTables.isEmpty() ? columnName : "entity_" + columnName);
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized void refresh(String schema, String table) {
+            refreshedTables.add(schema + "." + table);
+        }
+
+        @Override
+        public void prefetch() {
+        }
+    }
+}
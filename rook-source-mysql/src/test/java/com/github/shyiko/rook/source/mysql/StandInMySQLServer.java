@@ -0,0 +1,585 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.deserialization.ChecksumType;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Embeddable stand-in for MySQL master. Speaks just enough of the protocol (handshake, "show master status",
+ * "show global variables like 'binlog_checksum'", COM_BINLOG_DUMP and COM_BINLOG_DUMP_GTID) to stream binlog of the
+ * {@link BinlogSource} (binlog file or {@link SyntheticBinlog}) over the wire, which makes it possible to
+ * load test {@link MySQLReplicationStream} (and check how it copes with the lost connections) without real MySQL
+ * server around. Listens on the loopback interface only. Each connection is served by a thread of its own.
+ * <p>
+ * By default events are streamed as fast as socket accepts them (see {@link #setThrottle(double)} to limit the rate
+ * and {@link #setDisconnectAfter(long)} to have connections dropped periodically).
+ * <p>
+ * Not a part of rook-source-mysql itself (shipped with the test-jar, which is what rook-benchmarks depends on).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class StandInMySQLServer {
+
+    private static final int COM_QUERY = 0x03;
+    private static final int COM_BINLOG_DUMP = 0x12;
+    private static final int COM_BINLOG_DUMP_GTID = 0x1E;
+    private static final int EVENT_HEADER_LENGTH = 19;
+
+    private final String username;
+    private final BinlogSource binlogSource;
+    private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<Socket>());
+    private final List<Long> requestedPositions = Collections.synchronizedList(new ArrayList<Long>());
+    private final List<String> requestedGtidSets = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicLong numberOfEventsSent = new AtomicLong();
+    private volatile double throttle;
+    private volatile long disconnectAfter;
+    private ServerSocket serverSocket;
+
+    /**
+     * @param binlog binlog file content (starting with 4-byte magic number)
+     */
+    public StandInMySQLServer(String username, String binlogFilename, byte[] binlog) {
+        this(username, new ByteArrayBinlog(binlogFilename, binlog));
+    }
+
+    /**
+     * @param username the only user server lets in (password is not checked)
+     */
+    public StandInMySQLServer(String username, BinlogSource binlogSource) {
+        this.username = username;
+        this.binlogSource = binlogSource;
+    }
+
+    /**
+     * @param eventsPerSecond maximum number of events streamed per second (by each of the connections), 0 for no
+     * limit (which is the default)
+     */
+    public void setThrottle(double eventsPerSecond) {
+        if (eventsPerSecond < 0) {
+            throw new IllegalArgumentException("Throttle cannot be negative");
+        }
+        this.throttle = eventsPerSecond;
+    }
+
+    /**
+     * @param numberOfEvents number of events after which connection gets dropped (that is, closed on the server side
+     * right after the event is sent), 0 to never drop connections (which is the default)
+     */
+    public void setDisconnectAfter(long numberOfEvents) {
+        if (numberOfEvents < 0) {
+            throw new IllegalArgumentException("Number of events cannot be negative");
+        }
+        this.disconnectAfter = numberOfEvents;
+    }
+
+    /**
+     * Starts listening on the ephemeral port (see {@link #getPort()}).
+     */
+    public void start() throws IOException {
+        start(0);
+    }
+
+    public void start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 512, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    final Socket socket;
+                    try {
+                        socket = serverSocket.accept();
+                    } catch (IOException e) {
+                        return;
+                    }
+                    sockets.add(socket);
+                    Thread connection = new Thread(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            try {
+                                serve(socket);
+                            } catch (IOException e) {
+                                // connection dropped
+                            } finally {
+                                close(socket);
+                                sockets.remove(socket);
+                            }
+                        }
+                    }, "stand-in-mysql-connection");
+                    connection.setDaemon(true);
+                    connection.start();
+                }
+            }
+        }, "stand-in-mysql-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return binlog positions COM_BINLOG_DUMP requests were made with (in order)
+     */
+    public List<Long> getRequestedPositions() {
+        synchronized (requestedPositions) {
+            return new ArrayList<Long>(requestedPositions);
+        }
+    }
+
+    /**
+     * @return GTID sets COM_BINLOG_DUMP_GTID requests were made with (in order)
+     */
+    public List<String> getRequestedGtidSets() {
+        synchronized (requestedGtidSets) {
+            return new ArrayList<String>(requestedGtidSets);
+        }
+    }
+
+    /**
+     * @return number of binlog events (fake ROTATEs excluded) sent so far (across all the connections)
+     */
+    public long getNumberOfEventsSent() {
+        return numberOfEventsSent.get();
+    }
+
+    /**
+     * Drops all the connections established so far (without stopping the server).
+     */
+    public void dropConnections() {
+        synchronized (sockets) {
+            for (Socket socket : sockets) {
+                close(socket);
+            }
+            sockets.clear();
+        }
+    }
+
+    public void stop() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void serve(Socket socket) throws IOException {
+        InputStream inputStream = socket.getInputStream();
+        OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+        writePacket(outputStream, 0, greeting());
+        outputStream.flush();
+        byte[] authentication = readPacket(inputStream);
+        int usernameEnd = 32;
+        while (authentication[usernameEnd] != 0) {
+            usernameEnd++;
+        }
+        String user = new String(authentication, 32, usernameEnd - 32);
+        if (!username.equals(user)) {
+            writePacket(outputStream, 2, error(1045, "28000", "Access denied for user '" + user + "'"));
+            outputStream.flush();
+            return;
+        }
+        writePacket(outputStream, 2, ok());
+        outputStream.flush();
+        byte[] command;
+        while ((command = readPacket(inputStream)) != null) {
+            switch (command[0]) {
+                case COM_QUERY:
+                    String sql = new String(command, 1, command.length - 1);
+                    if ("show master status".equals(sql)) {
+                        writeResultSet(outputStream, binlogSource.getFilename(), "4");
+                    } else
+                    if ("show global variables like 'binlog_checksum'".equals(sql)) {
+                        writeResultSet(outputStream, "binlog_checksum", binlogSource.getChecksumType().name());
+                    } else {
+                        writePacket(outputStream, 1, ok());
+                    }
+                    break;
+                case COM_BINLOG_DUMP:
+                    long position = readLong(command, 1, 4);
+                    requestedPositions.add(position);
+                    if (!writeBinlog(outputStream, position, null)) {
+                        return;
+                    }
+                    break;
+                case COM_BINLOG_DUMP_GTID:
+                    GtidSet gtidSet = readGtidSet(command);
+                    requestedGtidSets.add(gtidSet.toString());
+                    if (!writeBinlog(outputStream, 4, gtidSet)) {
+                        return;
+                    }
+                    break;
+                default:
+                    writePacket(outputStream, 1, error(1047, "08S01", "Unknown command"));
+            }
+            outputStream.flush();
+        }
+    }
+
+    /**
+     * @return GTID set of COM_BINLOG_DUMP_GTID
+     */
+    private GtidSet readGtidSet(byte[] command) {
+        int offset = 1 + 2 + 4; // command, flags, server id
+        offset += 4 + (int) readLong(command, offset, 4) + 8 + 4; // binlog filename, position, data length
+        long numberOfUUIDs = readLong(command, offset, 8);
+        offset += 8;
+        GtidSet gtidSet = new GtidSet("");
+        for (long i = 0; i < numberOfUUIDs; i++) {
+            String uuid = readUUID(command, offset);
+            offset += 16;
+            long numberOfIntervals = readLong(command, offset, 8);
+            offset += 8;
+            for (long j = 0; j < numberOfIntervals; j++) {
+                long end = readLong(command, offset + 8, 8); // exclusive
+                for (long transactionId = readLong(command, offset, 8); transactionId < end; transactionId++) {
+                    gtidSet.add(uuid + ":" + transactionId);
+                }
+                offset += 16;
+            }
+        }
+        return gtidSet;
+    }
+
+    private static String readUUID(byte[] buffer, int offset) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            if (i == 4 || i == 6 || i == 8 || i == 10) {
+                sb.append('-');
+            }
+            sb.append(String.format("%02x", buffer[offset + i] & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    private static long readLong(byte[] buffer, int offset, int length) {
+        long result = 0;
+        for (int i = 0; i < length; i++) {
+            result |= (long) (buffer[offset + i] & 0xFF) << (i << 3);
+        }
+        return result;
+    }
+
+    /**
+     * @param skippedGtidSet transactions not to send, null if none
+     * @return false if connection is to be dropped (see {@link #setDisconnectAfter(long)}), true otherwise
+     */
+    private boolean writeBinlog(OutputStream outputStream, long position, GtidSet skippedGtidSet)
+            throws IOException {
+        // just like MySQL, stream starts with fake ROTATE event
+        ByteArrayOutputStream rotate = new ByteArrayOutputStream();
+        writeInteger(rotate, position, 8);
+        String binlogFilename = binlogSource.getFilename();
+        rotate.write(binlogFilename.getBytes(), 0, binlogFilename.length());
+        byte[] rotateEvent = event(EventType.ROTATE, 0, rotate.toByteArray());
+        if (binlogSource.getChecksumType() == ChecksumType.CRC32) {
+            rotateEvent = withChecksum(rotateEvent);
+        }
+        writeEventPacket(outputStream, 1, rotateEvent);
+        int sequence = 2;
+        double throttle = this.throttle;
+        long intervalInNanoseconds = throttle == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / throttle);
+        long disconnectAfter = this.disconnectAfter;
+        long numberOfEvents = 0;
+        long scheduledAt = System.nanoTime();
+        boolean skipping = false;
+        byte[] event;
+        while ((event = binlogSource.getEvent(position)) != null) {
+            if (event[4] == EventType.GTID.ordinal() && skippedGtidSet != null) {
+                // flags (1 byte) + sid (16 bytes) + gno (8 bytes)
+                skipping = skippedGtidSet.contains(readUUID(event, EVENT_HEADER_LENGTH + 1),
+                    readLong(event, EVENT_HEADER_LENGTH + 17, 8));
+            }
+            if (!skipping) {
+                if (intervalInNanoseconds != 0) {
+                    scheduledAt += intervalInNanoseconds;
+                    long delay = scheduledAt - System.nanoTime();
+                    if (delay > 0) {
+                        outputStream.flush();
+                        LockSupport.parkNanos(delay);
+                    }
+                }
+                writeEventPacket(outputStream, sequence++, event);
+                numberOfEventsSent.incrementAndGet();
+                if (++numberOfEvents == disconnectAfter) {
+                    outputStream.flush();
+                    return false;
+                }
+            }
+            position += readLong(event, 9, 4);
+        }
+        return true;
+    }
+
+    /**
+     * @param nextPosition position of the event that follows
+     * @return (v4) binlog event
+     */
+    static byte[] event(EventType eventType, long nextPosition, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(EVENT_HEADER_LENGTH + data.length);
+        writeInteger(out, System.currentTimeMillis() / 1000, 4);
+        out.write(eventType.ordinal());
+        writeInteger(out, 1, 4); // server id
+        writeInteger(out, EVENT_HEADER_LENGTH + data.length, 4); // event length
+        writeInteger(out, nextPosition, 4);
+        writeInteger(out, 0, 2); // flags
+        out.write(data, 0, data.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return copy of the event with CRC32 checksum appended (and event length adjusted accordingly)
+     */
+    private static byte[] withChecksum(byte[] event) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(event.length + 4);
+        out.write(event, 0, 9);
+        writeInteger(out, event.length + 4, 4);
+        out.write(event, 13, event.length - 13);
+        CRC32 crc32 = new CRC32();
+        crc32.update(out.toByteArray());
+        writeInteger(out, crc32.getValue(), 4);
+        return out.toByteArray();
+    }
+
+    static void writeInteger(ByteArrayOutputStream out, long value, int length) {
+        for (int i = 0; i < length; i++) {
+            out.write((int) (value >>> (i << 3)) & 0xFF);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        out.write(value.length());
+        out.write(value.getBytes(), 0, value.length());
+    }
+
+    private byte[] greeting() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(10); // protocol version
+        writeZeroTerminatedString(out, "5.6.17-stand-in");
+        writeInteger(out, 1, 4); // thread id
+        writeZeroTerminatedString(out, "abcdefgh"); // scramble (first part)
+        writeInteger(out, 0xF7FF, 2); // capabilities
+        out.write(33); // collation (utf8_general_ci)
+        writeInteger(out, 2, 2); // status
+        out.write(new byte[13], 0, 13);
+        writeZeroTerminatedString(out, "ijklmnopqrst"); // scramble (second part)
+        writeZeroTerminatedString(out, "mysql_native_password");
+        return out.toByteArray();
+    }
+
+    private byte[] ok() {
+        return new byte[]{0, 0, 0, 2, 0, 0, 0};
+    }
+
+    private byte[] error(int code, String sqlState, String message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        writeInteger(out, code, 2);
+        out.write('#');
+        out.write(sqlState.getBytes(), 0, sqlState.length());
+        out.write(message.getBytes(), 0, message.length());
+        return out.toByteArray();
+    }
+
+    private void writeResultSet(OutputStream outputStream, String... row) throws IOException {
+        byte[] eof = {(byte) 0xFE, 0, 0, 2, 0};
+        int sequence = 1;
+        writePacket(outputStream, sequence++, new byte[]{(byte) row.length});
+        for (int i = 0; i < row.length; i++) {
+            // column definitions are skipped by the client
+            writePacket(outputStream, sequence++, new byte[]{3, 'd', 'e', 'f'});
+        }
+        writePacket(outputStream, sequence++, eof);
+        ByteArrayOutputStream rowPacket = new ByteArrayOutputStream();
+        for (String value : row) {
+            writeString(rowPacket, value);
+        }
+        writePacket(outputStream, sequence++, rowPacket.toByteArray());
+        writePacket(outputStream, sequence, eof);
+    }
+
+    /**
+     * Writes event as the body of OK packet (without copying it into the intermediate buffer).
+     */
+    private void writeEventPacket(OutputStream outputStream, int sequence, byte[] event) throws IOException {
+        writePacketHeader(outputStream, sequence, 1 + event.length);
+        outputStream.write(0);
+        outputStream.write(event);
+    }
+
+    private void writePacket(OutputStream outputStream, int sequence, byte[] body) throws IOException {
+        writePacketHeader(outputStream, sequence, body.length);
+        outputStream.write(body);
+    }
+
+    private void writePacketHeader(OutputStream outputStream, int sequence, int length) throws IOException {
+        outputStream.write(length);
+        outputStream.write(length >>> 8);
+        outputStream.write(length >>> 16);
+        outputStream.write(sequence);
+    }
+
+    /**
+     * @return packet body, null if client has closed the connection
+     */
+    private byte[] readPacket(InputStream inputStream) throws IOException {
+        byte[] header = new byte[4];
+        if (!readFully(inputStream, header, true)) {
+            return null;
+        }
+        byte[] body = new byte[(header[0] & 0xFF) | (header[1] & 0xFF) << 8 | (header[2] & 0xFF) << 16];
+        readFully(inputStream, body, false);
+        return body;
+    }
+
+    private boolean readFully(InputStream inputStream, byte[] buffer, boolean eofAllowed) throws IOException {
+        for (int offset = 0; offset < buffer.length; ) {
+            int length = inputStream.read(buffer, offset, buffer.length - offset);
+            if (length == -1) {
+                if (eofAllowed && offset == 0) {
+                    return false;
+                }
+                throw new EOFException();
+            }
+            offset += length;
+        }
+        return true;
+    }
+
+    private void writeZeroTerminatedString(ByteArrayOutputStream out, String value) {
+        out.write(value.getBytes(), 0, value.length());
+        out.write(0);
+    }
+
+    private void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Binlog {@link StandInMySQLServer} streams. Accessed concurrently (by all the connections).
+     */
+    public interface BinlogSource {
+
+        String getFilename();
+
+        /**
+         * @return checksum algorithm events are written with (reported to the clients as binlog_checksum)
+         */
+        ChecksumType getChecksumType();
+
+        /**
+         * @param position position of the event within the binlog (4 for the first one)
+         * @return (v4) event starting at the given position, null if there is none
+         */
+        byte[] getEvent(long position);
+    }
+
+    /**
+     * Binlog held in memory (as is).
+     */
+    public static class ByteArrayBinlog implements BinlogSource {
+
+        private static final byte[] MAGIC_HEADER = {(byte) 0xFE, 'b', 'i', 'n'};
+
+        private final String filename;
+        private final byte[] binlog;
+        private final ChecksumType checksumType;
+
+        /**
+         * @param binlog binlog file content (starting with 4-byte magic number) written with binlog_checksum=NONE
+         */
+        public ByteArrayBinlog(String filename, byte[] binlog) {
+            this(filename, binlog, ChecksumType.NONE);
+        }
+
+        /**
+         * @param binlog binlog file content (starting with 4-byte magic number)
+         */
+        public ByteArrayBinlog(String filename, byte[] binlog, ChecksumType checksumType) {
+            this.filename = filename;
+            this.binlog = binlog;
+            this.checksumType = checksumType;
+        }
+
+        /**
+         * @param file binlog file (e.g. recorded with "mysqlbinlog --read-from-remote-server --raw"). Checksum
+         * algorithm is taken from the FORMAT_DESCRIPTION event (the same way {@link BinlogFileReplicationStream}
+         * does it)
+         */
+        public static ByteArrayBinlog read(File file) throws IOException {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                if (randomAccessFile.length() > Integer.MAX_VALUE) {
+                    throw new IOException(file + " is too big to be held in memory");
+                }
+                byte[] binlog = new byte[(int) randomAccessFile.length()];
+                randomAccessFile.readFully(binlog);
+                if (binlog.length < MAGIC_HEADER.length ||
+                    !Arrays.equals(Arrays.copyOf(binlog, MAGIC_HEADER.length), MAGIC_HEADER)) {
+                    throw new IOException(file + " is not a binlog file");
+                }
+                return new ByteArrayBinlog(file.getName(), binlog,
+                    BinlogFileReplicationStream.readChecksumType(file));
+            } finally {
+                randomAccessFile.close();
+            }
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public ChecksumType getChecksumType() {
+            return checksumType;
+        }
+
+        @Override
+        public byte[] getEvent(long position) {
+            if (position < MAGIC_HEADER.length || position + EVENT_HEADER_LENGTH > binlog.length) {
+                return null;
+            }
+            int offset = (int) position;
+            int eventLength = (int) readLong(binlog, offset + 9, 4);
+            return Arrays.copyOfRange(binlog, offset, offset + eventLength);
+        }
+    }
+}
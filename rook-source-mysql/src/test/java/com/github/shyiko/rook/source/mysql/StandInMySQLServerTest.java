@@ -0,0 +1,236 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.BinaryLogClient;
+import com.github.shyiko.mysql.binlog.event.DeleteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventData;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.UpdateRowsEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.event.deserialization.ChecksumType;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.formatDescription;
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEventWithChecksum;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class StandInMySQLServerTest {
+
+    private BinlogEventLoopGroup eventLoopGroup;
+    private StandInMySQLServer server;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        eventLoopGroup = new BinlogEventLoopGroup(1, 2);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        eventLoopGroup.shutdown();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testSyntheticBinlogIsResumedAfterInjectedDisconnects() throws Exception {
+        SyntheticBinlog binlog = new SyntheticBinlog("mysql-bin.000001", "rook", "entity");
+        binlog.setRowsPerEvent(2);
+        binlog.setMix(1, 1, 1);
+        server = new StandInMySQLServer("rook", binlog);
+        server.setDisconnectAfter(7); // so that connection is dropped in the middle of the transaction
+        server.start();
+        final List<Long> ids = Collections.synchronizedList(new ArrayList<Long>());
+        final List<EventType> rowsEventTypes = Collections.synchronizedList(new ArrayList<EventType>());
+        final CountDownLatch latch = new CountDownLatch(30);
+        NioBinaryLogClient client = connect(new BinaryLogClient.EventListener() {
+
+            @Override
+            public void onEvent(Event event) {
+                List<Serializable[]> rows = rowsOf(event.getData());
+                if (rows != null) {
+                    rowsEventTypes.add(event.getHeader().getEventType());
+                    for (Serializable[] row : rows) {
+                        ids.add((Long) row[0]);
+                    }
+                    latch.countDown();
+                }
+            }
+        });
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            client.disconnect();
+        }
+        assertTrue(server.getRequestedPositions().size() > 5);
+        for (int i = 0; i < 30; i++) {
+            assertEquals(rowsEventTypes.get(i), i % 3 == 0 ? EventType.WRITE_ROWS :
+                i % 3 == 1 ? EventType.UPDATE_ROWS : EventType.DELETE_ROWS);
+            assertEquals(ids.get(i * 2), (Long) (i * 2L));
+            assertEquals(ids.get(i * 2 + 1), (Long) (i * 2L + 1));
+        }
+    }
+
+    @Test
+    public void testThrottle() throws Exception {
+        server = new StandInMySQLServer("rook", new SyntheticBinlog("mysql-bin.000001", "rook", "entity"));
+        server.setThrottle(100);
+        server.start();
+        NioBinaryLogClient client = connect(new BinaryLogClient.EventListener() {
+
+            @Override
+            public void onEvent(Event event) {
+            }
+        });
+        try {
+            TimeUnit.MILLISECONDS.sleep(500);
+            long numberOfEventsSent = server.getNumberOfEventsSent();
+            assertTrue(numberOfEventsSent > 10 && numberOfEventsSent <= 60, String.valueOf(numberOfEventsSent));
+        } finally {
+            client.disconnect();
+        }
+    }
+
+    @Test
+    public void testBinlogFileIsStreamedAsIs() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        binlog.write(new byte[]{(byte) 0xFE, 'b', 'i', 'n'});
+        writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2, 3));
+        writeEvent(binlog, EventType.XID, xid(1));
+        assertBinlogFileIsStreamedAsIs(binlog, ChecksumType.NONE, 4);
+    }
+
+    @Test
+    public void testChecksumOfBinlogFileIsAdvertised() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        binlog.write(new byte[]{(byte) 0xFE, 'b', 'i', 'n'});
+        writeEvent(binlog, EventType.FORMAT_DESCRIPTION, formatDescription("5.6.17-log", true));
+        writeEventWithChecksum(binlog, EventType.QUERY, query("BEGIN"));
+        writeEventWithChecksum(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+        writeEventWithChecksum(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2, 3));
+        writeEventWithChecksum(binlog, EventType.XID, xid(1));
+        assertBinlogFileIsStreamedAsIs(binlog, ChecksumType.CRC32, 5);
+    }
+
+    private void assertBinlogFileIsStreamedAsIs(ByteArrayOutputStream binlog, ChecksumType checksumType,
+            int numberOfEvents) throws Exception {
+        File file = File.createTempFile("mysql-bin", ".000003");
+        try {
+            FileOutputStream outputStream = new FileOutputStream(file);
+            try {
+                binlog.writeTo(outputStream);
+            } finally {
+                outputStream.close();
+            }
+            StandInMySQLServer.ByteArrayBinlog binlogSource = StandInMySQLServer.ByteArrayBinlog.read(file);
+            assertEquals(binlogSource.getChecksumType(), checksumType);
+            server = new StandInMySQLServer("rook", binlogSource);
+            server.start();
+            final List<Serializable[]> rows = Collections.synchronizedList(new ArrayList<Serializable[]>());
+            final CountDownLatch latch = new CountDownLatch(1);
+            NioBinaryLogClient client = connect(new BinaryLogClient.EventListener() {
+
+                @Override
+                public void onEvent(Event event) {
+                    if (event.getHeader().getEventType() == EventType.XID) {
+                        latch.countDown();
+                    }
+                    List<Serializable[]> eventRows = rowsOf(event.getData());
+                    if (eventRows != null) {
+                        rows.addAll(eventRows);
+                    }
+                }
+            });
+            try {
+                assertTrue(latch.await(5, TimeUnit.SECONDS));
+            } finally {
+                client.disconnect();
+            }
+            assertEquals(rows.size(), 3);
+            assertEquals(rows.get(2), new Serializable[]{3});
+            assertEquals(client.getBinlogFilename(), file.getName());
+            assertEquals(server.getNumberOfEventsSent(), numberOfEvents);
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void testNonBinlogFileIsRejected() throws Exception {
+        File file = File.createTempFile("mysql-bin", ".000003");
+        try {
+            StandInMySQLServer.ByteArrayBinlog.read(file);
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    private NioBinaryLogClient connect(BinaryLogClient.EventListener eventListener) throws IOException {
+        NioBinaryLogClient client = new NioBinaryLogClient(eventLoopGroup, "127.0.0.1", server.getPort(), "rook", "");
+        client.setReconnectInterval(10, TimeUnit.MILLISECONDS);
+        client.setEventDeserializer(new TableFilteringEventDeserializer());
+        client.setEventListener(eventListener);
+        client.connect();
+        return client;
+    }
+
+    /**
+     * @return rows (after image in case of update) of the rows event, null if given event is of some other type
+     */
+    private static List<Serializable[]> rowsOf(EventData eventData) {
+        if (eventData instanceof WriteRowsEventData) {
+            return ((WriteRowsEventData) eventData).getRows();
+        }
+        if (eventData instanceof DeleteRowsEventData) {
+            return ((DeleteRowsEventData) eventData).getRows();
+        }
+        if (eventData instanceof UpdateRowsEventData) {
+            List<Serializable[]> result = new ArrayList<Serializable[]>();
+            for (Map.Entry<Serializable[], Serializable[]> row : ((UpdateRowsEventData) eventData).getRows()) {
+                result.add(row.getValue());
+            }
+            return result;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.deserialization.ChecksumType;
+
+import java.io.ByteArrayOutputStream;
+
+import static com.github.shyiko.rook.source.mysql.StandInMySQLServer.event;
+import static com.github.shyiko.rook.source.mysql.StandInMySQLServer.writeInteger;
+
+/**
+ * Endless binlog of generated transactions (BEGIN, TABLE_MAP, WRITE_ROWS/UPDATE_ROWS/DELETE_ROWS, XID), each
+ * touching rowsPerEvent rows of the (id BIGINT, value BIGINT) table. Row ids grow with every transaction (row r of
+ * transaction t has id = t * rowsPerEvent + r and value = t), which makes it easy to tell whether anything was lost
+ * or delivered twice.
+ * <p>
+ * Since all the values are of fixed width, position of any event can be computed up front and so events are
+ * generated on demand (without keeping anything in memory), whatever the position replication is started (or
+ * resumed) from.
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class SyntheticBinlog implements StandInMySQLServer.BinlogSource {
+
+    private static final int MYSQL_TYPE_LONGLONG = 8;
+    private static final int COLUMN_NAME = 4;
+    private static final long TABLE_ID = 1;
+    private static final int FIRST_EVENT_POSITION = 4;
+    private static final int EVENT_HEADER_LENGTH = 19;
+
+    private final String filename;
+    private final byte[] begin;
+    private final byte[] tableMap;
+    private volatile Layout layout;
+
+    public SyntheticBinlog(String filename, String database, String table) {
+        this.filename = filename;
+        this.begin = query("BEGIN");
+        this.tableMap = tableMap(database, table, "id", "value");
+        this.layout = new Layout(1, new EventType[]{EventType.WRITE_ROWS});
+    }
+
+    /**
+     * Not supposed to be called while binlog is being streamed.
+     */
+    public void setRowsPerEvent(int rowsPerEvent) {
+        if (rowsPerEvent < 1) {
+            throw new IllegalArgumentException("Number of rows per event must be greater than 0");
+        }
+        layout = new Layout(rowsPerEvent, layout.rowsEventTypes);
+    }
+
+    /**
+     * Transactions follow repeating pattern of inserts (WRITE_ROWS) followed by updates and deletes, e.g. 2:1:1 gives
+     * WRITE_ROWS, WRITE_ROWS, UPDATE_ROWS, DELETE_ROWS, WRITE_ROWS, ... (insert-only by default). Not supposed to be
+     * called while binlog is being streamed.
+     */
+    public void setMix(int inserts, int updates, int deletes) {
+        if (inserts < 0 || updates < 0 || deletes < 0 || inserts + updates + deletes == 0) {
+            throw new IllegalArgumentException("Counts must be non-negative with at least one of them positive");
+        }
+        EventType[] rowsEventTypes = new EventType[inserts + updates + deletes];
+        for (int i = 0; i < rowsEventTypes.length; i++) {
+            rowsEventTypes[i] = i < inserts ? EventType.WRITE_ROWS :
+                i < inserts + updates ? EventType.UPDATE_ROWS : EventType.DELETE_ROWS;
+        }
+        layout = new Layout(layout.rowsPerEvent, rowsEventTypes);
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public ChecksumType getChecksumType() {
+        return ChecksumType.NONE;
+    }
+
+    @Override
+    public byte[] getEvent(long position) {
+        if (position < FIRST_EVENT_POSITION) {
+            return null;
+        }
+        Layout layout = this.layout;
+        long offset = position - FIRST_EVENT_POSITION;
+        long transaction = offset / layout.cycleLength * layout.rowsEventTypes.length;
+        offset %= layout.cycleLength;
+        int cycleIndex = 0;
+        while (offset >= layout.transactionLengths[cycleIndex]) {
+            offset -= layout.transactionLengths[cycleIndex++];
+            transaction++;
+        }
+        EventType rowsEventType = layout.rowsEventTypes[cycleIndex];
+        int rowsEventLength = layout.rowsEventLength(rowsEventType);
+        long start = position - offset;
+        if (offset == 0) {
+            return event(EventType.QUERY, position + EVENT_HEADER_LENGTH + begin.length, begin);
+        }
+        offset -= EVENT_HEADER_LENGTH + begin.length;
+        if (offset == 0) {
+            return event(EventType.TABLE_MAP, position + EVENT_HEADER_LENGTH + tableMap.length, tableMap);
+        }
+        offset -= EVENT_HEADER_LENGTH + tableMap.length;
+        if (offset == 0) {
+            return event(rowsEventType, position + rowsEventLength,
+                rows(rowsEventType, transaction, layout.rowsPerEvent));
+        }
+        offset -= rowsEventLength;
+        if (offset == 0) {
+            return event(EventType.XID, start + layout.transactionLengths[cycleIndex], xid(transaction + 1));
+        }
+        return null; // position doesn't point to the beginning of the event
+    }
+
+    private static byte[] query(String sql) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, 0, 4); // thread id
+        writeInteger(out, 0, 4); // execution time
+        out.write(0); // database name length
+        writeInteger(out, 0, 2); // error code
+        writeInteger(out, 0, 2); // status variables length
+        out.write(0); // database name (empty)
+        out.write(sql.getBytes(), 0, sql.length());
+        return out.toByteArray();
+    }
+
+    /**
+     * @return TABLE_MAP (of MYSQL_TYPE_LONGLONG columns) followed by COLUMN_NAME optional metadata field
+     */
+    private static byte[] tableMap(String database, String table, String... columnNames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, TABLE_ID, 6);
+        writeInteger(out, 0, 2); // flags
+        writeString(out, database);
+        out.write(0);
+        writeString(out, table);
+        out.write(0);
+        out.write(columnNames.length);
+        for (int i = 0; i < columnNames.length; i++) {
+            out.write(MYSQL_TYPE_LONGLONG);
+        }
+        out.write(0); // metadata length
+        writeInteger(out, 0, (columnNames.length + 7) >> 3); // nullability bitmap
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        for (String columnName : columnNames) {
+            writeString(value, columnName);
+        }
+        out.write(COLUMN_NAME);
+        out.write(value.size());
+        out.write(value.toByteArray(), 0, value.size());
+        return out.toByteArray();
+    }
+
+    private static byte[] rows(EventType eventType, long transaction, int rowsPerEvent) {
+        boolean update = eventType == EventType.UPDATE_ROWS;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, TABLE_ID, 6);
+        writeInteger(out, 0, 2); // flags
+        out.write(2); // number of columns
+        out.write(3); // included columns bitmap
+        if (update) {
+            out.write(3); // included columns bitmap (after update)
+        }
+        for (int i = 0; i < rowsPerEvent; i++) {
+            long id = transaction * rowsPerEvent + i;
+            out.write(0); // null bitmap
+            writeInteger(out, id, 8);
+            writeInteger(out, transaction, 8);
+            if (update) {
+                out.write(0); // null bitmap
+                writeInteger(out, id, 8);
+                writeInteger(out, transaction + 1, 8);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] xid(long xid) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInteger(out, xid, 8);
+        return out.toByteArray();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        out.write(value.length());
+        out.write(value.getBytes(), 0, value.length());
+    }
+
+    /**
+     * Lengths of the transactions (one per rows event type of the cycle).
+     */
+    private final class Layout {
+
+        private final int rowsPerEvent;
+        private final EventType[] rowsEventTypes;
+        private final long[] transactionLengths;
+        private final long cycleLength;
+
+        private Layout(int rowsPerEvent, EventType[] rowsEventTypes) {
+            this.rowsPerEvent = rowsPerEvent;
+            this.rowsEventTypes = rowsEventTypes;
+            this.transactionLengths = new long[rowsEventTypes.length];
+            long cycleLength = 0;
+            for (int i = 0; i < rowsEventTypes.length; i++) {
+                transactionLengths[i] = EVENT_HEADER_LENGTH + begin.length + EVENT_HEADER_LENGTH + tableMap.length +
+                    rowsEventLength(rowsEventTypes[i]) + EVENT_HEADER_LENGTH + 8;
+                cycleLength += transactionLengths[i];
+            }
+            this.cycleLength = cycleLength;
+        }
+
+        private int rowsEventLength(EventType eventType) {
+            int rowLength = 1 + 8 + 8;
+            return eventType == EventType.UPDATE_ROWS ?
+                EVENT_HEADER_LENGTH + 6 + 2 + 1 + 1 + 1 + rowsPerEvent * rowLength * 2 :
+                EVENT_HEADER_LENGTH + 6 + 2 + 1 + 1 + rowsPerEvent * rowLength;
+        }
+    }
+}
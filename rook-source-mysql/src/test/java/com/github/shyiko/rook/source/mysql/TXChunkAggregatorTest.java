@@ -0,0 +1,119 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.TXChunkAggregator;
+import com.github.shyiko.rook.api.TXChunkAware;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXBeginReplicationEvent;
+import com.github.shyiko.rook.api.event.TXChunkReplicationEvent;
+import com.github.shyiko.rook.api.event.TXCommitReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.query;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.xid;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TXChunkAggregatorTest {
+
+    @Test
+    public void testTransactionLargerThanChunkIsDeliveredInChunks() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setTransactionChunkSize(2);
+        ChunkAwareCollector chunkAwareCollector = new ChunkAwareCollector();
+        Collector collector = new Collector();
+        stream.registerListener(chunkAwareCollector);
+        stream.registerListener(collector);
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog(5, 2)));
+        List<ReplicationEvent> events = chunkAwareCollector.events;
+        assertEquals(events.size(), 6);
+        assertTrue(events.get(0) instanceof TXBeginReplicationEvent);
+        assertEquals(((TXChunkReplicationEvent) events.get(1)).getEvents().size(), 2);
+        assertEquals(((TXChunkReplicationEvent) events.get(2)).getEvents().size(), 2);
+        assertEquals(((TXChunkReplicationEvent) events.get(3)).getEvents().size(), 1);
+        assertTrue(events.get(4) instanceof TXCommitReplicationEvent);
+        // transactions that fit into a single chunk are delivered as is
+        assertEquals(((TXReplicationEvent) events.get(5)).getEvents().size(), 2);
+        assertEquals(collector.events.size(), 2);
+        assertEquals(((TXReplicationEvent) collector.events.get(0)).getEvents().size(), 5);
+        assertEquals(((TXReplicationEvent) collector.events.get(1)).getEvents().size(), 2);
+    }
+
+    @Test
+    public void testChunksAreAggregatedBackIntoTransaction() throws Exception {
+        MySQLReplicationStream stream = new MySQLReplicationStream("username", "password");
+        stream.setTransactionChunkSize(2);
+        Collector aggregatedCollector = new Collector();
+        Collector collector = new Collector();
+        stream.registerListener(new TXChunkAggregator(aggregatedCollector));
+        stream.registerListener(collector);
+        stream.createEventListener().replay(new ByteArrayInputStream(binlog(5, 2)));
+        assertEquals(aggregatedCollector.events.size(), 2);
+        assertEquals(aggregatedCollector.events.get(0).toString(), collector.events.get(0).toString());
+        assertEquals(aggregatedCollector.events.get(1).toString(), collector.events.get(1).toString());
+        assertEquals(((TXReplicationEvent) aggregatedCollector.events.get(0)).getEvents().size(), 5);
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testChunkOutsideOfTransactionIsRejected() throws Exception {
+        new TXChunkAggregator(new Collector()).onEvent(new TXChunkReplicationEvent(new ArrayList<ReplicationEvent>()));
+    }
+
+    /**
+     * @return binary log with transactions of given sizes (number of WRITE_ROWS events)
+     */
+    private byte[] binlog(int... transactionSizes) {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        int value = 0;
+        for (int i = 0; i < transactionSizes.length; i++) {
+            writeEvent(binlog, EventType.QUERY, query("BEGIN"));
+            writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity"));
+            for (int j = 0; j < transactionSizes[i]; j++) {
+                writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, ++value));
+            }
+            writeEvent(binlog, EventType.XID, xid(i + 1));
+        }
+        return binlog.toByteArray();
+    }
+
+    private static class Collector implements ReplicationEventListener {
+
+        protected final List<ReplicationEvent> events = new ArrayList<ReplicationEvent>();
+
+        @Override
+        public void onEvent(ReplicationEvent event) {
+            events.add(event);
+        }
+    }
+
+    private static final class ChunkAwareCollector extends Collector implements TXChunkAware {
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TableFilterTest {
+
+    @Test
+    public void testEmptyFilterAcceptsEverything() throws Exception {
+        assertTrue(TableFilter.ACCEPT_ALL.accepts("rook", "entity"));
+    }
+
+    @Test
+    public void testIncludes() throws Exception {
+        TableFilter filter = new TableFilter(Arrays.asList("rook.entity", "shop.*", "*.audit", "crm.account_?",
+            "regex:billing\\.invoice_\\d+"), Collections.<String>emptySet());
+        assertTrue(filter.accepts("rook", "entity"));
+        assertTrue(filter.accepts("ROOK", "Entity"));
+        assertFalse(filter.accepts("rook", "entity_2"));
+        assertTrue(filter.accepts("shop", "order"));
+        assertTrue(filter.accepts("rook", "audit"));
+        assertTrue(filter.accepts("crm", "account_1"));
+        assertFalse(filter.accepts("crm", "account_10"));
+        assertTrue(filter.accepts("billing", "invoice_2013"));
+        assertFalse(filter.accepts("billing", "invoice_"));
+        assertFalse(filter.accepts("crm", "contact"));
+    }
+
+    @Test
+    public void testExcludesTakePrecedenceOverIncludes() throws Exception {
+        TableFilter filter = new TableFilter(Arrays.asList("shop.*"), Arrays.asList("shop.*_log", "tmp"));
+        assertTrue(filter.accepts("shop", "order"));
+        assertFalse(filter.accepts("shop", "order_log"));
+        assertFalse(filter.accepts("shop", "tmp"));
+        assertFalse(filter.accepts("crm", "account"));
+        filter = new TableFilter(Collections.<String>emptySet(), Arrays.asList("shop.*_log"));
+        assertTrue(filter.accepts("crm", "account"));
+        assertFalse(filter.accepts("shop", "order_log"));
+    }
+}
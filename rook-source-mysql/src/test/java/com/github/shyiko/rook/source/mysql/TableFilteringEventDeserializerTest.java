@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.Event;
+import com.github.shyiko.mysql.binlog.event.EventType;
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import com.github.shyiko.mysql.binlog.event.WriteRowsEventData;
+import com.github.shyiko.mysql.binlog.io.ByteArrayInputStream;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.BitSet;
+
+import static com.github.shyiko.rook.source.mysql.Binlog.MYSQL_TYPE_BLOB;
+import static com.github.shyiko.rook.source.mysql.Binlog.MYSQL_TYPE_LONG;
+import static com.github.shyiko.rook.source.mysql.Binlog.MYSQL_TYPE_VARCHAR;
+import static com.github.shyiko.rook.source.mysql.Binlog.tableMap;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeEvent;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeInteger;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeRows;
+import static com.github.shyiko.rook.source.mysql.Binlog.writeString;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TableFilteringEventDeserializerTest {
+
+    @Test
+    public void testRowsOfSkippedTablesAreNotDeserialized() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "skipped"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(1, 1, 2, 3));
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(2, "rook", "accepted"));
+        writeEvent(binlog, EventType.WRITE_ROWS, writeRows(2, 4, 5));
+        TableFilteringEventDeserializer eventDeserializer = new TableFilteringEventDeserializer();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(binlog.toByteArray());
+        Event event = eventDeserializer.nextEvent(inputStream);
+        assertEquals(((TableMapEventData) event.getData()).getTable(), "skipped");
+        eventDeserializer.setSkipped(1, true);
+        WriteRowsEventData skippedRows = eventDeserializer.nextEvent(inputStream).getData();
+        assertEquals(skippedRows.getTableId(), 1);
+        assertEquals(skippedRows.getRows().size(), 1);
+        assertNull(skippedRows.getRows().get(0));
+        event = eventDeserializer.nextEvent(inputStream);
+        assertEquals(((TableMapEventData) event.getData()).getTable(), "accepted");
+        eventDeserializer.setSkipped(2, false);
+        WriteRowsEventData rows = eventDeserializer.nextEvent(inputStream).getData();
+        assertEquals(rows.getTableId(), 2);
+        assertEquals(rows.getRows().size(), 2);
+        assertEquals(rows.getRows().get(0), new Serializable[]{4});
+        assertEquals(rows.getRows().get(1), new Serializable[]{5});
+        assertNull(eventDeserializer.nextEvent(inputStream));
+    }
+
+    @Test
+    public void testOnlyProjectedColumnsAreDeserialized() throws Exception {
+        ByteArrayOutputStream binlog = new ByteArrayOutputStream();
+        writeEvent(binlog, EventType.TABLE_MAP, tableMap(1, "rook", "entity",
+            new int[]{MYSQL_TYPE_LONG, MYSQL_TYPE_VARCHAR, MYSQL_TYPE_BLOB}, new byte[]{(byte) 255, 0, 2}));
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        writeInteger(rows, 1, 6); // table id
+        writeInteger(rows, 0, 2); // flags
+        rows.write(3); // number of columns
+        rows.write(7); // included columns bitmap
+        rows.write(0); // null bitmap
+        writeInteger(rows, 1, 4);
+        writeString(rows, "first", 1);
+        writeString(rows, "payload #1", 2);
+        rows.write(2); // null bitmap (second column is null)
+        writeInteger(rows, 2, 4);
+        writeString(rows, "payload #2", 2);
+        writeEvent(binlog, EventType.WRITE_ROWS, rows.toByteArray());
+        writeEvent(binlog, EventType.WRITE_ROWS, rows.toByteArray());
+        TableFilteringEventDeserializer eventDeserializer = new TableFilteringEventDeserializer();
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(binlog.toByteArray());
+        eventDeserializer.nextEvent(inputStream);
+        BitSet projection = new BitSet();
+        projection.set(0);
+        projection.set(1);
+        eventDeserializer.setProjection(1, projection);
+        WriteRowsEventData projectedRows = eventDeserializer.nextEvent(inputStream).getData();
+        assertEquals(projectedRows.getRows().size(), 2);
+        assertEquals(projectedRows.getRows().get(0), new Serializable[]{1, "first", null});
+        assertEquals(projectedRows.getRows().get(1), new Serializable[]{2, null, null});
+        eventDeserializer.setProjection(1, null);
+        WriteRowsEventData fullRows = eventDeserializer.nextEvent(inputStream).getData();
+        assertEquals(fullRows.getRows().size(), 2);
+        assertEquals(new String((byte[]) fullRows.getRows().get(1)[2]), "payload #2");
+        assertNull(eventDeserializer.nextEvent(inputStream));
+    }
+}
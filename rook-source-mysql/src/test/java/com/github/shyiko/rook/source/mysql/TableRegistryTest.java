@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.mysql.binlog.event.TableMapEventData;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TableRegistryTest {
+
+    @Test
+    public void testDescriptorsAreInterned() throws Exception {
+        final List<Long> evictedTableIds = new ArrayList<Long>();
+        TableRegistry tableRegistry = new TableRegistry(new TableRegistry.EvictionListener() {
+
+            @Override
+            public void evicted(long tableId) {
+                evictedTableIds.add(tableId);
+            }
+        });
+        TableRegistry.Table table = tableRegistry.register(tableMap(1, "rook", "entity"));
+        assertSame(tableRegistry.register(tableMap(1, "rook", "entity")).getDescriptor(), table.getDescriptor());
+        // new id of the same table (e.g. after ALTER TABLE)
+        TableRegistry.Table reloadedTable = tableRegistry.register(tableMap(2, "rook", "entity"));
+        assertSame(reloadedTable.getDescriptor(), table.getDescriptor());
+        assertNull(tableRegistry.get(1));
+        assertSame(tableRegistry.get(2), reloadedTable);
+        assertEquals(evictedTableIds, Arrays.asList(1L));
+        TableRegistry.Table anotherTable = tableRegistry.register(tableMap(3, "rook", "another_entity"));
+        assertNotSame(anotherTable.getDescriptor(), table.getDescriptor());
+        assertEquals(tableRegistry.size(), 2);
+        tableRegistry.evict("rook", "entity");
+        assertNull(tableRegistry.get(2));
+        assertEquals(evictedTableIds, Arrays.asList(1L, 2L));
+        // dropped table gets new descriptor if re-created
+        assertNotSame(tableRegistry.register(tableMap(4, "rook", "entity")).getDescriptor(),
+            table.getDescriptor());
+        tableRegistry.evictDatabase("ROOK");
+        assertEquals(tableRegistry.size(), 0);
+        assertEquals(evictedTableIds, Arrays.asList(1L, 2L, 3L, 4L));
+    }
+
+    @Test
+    public void testTablesDifferingInCaseOnlyAreToldApart() throws Exception {
+        final List<Long> evictedTableIds = new ArrayList<Long>();
+        TableRegistry tableRegistry = new TableRegistry(new TableRegistry.EvictionListener() {
+
+            @Override
+            public void evicted(long tableId) {
+                evictedTableIds.add(tableId);
+            }
+        });
+        TableRegistry.Table upperCaseTable = tableRegistry.register(tableMap(1, "rook", "Entity"));
+        TableRegistry.Table lowerCaseTable = tableRegistry.register(tableMap(2, "rook", "entity"));
+        assertNotSame(lowerCaseTable.getDescriptor(), upperCaseTable.getDescriptor());
+        assertEquals(lowerCaseTable.getDescriptor().getTable(), "entity");
+        assertSame(tableRegistry.get(1), upperCaseTable);
+        assertSame(tableRegistry.get(2), lowerCaseTable);
+        assertTrue(evictedTableIds.isEmpty());
+        tableRegistry.evict("rook", "Entity");
+        assertNull(tableRegistry.get(1));
+        assertSame(tableRegistry.get(2), lowerCaseTable);
+        // no exact match (e.g. DDL of lower_case_table_names=1 server), falling back to case-insensitive one
+        tableRegistry.evict("rook", "ENTITY");
+        assertEquals(tableRegistry.size(), 0);
+        assertEquals(evictedTableIds, Arrays.asList(1L, 2L));
+    }
+
+    private static TableMapEventData tableMap(long tableId, String database, String table) {
+        TableMapEventData tableMapEventData = new TableMapEventData();
+        tableMapEventData.setTableId(tableId);
+        tableMapEventData.setDatabase(database);
+        tableMapEventData.setTable(table);
+        return tableMapEventData;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class TransactionBufferTest {
+
+    @Test
+    public void testEventsBelowThresholdStayOnHeap() throws Exception {
+        TransactionBuffer buffer = new TransactionBuffer(1024, null);
+        ReplicationEvent event = new InsertRowsReplicationEvent(1, "rook", "entity",
+            Arrays.<Serializable[]>asList(new Serializable[]{1, "one"}));
+        buffer.add(event, 100);
+        List<ReplicationEvent> events = buffer.drain();
+        assertEquals(events.size(), 1);
+        assertSame(events.get(0), event);
+        assertEquals(buffer.size(), 0);
+    }
+
+    @Test
+    public void testEventsAboveThresholdAreSpilled() throws Exception {
+        // tiny regions to make sure events cross region boundaries
+        TransactionBuffer buffer = new TransactionBuffer(150, null, 64);
+        BitSet bitSet = new BitSet();
+        bitSet.set(3);
+        bitSet.set(17);
+        List<ReplicationEvent> expectedEvents = new ArrayList<ReplicationEvent>();
+        for (int i = 0; i < 100; i++) {
+            ReplicationEvent event;
+            switch (i % 3) {
+                case 0:
+                    event = new InsertRowsReplicationEvent(1, "rook", "entity", Arrays.<Serializable[]>asList(
+                        new Serializable[]{i, (long) i, "entity #" + i, null, new BigDecimal("12.34"), bitSet},
+                        new Serializable[]{-i, 1.5f, 2.5d, new byte[]{1, 2, 3}, new java.sql.Timestamp(i * 1000L)}));
+                    break;
+                case 1:
+                    event = new UpdateRowsReplicationEvent(2, "rook", "entity", new Serializable[]{i, "before"},
+                        new Serializable[]{i, "after"});
+                    break;
+                default:
+                    event = new DeleteRowsReplicationEvent(3, "rook", "entity", Arrays.<Serializable[]>asList(
+                        new Serializable[]{i, new java.sql.Date(i * 86400000L), new java.util.Date(i)}));
+            }
+            expectedEvents.add(event);
+            buffer.add(event, 100);
+        }
+        List<ReplicationEvent> events = buffer.drain();
+        assertEquals(events.size(), expectedEvents.size());
+        for (int i = 0; i < 2; i++) { // each iteration starts from scratch
+            int index = 0;
+            for (ReplicationEvent event : events) {
+                assertEquals(toString(event), toString(expectedEvents.get(index)));
+                index++;
+            }
+        }
+        assertEquals(toString(events.get(50)), toString(expectedEvents.get(50)));
+        assertEquals(toString(events.get(7)), toString(expectedEvents.get(7)));
+        assertEquals(buffer.size(), 0);
+        assertEquals(buffer.drain().size(), 0);
+    }
+
+    @Test
+    public void testSpilledEventsCanBeReadConcurrently() throws Exception {
+        TransactionBuffer buffer = new TransactionBuffer(150, null, 64);
+        final List<String> expectedEvents = new ArrayList<String>();
+        for (int i = 0; i < 200; i++) {
+            ReplicationEvent event = new InsertRowsReplicationEvent(1, "rook", "entity",
+                Arrays.<Serializable[]>asList(new Serializable[]{i, "entity #" + i}));
+            expectedEvents.add(toString(event));
+            buffer.add(event, 100);
+        }
+        final List<ReplicationEvent> events = buffer.drain();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<Future<List<String>>>();
+            for (int i = 0; i < 8; i++) {
+                final boolean randomAccess = i % 2 == 0;
+                futures.add(executorService.submit(new Callable<List<String>>() {
+
+                    @Override
+                    public List<String> call() throws Exception {
+                        List<String> result = new ArrayList<String>();
+                        if (randomAccess) {
+                            for (int j = 0; j < events.size(); j++) {
+                                result.add(TransactionBufferTest.toString(events.get(j)));
+                            }
+                        } else {
+                            for (ListIterator<ReplicationEvent> iterator = events.listIterator();
+                                 iterator.hasNext(); ) {
+                                result.add(TransactionBufferTest.toString(iterator.next()));
+                            }
+                        }
+                        return result;
+                    }
+                }));
+            }
+            for (Future<List<String>> future : futures) {
+                assertEquals(future.get(), expectedEvents);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        ListIterator<ReplicationEvent> iterator = events.listIterator(events.size());
+        assertEquals(toString(iterator.previous()), expectedEvents.get(199));
+        assertEquals(toString(iterator.previous()), expectedEvents.get(198));
+        assertEquals(toString(iterator.next()), expectedEvents.get(198));
+    }
+
+    private static String toString(ReplicationEvent event) {
+        RowsMutationReplicationEvent rowsEvent = (RowsMutationReplicationEvent) event;
+        StringBuilder sb = new StringBuilder(event.getClass().getSimpleName()).append(rowsEvent.getServerId()).
+            append(rowsEvent.getSchema()).append(rowsEvent.getTable());
+        for (Object row : rowsEvent.getRows()) {
+            if (row instanceof Map.Entry) {
+                Map.Entry entry = (Map.Entry) row;
+                sb.append(Arrays.deepToString((Object[]) entry.getKey())).append("->").
+                    append(Arrays.deepToString((Object[]) entry.getValue()));
+            } else {
+                sb.append(Arrays.deepToString((Object[]) row));
+            }
+        }
+        return sb.toString();
+    }
+}
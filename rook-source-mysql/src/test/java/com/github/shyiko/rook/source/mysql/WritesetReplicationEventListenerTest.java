@@ -0,0 +1,116 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.source.mysql;
+
+import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
+import com.github.shyiko.rook.api.event.ReplicationEvent;
+import com.github.shyiko.rook.api.event.TXReplicationEvent;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class WritesetReplicationEventListenerTest {
+
+    private final ReplicationEventPartitioner partitioner =
+        new PrimaryKeyPartitioner(Collections.singletonMap("rook.entity", new int[]{0}));
+
+    @Test(timeOut = 10000)
+    public void testConflictingTransactionsAreDeliveredInCommitOrder() throws Exception {
+        final Map<Serializable, List<Serializable>> valuesByKey = new HashMap<Serializable, List<Serializable>>();
+        WritesetReplicationEventListener listener = new WritesetReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    for (ReplicationEvent txEvent : ((TXReplicationEvent) event).getEvents()) {
+                        for (Serializable[] row : ((InsertRowsReplicationEvent) txEvent).getRows()) {
+                            List<Serializable> values;
+                            synchronized (valuesByKey) {
+                                values = valuesByKey.get(row[0]);
+                                if (values == null) {
+                                    valuesByKey.put(row[0], values = new ArrayList<Serializable>());
+                                }
+                            }
+                            values.add(row[1]);
+                        }
+                    }
+                }
+            }, 4, partitioner, 16, 8);
+        for (int i = 0; i < 1000; i++) {
+            listener.onEvent(new TXReplicationEvent(Arrays.<ReplicationEvent>asList(
+                new InsertRowsReplicationEvent(0, "rook", "entity", Arrays.asList(
+                    new Serializable[]{(long) i % 5, i}, new Serializable[]{(long) (i + 2) % 5, i})))));
+        }
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(valuesByKey.size(), 5);
+        for (List<Serializable> values : valuesByKey.values()) {
+            assertEquals(values.size(), 400);
+            for (int i = 1; i < values.size(); i++) {
+                assertTrue((Integer) values.get(i - 1) < (Integer) values.get(i));
+            }
+        }
+    }
+
+    @Test(timeOut = 10000)
+    public void testNonConflictingTransactionsAreDeliveredInParallel() throws Exception {
+        final CountDownLatch secondTXDelivery = new CountDownLatch(1);
+        WritesetReplicationEventListener listener = new WritesetReplicationEventListener(
+            new ReplicationEventListener() {
+
+                @Override
+                public void onEvent(ReplicationEvent event) {
+                    TXReplicationEvent txEvent = (TXReplicationEvent) event;
+                    Serializable[] row = ((InsertRowsReplicationEvent) txEvent.getEvents().get(0)).getRows().get(0);
+                    if (Long.valueOf(1L).equals(row[0])) {
+                        try {
+                            secondTXDelivery.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    } else {
+                        secondTXDelivery.countDown();
+                    }
+                }
+            }, 2, partitioner);
+        listener.onEvent(new TXReplicationEvent(Arrays.<ReplicationEvent>asList(
+            new InsertRowsReplicationEvent(0, "rook", "entity", new Serializable[]{1L}))));
+        listener.onEvent(new TXReplicationEvent(Arrays.<ReplicationEvent>asList(
+            new InsertRowsReplicationEvent(0, "rook", "entity", new Serializable[]{2L}))));
+        listener.shutdown();
+        assertTrue(listener.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testStreamDoesNotFallBackToTableLevelConflictDetection() throws Exception {
+        new MySQLReplicationStream("username", "password").setWritesetDispatch(2, null);
+    }
+}
@@ -16,23 +16,28 @@
 package com.github.shyiko.rook.target.hibernate4.cache;
 
 import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.TXChunkAware;
 import com.github.shyiko.rook.api.event.InsertRowsReplicationEvent;
 import com.github.shyiko.rook.api.event.ReplicationEvent;
 import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
+import com.github.shyiko.rook.api.event.TXChunkReplicationEvent;
 import com.github.shyiko.rook.api.event.TXReplicationEvent;
 import com.github.shyiko.rook.api.event.UpdateRowsReplicationEvent;
 import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Chunks of large transactions are processed as they arrive (eviction does not need to see the whole transaction).
+ *
  * @author <a href="mailto:igor.grunskyi@gmail.com">Igor Grunskiy</a>
  */
-public abstract class AbstractCacheSynchronizer implements ReplicationEventListener {
+public abstract class AbstractCacheSynchronizer implements ReplicationEventListener, TXChunkAware {
 
     protected final SynchronizationContext synchronizationContext;
 
@@ -43,8 +48,9 @@ public abstract class AbstractCacheSynchronizer implements ReplicationEventListe
     @Override
     public void onEvent(ReplicationEvent event) {
         Collection<RowsMutationReplicationEvent> events = null;
-        if (event instanceof TXReplicationEvent) {
-            Collection<ReplicationEvent> replicationEvents = ((TXReplicationEvent) event).getEvents();
+        if (event instanceof TXReplicationEvent || event instanceof TXChunkReplicationEvent) {
+            Collection<ReplicationEvent> replicationEvents = event instanceof TXReplicationEvent ?
+                ((TXReplicationEvent) event).getEvents() : ((TXChunkReplicationEvent) event).getEvents();
             events = new ArrayList<RowsMutationReplicationEvent>(replicationEvents.size());
             for (ReplicationEvent replicationEvent : replicationEvents) {
                 if (replicationEvent instanceof RowsMutationReplicationEvent) {
@@ -52,8 +58,7 @@ public abstract class AbstractCacheSynchronizer implements ReplicationEventListe
                 }
             }
         } else if (event instanceof RowsMutationReplicationEvent) {
-            events = new LinkedList<RowsMutationReplicationEvent>();
-            events.add((RowsMutationReplicationEvent) event);
+            events = Collections.singletonList((RowsMutationReplicationEvent) event);
         }
         if (events != null && !events.isEmpty()) {
             processTX(events);
@@ -65,12 +70,21 @@ public abstract class AbstractCacheSynchronizer implements ReplicationEventListe
             return ((InsertRowsReplicationEvent) event).getRows();
         }
         if (event instanceof UpdateRowsReplicationEvent) {
-            List<Map.Entry<Serializable[], Serializable[]>> rows = ((UpdateRowsReplicationEvent) event).getRows();
-            List<Serializable[]> result = new ArrayList<Serializable[]>(rows.size());
-            for (Map.Entry<Serializable[], Serializable[]> row : rows) {
-                result.add(row.getKey());
-            }
-            return result;
+            final List<Map.Entry<Serializable[], Serializable[]>> rows =
+                ((UpdateRowsReplicationEvent) event).getRows();
+            // view (rather than a copy) of the "before" images
+            return new AbstractList<Serializable[]>() {
+
+                @Override
+                public Serializable[] get(int index) {
+                    return rows.get(index).getKey();
+                }
+
+                @Override
+                public int size() {
+                    return rows.size();
+                }
+            };
         }
         if (event instanceof DeleteRowsReplicationEvent) {
             return ((DeleteRowsReplicationEvent) event).getRows();
@@ -15,19 +15,22 @@
  */
 package com.github.shyiko.rook.target.hibernate4.cache;
 
+import com.github.shyiko.rook.api.ColumnProjection;
 import com.github.shyiko.rook.api.ReplicationEventListener;
+import com.github.shyiko.rook.api.TXChunkAware;
 import com.github.shyiko.rook.api.event.ReplicationEvent;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 /**
  * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
  */
-public class HibernateCacheSynchronizer implements ReplicationEventListener {
+public class HibernateCacheSynchronizer implements ReplicationEventListener, ColumnProjection, TXChunkAware {
 
     private final List<ReplicationEventListener> listeners;
 
@@ -40,6 +43,25 @@ public class HibernateCacheSynchronizer implements ReplicationEventListener {
         }
     }
 
+    @Override
+    public int[] getProjection(String schema, String table) {
+        BitSet columns = new BitSet();
+        for (ReplicationEventListener listener : listeners) {
+            int[] projection = ((ColumnProjection) listener).getProjection(schema, table);
+            if (projection == null) {
+                return null;
+            }
+            for (int column : projection) {
+                columns.set(column);
+            }
+        }
+        int[] result = new int[columns.cardinality()];
+        for (int i = columns.nextSetBit(0), index = 0; i >= 0; i = columns.nextSetBit(i + 1)) {
+            result[index++] = i;
+        }
+        return result;
+    }
+
     @Override
     public void onEvent(ReplicationEvent event) {
         for (ReplicationEventListener listener : listeners) {
@@ -24,10 +24,13 @@ import org.hibernate.mapping.Property;
 import org.hibernate.mapping.Table;
 import org.hibernate.type.EmbeddedComponentType;
 import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -35,8 +38,12 @@ import java.util.Map;
  */
 public class PrimaryKey {
 
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     private Class entityClass;
     private final KeyColumn[] positionWithinRow;
+    private final int[] columnIndexes;
+    private volatile Resolution lastResolution;
 
     public PrimaryKey(Collection collection, Map<String, Integer> columnIndexByNameMap) {
         this(collection.getKey(), collection.getCollectionTable(), columnIndexByNameMap);
@@ -63,31 +70,88 @@ public class PrimaryKey {
             while (propertyIterator.hasNext()) {
                 Property property = (Property) propertyIterator.next();
                 String columnName = ((Column) property.getColumnIterator().next()).getName();
-                positionWithinRow[index++] = new KeyColumn(property.getName(), columnIndexByNameMap.get(columnName));
+                positionWithinRow[index++] = new KeyColumn(property.getName(), columnName,
+                    columnIndexByNameMap.get(columnName));
             }
         } else {
             Iterator columnIterator = keyValue.getColumnIterator();
             while (columnIterator.hasNext()) {
                 String columnName = ((Column) columnIterator.next()).getName();
-                positionWithinRow[index++] = new KeyColumn(columnName, columnIndexByNameMap.get(columnName));
+                positionWithinRow[index++] = new KeyColumn(columnName, columnName,
+                    columnIndexByNameMap.get(columnName));
             }
         }
         if (positionWithinRow.length == 0) {
             throw new IllegalStateException("Unable to determine PK for " + table.getName());
         }
         this.positionWithinRow = positionWithinRow;
+        this.columnIndexes = new int[positionWithinRow.length];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            columnIndexes[i] = positionWithinRow[i].index;
+        }
+    }
+
+    /**
+     * @return positions of the key columns within the row
+     */
+    public int[] getColumnIndexes() {
+        return columnIndexes.clone();
+    }
+
+    /**
+     * @param columnNames names of the row columns (as reported by the source), null if unknown (in which case
+     * positions derived from the mapping are returned)
+     * @return positions of the key columns within the row
+     */
+    public int[] getColumnIndexes(List<String> columnNames) {
+        return columnNames == null ? getColumnIndexes() : resolveColumnIndexes(columnNames).clone();
     }
 
     public Serializable getIdentifier(Serializable[] row) {
+        return getIdentifier(row, columnIndexes);
+    }
+
+    /**
+     * @param columnNames names of the row columns (as reported by the source), null if unknown (in which case
+     * positions derived from the mapping are used)
+     */
+    public Serializable getIdentifier(Serializable[] row, List<String> columnNames) {
+        return getIdentifier(row, columnNames == null ? columnIndexes : resolveColumnIndexes(columnNames));
+    }
+
+    private int[] resolveColumnIndexes(List<String> columnNames) {
+        Resolution resolution = lastResolution;
+        if (resolution == null || resolution.columnNames != columnNames) {
+            int[] indexes = columnIndexes.clone();
+            for (int i = 0; i < positionWithinRow.length; i++) {
+                boolean found = false;
+                for (int j = 0, size = columnNames.size(); j < size; j++) {
+                    if (positionWithinRow[i].columnName.equalsIgnoreCase(columnNames.get(j))) {
+                        indexes[i] = j;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found && logger.isWarnEnabled()) {
+                    logger.warn("Key column " + positionWithinRow[i].columnName + " is not among " + columnNames +
+                        ". Falling back to the position derived from the mapping (" + positionWithinRow[i].index + ")");
+                }
+            }
+            lastResolution = resolution = new Resolution(columnNames, indexes);
+        }
+        return resolution.columnIndexes;
+    }
+
+    private Serializable getIdentifier(Serializable[] row, int[] indexes) {
         if (positionWithinRow.length == 1) {
-            return row[positionWithinRow[0].index];
+            return row[indexes[0]];
         }
         try {
             Serializable identifier = (Serializable) entityClass.newInstance();
-            for (KeyColumn keyColumn : positionWithinRow) {
-                Field field = entityClass.getDeclaredField(keyColumn.name);
+            for (int i = 0; i < positionWithinRow.length; i++) {
+                Field field = entityClass.getDeclaredField(positionWithinRow[i].name);
                 field.setAccessible(true);
-                field.set(identifier, row[keyColumn.index]);
+                field.set(identifier, row[indexes[i]]);
             }
             return identifier;
         } catch (Throwable e) {
@@ -101,11 +165,28 @@ public class PrimaryKey {
     private static final class KeyColumn {
 
         private final String name;
+        private final String columnName;
         private final int index;
 
-        private KeyColumn(String name, int index) {
+        private KeyColumn(String name, String columnName, int index) {
             this.name = name;
+            this.columnName = columnName;
             this.index = index;
         }
     }
+
+    /**
+     * Positions of the key columns resolved against particular list of column names (lists are shared between the
+     * events of the same table, hence the identity check).
+     */
+    private static final class Resolution {
+
+        private final List<String> columnNames;
+        private final int[] columnIndexes;
+
+        private Resolution(List<String> columnNames, int[] columnIndexes) {
+            this.columnNames = columnNames;
+            this.columnIndexes = columnIndexes;
+        }
+    }
 }
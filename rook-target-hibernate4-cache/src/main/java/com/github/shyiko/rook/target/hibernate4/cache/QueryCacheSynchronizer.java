@@ -15,6 +15,7 @@
  */
 package com.github.shyiko.rook.target.hibernate4.cache;
 
+import com.github.shyiko.rook.api.ColumnProjection;
 import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.slf4j.Logger;
@@ -29,9 +30,10 @@ import java.util.Set;
 /**
  * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
  */
-public class QueryCacheSynchronizer extends AbstractCacheSynchronizer {
+public class QueryCacheSynchronizer extends AbstractCacheSynchronizer implements ColumnProjection {
 
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
+    private static final int[] EMPTY_INT_ARRAY = new int[0];
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -43,12 +45,20 @@ public class QueryCacheSynchronizer extends AbstractCacheSynchronizer {
         }
     }
 
+    /**
+     * @return empty array (query spaces are resolved based on the table name alone)
+     */
+    @Override
+    public int[] getProjection(String schema, String table) {
+        return EMPTY_INT_ARRAY;
+    }
+
     @Override
     protected void processTX(Collection<RowsMutationReplicationEvent> events) {
         Set<String> spacesToInvalidate = new HashSet<String>();
         for (RowsMutationReplicationEvent event : events) {
             Collection<EvictionTarget> evictionTargets = synchronizationContext.getEvictionTargets(
-                    event.getSchema().toLowerCase() + "." + event.getTable().toLowerCase());
+                    event.getTableDescriptor());
             for (EvictionTarget evictionTarget : evictionTargets) {
                 Collections.addAll(spacesToInvalidate, resolveQuerySpaces(evictionTarget));
             }
@@ -15,18 +15,21 @@
  */
 package com.github.shyiko.rook.target.hibernate4.cache;
 
+import com.github.shyiko.rook.api.ColumnProjection;
 import com.github.shyiko.rook.api.event.RowsMutationReplicationEvent;
 import org.hibernate.Cache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
  */
-public class SecondLevelCacheSynchronizer extends AbstractCacheSynchronizer {
+public class SecondLevelCacheSynchronizer extends AbstractCacheSynchronizer implements ColumnProjection {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -38,14 +41,33 @@ public class SecondLevelCacheSynchronizer extends AbstractCacheSynchronizer {
         }
     }
 
+    /**
+     * @return positions of the primary/foreign key columns of the entities/collections mapped to the table (resolved
+     * by name, the same way keys are extracted in {@link #processTX(java.util.Collection)})
+     */
+    @Override
+    public int[] getProjection(String schema, String table, List<String> columnNames) {
+        BitSet columns = new BitSet();
+        String qualifiedName = schema.toLowerCase() + "." + table.toLowerCase();
+        for (EvictionTarget evictionTarget : synchronizationContext.getEvictionTargets(qualifiedName)) {
+            for (int column : evictionTarget.getPrimaryKey().getColumnIndexes(columnNames)) {
+                columns.set(column);
+            }
+        }
+        int[] result = new int[columns.cardinality()];
+        for (int i = columns.nextSetBit(0), index = 0; i >= 0; i = columns.nextSetBit(i + 1)) {
+            result[index++] = i;
+        }
+        return result;
+    }
+
     protected void processTX(Collection<RowsMutationReplicationEvent> txEvents) {
         for (RowsMutationReplicationEvent event : txEvents) {
             Cache cache = synchronizationContext.getSessionFactory().getCache();
-            String qualifiedName = event.getSchema().toLowerCase() + "." + event.getTable().toLowerCase();
-
-            for (EvictionTarget evictionTarget : synchronizationContext.getEvictionTargets(qualifiedName)) {
+            for (EvictionTarget evictionTarget : synchronizationContext.getEvictionTargets(
+                    event.getTableDescriptor())) {
                 for (Serializable[] row : resolveAffectedRows(event)) {
-                    Serializable key = evictionTarget.getPrimaryKey().getIdentifier(row);
+                    Serializable key = evictionTarget.getPrimaryKey().getIdentifier(row, event.getColumnNames());
                     if (logger.isDebugEnabled()) {
                         logger.debug("Evicting " + evictionTarget.getName() + "#" + key);
                     }
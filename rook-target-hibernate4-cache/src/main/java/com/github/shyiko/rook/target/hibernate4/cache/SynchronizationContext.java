@@ -15,6 +15,7 @@
  */
 package com.github.shyiko.rook.target.hibernate4.cache;
 
+import com.github.shyiko.rook.api.TableDescriptor;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
@@ -58,6 +59,20 @@ public class SynchronizationContext {
         return (SessionFactoryImplementor) sessionFactory;
     }
 
+    /**
+     * Same as {@link #getEvictionTargets(String)} but with result cached on the table descriptor (as an
+     * attachment keyed by this context).
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<EvictionTarget> getEvictionTargets(TableDescriptor table) {
+        Collection<EvictionTarget> result = (Collection<EvictionTarget>) table.getAttachment(this);
+        if (result == null) {
+            result = getEvictionTargets(table.getQualifiedName());
+            table.setAttachment(this, result);
+        }
+        return result;
+    }
+
     public Collection<EvictionTarget> getEvictionTargets(String table) {
         Collection<EvictionTarget> evictionTargets = targetsByTable.get(table.toLowerCase());
         return evictionTargets == null ? Collections.<EvictionTarget>emptyList() : evictionTargets;
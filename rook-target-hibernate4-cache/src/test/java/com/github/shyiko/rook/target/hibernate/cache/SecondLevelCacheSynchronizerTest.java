@@ -15,6 +15,7 @@
  */
 package com.github.shyiko.rook.target.hibernate.cache;
 
+import com.github.shyiko.rook.api.TableDescriptor;
 import com.github.shyiko.rook.api.event.DeleteRowsReplicationEvent;
 import com.github.shyiko.rook.target.hibernate.cache.model.Entity;
 import com.github.shyiko.rook.target.hibernate.cache.model.EntityProperty;
@@ -26,8 +27,12 @@ import org.hibernate.SessionFactory;
 import org.testng.annotations.Test;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
@@ -122,6 +127,84 @@ public class SecondLevelCacheSynchronizerTest extends AbstractHibernateTest {
         });
     }
 
+    @Test
+    public void testProjectionOfReorderedTable() throws Exception {
+        final Cache cache = synchronizationContext.getSessionFactory().getCache();
+        final AtomicLong entityId = new AtomicLong();
+        executeInTransaction(new Callback<Session>() {
+
+            @Override
+            public void execute(Session session) {
+                Entity entity = new Entity();
+                entity.setName("Name");
+
+                EntityProperty entityProperty = new EntityProperty();
+                entityProperty.setName("name");
+                entityProperty.setValue("value");
+                entityProperty.setEnclosingEntity(entity);
+                entity.getProperties().add(entityProperty);
+
+                entityId.set((Long) session.save(entity));
+            }
+        });
+        executeInTransaction(new Callback<Session>() {
+
+            @Override
+            public void execute(Session session) {
+                assertEquals(((Entity) session.get(Entity.class, entityId.get())).getProperties().size(), 1);
+            }
+        });
+        executeInTransaction(new Callback<Session>() {
+
+            @Override
+            public void execute(Session obj) {
+                assertTrue(cache.containsEntity(Entity.class, entityId.get()));
+                assertTrue(cache.containsCollection(Entity.class.getName() + ".properties", entityId.get()));
+                SecondLevelCacheSynchronizer secondLevelCacheSynchronizer =
+                        new SecondLevelCacheSynchronizer(synchronizationContext);
+
+                // entity table structure [_id, name] after ALTER TABLE entity MODIFY _id ... AFTER name
+                List<String> entityColumns = Arrays.asList("name", "_id");
+                int[] entityProjection = secondLevelCacheSynchronizer.getProjection("rook", "entity", entityColumns);
+                assertEquals(Arrays.toString(entityProjection), "[1]");
+                secondLevelCacheSynchronizer.onEvent(new DeleteRowsReplicationEvent(0,
+                        new TableDescriptor("rook", "entity"), entityColumns,
+                        rows(project(new Serializable[] {"Name", entityId.get()}, entityProjection))));
+                assertFalse(cache.containsEntity(Entity.class, entityId.get()));
+
+                // entity_property table structure [id, name, value, entity_id] after
+                // ALTER TABLE entity_property MODIFY entity_id ... AFTER name
+                List<String> entityPropertyColumns = Arrays.asList("id", "name", "entity_id", "value");
+                int[] entityPropertyProjection = secondLevelCacheSynchronizer.getProjection("rook",
+                        "entity_property", entityPropertyColumns);
+                assertEquals(Arrays.toString(entityPropertyProjection), "[2]");
+                secondLevelCacheSynchronizer.onEvent(new DeleteRowsReplicationEvent(0,
+                        new TableDescriptor("rook", "entity_property"), entityPropertyColumns,
+                        rows(project(new Serializable[] {1L, "name", entityId.get(), "value"},
+                                entityPropertyProjection))));
+                assertFalse(cache.containsCollection(Entity.class.getName() + ".properties", entityId.get()));
+            }
+        });
+    }
+
+    /**
+     * @return copy of the row with the values of the columns outside of the projection set to null (just like
+     * stream does it)
+     */
+    private static Serializable[] project(Serializable[] row, int[] projection) {
+        Serializable[] result = new Serializable[row.length];
+        for (int column : projection) {
+            result[column] = row[column];
+        }
+        return result;
+    }
+
+    private static List<Serializable[]> rows(Serializable[] row) {
+        List<Serializable[]> result = new ArrayList<Serializable[]>();
+        result.add(row);
+        return result;
+    }
+
     private void executeInTransaction(Callback<Session> callback) {
         SessionFactory sessionFactory = synchronizationContext.getSessionFactory();
         Session session = sessionFactory.openSession();
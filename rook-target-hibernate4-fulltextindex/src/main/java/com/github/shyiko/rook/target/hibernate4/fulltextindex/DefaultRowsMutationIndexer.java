@@ -68,7 +68,7 @@ public class DefaultRowsMutationIndexer implements RowsMutationIndexer {
         PrimaryKey primaryKey = indexingDirective.getPrimaryKey();
         Class entityClass = primaryKey.getEntityClass();
         for (Serializable[] row : rowsMutation.getRows()) {
-            Serializable id = primaryKey.getIdentifier(row);
+            Serializable id = primaryKey.getIdentifier(row, rowsMutation.getColumnNames());
             if (indexingLog.isIndexed(entityClass, id)) {
                 continue;
             }
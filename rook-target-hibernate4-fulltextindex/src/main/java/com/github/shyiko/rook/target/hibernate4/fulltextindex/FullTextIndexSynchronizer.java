@@ -74,11 +74,11 @@ public class FullTextIndexSynchronizer implements ReplicationEventListener {
     private void updateIndex(Collection<RowsMutationReplicationEvent> events) {
         List<RowsMutation> rowsMutations = new ArrayList<RowsMutation>();
         for (RowsMutationReplicationEvent event : events) {
-            String qualifiedName = event.getSchema().toLowerCase() + "." + event.getTable().toLowerCase();
             Collection<IndexingDirective> indexingDirectives =
-                synchronizationContext.getIndexingDirectives(qualifiedName);
+                synchronizationContext.getIndexingDirectives(event.getTableDescriptor());
             for (IndexingDirective indexingDirective : indexingDirectives) {
-                rowsMutations.add(new RowsMutation(resolveAffectedRows(event), indexingDirective));
+                rowsMutations.add(new RowsMutation(resolveAffectedRows(event), event.getColumnNames(),
+                    indexingDirective));
             }
         }
         if (!rowsMutations.isEmpty()) {
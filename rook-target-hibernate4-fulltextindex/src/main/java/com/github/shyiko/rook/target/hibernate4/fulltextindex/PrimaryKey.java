@@ -22,11 +22,14 @@ import org.hibernate.mapping.PersistentClass;
 import org.hibernate.mapping.Property;
 import org.hibernate.mapping.Table;
 import org.hibernate.property.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -34,9 +37,12 @@ import java.util.Map;
  */
 public class PrimaryKey {
 
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     private Class entityClass;
     private Getter getter;
     private final KeyColumn[] positionWithinRow;
+    private volatile Resolution lastResolution;
 
     public PrimaryKey(PersistentClass persistentClass) {
         this.entityClass = persistentClass.getMappedClass();
@@ -50,20 +56,23 @@ public class PrimaryKey {
             while (propertyIterator.hasNext()) {
                 Property property = (Property) propertyIterator.next();
                 String columnName = ((Column) property.getColumnIterator().next()).getName();
-                positionWithinRow[index++] = new KeyColumn(property.getName(), columnIndexByNameMap.get(columnName));
+                positionWithinRow[index++] = new KeyColumn(property.getName(), columnName,
+                    columnIndexByNameMap.get(columnName));
             }
         } else {
             Iterator columnIterator = keyValue.getColumnIterator();
             while (columnIterator.hasNext()) {
                 String columnName = ((Column) columnIterator.next()).getName();
-                positionWithinRow[index++] = new KeyColumn(columnName, columnIndexByNameMap.get(columnName));
+                positionWithinRow[index++] = new KeyColumn(columnName, columnName,
+                    columnIndexByNameMap.get(columnName));
             }
         }
         if (positionWithinRow.length == 0) {
             throw new IllegalStateException("Unable to determine PK for " + table.getName());
         }
         Property identifierProperty = persistentClass.getIdentifierProperty();
-        this.getter = identifierProperty.getGetter(this.entityClass);
+        // there is no identifier property when composite key is embedded into the entity (which is then its own id)
+        this.getter = identifierProperty == null ? null : identifierProperty.getGetter(this.entityClass);
         this.positionWithinRow = positionWithinRow;
 
     }
@@ -73,7 +82,7 @@ public class PrimaryKey {
         KeyColumn[] positionWithinRow = new KeyColumn[columnIndexByNameMap.size()];
         int index = 0;
         for (Map.Entry<String, Integer> entry : columnIndexByNameMap.entrySet()) {
-            positionWithinRow[index] = new KeyColumn(entry.getKey(), entry.getValue());
+            positionWithinRow[index] = new KeyColumn(entry.getKey(), entry.getKey(), entry.getValue());
         }
         this.getter = primaryKey.getter;
         this.positionWithinRow = positionWithinRow;
@@ -95,19 +104,59 @@ public class PrimaryKey {
     }
 
     public Serializable getIdentifier(Object entity) {
-        return (Serializable) getter.get(entity);
+        return (Serializable) (getter == null ? entity : getter.get(entity));
     }
 
     public Serializable getIdentifier(Serializable[] row) {
+        return getIdentifier(row, (int[]) null);
+    }
+
+    /**
+     * @param columnNames names of the row columns (as reported by the source), null if unknown (in which case
+     * positions derived from the mapping are used)
+     */
+    public Serializable getIdentifier(Serializable[] row, List<String> columnNames) {
+        return getIdentifier(row, columnNames == null ? null : resolveColumnIndexes(columnNames));
+    }
+
+    private int[] resolveColumnIndexes(List<String> columnNames) {
+        Resolution resolution = lastResolution;
+        if (resolution == null || resolution.columnNames != columnNames) {
+            int[] indexes = new int[positionWithinRow.length];
+            for (int i = 0; i < positionWithinRow.length; i++) {
+                boolean found = false;
+                indexes[i] = positionWithinRow[i].index;
+                for (int j = 0, size = columnNames.size(); j < size; j++) {
+                    if (positionWithinRow[i].columnName.equalsIgnoreCase(columnNames.get(j))) {
+                        indexes[i] = j;
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found && logger.isWarnEnabled()) {
+                    logger.warn("Key column " + positionWithinRow[i].columnName + " is not among " + columnNames +
+                        ". Falling back to the position derived from the mapping (" + positionWithinRow[i].index + ")");
+                }
+            }
+            lastResolution = resolution = new Resolution(columnNames, indexes);
+        }
+        return resolution.columnIndexes;
+    }
+
+    /**
+     * @param indexes positions of the key columns, null for the ones derived from the mapping
+     */
+    private Serializable getIdentifier(Serializable[] row, int[] indexes) {
         if (positionWithinRow.length == 1) {
-            return row[positionWithinRow[0].index];
+            return row[indexes == null ? positionWithinRow[0].index : indexes[0]];
         }
         try {
             Serializable identifier = (Serializable) entityClass.newInstance();
-            for (KeyColumn keyColumn : positionWithinRow) {
+            for (int i = 0; i < positionWithinRow.length; i++) {
+                KeyColumn keyColumn = positionWithinRow[i];
                 Field field = entityClass.getDeclaredField(keyColumn.name);
                 field.setAccessible(true);
-                field.set(identifier, row[keyColumn.index]);
+                field.set(identifier, row[indexes == null ? keyColumn.index : indexes[i]]);
             }
             return identifier;
         } catch (Throwable e) {
@@ -121,11 +170,28 @@ public class PrimaryKey {
     private static final class KeyColumn {
 
         private final String name;
+        private final String columnName;
         private final int index;
 
-        private KeyColumn(String name, int index) {
+        private KeyColumn(String name, String columnName, int index) {
             this.name = name;
+            this.columnName = columnName;
             this.index = index;
         }
     }
+
+    /**
+     * Positions of the key columns resolved against particular list of column names (lists are shared between the
+     * events of the same table, hence the identity check).
+     */
+    private static final class Resolution {
+
+        private final List<String> columnNames;
+        private final int[] columnIndexes;
+
+        private Resolution(List<String> columnNames, int[] columnIndexes) {
+            this.columnNames = columnNames;
+            this.columnIndexes = columnIndexes;
+        }
+    }
 }
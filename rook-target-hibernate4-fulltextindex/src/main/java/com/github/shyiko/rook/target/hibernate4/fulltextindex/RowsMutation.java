@@ -24,10 +24,16 @@ import java.util.List;
 public class RowsMutation {
 
     private final List<Serializable[]> rows;
+    private final List<String> columnNames;
     private final IndexingDirective indexingDirective;
 
     public RowsMutation(List<Serializable[]> rows, IndexingDirective indexingDirective) {
+        this(rows, null, indexingDirective);
+    }
+
+    public RowsMutation(List<Serializable[]> rows, List<String> columnNames, IndexingDirective indexingDirective) {
         this.rows = rows;
+        this.columnNames = columnNames;
         this.indexingDirective = indexingDirective;
     }
 
@@ -35,6 +41,13 @@ public class RowsMutation {
         return rows;
     }
 
+    /**
+     * @return names of the row columns, null if unknown
+     */
+    public List<String> getColumnNames() {
+        return columnNames;
+    }
+
     public IndexingDirective getIndexingDirective() {
         return indexingDirective;
     }
@@ -15,6 +15,7 @@
  */
 package com.github.shyiko.rook.target.hibernate4.fulltextindex;
 
+import com.github.shyiko.rook.api.TableDescriptor;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
@@ -64,6 +65,20 @@ public class SynchronizationContext {
         return (SessionFactoryImplementor) sessionFactory;
     }
 
+    /**
+     * Same as {@link #getIndexingDirectives(String)} but with result cached on the table descriptor (as an
+     * attachment keyed by this context).
+     */
+    @SuppressWarnings("unchecked")
+    public Collection<IndexingDirective> getIndexingDirectives(TableDescriptor table) {
+        Collection<IndexingDirective> result = (Collection<IndexingDirective>) table.getAttachment(this);
+        if (result == null) {
+            result = getIndexingDirectives(table.getQualifiedName());
+            table.setAttachment(this, result);
+        }
+        return result;
+    }
+
     public Collection<IndexingDirective> getIndexingDirectives(String table) {
         IndexingDirective indexingTarget = directivesByTable.get(table.toLowerCase());
         return indexingTarget == null ? Collections.<IndexingDirective>emptyList() : Arrays.asList(indexingTarget);
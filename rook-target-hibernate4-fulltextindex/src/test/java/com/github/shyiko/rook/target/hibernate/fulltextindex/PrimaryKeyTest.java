@@ -0,0 +1,63 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.target.hibernate.fulltextindex;
+
+import com.github.shyiko.rook.target.hibernate.fulltextindex.model.Entity;
+import com.github.shyiko.rook.target.hibernate.fulltextindex.model.EntityWithCompositeKey;
+import com.github.shyiko.rook.target.hibernate4.fulltextindex.PrimaryKey;
+import org.hibernate.cfg.Configuration;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+/**
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+public class PrimaryKeyTest {
+
+    private Configuration configuration;
+
+    @BeforeClass
+    public void setUp() {
+        configuration = new Configuration().
+            addAnnotatedClass(Entity.class).
+            addAnnotatedClass(EntityWithCompositeKey.class);
+        configuration.buildMappings();
+    }
+
+    @Test
+    public void testIdentifierOfEntityWithSimpleKey() throws Exception {
+        PrimaryKey primaryKey = new PrimaryKey(configuration.getClassMapping(Entity.class.getName()));
+        assertEquals(primaryKey.getIdentifier(new Entity(1, "name")), 1L);
+        assertEquals(primaryKey.getIdentifier(new Serializable[]{"name", 2L}, Arrays.asList("name", "id")), 2L);
+    }
+
+    @Test
+    public void testEntityWithEmbeddedCompositeKeyIsItsOwnIdentifier() throws Exception {
+        PrimaryKey primaryKey = new PrimaryKey(configuration.getClassMapping(EntityWithCompositeKey.class.getName()));
+        EntityWithCompositeKey entity = new EntityWithCompositeKey(1, 2, "name");
+        assertSame(primaryKey.getIdentifier(entity), entity);
+        EntityWithCompositeKey identifier = (EntityWithCompositeKey) primaryKey.getIdentifier(
+            new Serializable[]{"name", 4L, 3L}, Arrays.asList("name", "_id2", "id1"));
+        assertEquals(identifier.getId1(), 3L);
+        assertEquals(identifier.getId2(), 4L);
+    }
+}
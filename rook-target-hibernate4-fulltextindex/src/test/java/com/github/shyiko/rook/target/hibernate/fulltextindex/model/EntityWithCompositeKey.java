@@ -0,0 +1,61 @@
+/*
+ * Copyright 2013 Stanley Shyiko
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.shyiko.rook.target.hibernate.fulltextindex.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * Entity which is its own identifier (composite key is embedded into it).
+ *
+ * @author <a href="mailto:stanley.shyiko@gmail.com">Stanley Shyiko</a>
+ */
+@Entity
+@Table(name = "entity_with_cpk")
+public class EntityWithCompositeKey implements Serializable {
+
+    @Id
+    private long id1;
+    @Id
+    @Column(name = "_id2")
+    private long id2;
+    @Column
+    private String name;
+
+    public EntityWithCompositeKey() {
+    }
+
+    public EntityWithCompositeKey(long id1, long id2, String name) {
+        this.id1 = id1;
+        this.id2 = id2;
+        this.name = name;
+    }
+
+    public long getId1() {
+        return id1;
+    }
+
+    public long getId2() {
+        return id2;
+    }
+
+    public String getName() {
+        return name;
+    }
+}